@@ -0,0 +1,35 @@
+package com.example.vulcans_limes;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented measurement of the calls from Rust into RustDef. It compares calls that look up the class and
+ * the method by name, as the Knox provider does, with calls through the method IDs lib.rs resolves once.
+ * The average time per call of both is printed to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UpcallLookupTest {
+    private static final int WARMUP_ITERATIONS = 1000;
+    private static final int ITERATIONS = 10000;
+
+    @Test
+    public void cachedMethodIdsSkipTheLookup() throws Exception {
+        RustDef.initialize_module();
+        assertNotNull(RustDef.measureUpcalls(WARMUP_ITERATIONS));
+
+        long[] nanos = RustDef.measureUpcalls(ITERATIONS);
+        assertNotNull(nanos);
+        long byName = nanos[0] / ITERATIONS;
+        long cached = nanos[1] / ITERATIONS;
+        System.out.printf(Locale.ROOT, "upcall by name: %d ns, through cached IDs: %d ns%n", byName, cached);
+        assertTrue("by name " + byName + " ns, cached " + cached + " ns", nanos[1] < nanos[0]);
+    }
+}
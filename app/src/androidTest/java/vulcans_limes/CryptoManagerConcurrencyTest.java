@@ -0,0 +1,111 @@
+package vulcans_limes;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.vulcans_limes.CryptoManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instrumented stress test, which runs operations on many keys from many threads at the same time
+ * and checks that every thread gets correct results for the key it asked for.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CryptoManagerConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 50;
+    private static final String[] SYMMETRIC_KEYS = {
+            "AES;128;GCM;NoPadding",
+            "AES;256;GCM;NoPadding",
+            "AES;128;CBC;PKCS7Padding",
+            "AES;256;CTR;NoPadding",
+            "DESede;168;CBC;PKCS7Padding"
+    };
+    private static final String[] SIGNING_KEYS = {
+            "EC;secp256r1;SHA-256",
+            "EC;secp384r1;SHA-256",
+            "RSA;2048;SHA-256;PKCS1"
+    };
+
+    private CryptoManager cryptoManager;
+    private final List<String> symmetricAliases = new ArrayList<>();
+    private final List<String> signingAliases = new ArrayList<>();
+
+    @Before
+    public void createKeys() throws Exception {
+        cryptoManager = new CryptoManager();
+        String prefix = "concurrency-" + System.nanoTime() + "-";
+        for (int i = 0; i < SYMMETRIC_KEYS.length; i++) {
+            String alias = prefix + "sym-" + i;
+            cryptoManager.genKey(alias, SYMMETRIC_KEYS[i]);
+            symmetricAliases.add(alias);
+        }
+        for (int i = 0; i < SIGNING_KEYS.length; i++) {
+            String alias = prefix + "sign-" + i;
+            cryptoManager.generateKeyPair(alias, SIGNING_KEYS[i]);
+            signingAliases.add(alias);
+        }
+    }
+
+    @After
+    public void deleteKeys() throws Exception {
+        for (String alias : symmetricAliases) cryptoManager.deleteKey(alias);
+        for (String alias : signingAliases) cryptoManager.deleteKey(alias);
+    }
+
+    @Test
+    public void parallelOperationsOnDifferentKeys() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            results.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    runIterations(new Random(seed));
+                    return null;
+                }
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.MINUTES));
+        // get() rethrows any failure of the worker threads
+        for (Future<Void> result : results) result.get();
+    }
+
+    private void runIterations(Random random) throws Exception {
+        for (int i = 0; i < ITERATIONS; i++) {
+            byte[] data = new byte[1 + random.nextInt(4096)];
+            random.nextBytes(data);
+
+            String symmetricAlias = symmetricAliases.get(random.nextInt(symmetricAliases.size()));
+            byte[] encrypted = cryptoManager.encryptData(symmetricAlias, data);
+            assertArrayEquals(symmetricAlias, data, cryptoManager.decryptData(symmetricAlias, encrypted));
+
+            String signingAlias = signingAliases.get(random.nextInt(signingAliases.size()));
+            byte[] signature = cryptoManager.signData(signingAlias, data);
+            assertTrue(signingAlias, cryptoManager.verifySignature(signingAlias, data, signature));
+
+            byte[] modified = Arrays.copyOf(data, data.length);
+            modified[0] ^= 1;
+            assertFalse(signingAlias, cryptoManager.verifySignature(signingAlias, modified, signature));
+        }
+    }
+}
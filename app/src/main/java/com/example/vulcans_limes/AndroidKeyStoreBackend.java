@@ -0,0 +1,220 @@
+package com.example.vulcans_limes;
+
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyInfo;
+import android.security.keystore.KeyProperties;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.interfaces.ECKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+
+/**
+ * This class keeps the keys of a {@link CryptoManager} in the Android Keystore.
+ * <p>
+ * Symmetric keys and RSA key pairs are requested to be backed by the StrongBox secure element, EC key pairs are
+ * stored in the default secure hardware. The key material never leaves the keystore, the returned keys are
+ * references that can only be used with the keystore's provider.
+ */
+public final class AndroidKeyStoreBackend extends KeyStoreBackend {
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+    private final KeyStore keyStore;
+    private volatile boolean keyStoreLoaded;
+
+    /**
+     * Creates a backend working with the Android Keystore of this device.
+     *
+     * @throws KeyStoreException if the KeyStore Provider does not exist or fails to initialize.
+     */
+    public AndroidKeyStoreBackend() throws KeyStoreException {
+        keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+    }
+
+    @Override
+    boolean containsAlias(String alias) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        loadKeyStore();
+        return keyStore.containsAlias(alias);
+    }
+
+    @Override
+    Set<String> getAliases() throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        loadKeyStore();
+        return new HashSet<>(Collections.list(keyStore.aliases()));
+    }
+
+    @Override
+    boolean isSerialGeneration(KeyGenSpec spec) {
+        // the StrongBox secure element processes one request at a time anyway
+        return spec.isStrongBoxBacked();
+    }
+
+    @Override
+    KeyHandle generateSecretKey(String alias, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidAlgorithmParameterException {
+        KeyGenerator keyGen = KeyGenerator.getInstance(spec.getAlgorithm(), ANDROID_KEY_STORE);
+        // KeyGenSpec uses the same purpose flags as KeyProperties
+        keyGen.init(new KeyGenParameterSpec.Builder(alias, spec.getPurposes())
+                .setKeySize(spec.getKeySize())
+                .setBlockModes(spec.getBlockMode())
+                .setEncryptionPaddings(spec.getPadding())
+                .setIsStrongBoxBacked(spec.isStrongBoxBacked())
+                .build());
+        SecretKey secretKey = keyGen.generateKey();
+        return new KeyHandle(alias, secretKey, null, KeyProfile.forSecretKey(spec.getAlgorithm(),
+                spec.getBlockMode(), spec.getPadding(), spec.isStrongBoxBacked()));
+    }
+
+    @Override
+    KeyHandle generateKeyPair(String alias, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidAlgorithmParameterException {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance(spec.getAlgorithm(), ANDROID_KEY_STORE);
+        KeyGenParameterSpec.Builder builder = new KeyGenParameterSpec.Builder(alias, spec.getPurposes())
+                // DIGEST_NONE allows signing digests computed in-process, see KeyProfile#getPreHashAlgorithm(),
+                // and is only granted to keys requested for it
+                .setDigests(spec.isPreHash()
+                        ? new String[]{spec.getDigest(), KeyProperties.DIGEST_NONE}
+                        : new String[]{spec.getDigest()})
+                .setIsStrongBoxBacked(spec.isStrongBoxBacked());
+        if (spec.getCurve() != null) {
+            builder.setAlgorithmParameterSpec(new ECGenParameterSpec(spec.getCurve()));
+        } else {
+            builder.setKeySize(spec.getKeySize())
+                    .setSignaturePaddings(spec.getPadding());
+        }
+        keyPairGen.initialize(builder.build());
+        KeyPair keyPair = keyPairGen.generateKeyPair();
+        return new KeyHandle(alias, keyPair.getPrivate(), keyPair.getPublic(),
+                KeyProfile.forKeyPair(spec.getAlgorithm(), spec.getDigest(), spec.isPreHash(),
+                        spec.isStrongBoxBacked()));
+    }
+
+    @Override
+    KeyHandle loadKey(String alias) throws UnrecoverableKeyException, KeyStoreException, CertificateException,
+            IOException, NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
+        loadKeyStore();
+        Key key = keyStore.getKey(alias, null);
+        if (key == null)
+            throw new UnrecoverableKeyException("The key alias '" + alias + "' does not exist in the KeyStore.");
+        PublicKey publicKey = null;
+        if (key instanceof PrivateKey) {
+            Certificate certificate = keyStore.getCertificate(alias);
+            publicKey = certificate.getPublicKey();
+        }
+        return new KeyHandle(alias, key, publicKey, buildProfile(key));
+    }
+
+    @Override
+    void deleteKey(String alias) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        loadKeyStore();
+        keyStore.deleteEntry(alias);
+    }
+
+    /**
+     * Loads the Android KeyStore if that has not happened yet.
+     * <p>
+     * The Android KeyStore does not hold any entries in memory, so loading it once is enough to see
+     * keys that are generated later on.
+     *
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the algorithm used to check the keystore integrity is not available.
+     */
+    private void loadKeyStore() throws CertificateException, IOException, NoSuchAlgorithmException {
+        if (keyStoreLoaded) return;
+        synchronized (keyStore) {
+            if (!keyStoreLoaded) {
+                keyStore.load(null);
+                keyStoreLoaded = true;
+            }
+        }
+    }
+
+    /**
+     * Constructs the {@link KeyProfile} of a key stored in the Android KeyStore.
+     * <p>
+     * This method retrieves key-specific metadata using {@link KeyInfo}. For symmetric keys ({@link SecretKey}),
+     * the profile contains the transformation built from the key's algorithm, block mode and encryption padding in
+     * the format "algorithm/block-mode/padding". For asymmetric keys ({@link PrivateKey}), it contains the
+     * signature algorithm built from the key's digest and algorithm. This is only needed once per key, as the
+     * profile is cached together with the key.
+     *
+     * @param key The key for which the profile is to be built. It can be either a {@link SecretKey} or a {@link PrivateKey}.
+     * @return The profile of the key.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException  if the key specification is invalid.
+     * @throws NoSuchProviderException  if the requested security provider is not available.
+     * @throws KeyStoreException        if the key type is unsupported.
+     */
+    private KeyProfile buildProfile(Key key) throws NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException, KeyStoreException {
+        KeyInfo keyInfo;
+        if (key instanceof SecretKey) {
+            SecretKeyFactory factory = SecretKeyFactory.getInstance(key.getAlgorithm(), ANDROID_KEY_STORE);
+            keyInfo = (KeyInfo) factory.getKeySpec((SecretKey) key, KeyInfo.class);
+            assert keyInfo.getEncryptionPaddings().length > 0 : "No encryption padding found.";
+            assert keyInfo.getBlockModes().length > 0 : "No block modes found.";
+            return KeyProfile.forSecretKey(key.getAlgorithm(), keyInfo.getBlockModes()[0],
+                    keyInfo.getEncryptionPaddings()[0], isStrongBoxBacked(keyInfo));
+        } else if (key instanceof PrivateKey) {
+            KeyFactory factory = KeyFactory.getInstance(key.getAlgorithm(), ANDROID_KEY_STORE);
+            keyInfo = factory.getKeySpec(key, KeyInfo.class);
+            // the digest used for signing is the first one besides DIGEST_NONE, which only allows pre-hashing
+            List<String> digests = Arrays.asList(keyInfo.getDigests());
+            String digest = null;
+            for (String candidate : digests) {
+                if (!candidate.equals(KeyProperties.DIGEST_NONE)) {
+                    digest = candidate;
+                    break;
+                }
+            }
+            if (digest == null) throw new KeyStoreException("Key " + keyInfo.getKeystoreAlias() + " has no digest.");
+            boolean preHashable = digests.contains(KeyProperties.DIGEST_NONE) && (key instanceof ECKey
+                    || Arrays.asList(keyInfo.getSignaturePaddings()).contains(KeyProperties.SIGNATURE_PADDING_RSA_PKCS1));
+            return KeyProfile.forKeyPair(key.getAlgorithm(), digest, preHashable, isStrongBoxBacked(keyInfo));
+        }
+        throw new KeyStoreException("Unsupported key type");
+    }
+
+    /**
+     * Checks whether a key is stored in the StrongBox secure element.
+     * <p>
+     * The security level of a key is only available from Android 12 onwards. On older versions, any key
+     * inside secure hardware is treated as StrongBox backed.
+     *
+     * @param keyInfo The metadata of the key.
+     * @return {@code true} if the key is backed by StrongBox, {@code false} otherwise.
+     */
+    private static boolean isStrongBoxBacked(KeyInfo keyInfo) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return keyInfo.getSecurityLevel() == KeyProperties.SECURITY_LEVEL_STRONGBOX;
+        }
+        return keyInfo.isInsideSecureHardware();
+    }
+}
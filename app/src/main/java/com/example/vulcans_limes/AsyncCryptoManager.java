@@ -0,0 +1,202 @@
+package com.example.vulcans_limes;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs the operations of a {@link CryptoManager} on background threads and returns their results
+ * as {@link CompletableFuture}s, so that threads which must not block, like the UI thread, never wait for the
+ * keystore.
+ * <p>
+ * Operations on the same key run in the order they were started, operations on different keys run in parallel
+ * on a bounded number of worker threads. Only a limited number of operations may be pending at the same time;
+ * if that limit is reached, new operations are rejected with a {@link RejectedExecutionException} instead of
+ * being queued. Cancelling a future before its operation has started skips the operation; an operation that
+ * is already running is completed, but its result is discarded.
+ * <p>
+ * Arrays handed to an operation must not be modified until its future has completed. A failed operation
+ * completes its future exceptionally with the exception thrown by the {@link CryptoManager}.
+ */
+public final class AsyncCryptoManager implements Closeable {
+    private static final int DEFAULT_MAX_PENDING = 256;
+    private final CryptoManager cryptoManager;
+    private final KeyedExecutor executor;
+
+    /**
+     * Creates an asynchronous facade with one worker thread per processor and up to 256 pending operations.
+     *
+     * @param cryptoManager The manager performing the operations.
+     */
+    public AsyncCryptoManager(CryptoManager cryptoManager) {
+        this(cryptoManager, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Creates an asynchronous facade.
+     *
+     * @param cryptoManager The manager performing the operations.
+     * @param threads       The maximum number of worker threads.
+     * @param maxPending    The maximum number of operations that may be queued or running at the same time.
+     * @throws IllegalArgumentException if {@code threads} or {@code maxPending} is smaller than 1.
+     */
+    public AsyncCryptoManager(CryptoManager cryptoManager, int threads, int maxPending) {
+        this.cryptoManager = cryptoManager;
+        this.executor = new KeyedExecutor(threads, maxPending, "crypto-worker");
+    }
+
+    /**
+     * Generates a new symmetric key, see {@link CryptoManager#genKey(String, String)}.
+     *
+     * @param key_id     The unique identifier under which the key will be stored.
+     * @param keyGenInfo The key generation parameters, e.g. "AES;256;GCM;NoPadding".
+     * @return A future that completes once the key has been generated.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<Void> genKey(final String key_id, final String keyGenInfo) {
+        return executor.submit(key_id, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                cryptoManager.genKey(key_id, keyGenInfo);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Generates a new key pair, see {@link CryptoManager#generateKeyPair(String, String)}.
+     *
+     * @param key_id     The unique identifier under which the key pair will be stored.
+     * @param keyGenInfo The key generation parameters, e.g. "EC;secp256r1;SHA-256".
+     * @return A future that completes once the key pair has been generated.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<Void> generateKeyPair(final String key_id, final String keyGenInfo) {
+        return executor.submit(key_id, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                cryptoManager.generateKeyPair(key_id, keyGenInfo);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Encrypts data, see {@link CryptoManager#encryptData(String, byte[])}.
+     *
+     * @param key_id The unique identifier of the symmetric key to be used.
+     * @param data   The plaintext data to be encrypted.
+     * @return A future of the encrypted data, with the IV prepended.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<byte[]> encryptData(final String key_id, final byte[] data) {
+        return executor.submit(key_id, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return cryptoManager.encryptData(key_id, data);
+            }
+        });
+    }
+
+    /**
+     * Decrypts data, see {@link CryptoManager#decryptData(String, byte[])}.
+     *
+     * @param key_id        The unique identifier of the symmetric key to be used.
+     * @param encryptedData The encrypted data, starting with the IV.
+     * @return A future of the decrypted data.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<byte[]> decryptData(final String key_id, final byte[] encryptedData) {
+        return executor.submit(key_id, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return cryptoManager.decryptData(key_id, encryptedData);
+            }
+        });
+    }
+
+    /**
+     * Signs data, see {@link CryptoManager#signData(String, byte[])}.
+     *
+     * @param key_id The unique identifier of the key pair to be used.
+     * @param data   The data to be signed.
+     * @return A future of the signature.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<byte[]> signData(final String key_id, final byte[] data) {
+        return executor.submit(key_id, new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return cryptoManager.signData(key_id, data);
+            }
+        });
+    }
+
+    /**
+     * Verifies a signature, see {@link CryptoManager#verifySignature(String, byte[], byte[])}.
+     *
+     * @param key_id      The unique identifier of the key pair to be used.
+     * @param data        The data that was originally signed.
+     * @param signedBytes The signature to be verified.
+     * @return A future that completes with {@code true} if the signature matches the data.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<Boolean> verifySignature(final String key_id, final byte[] data,
+                                                      final byte[] signedBytes) {
+        return executor.submit(key_id, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return cryptoManager.verifySignature(key_id, data, signedBytes);
+            }
+        });
+    }
+
+    /**
+     * Deletes a key, see {@link CryptoManager#deleteKey(String)}. Operations on the key that were started
+     * before still run with the key.
+     *
+     * @param key_id The unique identifier of the key to be deleted.
+     * @return A future that completes once the key has been deleted.
+     * @throws RejectedExecutionException if too many operations are pending or this facade has been closed.
+     */
+    public CompletableFuture<Void> deleteKey(final String key_id) {
+        return executor.submit(key_id, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                cryptoManager.deleteKey(key_id);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of operations that are queued or running.
+     *
+     * @return The number of pending operations.
+     */
+    public int getPendingCount() {
+        return executor.getPendingCount();
+    }
+
+    /**
+     * Stops accepting new operations. Operations that have already been started are still completed.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits until all pending operations have completed after {@link #close()}.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of {@code timeout}.
+     * @return {@code true} if all operations completed, {@code false} if the timeout elapsed before.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.vulcans_limes;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * This class holds the results of a batch operation of {@link CryptoManager}, e.g.
+ * {@link CryptoManager#encryptBatch(String, byte[][])}.
+ * <p>
+ * The results of all records are packed into one output array. Record {@code i} occupies the bytes from
+ * {@code getOffsets()[i]} (inclusive) to {@code getOffsets()[i + 1]} (exclusive). A record that could not be
+ * processed occupies no bytes, and the exception it failed with is available from {@link #getError(int)}.
+ * The arrays returned by this class are not copied and must not be modified.
+ */
+public final class BatchResult {
+    private final byte[] output;
+    private final int[] offsets;
+    private final GeneralSecurityException[] errors;
+    private final int failureCount;
+
+    BatchResult(byte[] output, int[] offsets, GeneralSecurityException[] errors, int failureCount) {
+        this.output = output;
+        this.offsets = offsets;
+        this.errors = errors;
+        this.failureCount = failureCount;
+    }
+
+    /**
+     * Returns the number of records in the batch.
+     *
+     * @return The number of records, including failed ones.
+     */
+    public int size() {
+        return errors.length;
+    }
+
+    /**
+     * Returns the packed results of all records. The array may be longer than the last record's end offset.
+     *
+     * @return The output array shared by all records.
+     */
+    public byte[] getOutput() {
+        return output;
+    }
+
+    /**
+     * Returns the offsets of the records in {@link #getOutput()}.
+     *
+     * @return An array with {@link #size()} + 1 entries, the last one being the end of the last record.
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Returns a copy of the result of a single record.
+     *
+     * @param index The index of the record in the batch.
+     * @return The result of the record, or {@code null} if the record failed.
+     */
+    public byte[] getRecord(int index) {
+        if (errors[index] != null) return null;
+        return Arrays.copyOfRange(output, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Returns whether a single record could not be processed.
+     *
+     * @param index The index of the record in the batch.
+     * @return {@code true} if the record failed.
+     */
+    public boolean isFailed(int index) {
+        return errors[index] != null;
+    }
+
+    /**
+     * Returns the exception a single record failed with.
+     *
+     * @param index The index of the record in the batch.
+     * @return The exception, or {@code null} if the record was processed successfully.
+     */
+    public GeneralSecurityException getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Returns the number of records that could not be processed.
+     *
+     * @return The number of failed records.
+     */
+    public int getFailureCount() {
+        return failureCount;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.vulcans_limes;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+
+/**
+ * This class keeps {@link Cipher}, {@link Signature} and {@link MessageDigest} instances for reuse, so that they do not have to be
+ * looked up from the list of security providers on every operation.
+ * <p>
+ * Every thread gets its own instances, keyed by the transformation or signature algorithm they were created
+ * for. An instance returned by this pool has to be (re-)initialized with the key and parameters of the
+ * current operation before use, and must not be held on to after the operation is complete, as the next
+ * operation of the same thread will get the same instance.
+ */
+final class CipherPool {
+    private final ThreadLocal<Map<String, Cipher>> ciphers = new ThreadLocal<Map<String, Cipher>>() {
+        @Override
+        protected Map<String, Cipher> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private final ThreadLocal<Map<String, Signature>> signatures = new ThreadLocal<Map<String, Signature>>() {
+        @Override
+        protected Map<String, Signature> initialValue() {
+            return new HashMap<>();
+        }
+    };
+    private final ThreadLocal<Map<String, MessageDigest>> digests = new ThreadLocal<Map<String, MessageDigest>>() {
+        @Override
+        protected Map<String, MessageDigest> initialValue() {
+            return new HashMap<>();
+        }
+    };
+
+    /**
+     * Returns the calling thread's {@link Cipher} for the given transformation, creating it on first use.
+     *
+     * @param transformation The transformation in the format "algorithm/mode/padding".
+     * @return A cipher for the transformation, which has to be initialized before use.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws NoSuchPaddingException   if the requested padding scheme is not available.
+     */
+    Cipher getCipher(String transformation) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Map<String, Cipher> threadCiphers = ciphers.get();
+        Cipher cipher = threadCiphers.get(transformation);
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            threadCiphers.put(transformation, cipher);
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns the calling thread's {@link Signature} for the given algorithm, creating it on first use.
+     *
+     * @param algorithm The signature algorithm, e.g. "SHA256withECDSA".
+     * @return A signature object for the algorithm, which has to be initialized before use.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     */
+    Signature getSignature(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, Signature> threadSignatures = signatures.get();
+        Signature signature = threadSignatures.get(algorithm);
+        if (signature == null) {
+            signature = Signature.getInstance(algorithm);
+            threadSignatures.put(algorithm, signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the calling thread's {@link MessageDigest} for the given algorithm, creating it on first use.
+     * The digest is reset, as {@link MessageDigest#digest()} leaves it.
+     *
+     * @param algorithm The digest algorithm, e.g. "SHA-256".
+     * @return A message digest for the algorithm.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     */
+    MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> threadDigests = digests.get();
+        MessageDigest digest = threadDigests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            threadDigests.put(algorithm, digest);
+        }
+        return digest;
+    }
+}
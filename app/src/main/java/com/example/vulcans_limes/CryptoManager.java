@@ -1,53 +1,88 @@
 package com.example.vulcans_limes;
 
-import android.security.keystore.KeyGenParameterSpec;
-import android.security.keystore.KeyInfo;
-import android.security.keystore.KeyProperties;
-
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
-import java.security.Key;
-import java.security.KeyFactory;
-import java.security.KeyPairGenerator;
-import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.ProviderException;
 import java.security.Signature;
 import java.security.SignatureException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
-import java.security.spec.ECGenParameterSpec;
+import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.InvalidKeySpecException;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
-import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 
 /**
  * This class provides all the methods we need for communication with the keystore and cryptographic systems.
  * It loads the keystore, generates and loads keys, encrypts and decrypts and signs and verifies.
- *
+ * <p>
+ * Every operation takes the identifier of the key it works with, the class does not keep track of an
+ * "active" key. Resolved keys are shared through a thread-safe cache, so one instance can be used by
+ * several threads at the same time, also with different keys.
+ * <p>
+ * Keys are generated in and loaded from a {@link KeyStoreBackend}. By default this is the Android KeyStore,
+ * a {@link SoftwareKeyStoreBackend} allows to run the same operations on any JVM.
+ * <p>
+ * An instance that had key pools enabled should be closed once it is no longer needed, which stops the thread
+ * generating the pooled keys.
  */
-public class CryptoManager {
-    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
-    private static final int IV_CBC_AND_CTR_AES = 16; // CBC & CTR standard IV size is 16 Byte
-    private static final int IV_GCM_AES = 12; // GCM standard IV size is 12 Byte
-    private static final int IV_CBC_DES = 8; // DES with CBC standard IV size is 8 Byte
-    private static final int TAG_SIZE_GCM = 128; // 128 is the recommended TagSize
-    private final KeyStore keyStore;
-    private String KEY_NAME;
+public class CryptoManager implements Closeable {
+    /** Data of at least this many bytes is hashed in-process before signing by default, if the key allows it. */
+    public static final int DEFAULT_PRE_HASH_THRESHOLD = 4096;
+    // upper bound of what a cipher adds besides the IV: the GCM tag or the block padding
+    private static final int MAX_CIPHER_EXPANSION = 16;
+    // longest IV of the supported ciphers, the AES block size used by CBC and CTR
+    private static final int MAX_IV_LENGTH = 16;
+    /** Upper bound of the bytes that encrypting a record adds to it: the IV plus the tag or padding. */
+    static final int MAX_ENCRYPTION_OVERHEAD = MAX_IV_LENGTH + MAX_CIPHER_EXPANSION;
+    // signatures verified by one task of verifyBatch before it is not split any further
+    private static final int VERIFY_BATCH_GRAIN = 8;
+    private final KeyStoreBackend backend;
+    private final KeyHandleCache keyCache = new KeyHandleCache(KeyHandleCache.DEFAULT_MAX_ENTRIES);
+    private final CipherPool cipherPool = new CipherPool();
+    // a cipher sticks to the provider of the first key it is initialized with, so ciphers and signatures for
+    // in-memory keys, like the data keys of envelopes, are kept apart from those used with keystore keys
+    private final CipherPool softwareCipherPool = new CipherPool();
+    private final CryptoMetrics metrics = new CryptoMetrics();
+    private final KeyPool keyPool;
+    private volatile DataKeyCache dataKeyCache; // null while the data key cache is disabled
+    private volatile int preHashThreshold = DEFAULT_PRE_HASH_THRESHOLD;
+    private volatile boolean softwareVerification;
 
     /**
      * Constructs a new instance of {@code CryptoManager} with the default Android KeyStore.
@@ -62,7 +97,17 @@ public class CryptoManager {
      *                           the key store setup process.
      */
     public CryptoManager() throws KeyStoreException {
-        keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        this(new AndroidKeyStoreBackend());
+    }
+
+    /**
+     * Constructs a new instance of {@code CryptoManager} that keeps its keys in the given backend.
+     *
+     * @param backend The backend generating, storing and loading the keys.
+     */
+    public CryptoManager(KeyStoreBackend backend) {
+        this.backend = backend;
+        this.keyPool = new KeyPool(backend);
     }
 
     /**
@@ -78,38 +123,223 @@ public class CryptoManager {
      * @throws IOException                        for I/O errors such as incorrect passwords.
      * @throws NoSuchAlgorithmException           if the generation algorithm does not exist or the keystore doesn't exist.
      * @throws NoSuchProviderException            if the provider does not exist.
-     * @throws InvalidAlgorithmParameterException for invalid or nonexistent parameters.
+     * @throws InvalidAlgorithmParameterException if keyGenInfo is malformed or the parameters are not supported.
      * @throws KeyStoreException                  if there is an error accessing the keystore.
      */
     public void genKey(String key_id, String keyGenInfo) throws CertificateException,
             IOException, NoSuchAlgorithmException, NoSuchProviderException,
             InvalidAlgorithmParameterException, KeyStoreException {
-        Pattern pattern = Pattern.compile("^(AES|DESede);(\\d+);(CBC|GCM|CTR);(NoPadding|PKCS7Padding)$");
-        Matcher matcher = pattern.matcher(keyGenInfo);
-        assert matcher.matches() : "Generate KeyPair keyGenInfo is not valid.";
-        String[] keyGenInfoArr = keyGenInfo.split(";");
-        String KEY_ALGORITHM = keyGenInfoArr[0];
-        int KEY_SIZE = Integer.parseInt(keyGenInfoArr[1]);
-        String BLOCKING = keyGenInfoArr[2];
-        String PADDING = keyGenInfoArr[3];
-
-        KEY_NAME = key_id;
-        keyStore.load(null);
+        KeyGenSpec spec = KeyGenSpec.parse(keyGenInfo);
+        if (spec.isKeyPair()) {
+            throw new InvalidAlgorithmParameterException("keyGenInfo does not describe a symmetric key: " + keyGenInfo);
+        }
+        createKey(key_id, spec);
+    }
 
+    /**
+     * Generates a new key as described by the given spec and saves it into the Android KeyStore.
+     * <p>
+     * Depending on {@link KeyGenSpec#isKeyPair()}, this works like {@link #genKey(String, String)} or
+     * {@link #generateKeyPair(String, String)}. Callers that create many keys with the same parameters can
+     * parse the spec once and pass it here.
+     *
+     * @param key_id The unique identifier under which the key will be stored in the KeyStore.
+     * @param spec   The parameters of the key.
+     * @throws CertificateException               if there is an issue creating the certificate for a key pair.
+     * @throws IOException                        for I/O errors such as incorrect passwords.
+     * @throws NoSuchAlgorithmException           if the generation algorithm does not exist or the keystore doesn't exist.
+     * @throws NoSuchProviderException            if the provider does not exist.
+     * @throws InvalidAlgorithmParameterException for invalid or nonexistent parameters.
+     * @throws KeyStoreException                  if there is an error accessing the keystore or the key name is already used.
+     */
+    public void createKey(String key_id, KeyGenSpec spec) throws CertificateException, IOException,
+            NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException,
+            KeyStoreException {
         // Check if a key with the given key_id already exists
-        if (keyStore.containsAlias(KEY_NAME)) {
-            throw new KeyStoreException("Key with name " + KEY_NAME + " already exists.");
+        if (backend.containsAlias(key_id)) {
+            throw new KeyStoreException("Key with name " + key_id + " already exists.");
+        }
+        generateKey(key_id, spec);
+    }
+
+    /**
+     * Creates a key that only has to live as long as this process, e.g. for a single session, and returns its
+     * generated identifier.
+     * <p>
+     * If the pool is enabled for the spec, see {@link #enableKeyPool(KeyGenSpec, int)}, a key generated in
+     * advance is handed out at once, otherwise the key is generated now. The returned identifier is the alias the
+     * key is actually stored under, so it can be used with all other methods of this class, including
+     * {@link #deleteKey(String)}. Ephemeral keys that are still in the keystore are deleted by the next process
+     * that creates an ephemeral key or enables the pool, so they must never protect data that has to survive a
+     * restart. Such keys are created with {@link #createKey(String, KeyGenSpec)}, which never uses the pool.
+     *
+     * @param spec The parameters of the key.
+     * @return The unique identifier of the new key.
+     * @throws CertificateException               if there is an issue creating the certificate for a key pair.
+     * @throws IOException                        for I/O errors such as incorrect passwords.
+     * @throws NoSuchAlgorithmException           if the generation algorithm does not exist or the keystore doesn't exist.
+     * @throws NoSuchProviderException            if the provider does not exist.
+     * @throws InvalidAlgorithmParameterException for invalid or nonexistent parameters.
+     * @throws KeyStoreException                  if there is an error accessing the keystore.
+     */
+    public String createEphemeralKey(KeyGenSpec spec) throws CertificateException, IOException,
+            NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException,
+            KeyStoreException {
+        long start = metrics.start();
+        KeyHandle keyHandle = keyPool.take(spec);
+        if (keyHandle == null) {
+            String key_id = KeyPool.newAlias();
+            generateKey(key_id, spec);
+            return key_id;
+        }
+        keyCache.put(keyHandle);
+        metrics.record(spec.isKeyPair() ? CryptoMetrics.Operation.GENERATE_KEY_PAIR : CryptoMetrics.Operation.GEN_KEY,
+                spec.toString(), start, 0, true);
+        return keyHandle.getAlias();
+    }
+
+    /**
+     * Starts generating keys of the given spec in the background, so that creating an ephemeral key with
+     * {@link #createEphemeralKey(KeyGenSpec)} is nearly instant.
+     * <p>
+     * Up to {@code size} keys are generated in advance under generated aliases and refilled once half of them
+     * have been used. The pool only backs ephemeral keys: the keystore cannot rename entries, so a pooled key
+     * can never be stored under an identifier chosen by the caller.
+     *
+     * @param spec The parameters of the pooled keys, e.g. a StrongBox backed RSA key pair.
+     * @param size The number of keys to keep ready.
+     * @throws KeyStoreException        if there is an error accessing the keystore.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     * @throws IllegalStateException    if this manager has been closed.
+     */
+    public void enableKeyPool(KeyGenSpec spec, int size) throws KeyStoreException, CertificateException,
+            IOException, NoSuchAlgorithmException {
+        keyPool.enable(spec, size);
+    }
+
+    /**
+     * Stops generating keys of the given spec in advance and deletes the pooled keys that have not been used.
+     *
+     * @param spec The parameters of the pooled keys.
+     * @throws KeyStoreException        if a pooled key cannot be removed.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    public void disableKeyPool(KeyGenSpec spec) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        keyPool.disable(spec);
+    }
+
+    /**
+     * Returns how many keys of the given spec are ready to be handed out by the pool.
+     *
+     * @param spec The parameters of the pooled keys.
+     * @return The number of ready keys, 0 if the pool is not enabled for the spec.
+     */
+    public int getPooledKeyCount(KeyGenSpec spec) {
+        return keyPool.getAvailableCount(spec);
+    }
+
+    /**
+     * Disables all key pools, deletes their unused keys and stops the thread generating them. Stored keys and all
+     * other operations are not affected, but key pools cannot be enabled again. Closing a closed manager has no
+     * effect.
+     */
+    @Override
+    public void close() {
+        keyPool.close();
+    }
+
+    /**
+     * Generates several keys at once, e.g. when a device is set up.
+     * <p>
+     * All identifiers are checked against the keystore once up front. Identifiers that are already in use are
+     * reported as failed without generating anything. The remaining keys are generated concurrently, except for
+     * keys the backend can only generate one at a time, like keys backed by the StrongBox secure element,
+     * which are queued and generated one after another. A failing key does not affect the others. This method
+     * returns when all keys have been generated or have failed.
+     *
+     * @param keys The specs of the keys to be generated by their unique identifiers, in the order in which the
+     *             results are to be reported.
+     * @return The result of every requested key, in the iteration order of {@code keys}.
+     * @throws KeyStoreException        if there is an error accessing the keystore.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    public List<ProvisioningResult> provisionKeys(Map<String, KeyGenSpec> keys) throws KeyStoreException,
+            CertificateException, IOException, NoSuchAlgorithmException {
+        Set<String> existing = backend.getAliases();
+        final long submitted = System.nanoTime();
+        // keystore generations mostly wait for the secure hardware, so use at least two threads
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        KeyedExecutor executor = new KeyedExecutor(Math.max(1, Math.min(threads, keys.size())),
+                Math.max(1, keys.size()), "crypto-provisioning");
+        List<CompletableFuture<ProvisioningResult>> futures = new ArrayList<>(keys.size());
+        try {
+            for (Map.Entry<String, KeyGenSpec> entry : keys.entrySet()) {
+                final String key_id = entry.getKey();
+                final KeyGenSpec spec = entry.getValue();
+                if (existing.contains(key_id)) {
+                    futures.add(CompletableFuture.completedFuture(new ProvisioningResult(key_id, spec,
+                            new KeyStoreException("Key with name " + key_id + " already exists."), 0, 0)));
+                    continue;
+                }
+                // serial generations share one queue, all others run on a queue of their own
+                String queue = backend.isSerialGeneration(spec) ? "serial" : "key:" + key_id;
+                futures.add(executor.submit(queue, new Callable<ProvisioningResult>() {
+                    @Override
+                    public ProvisioningResult call() {
+                        long started = System.nanoTime();
+                        Exception error = null;
+                        try {
+                            generateKey(key_id, spec);
+                        } catch (Exception e) {
+                            error = e;
+                        }
+                        return new ProvisioningResult(key_id, spec, error, started - submitted,
+                                System.nanoTime() - started);
+                    }
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        List<ProvisioningResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<ProvisioningResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Generates a key as described by the given spec without checking whether its identifier is in use.
+     *
+     * @param key_id The unique identifier under which the key will be stored.
+     * @param spec   The parameters of the key.
+     * @throws NoSuchAlgorithmException           if the generation algorithm does not exist.
+     * @throws NoSuchProviderException            if the provider does not exist.
+     * @throws InvalidAlgorithmParameterException if the parameters are not supported.
+     * @throws KeyStoreException                  if the key cannot be stored.
+     */
+    private void generateKey(String key_id, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidAlgorithmParameterException, KeyStoreException {
+        CryptoMetrics.Operation operation = spec.isKeyPair()
+                ? CryptoMetrics.Operation.GENERATE_KEY_PAIR
+                : CryptoMetrics.Operation.GEN_KEY;
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            keyCache.put(spec.isKeyPair()
+                    ? backend.generateKeyPair(key_id, spec)
+                    : backend.generateSecretKey(key_id, spec));
+            success = true;
+        } finally {
+            metrics.record(operation, spec.toString(), start, 0, success);
         }
-        KeyGenerator keyGen = KeyGenerator.getInstance(KEY_ALGORITHM, ANDROID_KEY_STORE);
-        keyGen.init(new KeyGenParameterSpec.Builder(KEY_NAME,
-                KeyProperties.PURPOSE_ENCRYPT |
-                        KeyProperties.PURPOSE_DECRYPT)
-                .setKeySize(KEY_SIZE)
-                .setBlockModes(BLOCKING)
-                .setEncryptionPaddings(PADDING)
-                .setIsStrongBoxBacked(true)
-                .build());
-        keyGen.generateKey();
     }
 
     /**
@@ -117,11 +347,12 @@ public class CryptoManager {
      * <p>
      * This method takes plaintext data as input and encrypts it using a symmetric key retrieved from the Android KeyStore.
      * The encryption process supports GCM, CBC and CTR transformations. A new initialization vector (IV)
-     * is generated and the IV is prepended to the ciphertext. The method initializes a
-     * {@link Cipher} instance with the appropriate transformation, loads the Android KeyStore, retrieves the symmetric key, and then
+     * is generated and the IV is prepended to the ciphertext. The method takes the calling thread's pooled
+     * {@link Cipher} instance for the key's transformation, retrieves the symmetric key, and then
      * initializes the cipher in encryption mode with the retrieved key and the generated IV. Finally, the plaintext data is encrypted
      * using the cipher's {@code doFinal} method, and the resulting ciphertext is returned as a byte array.
      *
+     * @param key_id The unique identifier of the symmetric key to be used.
      * @param data The plaintext data to be encrypted, represented as a byte array.
      * @return A byte array representing the encrypted data, with the IV prepended.
      * @throws NoSuchPaddingException    if the requested padding scheme is not available.
@@ -136,30 +367,122 @@ public class CryptoManager {
      * @throws InvalidKeySpecException   if the key specification is invalid.
      * @throws NoSuchProviderException   if the requested security provider is not available.
      */
-    public byte[] encryptData(byte[] data) throws NoSuchPaddingException, NoSuchAlgorithmException,
+    public byte[] encryptData(String key_id, byte[] data) throws NoSuchPaddingException, NoSuchAlgorithmException,
             CertificateException, IOException, InvalidKeyException, UnrecoverableKeyException,
             KeyStoreException, IllegalBlockSizeException, BadPaddingException, InvalidKeySpecException,
             NoSuchProviderException {
+        return encryptData(resolveKey(key_id), data);
+    }
+
+    /**
+     * Works like {@link #encryptData(String, byte[])}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param data See {@link #encryptData(String, byte[])}.
+     * @return See {@link #encryptData(String, byte[])}.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key cannot be used for this operation.
+     * @throws IllegalBlockSizeException if the data length is invalid for the algorithm.
+     * @throws BadPaddingException       if the data could not be padded or unpadded correctly.
+     */
+    byte[] encryptData(KeyHandle keyHandle, byte[] data) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            Cipher cipher = initEncryption(keyHandle);
+            byte[] iv = cipher.getIV();
+            byte[] encryptedData = new byte[iv.length + cipher.getOutputSize(data.length)];
+            System.arraycopy(iv, 0, encryptedData, 0, iv.length);
+            int length;
+            long doFinalStart = metrics.start();
+            boolean doFinalSuccess = false;
+            try {
+                length = iv.length + cipher.doFinal(data, 0, data.length, encryptedData, iv.length);
+                doFinalSuccess = true;
+            } catch (ShortBufferException e) {
+                throw new ProviderException("Cipher reported a too small output size.", e);
+            } finally {
+                metrics.record(CryptoMetrics.Operation.DO_FINAL, keyHandle.getProfile().getAlgorithmName(),
+                        doFinalStart, data.length, doFinalSuccess);
+            }
+            byte[] result = length == encryptedData.length ? encryptedData : Arrays.copyOf(encryptedData, length);
+            success = true;
+            return result;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.ENCRYPT, keyHandle.getProfile().getAlgorithmName(), start,
+                    data.length, success);
+        }
+    }
 
-        keyStore.load(null);
-        SecretKey secretKey = (SecretKey) keyStore.getKey(KEY_NAME, null);
-        String TRANSFORMATION = buildTransformation(secretKey);
+    /**
+     * Encrypts the data remaining in {@code input} using a symmetric key stored in the Android KeyStore and writes
+     * the result to {@code output}.
+     * <p>
+     * This method produces the same format as {@link #encryptData(String, byte[])}: the generated IV is written to
+     * {@code output}, followed by the ciphertext. Both buffers can be direct buffers, e.g. wrapping native memory
+     * handed over through the JNI, in which case no intermediate Java arrays are needed.
+     *
+     * @param key_id The unique identifier of the symmetric key to be used.
+     * @param input The plaintext data to be encrypted. Its position is advanced to its limit.
+     * @param output The buffer receiving IV and ciphertext. It needs room for at least the input length plus
+     *               {@link #MAX_ENCRYPTION_OVERHEAD} bytes.
+     * @return The number of bytes written to {@code output}.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws InvalidKeyException       if the key cannot be used for encryption.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws IllegalBlockSizeException if the data length is invalid for the encryption algorithm.
+     * @throws BadPaddingException       if the data could not be padded correctly for encryption.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     * @throws ShortBufferException      if {@code output} is too small to hold the result.
+     */
+    public int encryptData(String key_id, ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, CertificateException, IOException, InvalidKeyException,
+            UnrecoverableKeyException, KeyStoreException, IllegalBlockSizeException, BadPaddingException,
+            InvalidKeySpecException, NoSuchProviderException, ShortBufferException {
+        return encryptData(resolveKey(key_id), input, output);
+    }
 
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-        byte[] iv = cipher.getIV();
-        if (TRANSFORMATION.contains("/GCM/")) {
-            assert iv.length == IV_GCM_AES : "AES GCM IV length not matching.";
-        } else if(TRANSFORMATION.contains("DESede")) {
-            assert iv.length == IV_CBC_DES : "DES CBC IV length not matching.";
-        } else {
-            assert iv.length == IV_CBC_AND_CTR_AES : "AES CBC and CTR IV length not matching.";
+    /**
+     * Works like {@link #encryptData(String, ByteBuffer, ByteBuffer)}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param input See {@link #encryptData(String, ByteBuffer, ByteBuffer)}.
+     * @param output See {@link #encryptData(String, ByteBuffer, ByteBuffer)}.
+     * @return See {@link #encryptData(String, ByteBuffer, ByteBuffer)}.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key cannot be used for this operation.
+     * @throws IllegalBlockSizeException if the data length is invalid for the algorithm.
+     * @throws BadPaddingException       if the data could not be padded or unpadded correctly.
+     * @throws ShortBufferException      if {@code output} is too small to hold the result.
+     */
+    int encryptData(KeyHandle keyHandle, ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException,
+            ShortBufferException {
+        long start = metrics.start();
+        int inputLength = input.remaining();
+        boolean success = false;
+        try {
+            Cipher cipher = initEncryption(keyHandle);
+            byte[] iv = cipher.getIV();
+            if (output.remaining() < iv.length + cipher.getOutputSize(inputLength)) {
+                throw new ShortBufferException("Output buffer is too small.");
+            }
+            output.put(iv);
+            int length = iv.length + doFinal(keyHandle, cipher, input, output);
+            success = true;
+            return length;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.ENCRYPT, keyHandle.getProfile().getAlgorithmName(), start,
+                    inputLength, success);
         }
-        byte[] encryptedData = cipher.doFinal(data);
-        ByteBuffer byteBuffer = ByteBuffer.allocate(iv.length + encryptedData.length);
-        byteBuffer.put(iv);
-        byteBuffer.put(encryptedData);
-        return byteBuffer.array();
     }
 
     /**
@@ -167,11 +490,12 @@ public class CryptoManager {
      * <p>
      * This method takes encrypted data as input and decrypts it using a symmetric key retrieved from the Android KeyStore.
      * The decryption process supports GCM, CBC and CTR transformations. The initialization vector (IV)
-     * is extracted from the beginning of the encrypted data. The method initializes a {@link Cipher} instance with the appropriate
-     * transformation, loads the Android KeyStore, retrieves the symmetric key, and initializes the cipher in decryption mode with the
+     * is extracted from the beginning of the encrypted data. The method takes the calling thread's pooled {@link Cipher} instance
+     * for the key's transformation, retrieves the symmetric key, and initializes the cipher in decryption mode with the
      * retrieved key and the extracted IV. Finally, the encrypted data is decrypted using the cipher's {@code doFinal} method, and the
      * original plaintext data is returned as a byte array.
      *
+     * @param key_id The unique identifier of the symmetric key to be used.
      * @param encryptedData The encrypted data to be decrypted, represented as a byte array.
      * @return A byte array representing the decrypted data.
      * @throws NoSuchPaddingException             if the requested padding scheme is not available.
@@ -187,39 +511,277 @@ public class CryptoManager {
      * @throws InvalidKeySpecException            if the key specification is invalid.
      * @throws NoSuchProviderException            if the requested security provider is not available.
      */
-    public byte[] decryptData(byte[] encryptedData) throws NoSuchPaddingException, NoSuchAlgorithmException,
+    public byte[] decryptData(String key_id, byte[] encryptedData) throws NoSuchPaddingException, NoSuchAlgorithmException,
             CertificateException, IOException, InvalidAlgorithmParameterException, InvalidKeyException,
             UnrecoverableKeyException, KeyStoreException, IllegalBlockSizeException, BadPaddingException,
             InvalidKeySpecException, NoSuchProviderException {
-        keyStore.load(null);
-        SecretKey secretKey = (SecretKey) keyStore.getKey(KEY_NAME, null);
-        String TRANSFORMATION = buildTransformation(secretKey);
-        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-        ByteBuffer byteBuffer = ByteBuffer.wrap(encryptedData);
-        byte[] iv;
-        if (TRANSFORMATION.contains("/GCM/")) {
-            assert byteBuffer.capacity() > IV_GCM_AES : "Data is not at least IV size in length.";
-            iv = new byte[IV_GCM_AES];
-            byteBuffer.get(iv);
-            encryptedData = new byte[byteBuffer.remaining()];
-            byteBuffer.get(encryptedData);
-            GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(TAG_SIZE_GCM, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
-        } else {
-            if(TRANSFORMATION.contains("DESede")){
-                assert byteBuffer.capacity() > IV_CBC_DES : "Data is not at least IV size in length.";
-                iv = new byte[IV_CBC_DES];
+        return decryptData(resolveKey(key_id), encryptedData);
+    }
+
+    /**
+     * Works like {@link #decryptData(String, byte[])}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param encryptedData See {@link #decryptData(String, byte[])}.
+     * @return See {@link #decryptData(String, byte[])}.
+     * @throws NoSuchPaddingException             if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws InvalidAlgorithmParameterException if the IV parameter is invalid.
+     * @throws InvalidKeyException                if the key cannot be used for this operation.
+     * @throws IllegalBlockSizeException          if the data length is invalid for the algorithm.
+     * @throws BadPaddingException                if the data could not be padded or unpadded correctly.
+     */
+    byte[] decryptData(KeyHandle keyHandle, byte[] encryptedData) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException {
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            int ivLength = keyHandle.getProfile().getIvLength();
+            if (encryptedData.length < ivLength) {
+                throw new IllegalBlockSizeException("Data is not at least IV size in length.");
+            }
+            Cipher cipher = initDecryption(keyHandle, encryptedData, 0);
+            long doFinalStart = metrics.start();
+            boolean doFinalSuccess = false;
+            byte[] result;
+            try {
+                result = cipher.doFinal(encryptedData, ivLength, encryptedData.length - ivLength);
+                doFinalSuccess = true;
+            } finally {
+                metrics.record(CryptoMetrics.Operation.DO_FINAL, keyHandle.getProfile().getAlgorithmName(),
+                        doFinalStart, encryptedData.length - ivLength, doFinalSuccess);
+            }
+            success = true;
+            return result;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.DECRYPT, keyHandle.getProfile().getAlgorithmName(), start,
+                    encryptedData.length, success);
+        }
+    }
+
+    /**
+     * Decrypts the data remaining in {@code input} using a symmetric key stored in the Android KeyStore and writes
+     * the plaintext to {@code output}.
+     * <p>
+     * This method expects the format produced by {@link #encryptData(String, byte[])}, i.e. the IV followed by the
+     * ciphertext. Both buffers can be direct buffers, e.g. wrapping native memory handed over through the JNI, in
+     * which case no intermediate Java arrays are needed.
+     *
+     * @param key_id The unique identifier of the symmetric key to be used.
+     * @param input The encrypted data, starting with the IV. Its position is advanced to its limit.
+     * @param output The buffer receiving the plaintext. It needs room for at least as many bytes as {@code input}.
+     * @return The number of bytes written to {@code output}.
+     * @throws NoSuchPaddingException             if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws CertificateException               if there is an issue loading the certificate chain.
+     * @throws IOException                        if there is an I/O error during the operation.
+     * @throws InvalidAlgorithmParameterException if the IV parameter is invalid.
+     * @throws InvalidKeyException                if the key cannot be used for decryption.
+     * @throws UnrecoverableKeyException          if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException                  if there is an error accessing the keystore.
+     * @throws IllegalBlockSizeException          if the data length is invalid for the decryption algorithm.
+     * @throws BadPaddingException                if the data could not be padded correctly for decryption.
+     * @throws InvalidKeySpecException            if the key specification is invalid.
+     * @throws NoSuchProviderException            if the requested security provider is not available.
+     * @throws ShortBufferException               if {@code output} is too small to hold the result.
+     */
+    public int decryptData(String key_id, ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, CertificateException, IOException, InvalidAlgorithmParameterException,
+            InvalidKeyException, UnrecoverableKeyException, KeyStoreException, IllegalBlockSizeException,
+            BadPaddingException, InvalidKeySpecException, NoSuchProviderException, ShortBufferException {
+        return decryptData(resolveKey(key_id), input, output);
+    }
+
+    /**
+     * Works like {@link #decryptData(String, ByteBuffer, ByteBuffer)}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param input See {@link #decryptData(String, ByteBuffer, ByteBuffer)}.
+     * @param output See {@link #decryptData(String, ByteBuffer, ByteBuffer)}.
+     * @return See {@link #decryptData(String, ByteBuffer, ByteBuffer)}.
+     * @throws NoSuchPaddingException             if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws InvalidAlgorithmParameterException if the IV parameter is invalid.
+     * @throws InvalidKeyException                if the key cannot be used for this operation.
+     * @throws IllegalBlockSizeException          if the data length is invalid for the algorithm.
+     * @throws BadPaddingException                if the data could not be padded or unpadded correctly.
+     * @throws ShortBufferException               if {@code output} is too small to hold the result.
+     */
+    int decryptData(KeyHandle keyHandle, ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+        long start = metrics.start();
+        int inputLength = input.remaining();
+        boolean success = false;
+        try {
+            byte[] iv = new byte[keyHandle.getProfile().getIvLength()];
+            if (inputLength < iv.length) {
+                throw new IllegalBlockSizeException("Data is not at least IV size in length.");
+            }
+            input.get(iv);
+            Cipher cipher = initDecryption(keyHandle, iv, 0);
+            int length = doFinal(keyHandle, cipher, input, output);
+            success = true;
+            return length;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.DECRYPT, keyHandle.getProfile().getAlgorithmName(), start,
+                    inputLength, success);
+        }
+    }
+
+    /**
+     * Encrypts a batch of records with a symmetric key stored in the Android KeyStore.
+     * <p>
+     * The key is resolved once for the whole batch and every record is encrypted like with
+     * {@link #encryptData(String, byte[])}, each with its own IV. The results are packed into a single output
+     * array. If a record cannot be encrypted, its error is recorded in the result and the remaining records are
+     * still processed. A {@code null} record counts as failed.
+     *
+     * @param key_id The unique identifier of the symmetric key to be used.
+     * @param records The plaintext records to be encrypted.
+     * @return The encrypted records and the errors of the records that failed.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws InvalidKeyException       if the key cannot be used for encryption.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     */
+    public BatchResult encryptBatch(String key_id, byte[][] records) throws NoSuchAlgorithmException,
+            CertificateException, IOException, InvalidKeyException,
+            UnrecoverableKeyException, KeyStoreException, InvalidKeySpecException, NoSuchProviderException {
+        return runBatch(resolveEncryptionKey(key_id), Cipher.ENCRYPT_MODE, records);
+    }
+
+    /**
+     * Decrypts a batch of records with a symmetric key stored in the Android KeyStore.
+     * <p>
+     * The key is resolved once for the whole batch and every record is decrypted like with
+     * {@link #decryptData(String, byte[])}. The results are packed into a single output array. If a record
+     * cannot be decrypted, e.g. because it was tampered with, its error is recorded in the result and the
+     * remaining records are still processed. A {@code null} record counts as failed.
+     *
+     * @param key_id The unique identifier of the symmetric key to be used.
+     * @param records The encrypted records, each starting with its IV.
+     * @return The decrypted records and the errors of the records that failed.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws InvalidKeyException       if the key cannot be used for decryption.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     */
+    public BatchResult decryptBatch(String key_id, byte[][] records) throws NoSuchAlgorithmException,
+            CertificateException, IOException, InvalidKeyException,
+            UnrecoverableKeyException, KeyStoreException, InvalidKeySpecException, NoSuchProviderException {
+        return runBatch(resolveEncryptionKey(key_id), Cipher.DECRYPT_MODE, records);
+    }
+
+    /**
+     * Encrypts or decrypts a batch of records that are packed into one buffer, writing the results packed
+     * into another buffer.
+     * <p>
+     * Record {@code i} is read from {@code input} between {@code inputOffsets[i]} and {@code inputOffsets[i + 1]}.
+     * The results are written to {@code output} one after another, starting at its position, and the length of
+     * each result is stored in {@code outputLengths}. A record that fails gets the length -1 and does not
+     * occupy any bytes of the output.
+     *
+     * @param key_id The unique identifier of the symmetric key to be used.
+     * @param opmode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param input The buffer holding all records.
+     * @param inputOffsets The offsets of the records in {@code input}, with one more entry than there are records.
+     * @param output The buffer receiving the results. For encryption, it needs room for the input length plus
+     *               {@link #MAX_ENCRYPTION_OVERHEAD} bytes per record, for decryption for the input length.
+     * @param outputLengths Receives the length of each result, or -1 for failed records.
+     * @return The number of records that failed.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws InvalidKeyException       if the key cannot be used for encryption.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     */
+    int runBatch(String key_id, int opmode, ByteBuffer input, int[] inputOffsets, ByteBuffer output,
+                 int[] outputLengths) throws NoSuchAlgorithmException, CertificateException,
+            IOException, InvalidKeyException, UnrecoverableKeyException, KeyStoreException, InvalidKeySpecException,
+            NoSuchProviderException {
+        KeyHandle keyHandle = resolveEncryptionKey(key_id);
+        int failures = 0;
+        for (int i = 0; i < outputLengths.length; i++) {
+            input.limit(inputOffsets[i + 1]);
+            input.position(inputOffsets[i]);
+            try {
+                outputLengths[i] = runBatchRecord(keyHandle, opmode, input, output);
+            } catch (GeneralSecurityException e) {
+                outputLengths[i] = -1;
+                failures++;
             }
-            else {
-                assert byteBuffer.capacity() > IV_CBC_AND_CTR_AES : "Data is not at least IV size in length.";
-                iv = new byte[IV_CBC_AND_CTR_AES];
+        }
+        return failures;
+    }
+
+    /**
+     * Processes the records of a batch one after another with the same key.
+     *
+     * @param keyHandle The handle of the symmetric key.
+     * @param opmode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param records The records to be processed.
+     * @return The packed results.
+     */
+    private BatchResult runBatch(KeyHandle keyHandle, int opmode, byte[][] records) {
+        long capacity = 0;
+        for (byte[] record : records) {
+            if (record == null) continue;
+            capacity += record.length;
+            if (opmode == Cipher.ENCRYPT_MODE) capacity += keyHandle.getProfile().getIvLength() + MAX_CIPHER_EXPANSION;
+        }
+        if (capacity > Integer.MAX_VALUE) throw new IllegalArgumentException("Batch is too large.");
+
+        ByteBuffer output = ByteBuffer.allocate((int) capacity);
+        int[] offsets = new int[records.length + 1];
+        GeneralSecurityException[] errors = new GeneralSecurityException[records.length];
+        int failures = 0;
+        for (int i = 0; i < records.length; i++) {
+            try {
+                if (records[i] == null) throw new GeneralSecurityException("Record " + i + " is null.");
+                runBatchRecord(keyHandle, opmode, ByteBuffer.wrap(records[i]), output);
+            } catch (GeneralSecurityException e) {
+                errors[i] = e;
+                failures++;
             }
-            byteBuffer.get(iv);
-            encryptedData = new byte[byteBuffer.remaining()];
-            byteBuffer.get(encryptedData);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, new IvParameterSpec(iv));
+            offsets[i + 1] = output.position();
+        }
+        return new BatchResult(output.array(), offsets, errors, failures);
+    }
+
+    /**
+     * Processes a single record of a batch. If it fails, the output is left as it was before.
+     *
+     * @param keyHandle The handle of the symmetric key.
+     * @param opmode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+     * @param record The record to be processed.
+     * @param output The buffer receiving the result.
+     * @return The number of bytes written to {@code output}.
+     * @throws GeneralSecurityException if the record cannot be processed.
+     */
+    private int runBatchRecord(KeyHandle keyHandle, int opmode, ByteBuffer record, ByteBuffer output)
+            throws GeneralSecurityException {
+        int start = output.position();
+        try {
+            return opmode == Cipher.ENCRYPT_MODE
+                    ? encryptData(keyHandle, record, output)
+                    : decryptData(keyHandle, record, output);
+        } catch (GeneralSecurityException e) {
+            output.position(start);
+            throw e;
         }
-        return cipher.doFinal(encryptedData);
     }
 
     /**
@@ -237,64 +799,32 @@ public class CryptoManager {
      * @throws CertificateException               if there is an issue creating the certificate for the key pair.
      * @throws IOException                        for I/O errors such as incorrect passwords.
      * @throws NoSuchAlgorithmException           if the generation algorithm does not exist or the keystore doesn't exist.
-     * @throws InvalidAlgorithmParameterException for invalid or nonexistent parameters.
+     * @throws InvalidAlgorithmParameterException if keyGenInfo is malformed or the parameters are not supported.
      * @throws NoSuchProviderException            if the provider does not exist.
      * @throws KeyStoreException                  if there is an error accessing the keystore or the key name is already used.
      */
     public void generateKeyPair(String key_id, String keyGenInfo) throws CertificateException, IOException,
             NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchProviderException,
             KeyStoreException {
-        Pattern pattern = Pattern.compile("^(RSA|EC);(\\d+|secp256r1|secp384r1|secp521r1);(SHA-256)(;PKCS1|;NoPadding)?$");
-        Matcher matcher = pattern.matcher(keyGenInfo);
-        assert matcher.matches() : "Generate KeyPair keyGenInfo is not valid.";
-        String[] keyGenInfoArr = keyGenInfo.split(";");
-        String KEY_ALGORITHM = keyGenInfoArr[0];
-        String HASH = keyGenInfoArr[2];
-
-        KEY_NAME = key_id;
-        keyStore.load(null);
-
-        // Check if a key with the given key_id already exists
-        if (keyStore.containsAlias(KEY_NAME)) {
-            throw new KeyStoreException("Key with name " + KEY_NAME + " already exists.");
+        KeyGenSpec spec = KeyGenSpec.parse(keyGenInfo);
+        if (!spec.isKeyPair()) {
+            throw new InvalidAlgorithmParameterException("keyGenInfo does not describe a key pair: " + keyGenInfo);
         }
-
-        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance(KEY_ALGORITHM, ANDROID_KEY_STORE);
-        if (KEY_ALGORITHM.contains("EC")) {
-            String CURVE = keyGenInfoArr[1];
-            keyPairGen.initialize(
-                    new KeyGenParameterSpec.Builder(
-                            KEY_NAME,
-                            KeyProperties.PURPOSE_SIGN)
-                            .setAlgorithmParameterSpec(new ECGenParameterSpec(CURVE))
-                            .setDigests(HASH)
-                            .build());
-
-        } else {
-            int KEY_SIZE = Integer.parseInt(keyGenInfoArr[1]);
-            String PADDING = keyGenInfoArr[3];
-            keyPairGen.initialize(new KeyGenParameterSpec.Builder(KEY_NAME,
-                    KeyProperties.PURPOSE_SIGN | KeyProperties.PURPOSE_VERIFY)
-                    .setKeySize(KEY_SIZE)
-                    .setDigests(HASH)
-                    .setSignaturePaddings(PADDING)
-                    .setIsStrongBoxBacked(true)
-                    .build());
-        }
-        keyPairGen.generateKeyPair();
+        createKey(key_id, spec);
     }
 
     /**
      * Signs the given data using a private key stored in the Android KeyStore.
      * <p>
      * This method signs the input data with a private key obtained from the Android KeyStore.
-     * It initializes a {@link Signature} instance with the appropriate algorithm, which is determined dynamically based on the private key's specifications.
-     * The Android KeyStore is loaded, and the private key associated with a predefined alias is retrieved.
+     * It takes the calling thread's pooled {@link Signature} instance for the algorithm determined from the private key's specifications.
+     * The private key associated with the given alias is retrieved from the Android KeyStore.
      * The signature object is then initialized in sign mode with this private key.
      * After updating the signature object with the plaintext data,
      * the method completes the signing process by invoking the signature object's {@code sign} method.
      * Finally, the method returns the resulting signature as a byte array, which can be used for verification purposes.
      *
+     * @param key_id The unique identifier of the key pair to be used.
      * @param data The data to be signed, provided as a byte array.
      * @return A byte array representing the digital signature of the input data.
      * @throws NoSuchAlgorithmException if the requested signature algorithm is not supported.
@@ -307,25 +837,106 @@ public class CryptoManager {
      * @throws CertificateException if there is an error processing certificates.
      * @throws IOException if there is an I/O error while interacting with the keystore.
      */
-    public byte[] signData(byte[] data) throws NoSuchAlgorithmException, UnrecoverableKeyException,
+    public byte[] signData(String key_id, byte[] data) throws NoSuchAlgorithmException, UnrecoverableKeyException,
             KeyStoreException, InvalidKeyException, SignatureException, InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
-        keyStore.load(null);
-        Signature signature = Signature.getInstance(buildSignatureAlgorithm((PrivateKey) keyStore.getKey(KEY_NAME, null)));
-        signature.initSign((PrivateKey) keyStore.getKey(KEY_NAME, null));
-        signature.update(data);
-        return signature.sign();
+        return signData(resolveKey(key_id), data);
+    }
+
+    /**
+     * Works like {@link #signData(String, byte[])}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param data See {@link #signData(String, byte[])}.
+     * @return See {@link #signData(String, byte[])}.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for this operation.
+     * @throws SignatureException       if there is an error during the signature operation.
+     */
+    byte[] signData(KeyHandle keyHandle, byte[] data) throws NoSuchAlgorithmException, InvalidKeyException,
+            SignatureException {
+        return signData(keyHandle, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Signs the data remaining in the given buffer using a private key stored in the Android KeyStore.
+     * <p>
+     * This method works like {@link #signData(String, byte[])}, but reads the data from a buffer, which can be a
+     * direct buffer wrapping native memory.
+     *
+     * @param key_id The unique identifier of the key pair to be used.
+     * @param data The data to be signed. Its position is advanced to its limit.
+     * @return A byte array representing the digital signature of the input data.
+     * @throws NoSuchAlgorithmException if the requested signature algorithm is not supported.
+     * @throws UnrecoverableKeyException if the private key cannot be retrieved from the keystore.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws InvalidKeyException if the key cannot be cast to a {@link PrivateKey}.
+     * @throws SignatureException if there is an error during the signing process.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     */
+    public byte[] signData(String key_id, ByteBuffer data) throws NoSuchAlgorithmException, UnrecoverableKeyException,
+            KeyStoreException, InvalidKeyException, SignatureException, InvalidKeySpecException, NoSuchProviderException,
+            CertificateException, IOException {
+        return signData(resolveKey(key_id), data);
+    }
+
+    /**
+     * Works like {@link #signData(String, ByteBuffer)}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param data See {@link #signData(String, ByteBuffer)}.
+     * @return See {@link #signData(String, ByteBuffer)}.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for this operation.
+     * @throws SignatureException       if there is an error during the signature operation.
+     */
+    byte[] signData(KeyHandle keyHandle, ByteBuffer data) throws NoSuchAlgorithmException, InvalidKeyException,
+            SignatureException {
+        KeyProfile profile = keyHandle.getProfile();
+        String algorithm = profile.getAlgorithmName();
+        long start = metrics.start();
+        int dataLength = data.remaining();
+        boolean success = false;
+        try {
+            Signature signature;
+            byte[] preHashInput = null;
+            if (profile.getPreHashAlgorithm() != null && dataLength >= preHashThreshold) {
+                signature = initSignature(keyHandle, cipherPool.getSignature(profile.getPreHashAlgorithm()), true);
+                preHashInput = preHash(profile, data);
+            } else {
+                signature = initSignature(keyHandle, true);
+            }
+            long doFinalStart = metrics.start();
+            boolean doFinalSuccess = false;
+            byte[] result;
+            try {
+                if (preHashInput != null) signature.update(preHashInput);
+                else signature.update(data);
+                result = signature.sign();
+                doFinalSuccess = true;
+            } finally {
+                metrics.record(CryptoMetrics.Operation.DO_FINAL, algorithm, doFinalStart, dataLength, doFinalSuccess);
+            }
+            success = true;
+            return result;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.SIGN, algorithm, start, dataLength, success);
+        }
     }
 
     /**
      * Verifies the given data against a signature produced by a private key stored in the Android KeyStore.
      * <p>
      * This method compares the provided data with the given signature, using the corresponding public key extracted from the Android KeyStore.
-     * It initializes a {@link Signature} instance with the appropriate algorithm, determined dynamically based on the public key's specifications.
-     * The method then loads the Android KeyStore, retrieves the public key associated with a predefined alias,
+     * It takes the calling thread's pooled {@link Signature} instance for the algorithm determined from the key's specifications.
+     * The method then retrieves the public key associated with the given alias,
      * and initializes the signature object in verify mode with this public key.
      * After updating the signature object with the plaintext data, the method verifies the signature against the provided signed bytes
      * and returns the result of this verification.
      *
+     * @param key_id The unique identifier of the key pair to be used.
      * @param data The data that was originally signed, provided as a byte array.
      * @param signedBytes The signature produced by signing the original data, provided as a byte array.
      * @return {@code true} if the signature matches the data; {@code false} otherwise.
@@ -339,108 +950,1374 @@ public class CryptoManager {
      * @throws CertificateException if there is an error processing certificates.
      * @throws IOException if there is an I/O error while interacting with the keystore.
      */
-    public boolean verifySignature(byte[] data, byte[] signedBytes) throws SignatureException, InvalidKeyException,
+    public boolean verifySignature(String key_id, byte[] data, byte[] signedBytes) throws SignatureException, InvalidKeyException,
             KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException, InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
-        keyStore.load(null);
-        Signature verificationSignature = Signature.getInstance(buildSignatureAlgorithm((PrivateKey) keyStore.getKey(KEY_NAME, null)));
-        verificationSignature.initVerify(keyStore.getCertificate(KEY_NAME).getPublicKey());
-        verificationSignature.update(data);
-        return verificationSignature.verify(signedBytes);
+        return verifySignature(resolveKey(key_id), data, signedBytes);
+    }
+
+    /**
+     * Works like {@link #verifySignature(String, byte[], byte[])}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param data See {@link #verifySignature(String, byte[], byte[])}.
+     * @param signedBytes See {@link #verifySignature(String, byte[], byte[])}.
+     * @return See {@link #verifySignature(String, byte[], byte[])}.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for this operation.
+     * @throws SignatureException       if there is an error during the signature operation.
+     */
+    boolean verifySignature(KeyHandle keyHandle, byte[] data, byte[] signedBytes) throws NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        return verifySignature(keyHandle, ByteBuffer.wrap(data), signedBytes);
     }
 
     /**
-     * Sets the `KEY_NAME` to the provided key identifier.
+     * Verifies the data remaining in the given buffer against a signature produced by a private key stored in the
+     * Android KeyStore.
      * <p>
-     * This method assigns the `KEY_NAME` field with the given `key_id`.
-     * This is typically used before loading a key with the specified identifier.
-     * It ensures that the `KEY_NAME` is set correctly for subsequent cryptographic operations
-     * involving the specified key.
+     * This method works like {@link #verifySignature(String, byte[], byte[])}, but reads the data from a buffer,
+     * which can be a direct buffer wrapping native memory.
      *
-     * @param key_id The unique identifier of a key to be set as `KEY_NAME`.
+     * @param key_id The unique identifier of the key pair to be used.
+     * @param data The data that was originally signed. Its position is advanced to its limit.
+     * @param signedBytes The signature produced by signing the original data, provided as a byte array.
+     * @return {@code true} if the signature matches the data; {@code false} otherwise.
+     * @throws SignatureException if there is an error during the verification process.
+     * @throws InvalidKeyException if the key cannot be used for verification.
      * @throws KeyStoreException if there is an issue accessing the keystore.
-     * @throws UnrecoverableKeyException if the key cannot be retrieved from the keystore.
+     * @throws NoSuchAlgorithmException if the requested signature algorithm is not supported.
+     * @throws UnrecoverableKeyException if the public key cannot be retrieved from the keystore.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
      * @throws CertificateException if there is an error processing certificates.
      * @throws IOException if there is an I/O error while interacting with the keystore.
+     */
+    public boolean verifySignature(String key_id, ByteBuffer data, byte[] signedBytes) throws SignatureException,
+            InvalidKeyException, KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        return verifySignature(resolveKey(key_id), data, signedBytes);
+    }
+
+    /**
+     * Works like {@link #verifySignature(String, ByteBuffer, byte[])}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @param data See {@link #verifySignature(String, ByteBuffer, byte[])}.
+     * @param signedBytes See {@link #verifySignature(String, ByteBuffer, byte[])}.
+     * @return See {@link #verifySignature(String, ByteBuffer, byte[])}.
      * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for this operation.
+     * @throws SignatureException       if there is an error during the signature operation.
      */
-    public void loadKey(String key_id) throws KeyStoreException, UnrecoverableKeyException, CertificateException, IOException, NoSuchAlgorithmException {
-        keyStore.load(null);
-        if (keyStore.containsAlias(key_id)) KEY_NAME = key_id;
-        else
-            throw new UnrecoverableKeyException("The key alias '" + key_id + "' does not exist in the KeyStore.");
+    boolean verifySignature(KeyHandle keyHandle, ByteBuffer data, byte[] signedBytes) throws
+            NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        String algorithm = keyHandle.getProfile().getAlgorithmName();
+        long start = metrics.start();
+        int dataLength = data.remaining();
+        boolean success = false;
+        try {
+            Signature verificationSignature = initSignature(keyHandle, false);
+            long doFinalStart = metrics.start();
+            boolean doFinalSuccess = false;
+            boolean verified;
+            try {
+                verificationSignature.update(data);
+                verified = verificationSignature.verify(signedBytes);
+                doFinalSuccess = true;
+            } finally {
+                metrics.record(CryptoMetrics.Operation.DO_FINAL, algorithm, doFinalStart, dataLength, doFinalSuccess);
+            }
+            success = true;
+            return verified;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.VERIFY, algorithm, start, dataLength, success);
+        }
     }
 
     /**
-     * Constructs the transformation string for a given key, which is used to initialize a {@link Cipher} instance.
+     * Verifies a batch of signatures made with the private key of the given key pair.
      * <p>
-     * This method loads the Android KeyStore and retrieves key-specific metadata using {@link KeyInfo}.
-     * From those it builds a transformation string based on the key's algorithm, block modes, and padding schemes. The transformation
-     * string follows the format "algorithm/block-mode/padding". It supports both symmetric keys ({@link SecretKey}) and asymmetric keys
-     * ({@link PrivateKey}). For symmetric keys, it retrieves encryption paddings; for asymmetric keys, it retrieves signature paddings.
+     * The public key is resolved once for the whole batch and converted to a software key, so the records are
+     * verified in software without touching the keystore again. The records are spread over the common
+     * {@link ForkJoinPool}. A signature that is malformed or {@code null}, or a {@code null} record, counts as not
+     * valid and does not affect the others.
      *
-     * @param key The key for which the transformation string is to be built. It can be either a {@link SecretKey} or a {@link PrivateKey}.
-     * @return A string representing the transformation in the format "algorithm/mode/padding".
-     * @throws NullPointerException     if the key or any retrieved metadata is null.
-     * @throws CertificateException     if there is an issue with the certificate chain.
-     * @throws IOException              if there is an I/O error during the operation.
-     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
-     * @throws InvalidKeySpecException  if the key specification is invalid.
-     * @throws NoSuchProviderException  if the requested security provider is not available.
-     * @throws KeyStoreException        if there is an error accessing the keystore or if the key type is unsupported.
-     */
-    private String buildTransformation(Key key) throws NullPointerException, CertificateException,
-            IOException, NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException, KeyStoreException {
-        keyStore.load(null);
-        KeyInfo keyInfo;
-        String keyAlgorithm = key.getAlgorithm();
-        String keyPadding;
-
-        if (key instanceof SecretKey) {
-            SecretKey secretKey = (SecretKey) key;
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(secretKey.getAlgorithm(), ANDROID_KEY_STORE);
-            keyInfo = (KeyInfo) factory.getKeySpec(secretKey, KeyInfo.class);
-            assert keyInfo.getEncryptionPaddings().length > 0 : "No encryption padding found.";
-            keyPadding = keyInfo.getEncryptionPaddings()[0];
-        } else if (key instanceof PrivateKey) {
-            PrivateKey privateKey = (PrivateKey) key;
-            KeyFactory factory = KeyFactory.getInstance(privateKey.getAlgorithm(), ANDROID_KEY_STORE);
-            keyInfo = factory.getKeySpec(privateKey, KeyInfo.class);
-            assert keyInfo.getSignaturePaddings().length > 0 : "No signature padding found.";
-            keyPadding = keyInfo.getSignaturePaddings()[0];
-        } else {
-            throw new KeyStoreException("Unsupported key type");
-        }
-        assert keyInfo.getBlockModes().length > 0 : "No block modes found.";
-        return keyAlgorithm + "/" + keyInfo.getBlockModes()[0] + "/" + keyPadding;
-    }
-
-    /**
-     * Constructs the signature algorithm string based on the provided private key.
-     * <p>
-     * This method retrieves metadata from the given {@link PrivateKey} to dynamically construct
-     * the signature algorithm string. It uses the {@link KeyFactory} to obtain the {@link KeyInfo}
-     * of the private key, which includes details such as the digest algorithms supported by the key.
-     * The method then combines the hash algorithm and the private key algorithm to form the signature
-     * algorithm string.
-     * </p>
-     *
-     * @param privateKey The {@link PrivateKey} for which the signature algorithm string is to be constructed.
-     * @return A string representing the signature algorithm, which combines the hash algorithm and the key algorithm.
-     * @throws NoSuchAlgorithmException If the algorithm of the private key is not available.
-     * @throws NoSuchProviderException  If the specified provider is not available.
-     * @throws InvalidKeySpecException  If the key specification is invalid or cannot be retrieved.
-     */
-    private String buildSignatureAlgorithm(PrivateKey privateKey) throws NoSuchAlgorithmException, NoSuchProviderException,
-            InvalidKeySpecException {
-        KeyFactory keyFactory = KeyFactory.getInstance(privateKey.getAlgorithm(), ANDROID_KEY_STORE);
-        KeyInfo keyInfo = keyFactory.getKeySpec(privateKey, KeyInfo.class);
-        assert keyInfo.getDigests().length > 0 : "No digest found.";
-        String hashAlgorithm = keyInfo.getDigests()[0].replaceAll("-", "");
-        String algorithm = privateKey.getAlgorithm();
-        if (algorithm.contains("EC")) {
-            algorithm += "DSA";
-        }
-        return hashAlgorithm + "with" + algorithm;
-    }
-
-}
\ No newline at end of file
+     * @param key_id The unique identifier of the key pair to be used.
+     * @param data The records that were originally signed.
+     * @param signatures The signature of every record, in the same order as {@code data}.
+     * @return The results, with bit {@code i} set if the signature of record {@code i} is valid.
+     * @throws InvalidKeyException if the key is not a key pair or its public key cannot be used for verification.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws NoSuchAlgorithmException if the requested signature algorithm is not supported.
+     * @throws UnrecoverableKeyException if the public key cannot be retrieved from the keystore.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws IllegalArgumentException if the number of signatures does not match the number of records.
+     */
+    public BitSet verifyBatch(String key_id, List<byte[]> data, List<byte[]> signatures) throws InvalidKeyException,
+            KeyStoreException, NoSuchAlgorithmException, UnrecoverableKeyException, InvalidKeySpecException,
+            NoSuchProviderException, CertificateException, IOException {
+        return verifyBatch(resolveKey(key_id), data, signatures);
+    }
+
+    /**
+     * Verifies a batch of signatures with an already resolved key pair,
+     * see {@link #verifyBatch(String, List, List)}.
+     *
+     * @param keyHandle  The handle of the key pair to be used.
+     * @param data       The records that were originally signed.
+     * @param signatures The signature of every record, in the same order as {@code data}.
+     * @return The results, with bit {@code i} set if the signature of record {@code i} is valid.
+     * @throws InvalidKeyException      if the key is not a key pair or its public key cannot be used for verification.
+     * @throws NoSuchAlgorithmException if the key algorithm is not available.
+     * @throws IllegalArgumentException if the number of signatures does not match the number of records.
+     */
+    BitSet verifyBatch(KeyHandle keyHandle, List<byte[]> data, List<byte[]> signatures) throws InvalidKeyException,
+            NoSuchAlgorithmException {
+        if (data.size() != signatures.size()) {
+            throw new IllegalArgumentException("Every record needs exactly one signature.");
+        }
+        PublicKey publicKey = keyHandle.getSoftwarePublicKey();
+        // plain arrays, as the tasks access the records at random
+        byte[][] records = data.toArray(new byte[0][]);
+        byte[][] signedBytes = signatures.toArray(new byte[0][]);
+        boolean[] valid = new boolean[records.length];
+        ForkJoinPool.commonPool().invoke(new VerifyBatchTask(keyHandle.getProfile().getSignatureAlgorithm(),
+                publicKey, records, signedBytes, valid, 0, records.length));
+        BitSet results = new BitSet(records.length);
+        for (int i = 0; i < valid.length; i++) {
+            if (valid[i]) results.set(i);
+        }
+        return results;
+    }
+
+    /**
+     * Verifies a range of the records of {@link #verifyBatch(String, List, List)}, splitting it in halves until
+     * it is small enough.
+     */
+    private final class VerifyBatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String algorithm;
+        private final PublicKey publicKey;
+        private final byte[][] records;
+        private final byte[][] signatures;
+        private final boolean[] valid;
+        private final int from;
+        private final int to;
+
+        VerifyBatchTask(String algorithm, PublicKey publicKey, byte[][] records, byte[][] signatures,
+                        boolean[] valid, int from, int to) {
+            this.algorithm = algorithm;
+            this.publicKey = publicKey;
+            this.records = records;
+            this.signatures = signatures;
+            this.valid = valid;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > VERIFY_BATCH_GRAIN) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new VerifyBatchTask(algorithm, publicKey, records, signatures, valid, from, middle),
+                        new VerifyBatchTask(algorithm, publicKey, records, signatures, valid, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                byte[] record = records[i];
+                long start = metrics.start();
+                boolean success = false;
+                try {
+                    // valid[i] stays false, the other records are still verified
+                    if (record == null || signatures[i] == null) continue;
+                    Signature signature = softwareCipherPool.getSignature(algorithm);
+                    signature.initVerify(publicKey);
+                    signature.update(record);
+                    valid[i] = signature.verify(signatures[i]);
+                    success = true;
+                } catch (GeneralSecurityException e) {
+                    valid[i] = false;
+                } finally {
+                    metrics.record(CryptoMetrics.Operation.VERIFY, algorithm, start, record == null ? 0 : record.length,
+                            success);
+                }
+            }
+        }
+    }
+
+    /**
+     * Exports the public key of the given key pair as DER encoded X.509 SubjectPublicKeyInfo.
+     * <p>
+     * Verification needs no secret material, so the exported key can be used to verify signatures of this key
+     * pair anywhere, e.g. with {@link java.security.KeyFactory} and {@link java.security.spec.X509EncodedKeySpec}.
+     *
+     * @param key_id The unique identifier of the key pair.
+     * @return The encoded public key.
+     * @throws InvalidKeyException if the key is not a key pair.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws UnrecoverableKeyException if the public key cannot be retrieved from the keystore.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     */
+    public byte[] exportPublicKey(String key_id) throws InvalidKeyException, KeyStoreException,
+            NoSuchAlgorithmException, UnrecoverableKeyException, InvalidKeySpecException, NoSuchProviderException,
+            CertificateException, IOException {
+        return publicKey(resolveKey(key_id)).getEncoded();
+    }
+
+    /**
+     * Exports the public key of the given EC key pair as raw uncompressed point, i.e. {@code 0x04} followed by
+     * the X and Y coordinates, each padded to the field size of the curve.
+     * <p>
+     * This is the format most native libraries expect for ECDSA verification.
+     *
+     * @param key_id The unique identifier of the EC key pair.
+     * @return The encoded point.
+     * @throws InvalidKeyException if the key is not an EC key pair.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws UnrecoverableKeyException if the public key cannot be retrieved from the keystore.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     */
+    public byte[] exportPublicKeyPoint(String key_id) throws InvalidKeyException, KeyStoreException,
+            NoSuchAlgorithmException, UnrecoverableKeyException, InvalidKeySpecException, NoSuchProviderException,
+            CertificateException, IOException {
+        PublicKey publicKey = publicKey(resolveKey(key_id));
+        if (!(publicKey instanceof ECPublicKey)) {
+            throw new InvalidKeyException("Key " + key_id + " is not an EC key pair.");
+        }
+        ECPublicKey ecKey = (ECPublicKey) publicKey;
+        int size = (ecKey.getParams().getCurve().getField().getFieldSize() + 7) / 8;
+        byte[] point = new byte[1 + 2 * size];
+        point[0] = 0x04;
+        writeUnsigned(ecKey.getW().getAffineX(), point, 1, size);
+        writeUnsigned(ecKey.getW().getAffineY(), point, 1 + size, size);
+        return point;
+    }
+
+    /**
+     * Returns the public key of the given key pair.
+     *
+     * @param keyHandle The handle of the key pair.
+     * @return The public key.
+     * @throws InvalidKeyException if the key is not a key pair.
+     */
+    private static PublicKey publicKey(KeyHandle keyHandle) throws InvalidKeyException {
+        PublicKey publicKey = keyHandle.getPublicKey();
+        if (publicKey == null) throw new InvalidKeyException("Key " + keyHandle.getAlias() + " is not a key pair.");
+        return publicKey;
+    }
+
+    /**
+     * Writes a non-negative number big-endian into a fixed-size range of an array, padded with leading zeros.
+     *
+     * @param value The number, which has to fit into {@code length} bytes.
+     * @param out The array to write to.
+     * @param offset The index of the first byte of the range.
+     * @param length The size of the range.
+     */
+    private static void writeUnsigned(BigInteger value, byte[] out, int offset, int length) {
+        byte[] bytes = value.toByteArray();
+        // toByteArray adds a leading zero byte if the highest bit is set
+        int skip = bytes.length > length ? bytes.length - length : 0;
+        System.arraycopy(bytes, skip, out, offset + length - (bytes.length - skip), bytes.length - skip);
+    }
+
+    /**
+     * Returns a {@link Signer} that signs a document passed in pieces with the private key of the given key pair.
+     * <p>
+     * This allows to sign documents of any size, e.g. large files read with
+     * {@link Signer#update(InputStream)}, without holding them in memory. The signature is the same as that of
+     * {@link #signData(String, byte[])} for the whole document. If the key allows it, the document is hashed
+     * in-process and only the digest is passed to the keystore, see {@link #setPreHashThreshold(int)}.
+     *
+     * @param key_id The unique identifier of the key pair to be used.
+     * @return A new signer, which is not thread-safe.
+     * @throws InvalidKeyException if the key is not a key pair or cannot be used for signing.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws NoSuchAlgorithmException if the requested signature algorithm is not supported.
+     * @throws UnrecoverableKeyException if the private key cannot be retrieved from the keystore.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     */
+    public Signer newSigner(String key_id) throws InvalidKeyException, KeyStoreException, NoSuchAlgorithmException,
+            UnrecoverableKeyException, InvalidKeySpecException, NoSuchProviderException, CertificateException,
+            IOException {
+        return newSigner(resolveKey(key_id));
+    }
+
+    /**
+     * Works like {@link #newSigner(String)}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @return See {@link #newSigner(String)}.
+     * @throws InvalidKeyException      if the key is not a key pair or cannot be used for signing.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     */
+    Signer newSigner(KeyHandle keyHandle) throws InvalidKeyException, NoSuchAlgorithmException {
+        KeyProfile profile = keyHandle.getProfile();
+        if (profile.getPreHashAlgorithm() == null) {
+            return new Signer(initSignature(keyHandle, newSignature(keyHandle), true), null, null, metrics,
+                    profile.getAlgorithmName());
+        }
+        // a signer is meant for large documents, so it always hashes in-process if the key allows it
+        Signature signature = initSignature(keyHandle, Signature.getInstance(profile.getPreHashAlgorithm()), true);
+        return new Signer(signature, MessageDigest.getInstance(profile.getDigest()), profile, metrics,
+                profile.getAlgorithmName());
+    }
+
+    /**
+     * Returns a {@link Verifier} that verifies a document passed in pieces with the public key of the given key
+     * pair.
+     * <p>
+     * This allows to verify documents of any size, e.g. large files read with
+     * {@link Verifier#update(InputStream)}, without holding them in memory. The result is the same as that of
+     * {@link #verifySignature(String, byte[], byte[])} for the whole document.
+     *
+     * @param key_id The unique identifier of the key pair to be used.
+     * @return A new verifier, which is not thread-safe.
+     * @throws InvalidKeyException if the key is not a key pair or cannot be used for verification.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws NoSuchAlgorithmException if the requested signature algorithm is not supported.
+     * @throws UnrecoverableKeyException if the public key cannot be retrieved from the keystore.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     */
+    public Verifier newVerifier(String key_id) throws InvalidKeyException, KeyStoreException,
+            NoSuchAlgorithmException, UnrecoverableKeyException, InvalidKeySpecException, NoSuchProviderException,
+            CertificateException, IOException {
+        return newVerifier(resolveKey(key_id));
+    }
+
+    /**
+     * Works like {@link #newVerifier(String)}, but with a key that has already been resolved.
+     *
+     * @param keyHandle The handle of the key to be used.
+     * @return See {@link #newVerifier(String)}.
+     * @throws InvalidKeyException      if the key is not a key pair or cannot be used for verification.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     */
+    Verifier newVerifier(KeyHandle keyHandle) throws InvalidKeyException, NoSuchAlgorithmException {
+        Signature signature = softwareVerification
+                ? initSoftwareVerification(keyHandle, newSignature(keyHandle))
+                : initSignature(keyHandle, newSignature(keyHandle), false);
+        return new Verifier(signature, metrics, keyHandle.getProfile().getAlgorithmName());
+    }
+
+    /**
+     * Returns a stream that encrypts everything written to it with an AES-GCM key stored in the Android KeyStore.
+     * <p>
+     * The data is split into segments of {@link SegmentedAead#DEFAULT_SEGMENT_SIZE} bytes, each of which is
+     * encrypted with its own nonce and authentication tag. Only one segment is held in memory at a time, so
+     * data of any size can be encrypted. The stream has to be closed to write the last segment.
+     *
+     * @param key_id The unique identifier of the AES-GCM key to be used.
+     * @param out    The stream the encrypted data is written to.
+     * @return A stream accepting the plaintext.
+     * @throws InvalidKeyException       if the key is not an AES-GCM key.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if the stream header cannot be written.
+     */
+    public OutputStream newEncryptingStream(String key_id, OutputStream out) throws InvalidKeyException,
+            NoSuchPaddingException, NoSuchAlgorithmException, UnrecoverableKeyException, KeyStoreException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        return newEncryptingStream(key_id, out, SegmentedAead.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Returns a stream that encrypts everything written to it with an AES-GCM key stored in the Android KeyStore,
+     * using the given segment size.
+     *
+     * @param key_id      The unique identifier of the AES-GCM key to be used.
+     * @param out         The stream the encrypted data is written to.
+     * @param segmentSize The size of the plaintext segments in bytes.
+     * @return A stream accepting the plaintext.
+     * @throws InvalidKeyException       if the key is not an AES-GCM key.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if the segment size is not positive or larger than 16 MiB, or the stream
+     *                                   header cannot be written.
+     * @see #newEncryptingStream(String, OutputStream)
+     */
+    public OutputStream newEncryptingStream(String key_id, OutputStream out, int segmentSize) throws InvalidKeyException,
+            NoSuchPaddingException, NoSuchAlgorithmException, UnrecoverableKeyException, KeyStoreException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        KeyHandle keyHandle = resolveGcmKey(key_id);
+        // streams keep their cipher between calls, so they cannot use the thread's pooled instance
+        Cipher cipher = Cipher.getInstance(keyHandle.getProfile().getTransformation());
+        return new SegmentEncryptingOutputStream(out, cipher, keyHandle.getKey(), segmentSize);
+    }
+
+    /**
+     * Returns a stream that decrypts data produced by {@link #newEncryptingStream(String, OutputStream)} while
+     * it is read.
+     * <p>
+     * Segments are authenticated and decrypted one at a time. Reading fails with an {@link IOException} as soon
+     * as a segment has been tampered with or the encrypted stream was truncated.
+     *
+     * @param key_id The unique identifier of the AES-GCM key to be used.
+     * @param in     The stream the encrypted data is read from.
+     * @return A stream returning the plaintext.
+     * @throws InvalidKeyException       if the key is not an AES-GCM key.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     */
+    public InputStream newDecryptingStream(String key_id, InputStream in) throws InvalidKeyException,
+            NoSuchPaddingException, NoSuchAlgorithmException, UnrecoverableKeyException, KeyStoreException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        KeyHandle keyHandle = resolveGcmKey(key_id);
+        Cipher cipher = Cipher.getInstance(keyHandle.getProfile().getTransformation());
+        return new SegmentDecryptingInputStream(in, cipher, keyHandle.getKey());
+    }
+
+    /**
+     * Returns the position of a segment within data produced by {@link #newEncryptingStream(String, OutputStream)}.
+     * <p>
+     * Together with {@link #decryptSegment(String, byte[], long, boolean, byte[])} this allows to decrypt single
+     * segments of an encrypted stream without reading the segments before it.
+     *
+     * @param header The header of the encrypted stream, i.e. its first {@link SegmentedAead#HEADER_LENGTH} bytes.
+     * @param index  The index of the segment, starting at 0.
+     * @return The offset of the segment, counted from the beginning of the encrypted stream.
+     * @throws IOException if the header does not belong to an encrypted stream.
+     */
+    public static long segmentOffset(byte[] header, long index) throws IOException {
+        return SegmentedAead.segmentOffset(SegmentedAead.segmentSize(header), index);
+    }
+
+    /**
+     * Decrypts a single segment of data produced by {@link #newEncryptingStream(String, OutputStream)}.
+     *
+     * @param key_id  The unique identifier of the AES-GCM key to be used.
+     * @param header  The header of the encrypted stream, i.e. its first {@link SegmentedAead#HEADER_LENGTH} bytes.
+     * @param index   The index of the segment, starting at 0.
+     * @param last    Whether the segment is the last one of the stream.
+     * @param segment The encrypted segment, including nonce and tag.
+     * @return The plaintext of the segment.
+     * @throws GeneralSecurityException if the key is not an AES-GCM key, cannot be retrieved from the keystore,
+     *                                  or if the segment cannot be decrypted or was tampered with.
+     * @throws IOException              if the header does not belong to an encrypted stream.
+     */
+    public byte[] decryptSegment(String key_id, byte[] header, long index, boolean last, byte[] segment)
+            throws GeneralSecurityException, IOException {
+        SegmentedAead.segmentSize(header);
+        KeyHandle keyHandle = resolveGcmKey(key_id);
+        Cipher cipher = cipherPool.getCipher(keyHandle.getProfile().getTransformation());
+        byte[] plaintext = new byte[Math.max(0, segment.length - SegmentedAead.NONCE_LENGTH)];
+        int length = SegmentedAead.decryptSegment(cipher, keyHandle.getKey(), header, index, last,
+                segment, 0, segment.length, plaintext);
+        return length == plaintext.length ? plaintext : Arrays.copyOf(plaintext, length);
+    }
+
+    /**
+     * Encrypts a file with an AES-GCM key stored in the Android KeyStore.
+     * <p>
+     * The result has the same format as {@link #newEncryptingStream(String, OutputStream)}, with segments of
+     * {@link SegmentedFileCipher#DEFAULT_SEGMENT_SIZE} bytes, and can be decrypted with either
+     * {@link #decryptFile(String, File, File)} or {@link #newDecryptingStream(String, InputStream)}. The source is
+     * memory-mapped and the segments are written through a single direct buffer, so the heap used does not
+     * depend on the file size. The target is replaced atomically once the encryption is complete.
+     *
+     * @param key_id The unique identifier of the AES-GCM key to be used.
+     * @param source The file to be encrypted.
+     * @param target The file the encrypted data is written to, which may be the source itself.
+     * @throws GeneralSecurityException if the key cannot be resolved or is not an AES-GCM key.
+     * @throws IOException              if a file cannot be read or written, or a segment cannot be encrypted.
+     */
+    public void encryptFile(String key_id, File source, File target) throws GeneralSecurityException, IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            encryptFile(key_id, in, target);
+        }
+    }
+
+    /**
+     * Encrypts everything from the beginning of the given channel to its end, see
+     * {@link #encryptFile(String, File, File)}. This allows to encrypt documents that are only available as file
+     * descriptor, e.g. those of a content provider.
+     *
+     * @param key_id The unique identifier of the AES-GCM key to be used.
+     * @param source The channel of the file to be encrypted, which has to support mapping. It is not closed.
+     * @param target The file the encrypted data is written to.
+     * @throws GeneralSecurityException if the key cannot be resolved or is not an AES-GCM key.
+     * @throws IOException              if a file cannot be read or written, or a segment cannot be encrypted.
+     */
+    public void encryptFile(String key_id, FileChannel source, File target) throws GeneralSecurityException,
+            IOException {
+        newFileCipher(key_id).encrypt(source, target, SegmentedFileCipher.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Decrypts a file produced by {@link #encryptFile(String, File, File)} or
+     * {@link #newEncryptingStream(String, OutputStream)}.
+     * <p>
+     * The plaintext is written to a temporary file, which only replaces the target after every segment has
+     * been authenticated. If the encrypted file was tampered with or truncated, the target is left untouched.
+     *
+     * @param key_id The unique identifier of the AES-GCM key to be used.
+     * @param source The encrypted file.
+     * @param target The file the plaintext is written to, which may be the source itself.
+     * @throws GeneralSecurityException if the key cannot be resolved or is not an AES-GCM key.
+     * @throws IOException              if a file cannot be read or written, or the encrypted data was tampered
+     *                                  with or truncated.
+     */
+    public void decryptFile(String key_id, File source, File target) throws GeneralSecurityException, IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            decryptFile(key_id, in, target);
+        }
+    }
+
+    /**
+     * Decrypts the encrypted data of the given channel, see {@link #decryptFile(String, File, File)}.
+     *
+     * @param key_id The unique identifier of the AES-GCM key to be used.
+     * @param source The channel of the encrypted file, which has to support mapping. It is not closed.
+     * @param target The file the plaintext is written to.
+     * @throws GeneralSecurityException if the key cannot be resolved or is not an AES-GCM key.
+     * @throws IOException              if a file cannot be read or written, or the encrypted data was tampered
+     *                                  with or truncated.
+     */
+    public void decryptFile(String key_id, FileChannel source, File target) throws GeneralSecurityException,
+            IOException {
+        newFileCipher(key_id).decrypt(source, target);
+    }
+
+    private SegmentedFileCipher newFileCipher(String key_id) throws GeneralSecurityException, IOException {
+        KeyHandle keyHandle = resolveGcmKey(key_id);
+        return new SegmentedFileCipher(cipherPool.getCipher(keyHandle.getProfile().getTransformation()),
+                keyHandle.getKey());
+    }
+
+    /**
+     * Encrypts the given data in an envelope, so that only a small data key passes through the keystore.
+     * <p>
+     * A random AES-256 data key is generated for the message, the data is encrypted with it in software using
+     * AES-GCM, and only the data key is encrypted with the symmetric key stored under {@code key_id}. This keeps
+     * the root of trust in the keystore, while the throughput for large data is that of software AES instead
+     * of that of the secure hardware. The format is described in {@link Envelope}.
+     *
+     * @param key_id The unique identifier of the symmetric key wrapping the data key.
+     * @param data   The plaintext data to be encrypted.
+     * @return The envelope: header with the wrapped data key, nonce, ciphertext and tag.
+     * @throws GeneralSecurityException if the key cannot be resolved or used, or the data cannot be encrypted.
+     * @throws IOException              if there is an I/O error while interacting with the keystore.
+     */
+    public byte[] encryptEnvelope(String key_id, byte[] data) throws GeneralSecurityException, IOException {
+        KeyHandle keyHandle = resolveEncryptionKey(key_id);
+        long start = metrics.start();
+        boolean success = false;
+        byte[][] wrappedAndDataKey = acquireDataKey(key_id, keyHandle);
+        byte[] dataKey = wrappedAndDataKey[1];
+        try {
+            byte[] header = Envelope.newHeader(Envelope.MESSAGE, wrappedAndDataKey[0]);
+            byte[] envelope = Envelope.seal(softwareCipherPool.getCipher(Envelope.DATA_KEY_TRANSFORMATION), dataKey,
+                    header, data);
+            success = true;
+            return envelope;
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+            metrics.record(CryptoMetrics.Operation.ENCRYPT, "envelope:" + keyHandle.getProfile().getAlgorithmName(),
+                    start, data.length, success);
+        }
+    }
+
+    /**
+     * Decrypts an envelope produced by {@link #encryptEnvelope(String, byte[])}.
+     *
+     * @param key_id   The unique identifier of the symmetric key the data key was wrapped with.
+     * @param envelope The envelope to be decrypted.
+     * @return The decrypted data.
+     * @throws GeneralSecurityException if the key cannot be resolved or used, or the envelope has been tampered with.
+     * @throws IOException              if the data is not an envelope or there is an I/O error while interacting
+     *                                  with the keystore.
+     */
+    public byte[] decryptEnvelope(String key_id, byte[] envelope) throws GeneralSecurityException, IOException {
+        int headerLength = Envelope.headerLength(envelope, Envelope.MESSAGE);
+        KeyHandle keyHandle = resolveEncryptionKey(key_id);
+        long start = metrics.start();
+        boolean success = false;
+        byte[] dataKey = unwrapDataKey(key_id, keyHandle, Envelope.wrappedKey(envelope, headerLength));
+        try {
+            byte[] data = Envelope.open(softwareCipherPool.getCipher(Envelope.DATA_KEY_TRANSFORMATION), dataKey,
+                    envelope, headerLength);
+            success = true;
+            return data;
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+            metrics.record(CryptoMetrics.Operation.DECRYPT, "envelope:" + keyHandle.getProfile().getAlgorithmName(),
+                    start, envelope.length, success);
+        }
+    }
+
+    /**
+     * Returns a stream that encrypts everything written to it in an envelope, see
+     * {@link #encryptEnvelope(String, byte[])}.
+     * <p>
+     * The envelope header with the wrapped data key is written to {@code out} immediately, the data follows in
+     * the segmented format of {@link #newEncryptingStream(String, OutputStream)}, encrypted with the data key.
+     * The stream has to be closed to complete the encrypted data.
+     *
+     * @param key_id The unique identifier of the symmetric key wrapping the data key.
+     * @param out    The stream the encrypted data is written to.
+     * @return A stream encrypting the data written to it.
+     * @throws GeneralSecurityException if the key cannot be resolved or used.
+     * @throws IOException              if the header cannot be written or there is an I/O error while
+     *                                  interacting with the keystore.
+     */
+    public OutputStream newEnvelopeEncryptingStream(String key_id, OutputStream out)
+            throws GeneralSecurityException, IOException {
+        KeyHandle keyHandle = resolveEncryptionKey(key_id);
+        byte[][] wrappedAndDataKey = acquireDataKey(key_id, keyHandle);
+        byte[] dataKey = wrappedAndDataKey[1];
+        try {
+            out.write(Envelope.newHeader(Envelope.STREAM, wrappedAndDataKey[0]));
+            return new SegmentEncryptingOutputStream(out, Cipher.getInstance(Envelope.DATA_KEY_TRANSFORMATION),
+                    Envelope.toKey(dataKey), SegmentedAead.DEFAULT_SEGMENT_SIZE);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Returns a stream that decrypts data produced by {@link #newEnvelopeEncryptingStream(String, OutputStream)}
+     * while it is read. The envelope header is read from {@code in} before this method returns.
+     *
+     * @param key_id The unique identifier of the symmetric key the data key was wrapped with.
+     * @param in     The stream the encrypted data is read from.
+     * @return A stream returning the decrypted data.
+     * @throws GeneralSecurityException if the key cannot be resolved or used, or the data key cannot be unwrapped.
+     * @throws IOException              if the header cannot be read or there is an I/O error while interacting
+     *                                  with the keystore.
+     */
+    public InputStream newEnvelopeDecryptingStream(String key_id, InputStream in)
+            throws GeneralSecurityException, IOException {
+        byte[] header = Envelope.readHeader(in, Envelope.STREAM);
+        KeyHandle keyHandle = resolveEncryptionKey(key_id);
+        byte[] dataKey = unwrapDataKey(key_id, keyHandle, Envelope.wrappedKey(header, header.length));
+        try {
+            return new SegmentDecryptingInputStream(in, Cipher.getInstance(Envelope.DATA_KEY_TRANSFORMATION),
+                    Envelope.toKey(dataKey));
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Encrypts a file on all cores into a container that can also be decrypted in parallel and read at random.
+     * <p>
+     * Like an envelope, the file is encrypted in software with a data key that is wrapped with the symmetric key
+     * stored under {@code key_id}, so the keystore only processes the data key. The file is split into segments
+     * of {@link SegmentedFileCipher#DEFAULT_SEGMENT_SIZE} bytes, each with its own nonce and tag, which are
+     * encrypted concurrently on the common {@link ForkJoinPool} and written to their place in the container.
+     * The container records an index of its segments, see {@link SegmentContainer}. The target is replaced
+     * atomically once the encryption is complete.
+     *
+     * @param key_id The unique identifier of the symmetric key wrapping the data key.
+     * @param source The file to be encrypted.
+     * @param target The file the container is written to, which may be the source itself.
+     * @throws GeneralSecurityException if the key cannot be resolved or used to wrap the data key.
+     * @throws IOException              if a file cannot be read or written, or a segment cannot be encrypted.
+     */
+    public void encryptFileParallel(String key_id, File source, File target) throws GeneralSecurityException,
+            IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            encryptFileParallel(key_id, in, target);
+        }
+    }
+
+    /**
+     * Encrypts everything from the beginning of the given channel to its end into a container, see
+     * {@link #encryptFileParallel(String, File, File)}. This allows to encrypt documents that are only available
+     * as file descriptor, e.g. those of a content provider.
+     *
+     * @param key_id The unique identifier of the symmetric key wrapping the data key.
+     * @param source The channel of the file to be encrypted, which has to support mapping. It is not closed.
+     * @param target The file the container is written to.
+     * @throws GeneralSecurityException if the key cannot be resolved or used to wrap the data key.
+     * @throws IOException              if a file cannot be read or written, or a segment cannot be encrypted.
+     */
+    public void encryptFileParallel(String key_id, FileChannel source, File target) throws GeneralSecurityException,
+            IOException {
+        KeyHandle keyHandle = resolveEncryptionKey(key_id);
+        byte[][] wrappedAndDataKey = acquireDataKey(key_id, keyHandle);
+        byte[] dataKey = wrappedAndDataKey[1];
+        try {
+            SegmentContainer container = SegmentContainer.create(
+                    Envelope.newHeader(Envelope.CONTAINER, wrappedAndDataKey[0]),
+                    SegmentedFileCipher.DEFAULT_SEGMENT_SIZE, source.size());
+            container.encrypt(source, target, Envelope.toKey(dataKey), softwareCipherPool);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Decrypts a container produced by {@link #encryptFileParallel(String, File, File)} on all cores.
+     * <p>
+     * The plaintext is written to a temporary file, which only replaces the target after every segment has
+     * been authenticated. If the container was tampered with or truncated, the target is left untouched.
+     *
+     * @param key_id The unique identifier of the symmetric key the data key was wrapped with.
+     * @param source The container.
+     * @param target The file the plaintext is written to, which may be the source itself.
+     * @throws GeneralSecurityException if the key cannot be resolved or the data key cannot be unwrapped.
+     * @throws IOException              if a file cannot be read or written, or the container was tampered with
+     *                                  or truncated.
+     */
+    public void decryptFileParallel(String key_id, File source, File target) throws GeneralSecurityException,
+            IOException {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            SegmentContainer container = SegmentContainer.read(in);
+            KeyHandle keyHandle = resolveEncryptionKey(key_id);
+            byte[] dataKey = unwrapDataKey(key_id, keyHandle, container.getWrappedKey());
+            try {
+                container.decrypt(in, target, Envelope.toKey(dataKey), softwareCipherPool);
+            } finally {
+                Arrays.fill(dataKey, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Opens a container produced by {@link #encryptFileParallel(String, File, File)} for random access.
+     * <p>
+     * The returned channel is read-only and returns the plaintext of the container. Reading a range only
+     * decrypts and authenticates the segments covering it, so e.g. a player can seek in encrypted media or a
+     * server can answer range requests without decrypting the whole file. The data key is unwrapped once, when
+     * the channel is opened.
+     *
+     * @param key_id The unique identifier of the symmetric key the data key was wrapped with.
+     * @param source The container.
+     * @return A seekable channel returning the decrypted data, which has to be closed.
+     * @throws GeneralSecurityException if the key cannot be resolved or the data key cannot be unwrapped.
+     * @throws IOException              if the file cannot be read or is not a valid container.
+     */
+    public SeekableByteChannel newDecryptingChannel(String key_id, File source) throws GeneralSecurityException,
+            IOException {
+        return newDecryptingChannel(key_id, FileChannel.open(source.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Opens the container read from the given channel for random access, see
+     * {@link #newDecryptingChannel(String, File)}.
+     *
+     * @param key_id The unique identifier of the symmetric key the data key was wrapped with.
+     * @param source The channel of the container. It is closed together with the returned channel, or
+     *               immediately if the container cannot be opened.
+     * @return A seekable channel returning the decrypted data, which has to be closed.
+     * @throws GeneralSecurityException if the key cannot be resolved or the data key cannot be unwrapped.
+     * @throws IOException              if the channel cannot be read or is not a valid container.
+     */
+    public SeekableByteChannel newDecryptingChannel(String key_id, FileChannel source)
+            throws GeneralSecurityException, IOException {
+        try {
+            KeyHandle keyHandle = resolveEncryptionKey(key_id);
+            SegmentContainer container = SegmentContainer.read(source);
+            byte[] dataKey = unwrapDataKey(key_id, keyHandle, container.getWrappedKey());
+            try {
+                return new SegmentContainerChannel(source, container,
+                        Cipher.getInstance(Envelope.DATA_KEY_TRANSFORMATION), Envelope.toKey(dataKey));
+            } finally {
+                Arrays.fill(dataKey, (byte) 0);
+            }
+        } catch (GeneralSecurityException | IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Enables caching of unwrapped envelope data keys for decryption.
+     * <p>
+     * Without the cache, every envelope needs the secure hardware to unwrap its data key. With the cache, data
+     * keys unwrapped once are kept in memory, so decrypting many envelopes that share a wrapped data key only
+     * needs a single unwrap. Every new envelope still gets a data key of its own, see
+     * {@link #enableDataKeyCache(int, long, TimeUnit, boolean)} for sharing one. The cached keys are held as plain
+     * bytes in this process and overwritten with zeros when they expire, are evicted because the cache is full,
+     * or their wrapping key is deleted. Enabling the cache again replaces it with an empty one.
+     *
+     * @param maxEntries The maximum number of data keys kept in memory, least recently used keys are evicted first.
+     * @param maxAge     The time after which a data key is no longer kept.
+     * @param unit       The unit of {@code maxAge}.
+     * @throws IllegalArgumentException if {@code maxEntries} or {@code maxAge} is smaller than 1.
+     */
+    public void enableDataKeyCache(int maxEntries, long maxAge, TimeUnit unit) {
+        enableDataKeyCache(maxEntries, maxAge, unit, false);
+    }
+
+    /**
+     * Enables caching of unwrapped envelope data keys, optionally also sharing data keys between new envelopes.
+     * <p>
+     * With {@code reuseForEncryption}, envelopes created for the same key share one data key until it reaches
+     * {@code maxAge} or has encrypted 2<sup>20</sup> envelopes, so that only the first of them needs the secure
+     * hardware to wrap it and a conversation of many messages only needs a single unwrap on the receiving side.
+     * Every envelope still gets its own random nonce, but all envelopes sharing a data key are exposed if that
+     * data key leaks from the memory of this process. Without it, this method behaves like
+     * {@link #enableDataKeyCache(int, long, TimeUnit)}.
+     *
+     * @param maxEntries         The maximum number of data keys kept in memory, least recently used keys are
+     *                           evicted first.
+     * @param maxAge             The time after which a data key is no longer used or kept.
+     * @param unit               The unit of {@code maxAge}.
+     * @param reuseForEncryption Whether new envelopes of the same key share a data key.
+     * @throws IllegalArgumentException if {@code maxEntries} or {@code maxAge} is smaller than 1.
+     */
+    public void enableDataKeyCache(int maxEntries, long maxAge, TimeUnit unit, boolean reuseForEncryption) {
+        DataKeyCache previous = dataKeyCache;
+        dataKeyCache = new DataKeyCache(maxEntries, unit.toNanos(maxAge), reuseForEncryption);
+        if (previous != null) previous.clear();
+    }
+
+    /**
+     * Disables caching of unwrapped envelope data keys and overwrites the cached keys with zeros.
+     */
+    public void disableDataKeyCache() {
+        DataKeyCache previous = dataKeyCache;
+        dataKeyCache = null;
+        if (previous != null) previous.clear();
+    }
+
+    /**
+     * Returns how many envelope data keys were taken from the data key cache instead of being unwrapped.
+     *
+     * @return The number of cache hits since the cache was enabled, 0 if it is disabled.
+     */
+    public long getDataKeyCacheHitCount() {
+        DataKeyCache cache = dataKeyCache;
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    /**
+     * Returns how many envelope data keys had to be unwrapped by the keystore because they were not cached.
+     *
+     * @return The number of cache misses since the cache was enabled, 0 if it is disabled.
+     */
+    public long getDataKeyCacheMissCount() {
+        DataKeyCache cache = dataKeyCache;
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    /**
+     * Returns how many data keys were dropped from the data key cache because they expired or the cache was full.
+     *
+     * @return The number of evictions since the cache was enabled, 0 if it is disabled.
+     */
+    public long getDataKeyCacheEvictionCount() {
+        DataKeyCache cache = dataKeyCache;
+        return cache == null ? 0 : cache.getEvictionCount();
+    }
+
+    /**
+     * Returns the data key for a new envelope: the current data key of the key if the data key cache is
+     * enabled with encryption key reuse, otherwise a new random data key wrapped with the key.
+     *
+     * @return The wrapped data key and the raw data key, which the caller has to overwrite with zeros.
+     */
+    private byte[][] acquireDataKey(String key_id, KeyHandle keyHandle) throws GeneralSecurityException {
+        DataKeyCache cache = dataKeyCache;
+        byte[][] cached = cache == null ? null : cache.acquireEncryptionKey(key_id);
+        if (cached != null) return cached;
+
+        byte[] dataKey = Envelope.newDataKey();
+        try {
+            byte[] wrappedKey = encryptData(keyHandle, dataKey);
+            if (cache != null) cache.putEncryptionKey(key_id, wrappedKey, dataKey);
+            return new byte[][]{wrappedKey, dataKey};
+        } catch (GeneralSecurityException | RuntimeException e) {
+            Arrays.fill(dataKey, (byte) 0);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the raw data key of an envelope, from the data key cache if possible.
+     *
+     * @return The raw data key, which the caller has to overwrite with zeros.
+     */
+    private byte[] unwrapDataKey(String key_id, KeyHandle keyHandle, byte[] wrappedKey)
+            throws GeneralSecurityException {
+        DataKeyCache cache = dataKeyCache;
+        byte[] dataKey = cache == null ? null : cache.get(key_id, wrappedKey);
+        if (dataKey != null) return dataKey;
+
+        dataKey = decryptData(keyHandle, wrappedKey);
+        if (cache != null) cache.put(key_id, wrappedKey, dataKey);
+        return dataKey;
+    }
+
+    /**
+     * Loads the key with the provided key identifier.
+     * <p>
+     * This method checks that a key with the given `key_id` exists and resolves the key and its
+     * {@link KeyProfile} right away, so that subsequent cryptographic operations involving the
+     * specified key do not have to access the keystore anymore.
+     *
+     * @param key_id The unique identifier of the key to be loaded.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws UnrecoverableKeyException if the key cannot be retrieved from the keystore.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     */
+    public void loadKey(String key_id) throws KeyStoreException, UnrecoverableKeyException, CertificateException,
+            IOException, NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
+        long start = metrics.start();
+        String algorithm = null;
+        try {
+            algorithm = resolveKey(key_id).getProfile().getAlgorithmName();
+        } finally {
+            metrics.record(CryptoMetrics.Operation.LOAD_KEY, algorithm, start, 0, algorithm != null);
+        }
+    }
+
+    /**
+     * Opens a session on the key with the provided key identifier.
+     * <p>
+     * The key is resolved once when the session is opened. All operations of the returned
+     * {@link CryptoSession} use the resolved key directly, so they neither access the keystore nor the
+     * key handle cache. This is meant for callers that run many operations with the same key.
+     *
+     * @param key_id The unique identifier of the key to be used by the session.
+     * @return A new session on the key, which should be closed when it is no longer needed.
+     * @throws KeyStoreException if there is an issue accessing the keystore.
+     * @throws UnrecoverableKeyException if the key cannot be retrieved from the keystore.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     */
+    public CryptoSession openSession(String key_id) throws KeyStoreException, UnrecoverableKeyException,
+            CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        return new CryptoSession(this, resolveKey(key_id));
+    }
+
+    /**
+     * Deletes the key with the given identifier from the Android KeyStore.
+     * <p>
+     * The cached handle of the key and the cached data keys wrapped with it are dropped as well, so that
+     * later operations on the same alias cannot use the deleted key anymore.
+     *
+     * @param key_id The unique identifier of the key to be deleted.
+     * @throws KeyStoreException if there is an issue accessing the keystore or the key cannot be removed.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     */
+    public void deleteKey(String key_id) throws KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException {
+        keyCache.invalidate(key_id);
+        DataKeyCache cache = dataKeyCache;
+        if (cache != null) cache.invalidate(key_id);
+        backend.deleteKey(key_id);
+    }
+
+    /**
+     * Returns how many key lookups were answered from the key handle cache.
+     *
+     * @return The number of cache hits since this {@code CryptoManager} was created.
+     */
+    public long getKeyCacheHitCount() {
+        return keyCache.getHitCount();
+    }
+
+    /**
+     * Returns how many key lookups had to go to the keystore because the key was not cached yet.
+     *
+     * @return The number of cache misses since this {@code CryptoManager} was created.
+     */
+    public long getKeyCacheMissCount() {
+        return keyCache.getMissCount();
+    }
+
+    /**
+     * Sets the data size from which {@link #signData(String, byte[])} hashes the data in-process and only passes
+     * the digest to the keystore.
+     * <p>
+     * Otherwise the data itself is streamed into the keystore, which for StrongBox keys means through the slow
+     * interface of the secure element. The signature is the same either way, the key signs the digest with
+     * {@code NONEwithECDSA} or {@code NONEwithRSA} instead of the algorithm of the key. This requires keys that
+     * allow {@code DIGEST_NONE}, which only key pairs generated from a spec with the ";PreHash" option do, see
+     * {@link KeyGenSpec#isPreHash()}. All other keys are always signed the regular way.
+     *
+     * @param bytes The minimum data size in bytes, 0 to always hash in-process, {@link Integer#MAX_VALUE} to never.
+     * @throws IllegalArgumentException if {@code bytes} is negative.
+     */
+    public void setPreHashThreshold(int bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("The threshold must not be negative.");
+        preHashThreshold = bytes;
+    }
+
+    /**
+     * Returns the data size from which data is hashed in-process before signing, see
+     * {@link #setPreHashThreshold(int)}.
+     *
+     * @return The minimum data size in bytes.
+     */
+    public int getPreHashThreshold() {
+        return preHashThreshold;
+    }
+
+    /**
+     * Sets whether signatures are verified with a software copy of the public key instead of the keystore.
+     * <p>
+     * Verification needs no secret material. With this mode enabled, {@link #verifySignature(String, byte[], byte[])},
+     * {@link #newVerifier(String)} and the sessions convert the public key of a key pair to a key of the default
+     * software provider once and keep it with the cached key. Verification then never goes through the keystore
+     * or the secure element, and it scales with the number of cores. The results are the same. Signing always
+     * uses the keystore. {@link #verifyBatch(String, List, List)} always verifies in software.
+     *
+     * @param enabled {@code true} to verify in software, {@code false} to verify with the keystore, which is the
+     *                default.
+     */
+    public void setSoftwareVerification(boolean enabled) {
+        softwareVerification = enabled;
+    }
+
+    /**
+     * Returns whether signatures are verified in software, see {@link #setSoftwareVerification(boolean)}.
+     *
+     * @return {@code true} if verification does not use the keystore.
+     */
+    public boolean isSoftwareVerification() {
+        return softwareVerification;
+    }
+
+    /**
+     * Returns the metrics of the operations of this {@code CryptoManager}.
+     * <p>
+     * Every operation records its count, latency and processed bytes, per key algorithm, into the returned
+     * instance. Call {@link CryptoMetrics#snapshot()} to poll the collected data.
+     *
+     * @return The metrics of this instance, which are enabled by default.
+     */
+    public CryptoMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the handle of the key stored under the given alias.
+     * <p>
+     * The handle is taken from the key handle cache if possible. Otherwise, the key, its public key and
+     * its {@link KeyProfile} are resolved from the backend once and cached for later operations.
+     *
+     * @param key_id The unique identifier of the key.
+     * @return The resolved handle of the key.
+     * @throws UnrecoverableKeyException if the key does not exist or cannot be recovered from the keystore.
+     * @throws KeyStoreException if there is an error accessing the keystore or the key type is unsupported.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     */
+    private KeyHandle resolveKey(String key_id) throws UnrecoverableKeyException, KeyStoreException,
+            CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
+        long start = metrics.start();
+        KeyHandle keyHandle = keyCache.get(key_id);
+        if (keyHandle != null) {
+            metrics.record(CryptoMetrics.Operation.KEY_LOOKUP, "cache", start, 0, true);
+            return keyHandle;
+        }
+
+        long loadStart = metrics.start();
+        try {
+            keyHandle = backend.loadKey(key_id);
+        } finally {
+            boolean success = keyHandle != null;
+            metrics.record(CryptoMetrics.Operation.KEYSTORE_LOAD, backend.getClass().getSimpleName(), loadStart, 0,
+                    success);
+            metrics.record(CryptoMetrics.Operation.KEY_LOOKUP, "keystore", start, 0, success);
+        }
+        keyCache.put(keyHandle);
+        return keyHandle;
+    }
+
+    /**
+     * Returns the calling thread's pooled {@link Cipher} for the given key, initialized for encryption with a
+     * freshly generated IV.
+     *
+     * @param keyHandle The handle of the symmetric key.
+     * @return The initialized cipher.
+     * @throws InvalidKeyException if the key cannot be used for encryption.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws NoSuchPaddingException if the requested padding scheme is not available.
+     */
+    private Cipher initEncryption(KeyHandle keyHandle) throws InvalidKeyException, NoSuchAlgorithmException,
+            NoSuchPaddingException {
+        KeyProfile profile = keyHandle.getProfile();
+        if (profile.getMode() == KeyProfile.Mode.NONE) {
+            throw new InvalidKeyException("Key " + keyHandle.getAlias() + " cannot be used for encryption.");
+        }
+        Cipher cipher = cipherPool.getCipher(profile.getTransformation());
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, keyHandle.getKey());
+            success = true;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.CIPHER_INIT, profile.getTransformation(), start, 0, success);
+        }
+        assert cipher.getIV().length == profile.getIvLength() : "IV length not matching.";
+        return cipher;
+    }
+
+
+    /**
+     * Returns the calling thread's pooled {@link Cipher} for the given key, initialized for decryption with the
+     * IV found at the given position.
+     *
+     * @param keyHandle The handle of the symmetric key.
+     * @param iv Array containing the IV.
+     * @param offset Offset of the IV in {@code iv}.
+     * @return The initialized cipher.
+     * @throws InvalidKeyException if the key cannot be used for decryption.
+     * @throws InvalidAlgorithmParameterException if the IV parameter is invalid.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws NoSuchPaddingException if the requested padding scheme is not available.
+     */
+    private Cipher initDecryption(KeyHandle keyHandle, byte[] iv, int offset) throws InvalidKeyException,
+            InvalidAlgorithmParameterException, NoSuchAlgorithmException, NoSuchPaddingException {
+        KeyProfile profile = keyHandle.getProfile();
+        AlgorithmParameterSpec parameterSpec;
+        switch (profile.getMode()) {
+            case GCM:
+                parameterSpec = new GCMParameterSpec(profile.getTagLength(), iv, offset, profile.getIvLength());
+                break;
+            case CBC:
+            case CTR:
+                parameterSpec = new IvParameterSpec(iv, offset, profile.getIvLength());
+                break;
+            default:
+                throw new InvalidKeyException("Key " + keyHandle.getAlias() + " cannot be used for decryption.");
+        }
+        Cipher cipher = cipherPool.getCipher(profile.getTransformation());
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, keyHandle.getKey(), parameterSpec);
+            success = true;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.CIPHER_INIT, profile.getTransformation(), start, 0, success);
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns the calling thread's pooled {@link Signature} for the given key pair, initialized for signing with
+     * the private key or for verification with the public key. In software verification mode, the signature
+     * for verification comes from the software pool, see {@link #setSoftwareVerification(boolean)}.
+     *
+     * @param keyHandle The handle of the key pair.
+     * @param sign {@code true} to initialize for signing, {@code false} for verification.
+     * @return The initialized signature.
+     * @throws InvalidKeyException if the key cannot be used for signing or verification.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     */
+    private Signature initSignature(KeyHandle keyHandle, boolean sign) throws InvalidKeyException,
+            NoSuchAlgorithmException {
+        String algorithm = keyHandle.getProfile().getSignatureAlgorithm();
+        if (!sign && softwareVerification) {
+            return initSoftwareVerification(keyHandle, softwareCipherPool.getSignature(algorithm));
+        }
+        return initSignature(keyHandle, cipherPool.getSignature(algorithm), sign);
+    }
+
+    /**
+     * Returns a new {@link Signature} for the given key pair that is not shared with other operations.
+     *
+     * @param keyHandle The handle of the key pair.
+     * @return The uninitialized signature.
+     * @throws InvalidKeyException if the key is not a key pair.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     */
+    private static Signature newSignature(KeyHandle keyHandle) throws InvalidKeyException, NoSuchAlgorithmException {
+        String algorithm = keyHandle.getProfile().getSignatureAlgorithm();
+        if (algorithm == null) throw new InvalidKeyException("Key " + keyHandle.getAlias() + " is not a key pair.");
+        return Signature.getInstance(algorithm);
+    }
+
+    /**
+     * Hashes the data with the digest of the given key pair in-process and records it as
+     * {@link CryptoMetrics.Operation#DIGEST}.
+     *
+     * @param profile The profile of a key pair that can sign digests, see {@link KeyProfile#getPreHashAlgorithm()}.
+     * @param data The data to be hashed. Its position is advanced to its limit.
+     * @return The input of the pre-hash signature, see {@link KeyProfile#toPreHashInput(byte[])}.
+     * @throws NoSuchAlgorithmException if the digest algorithm is not available.
+     */
+    private byte[] preHash(KeyProfile profile, ByteBuffer data) throws NoSuchAlgorithmException {
+        long start = metrics.start();
+        int dataLength = data.remaining();
+        boolean success = false;
+        try {
+            MessageDigest digest = cipherPool.getMessageDigest(profile.getDigest());
+            digest.update(data);
+            byte[] input = profile.toPreHashInput(digest.digest());
+            success = true;
+            return input;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.DIGEST, profile.getDigest(), start, dataLength, success);
+        }
+    }
+
+    /**
+     * Initializes the given signature for the given key pair, for signing with the private key or for
+     * verification with the public key.
+     *
+     * @param keyHandle The handle of the key pair.
+     * @param signature The signature for the algorithm of the key pair.
+     * @param sign {@code true} to initialize for signing, {@code false} for verification.
+     * @return The initialized signature.
+     * @throws InvalidKeyException if the key cannot be used for signing or verification.
+     */
+    private Signature initSignature(KeyHandle keyHandle, Signature signature, boolean sign)
+            throws InvalidKeyException {
+        String algorithm = signature.getAlgorithm();
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            if (sign) {
+                signature.initSign((PrivateKey) keyHandle.getKey());
+            } else {
+                signature.initVerify(keyHandle.getPublicKey());
+            }
+            success = true;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.CIPHER_INIT, algorithm, start, 0, success);
+        }
+        return signature;
+    }
+
+    /**
+     * Initializes the given signature for verification with the software copy of the public key of the given
+     * key pair, see {@link #setSoftwareVerification(boolean)}.
+     *
+     * @param keyHandle The handle of the key pair.
+     * @param signature The signature for the algorithm of the key pair, which must not have been initialized
+     *                  with a keystore key before.
+     * @return The initialized signature.
+     * @throws InvalidKeyException if the key is not a key pair or cannot be used for verification.
+     * @throws NoSuchAlgorithmException if the key algorithm is not available.
+     */
+    private Signature initSoftwareVerification(KeyHandle keyHandle, Signature signature)
+            throws InvalidKeyException, NoSuchAlgorithmException {
+        long start = metrics.start();
+        boolean success = false;
+        try {
+            signature.initVerify(keyHandle.getSoftwarePublicKey());
+            success = true;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.CIPHER_INIT, signature.getAlgorithm(), start, 0, success);
+        }
+        return signature;
+    }
+
+    /**
+     * Runs {@code doFinal} of an initialized cipher on buffers and records it as {@link CryptoMetrics.Operation#DO_FINAL}.
+     *
+     * @param keyHandle The handle of the key the cipher was initialized with.
+     * @param cipher The initialized cipher.
+     * @param input The data to be processed.
+     * @param output The buffer receiving the result.
+     * @return The number of bytes written to {@code output}.
+     * @throws IllegalBlockSizeException if the data length is invalid for the algorithm.
+     * @throws BadPaddingException if the data could not be padded or unpadded correctly.
+     * @throws ShortBufferException if {@code output} is too small to hold the result.
+     */
+    private int doFinal(KeyHandle keyHandle, Cipher cipher, ByteBuffer input, ByteBuffer output)
+            throws IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+        long start = metrics.start();
+        int inputLength = input.remaining();
+        boolean success = false;
+        try {
+            int length = cipher.doFinal(input, output);
+            success = true;
+            return length;
+        } finally {
+            metrics.record(CryptoMetrics.Operation.DO_FINAL, keyHandle.getProfile().getAlgorithmName(), start,
+                    inputLength, success);
+        }
+    }
+
+    /**
+     * Returns the handle of the given key and checks that it is a symmetric key that can be used for
+     * encryption and decryption.
+     *
+     * @param key_id The unique identifier of the key.
+     * @return The resolved handle of the key.
+     * @throws InvalidKeyException if the key cannot be used for encryption.
+     * @throws UnrecoverableKeyException if the key does not exist or cannot be recovered from the keystore.
+     * @throws KeyStoreException if there is an error accessing the keystore or the key type is unsupported.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     */
+    private KeyHandle resolveEncryptionKey(String key_id) throws InvalidKeyException, UnrecoverableKeyException,
+            KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        KeyHandle keyHandle = resolveKey(key_id);
+        if (keyHandle.getProfile().getMode() == KeyProfile.Mode.NONE) {
+            throw new InvalidKeyException("Key " + key_id + " cannot be used for encryption.");
+        }
+        return keyHandle;
+    }
+
+    /**
+     * Returns the handle of the given key and checks that it is an AES-GCM key.
+     *
+     * @param key_id The unique identifier of the key.
+     * @return The resolved handle of the key.
+     * @throws InvalidKeyException if the key is not an AES-GCM key.
+     * @throws UnrecoverableKeyException if the key does not exist or cannot be recovered from the keystore.
+     * @throws KeyStoreException if there is an error accessing the keystore or the key type is unsupported.
+     * @throws CertificateException if there is an error processing certificates.
+     * @throws IOException if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the requested security provider is not available.
+     */
+    private KeyHandle resolveGcmKey(String key_id) throws InvalidKeyException, UnrecoverableKeyException,
+            KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        KeyHandle keyHandle = resolveKey(key_id);
+        if (keyHandle.getProfile().getMode() != KeyProfile.Mode.GCM) {
+            throw new InvalidKeyException("Key " + key_id + " is not an AES-GCM key.");
+        }
+        return keyHandle;
+    }
+}
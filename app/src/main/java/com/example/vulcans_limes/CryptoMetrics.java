@@ -0,0 +1,176 @@
+package com.example.vulcans_limes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class collects counters and latency histograms of the operations of a {@link CryptoManager}.
+ * <p>
+ * Every operation is measured per tag, which is the transformation or signature algorithm of the key for
+ * operations on keys and the key generation parameters for key generation. Besides the complete operations,
+ * the phases they consist of are measured separately, see {@link Operation}. Recording takes two calls of
+ * {@link System#nanoTime()}, a map lookup and a few atomic increments, so metrics are enabled by default.
+ * They can be disabled with {@link #setEnabled(boolean)}, which reduces the cost to a volatile read.
+ * <p>
+ * The collected data is polled with {@link #snapshot()}. Metrics only ever grow until {@link #reset()} is
+ * called, so callers that need rates compute the difference between two snapshots.
+ * <p>
+ * The metrics of the {@code CryptoManager} serving the calls from the Rust code also contain
+ * {@link Operation#JNI_CALL}. These are counted by the Rust code itself and are not affected by
+ * {@link #setEnabled(boolean)}.
+ */
+public final class CryptoMetrics {
+    /**
+     * The measured operations. The first seven are the operations of {@link CryptoManager}, the others are
+     * phases of these operations and the calls from the Rust code into them.
+     */
+    public enum Operation {
+        /** Generating a symmetric key. */
+        GEN_KEY,
+        /** Generating a key pair. */
+        GENERATE_KEY_PAIR,
+        /** Encrypting data, including cipher initialization. */
+        ENCRYPT,
+        /** Decrypting data, including cipher initialization. */
+        DECRYPT,
+        /** Signing data, including signature initialization. */
+        SIGN,
+        /** Verifying a signature, including signature initialization. */
+        VERIFY,
+        /** Loading a key explicitly. */
+        LOAD_KEY,
+        /** Resolving a key from its identifier, tagged "cache" for cache hits and "keystore" otherwise. */
+        KEY_LOOKUP,
+        /** Loading a key from the keystore backend after a cache miss, tagged with the backend. */
+        KEYSTORE_LOAD,
+        /** Initializing a {@code Cipher} or {@code Signature} with a key. */
+        CIPHER_INIT,
+        /** Processing the data: {@code doFinal} of a cipher, or updating and completing a signature. */
+        DO_FINAL,
+        /** Hashing data in-process before only the digest is signed by the key, tagged with the digest. */
+        DIGEST,
+        /**
+         * A call of a method of {@link RustDef} from the Rust code, tagged with the method. It is measured in Rust
+         * around the whole call, so it includes crossing the JNI boundary in both directions. Bytes are not counted.
+         */
+        JNI_CALL
+    }
+
+    private final Map<Operation, ConcurrentMap<String, OperationStats>> stats =
+            new EnumMap<>(Operation.class);
+    private volatile boolean enabled = true;
+    private volatile boolean bridgeMetricsIncluded;
+
+    /**
+     * Creates a new, enabled instance without any measurements.
+     */
+    public CryptoMetrics() {
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new ConcurrentHashMap<String, OperationStats>());
+        }
+    }
+
+    /**
+     * Returns whether measurements are recorded.
+     *
+     * @return {@code true} if metrics are enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables recording. Measurements collected so far are kept.
+     *
+     * @param enabled Whether measurements are recorded.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the current measurements of all operations and tags that have been recorded at least once.
+     *
+     * @return A list of snapshots, ordered by operation.
+     */
+    public List<OperationSnapshot> snapshot() {
+        List<OperationSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<Operation, ConcurrentMap<String, OperationStats>> operation : stats.entrySet()) {
+            for (Map.Entry<String, OperationStats> tag : operation.getValue().entrySet()) {
+                snapshots.add(tag.getValue().snapshot(operation.getKey(), tag.getKey()));
+            }
+        }
+        if (bridgeMetricsIncluded) addBridgeSnapshots(snapshots);
+        return snapshots;
+    }
+
+    /**
+     * Discards all measurements collected so far.
+     */
+    public void reset() {
+        for (ConcurrentMap<String, OperationStats> tags : stats.values()) tags.clear();
+        if (bridgeMetricsIncluded) RustDef.resetBridgeMetrics();
+    }
+
+    /**
+     * Includes the call statistics the Rust code keeps of its calls into Java as {@link Operation#JNI_CALL}.
+     * Only set for the metrics of the {@code CryptoManager} of {@link RustDef}, which has loaded the library.
+     *
+     * @param included Whether the statistics of the Rust code are part of the snapshots.
+     */
+    void setBridgeMetricsIncluded(boolean included) {
+        this.bridgeMetricsIncluded = included;
+    }
+
+    /**
+     * Returns the start time of a measurement.
+     *
+     * @return The current {@link System#nanoTime()}, or 0 if metrics are disabled.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a run of an operation that was started at {@code start}.
+     *
+     * @param operation The operation.
+     * @param tag       The tag of the run, {@code null} is recorded as an empty tag.
+     * @param start     The value returned by {@link #start()} when the run began.
+     * @param bytes     The number of bytes processed.
+     * @param success   Whether the run completed without an exception.
+     */
+    void record(Operation operation, String tag, long start, long bytes, boolean success) {
+        if (!enabled || start == 0) return;
+        long nanos = System.nanoTime() - start;
+        if (tag == null) tag = "";
+        ConcurrentMap<String, OperationStats> tags = stats.get(operation);
+        OperationStats operationStats = tags.get(tag);
+        if (operationStats == null) {
+            OperationStats created = new OperationStats();
+            operationStats = tags.putIfAbsent(tag, created);
+            if (operationStats == null) operationStats = created;
+        }
+        operationStats.record(nanos, bytes, success);
+    }
+
+    private static void addBridgeSnapshots(List<OperationSnapshot> snapshots) {
+        // calls, failures, total and maximum nanoseconds, then the histogram, per method
+        int fields = 4 + OperationStats.BUCKETS;
+        long[] values = RustDef.bridgeMetrics();
+        List<String> methods = RustDef.bridgeMethodNames();
+        if (values == null || values.length != methods.size() * fields) return;
+        for (int i = 0; i < methods.size(); i++) {
+            int offset = i * fields;
+            if (values[offset] == 0) continue;
+            long[] histogram = Arrays.copyOfRange(values, offset + 4, offset + fields);
+            snapshots.add(new OperationSnapshot(Operation.JNI_CALL, methods.get(i), values[offset],
+                    values[offset + 1], 0, values[offset + 2], values[offset + 3], histogram));
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.example.vulcans_limes;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+
+/**
+ * This class provides cryptographic operations on a single key, which is opened once with
+ * {@link CryptoManager#openSession(String)} and then used for any number of operations.
+ * <p>
+ * The key and its profile are resolved when the session is opened and are held by the session until it is
+ * closed. Operations of a session therefore never look up the key again, neither in the keystore nor in the
+ * key handle cache. A session can be used by several threads at the same time. After {@link #close()},
+ * every operation fails with an {@link IllegalStateException}.
+ * <p>
+ * Deleting the key does not close its open sessions, but their operations will fail once the keystore
+ * no longer holds the key material.
+ */
+public final class CryptoSession implements Closeable {
+    private final CryptoManager cryptoManager;
+    private final KeyHandle keyHandle;
+    private volatile boolean closed;
+
+    /**
+     * Creates a session on an already resolved key.
+     *
+     * @param cryptoManager The manager performing the operations.
+     * @param keyHandle     The handle of the key used by this session.
+     */
+    CryptoSession(CryptoManager cryptoManager, KeyHandle keyHandle) {
+        this.cryptoManager = cryptoManager;
+        this.keyHandle = keyHandle;
+    }
+
+    /**
+     * Returns the identifier of the key this session works with.
+     *
+     * @return The unique identifier of the key.
+     */
+    public String getKeyId() {
+        return keyHandle.getAlias();
+    }
+
+    /**
+     * Encrypts the given data with the key of this session, see {@link CryptoManager#encryptData(String, byte[])}.
+     *
+     * @param data The plaintext data to be encrypted.
+     * @return The encrypted data, with the IV prepended.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key cannot be used for encryption.
+     * @throws IllegalBlockSizeException if the data length is invalid for the encryption algorithm.
+     * @throws BadPaddingException       if the data could not be padded correctly for encryption.
+     */
+    public byte[] encryptData(byte[] data) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return cryptoManager.encryptData(checkOpen(), data);
+    }
+
+    /**
+     * Encrypts the data remaining in {@code input} with the key of this session and writes the result to
+     * {@code output}, see {@link CryptoManager#encryptData(String, ByteBuffer, ByteBuffer)}.
+     *
+     * @param input  The plaintext data to be encrypted.
+     * @param output The buffer receiving IV and ciphertext.
+     * @return The number of bytes written to {@code output}.
+     * @throws NoSuchPaddingException    if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key cannot be used for encryption.
+     * @throws IllegalBlockSizeException if the data length is invalid for the encryption algorithm.
+     * @throws BadPaddingException       if the data could not be padded correctly for encryption.
+     * @throws ShortBufferException      if {@code output} is too small to hold the result.
+     */
+    public int encryptData(ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException,
+            ShortBufferException {
+        return cryptoManager.encryptData(checkOpen(), input, output);
+    }
+
+    /**
+     * Decrypts the given data with the key of this session, see {@link CryptoManager#decryptData(String, byte[])}.
+     *
+     * @param encryptedData The encrypted data, starting with the IV.
+     * @return The decrypted data.
+     * @throws NoSuchPaddingException             if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws InvalidAlgorithmParameterException if the IV parameter is invalid.
+     * @throws InvalidKeyException                if the key cannot be used for decryption.
+     * @throws IllegalBlockSizeException          if the data length is invalid for the decryption algorithm.
+     * @throws BadPaddingException                if the data could not be unpadded or authenticated.
+     */
+    public byte[] decryptData(byte[] encryptedData) throws NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException {
+        return cryptoManager.decryptData(checkOpen(), encryptedData);
+    }
+
+    /**
+     * Decrypts the data remaining in {@code input} with the key of this session and writes the plaintext to
+     * {@code output}, see {@link CryptoManager#decryptData(String, ByteBuffer, ByteBuffer)}.
+     *
+     * @param input  The encrypted data, starting with the IV.
+     * @param output The buffer receiving the plaintext.
+     * @return The number of bytes written to {@code output}.
+     * @throws NoSuchPaddingException             if the requested padding scheme is not available.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws InvalidAlgorithmParameterException if the IV parameter is invalid.
+     * @throws InvalidKeyException                if the key cannot be used for decryption.
+     * @throws IllegalBlockSizeException          if the data length is invalid for the decryption algorithm.
+     * @throws BadPaddingException                if the data could not be unpadded or authenticated.
+     * @throws ShortBufferException               if {@code output} is too small to hold the result.
+     */
+    public int decryptData(ByteBuffer input, ByteBuffer output) throws NoSuchPaddingException,
+            NoSuchAlgorithmException, InvalidAlgorithmParameterException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+        return cryptoManager.decryptData(checkOpen(), input, output);
+    }
+
+    /**
+     * Signs the given data with the key of this session, see {@link CryptoManager#signData(String, byte[])}.
+     *
+     * @param data The data to be signed.
+     * @return The signature of the data.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for signing.
+     * @throws SignatureException       if there is an error during the signing process.
+     */
+    public byte[] signData(byte[] data) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return cryptoManager.signData(checkOpen(), data);
+    }
+
+    /**
+     * Signs the data remaining in the given buffer with the key of this session,
+     * see {@link CryptoManager#signData(String, ByteBuffer)}.
+     *
+     * @param data The data to be signed.
+     * @return The signature of the data.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for signing.
+     * @throws SignatureException       if there is an error during the signing process.
+     */
+    public byte[] signData(ByteBuffer data) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return cryptoManager.signData(checkOpen(), data);
+    }
+
+    /**
+     * Verifies a signature with the key of this session,
+     * see {@link CryptoManager#verifySignature(String, byte[], byte[])}.
+     *
+     * @param data        The data that was originally signed.
+     * @param signedBytes The signature to be verified.
+     * @return {@code true} if the signature matches the data; {@code false} otherwise.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for verification.
+     * @throws SignatureException       if there is an error during the verification process.
+     */
+    public boolean verifySignature(byte[] data, byte[] signedBytes) throws NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        return cryptoManager.verifySignature(checkOpen(), data, signedBytes);
+    }
+
+    /**
+     * Verifies a signature over the data remaining in the given buffer with the key of this session,
+     * see {@link CryptoManager#verifySignature(String, ByteBuffer, byte[])}.
+     *
+     * @param data        The data that was originally signed.
+     * @param signedBytes The signature to be verified.
+     * @return {@code true} if the signature matches the data; {@code false} otherwise.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws InvalidKeyException      if the key cannot be used for verification.
+     * @throws SignatureException       if there is an error during the verification process.
+     */
+    public boolean verifySignature(ByteBuffer data, byte[] signedBytes) throws NoSuchAlgorithmException,
+            InvalidKeyException, SignatureException {
+        return cryptoManager.verifySignature(checkOpen(), data, signedBytes);
+    }
+
+    /**
+     * Verifies a batch of signatures with the key of this session,
+     * see {@link CryptoManager#verifyBatch(String, List, List)}.
+     *
+     * @param data       The records that were originally signed.
+     * @param signatures The signature of every record, in the same order as {@code data}.
+     * @return The results, with bit {@code i} set if the signature of record {@code i} is valid.
+     * @throws NoSuchAlgorithmException if the key algorithm is not available.
+     * @throws InvalidKeyException      if the key is not a key pair or cannot be used for verification.
+     */
+    public BitSet verifyBatch(List<byte[]> data, List<byte[]> signatures) throws NoSuchAlgorithmException,
+            InvalidKeyException {
+        return cryptoManager.verifyBatch(checkOpen(), data, signatures);
+    }
+
+    /**
+     * Returns a signer for documents passed in pieces with the key of this session,
+     * see {@link CryptoManager#newSigner(String)}. The signer stays usable after the session is closed.
+     *
+     * @return A new signer.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws InvalidKeyException      if the key is not a key pair or cannot be used for signing.
+     */
+    public Signer newSigner() throws NoSuchAlgorithmException, InvalidKeyException {
+        return cryptoManager.newSigner(checkOpen());
+    }
+
+    /**
+     * Returns a verifier for documents passed in pieces with the key of this session,
+     * see {@link CryptoManager#newVerifier(String)}. The verifier stays usable after the session is closed.
+     *
+     * @return A new verifier.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws InvalidKeyException      if the key is not a key pair or cannot be used for verification.
+     */
+    public Verifier newVerifier() throws NoSuchAlgorithmException, InvalidKeyException {
+        return cryptoManager.newVerifier(checkOpen());
+    }
+
+    /**
+     * Returns whether this session has been closed.
+     *
+     * @return {@code true} if {@link #close()} has been called.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Closes this session. Closing a session that is already closed has no effect.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private KeyHandle checkOpen() {
+        if (closed) throw new IllegalStateException("Session for key " + keyHandle.getAlias() + " is closed.");
+        return keyHandle;
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.vulcans_limes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides a bounded cache of the unwrapped data keys of envelopes, see {@link Envelope}.
+ * <p>
+ * Unwrapping a data key is an operation of the secure hardware, while everything else about an envelope is
+ * done in software. Messages that share a wrapped data key therefore only need the hardware for the first
+ * message if the unwrapped key is kept here. Entries are keyed by the keystore key and the bytes of the wrapped
+ * data key, expire after a maximum age and are dropped in least recently used order when the cache is full.
+ * Expired entries are dropped when they are looked up or become the least recently used one. The raw key bytes
+ * of an entry are overwritten with zeros as soon as it is dropped.
+ * <p>
+ * Only if encryption key reuse is enabled, the cache also keeps the current data key of every keystore key for
+ * encryption, so that consecutive envelopes share a wrapped data key until it expires or has been used
+ * {@link #MAX_ENCRYPTIONS_PER_KEY} times. Otherwise every envelope gets a data key of its own.
+ */
+final class DataKeyCache {
+    // far below the 2^32 messages allowed for a single AES-GCM key with random nonces
+    static final long MAX_ENCRYPTIONS_PER_KEY = 1L << 20;
+
+    private final long maxAgeNanos;
+    private final boolean encryptionKeyReuse;
+    private final Map<WrappedKey, CachedKey> entries;
+    // the data key used for new envelopes, per keystore key; guarded by entries
+    private final Map<String, CachedKey> encryptionKeys = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxEntries         The maximum number of data keys kept in the cache, has to be at least 1.
+     * @param maxAgeNanos        The time after which a data key is dropped, in nanoseconds, has to be positive.
+     * @param encryptionKeyReuse Whether new envelopes share the current data key of their keystore key.
+     * @throws IllegalArgumentException if {@code maxEntries} or {@code maxAgeNanos} is out of range.
+     */
+    DataKeyCache(final int maxEntries, long maxAgeNanos, boolean encryptionKeyReuse) {
+        if (maxEntries < 1 || maxAgeNanos <= 0) {
+            throw new IllegalArgumentException("The cache has to hold at least one entry for a positive time.");
+        }
+        this.maxAgeNanos = maxAgeNanos;
+        this.encryptionKeyReuse = encryptionKeyReuse;
+        // access order, so that the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<WrappedKey, CachedKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<WrappedKey, CachedKey> eldest) {
+                if (size() <= maxEntries && !isExpired(eldest.getValue())) return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the unwrapped data key for the given wrapped data key and counts the lookup as hit or miss.
+     *
+     * @param keyId      The unique identifier of the keystore key the data key was wrapped with.
+     * @param wrappedKey The wrapped data key.
+     * @return A copy of the data key, which the caller should overwrite once it is no longer needed, or
+     * {@code null} if the data key is not cached.
+     */
+    byte[] get(String keyId, byte[] wrappedKey) {
+        byte[] dataKey = null;
+        synchronized (entries) {
+            WrappedKey cacheKey = new WrappedKey(keyId, wrappedKey);
+            CachedKey entry = entries.get(cacheKey);
+            if (entry != null && isExpired(entry)) {
+                entries.remove(cacheKey);
+                evict(entry);
+            } else if (entry != null) {
+                dataKey = entry.dataKey.clone();
+            }
+        }
+        if (dataKey == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return dataKey;
+    }
+
+    /**
+     * Stores an unwrapped data key.
+     *
+     * @param keyId      The unique identifier of the keystore key the data key was wrapped with.
+     * @param wrappedKey The wrapped data key.
+     * @param dataKey    The unwrapped data key, which is copied.
+     */
+    void put(String keyId, byte[] wrappedKey, byte[] dataKey) {
+        synchronized (entries) {
+            store(new CachedKey(keyId, wrappedKey.clone(), dataKey.clone(), System.nanoTime()));
+        }
+    }
+
+    /**
+     * Returns whether new envelopes share the current data key of their keystore key, see
+     * {@link #acquireEncryptionKey(String)}.
+     *
+     * @return {@code true} if data keys are reused for encryption.
+     */
+    boolean isEncryptionKeyReuse() {
+        return encryptionKeyReuse;
+    }
+
+    /**
+     * Returns the current data key for new envelopes of the given keystore key and counts it as used.
+     *
+     * @param keyId The unique identifier of the keystore key.
+     * @return Copies of the wrapped and the unwrapped data key, or {@code null} if a new data key has to be
+     * generated, which is always the case if encryption key reuse is disabled.
+     */
+    byte[][] acquireEncryptionKey(String keyId) {
+        if (!encryptionKeyReuse) return null;
+        synchronized (entries) {
+            CachedKey entry = encryptionKeys.get(keyId);
+            if (entry == null) return null;
+            if (entry.destroyed || isExpired(entry) || entry.encryptions >= MAX_ENCRYPTIONS_PER_KEY) {
+                encryptionKeys.remove(keyId);
+                return null;
+            }
+            entry.encryptions++;
+            return new byte[][]{entry.wrappedKey.clone(), entry.dataKey.clone()};
+        }
+    }
+
+    /**
+     * Stores a newly generated data key as the current data key for new envelopes of the given keystore key.
+     * It is also available for decryption, see {@link #get(String, byte[])}. Does nothing if encryption key
+     * reuse is disabled, as the data key is never used again then.
+     *
+     * @param keyId      The unique identifier of the keystore key.
+     * @param wrappedKey The wrapped data key.
+     * @param dataKey    The unwrapped data key, which is copied.
+     */
+    void putEncryptionKey(String keyId, byte[] wrappedKey, byte[] dataKey) {
+        if (!encryptionKeyReuse) return;
+        synchronized (entries) {
+            CachedKey entry = new CachedKey(keyId, wrappedKey.clone(), dataKey.clone(), System.nanoTime());
+            entry.encryptions = 1;
+            store(entry);
+            encryptionKeys.put(keyId, entry);
+        }
+    }
+
+    /**
+     * Drops all data keys wrapped with the given keystore key, e.g. because the key was deleted.
+     *
+     * @param keyId The unique identifier of the keystore key.
+     */
+    void invalidate(String keyId) {
+        synchronized (entries) {
+            encryptionKeys.remove(keyId);
+            Iterator<CachedKey> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                CachedKey entry = iterator.next();
+                if (entry.keyId.equals(keyId)) {
+                    iterator.remove();
+                    entry.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all data keys.
+     */
+    void clear() {
+        synchronized (entries) {
+            for (CachedKey entry : entries.values()) entry.destroy();
+            entries.clear();
+            encryptionKeys.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    long getEvictionCount() {
+        return evictions.get();
+    }
+
+    private void store(CachedKey entry) {
+        CachedKey previous = entries.put(new WrappedKey(entry.keyId, entry.wrappedKey), entry);
+        if (previous != null) previous.destroy();
+    }
+
+    private boolean isExpired(CachedKey entry) {
+        return System.nanoTime() - entry.created > maxAgeNanos;
+    }
+
+    private void evict(CachedKey entry) {
+        entry.destroy();
+        evictions.incrementAndGet();
+    }
+
+    private static final class CachedKey {
+        final String keyId;
+        final byte[] wrappedKey;
+        final byte[] dataKey;
+        final long created;
+        long encryptions;
+        boolean destroyed;
+
+        CachedKey(String keyId, byte[] wrappedKey, byte[] dataKey, long created) {
+            this.keyId = keyId;
+            this.wrappedKey = wrappedKey;
+            this.dataKey = dataKey;
+            this.created = created;
+        }
+
+        void destroy() {
+            Arrays.fill(dataKey, (byte) 0);
+            destroyed = true;
+        }
+    }
+
+    private static final class WrappedKey {
+        private final String keyId;
+        private final byte[] wrappedKey;
+        private final int hash;
+
+        WrappedKey(String keyId, byte[] wrappedKey) {
+            this.keyId = keyId;
+            this.wrappedKey = wrappedKey;
+            this.hash = 31 * keyId.hashCode() + Arrays.hashCode(wrappedKey);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof WrappedKey)) return false;
+            WrappedKey other = (WrappedKey) o;
+            return hash == other.hash && keyId.equals(other.keyId) && Arrays.equals(wrappedKey, other.wrappedKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
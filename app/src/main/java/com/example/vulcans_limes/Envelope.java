@@ -0,0 +1,183 @@
+package com.example.vulcans_limes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * This class defines the envelope format, in which bulk data is encrypted in software with a random data key
+ * and only the data key is encrypted with a key from the keystore.
+ * <p>
+ * Every message or stream gets its own 256 bit AES-GCM data key. The data key is wrapped with the keystore key
+ * like any other data, see {@link CryptoManager#encryptData(String, byte[])}, so the secure hardware only
+ * ever processes 32 bytes per envelope. An envelope starts with the following header:
+ * <pre>
+ * header: "VLE" | format (1 byte) | wrapped key length (2 bytes) | wrapped data key
+ * </pre>
+ * A message ({@link #MESSAGE}) continues with a nonce (12 bytes), the ciphertext and the tag (16 bytes). The
+ * header is authenticated as additional data, so the wrapped key cannot be exchanged without the decryption
+ * failing. A stream ({@link #STREAM}) continues with data in the {@link SegmentedAead} format, encrypted with
+ * the data key. A container ({@link #CONTAINER}) continues with segments that are indexed for parallel and
+ * random access, see {@link SegmentContainer}.
+ */
+final class Envelope {
+    static final byte MESSAGE = 1;
+    static final byte STREAM = 2;
+    static final byte CONTAINER = 3;
+    static final String DATA_KEY_TRANSFORMATION = "AES/GCM/NoPadding";
+    static final int DATA_KEY_LENGTH = 32;
+    static final int NONCE_LENGTH = KeyProfile.IV_GCM_AES;
+    static final int TAG_LENGTH = KeyProfile.TAG_SIZE_GCM / 8;
+
+    private static final byte[] MAGIC = {'V', 'L', 'E'};
+    private static final int PREFIX_LENGTH = MAGIC.length + 1 + 2;
+    private static final int MAX_WRAPPED_KEY_LENGTH = 0xffff;
+    private static final SecureRandom random = new SecureRandom();
+
+    private Envelope() {
+    }
+
+    /**
+     * Generates a new random data key. The caller should overwrite it with zeros once it is no longer needed.
+     *
+     * @return The raw data key.
+     */
+    static byte[] newDataKey() {
+        byte[] dataKey = new byte[DATA_KEY_LENGTH];
+        random.nextBytes(dataKey);
+        return dataKey;
+    }
+
+    /**
+     * Returns the data key as a key that can be used with a software cipher.
+     *
+     * @param dataKey The raw data key.
+     * @return The AES key.
+     */
+    static Key toKey(byte[] dataKey) {
+        return new SecretKeySpec(dataKey, "AES");
+    }
+
+    /**
+     * Creates the header of a new envelope.
+     *
+     * @param format     {@link #MESSAGE} or {@link #STREAM}.
+     * @param wrappedKey The data key encrypted with the keystore key.
+     * @return The header.
+     * @throws IllegalArgumentException if the wrapped key is too long.
+     */
+    static byte[] newHeader(byte format, byte[] wrappedKey) {
+        if (wrappedKey.length > MAX_WRAPPED_KEY_LENGTH) throw new IllegalArgumentException("Wrapped key is too long.");
+        return ByteBuffer.allocate(PREFIX_LENGTH + wrappedKey.length).put(MAGIC).put(format)
+                .putShort((short) wrappedKey.length).put(wrappedKey).array();
+    }
+
+    /**
+     * Checks the header at the beginning of the given envelope and returns its length.
+     *
+     * @param envelope The envelope.
+     * @param format   The expected format, {@link #MESSAGE} or {@link #STREAM}.
+     * @return The length of the header in bytes.
+     * @throws IOException if the data does not start with an envelope header of the expected format.
+     */
+    static int headerLength(byte[] envelope, byte format) throws IOException {
+        int headerLength = checkPrefix(envelope, format);
+        if (envelope.length < headerLength) throw new IOException("Envelope header is truncated.");
+        return headerLength;
+    }
+
+    /**
+     * Reads an envelope header from the given stream.
+     *
+     * @param in     The stream positioned at the beginning of the envelope.
+     * @param format The expected format, {@link #MESSAGE} or {@link #STREAM}.
+     * @return The header.
+     * @throws IOException if the header cannot be read or does not have the expected format.
+     */
+    static byte[] readHeader(InputStream in, byte format) throws IOException {
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        readFully(in, prefix, 0, prefix.length);
+        byte[] header = Arrays.copyOf(prefix, checkPrefix(prefix, format));
+        readFully(in, header, PREFIX_LENGTH, header.length - PREFIX_LENGTH);
+        return header;
+    }
+
+    /**
+     * Returns the wrapped data key of an envelope.
+     *
+     * @param envelope     The envelope, starting with its header.
+     * @param headerLength The length of the header, see {@link #headerLength(byte[], byte)}.
+     * @return A copy of the wrapped data key.
+     */
+    static byte[] wrappedKey(byte[] envelope, int headerLength) {
+        return Arrays.copyOfRange(envelope, PREFIX_LENGTH, headerLength);
+    }
+
+    /**
+     * Encrypts a message with the given data key.
+     *
+     * @param cipher  An AES-GCM cipher, which is initialized by this method.
+     * @param dataKey The raw data key.
+     * @param header  The header of the envelope, see {@link #newHeader(byte, byte[])}.
+     * @param data    The plaintext.
+     * @return The envelope: the header, the nonce, the ciphertext and the tag.
+     * @throws GeneralSecurityException if the message cannot be encrypted.
+     */
+    static byte[] seal(Cipher cipher, byte[] dataKey, byte[] header, byte[] data) throws GeneralSecurityException {
+        byte[] envelope = new byte[header.length + NONCE_LENGTH + data.length + TAG_LENGTH];
+        System.arraycopy(header, 0, envelope, 0, header.length);
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        System.arraycopy(nonce, 0, envelope, header.length, NONCE_LENGTH);
+        cipher.init(Cipher.ENCRYPT_MODE, toKey(dataKey), new GCMParameterSpec(KeyProfile.TAG_SIZE_GCM, nonce));
+        cipher.updateAAD(header);
+        cipher.doFinal(data, 0, data.length, envelope, header.length + NONCE_LENGTH);
+        return envelope;
+    }
+
+    /**
+     * Decrypts and authenticates a message with the given data key.
+     *
+     * @param cipher       An AES-GCM cipher, which is initialized by this method.
+     * @param dataKey      The raw data key.
+     * @param envelope     The envelope produced by {@link #seal(Cipher, byte[], byte[], byte[])}.
+     * @param headerLength The length of the header, see {@link #headerLength(byte[], byte)}.
+     * @return The plaintext.
+     * @throws GeneralSecurityException if the envelope is truncated or has been tampered with.
+     */
+    static byte[] open(Cipher cipher, byte[] dataKey, byte[] envelope, int headerLength)
+            throws GeneralSecurityException {
+        int offset = headerLength + NONCE_LENGTH;
+        if (envelope.length < offset + TAG_LENGTH) throw new IllegalBlockSizeException("Envelope is truncated.");
+        cipher.init(Cipher.DECRYPT_MODE, toKey(dataKey),
+                new GCMParameterSpec(KeyProfile.TAG_SIZE_GCM, envelope, headerLength, NONCE_LENGTH));
+        cipher.updateAAD(envelope, 0, headerLength);
+        return cipher.doFinal(envelope, offset, envelope.length - offset);
+    }
+
+    private static int checkPrefix(byte[] data, byte format) throws IOException {
+        if (data.length < PREFIX_LENGTH || !Arrays.equals(Arrays.copyOf(data, MAGIC.length), MAGIC)
+                || data[MAGIC.length] != format) {
+            throw new IOException("Data is not an encrypted envelope.");
+        }
+        return PREFIX_LENGTH + (ByteBuffer.wrap(data, MAGIC.length + 1, 2).getShort() & 0xffff);
+    }
+
+    private static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int count = in.read(b, off + total, len - total);
+            if (count == -1) throw new IOException("Envelope header is truncated.");
+            total += count;
+        }
+    }
+}
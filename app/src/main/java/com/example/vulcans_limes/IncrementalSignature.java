@@ -0,0 +1,107 @@
+package com.example.vulcans_limes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * This class holds what {@link Signer} and {@link Verifier} have in common: a {@link Signature} of their own
+ * that is fed with the data piece by piece, so that documents of any size can be processed in constant memory.
+ * <p>
+ * Unlike the pooled signatures used by {@link CryptoManager#signData(String, byte[])}, the signature is not
+ * shared with other operations of the thread, so an instance can be kept across calls and threads. Instances
+ * are not thread-safe, though.
+ * <p>
+ * If a {@link MessageDigest} is given, the data is hashed with it in-process instead of being passed to the
+ * signature, and the subclass signs the digest in the end.
+ */
+abstract class IncrementalSignature {
+    /** Size of the buffer used to read from streams, large enough to keep the number of reads low. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    final Signature signature;
+    final MessageDigest digest; // null if the data is passed to the signature
+    final CryptoMetrics metrics;
+    final String algorithm;
+    private long start;
+    private long length;
+
+    IncrementalSignature(Signature signature, MessageDigest digest, CryptoMetrics metrics, String algorithm) {
+        this.signature = signature;
+        this.digest = digest;
+        this.metrics = metrics;
+        this.algorithm = algorithm;
+        this.start = metrics.start();
+    }
+
+    /**
+     * Adds the given data to the document.
+     *
+     * @param data The next part of the document.
+     * @throws SignatureException if the signature is not initialized anymore.
+     */
+    public void update(byte[] data) throws SignatureException {
+        update(data, 0, data.length);
+    }
+
+    /**
+     * Adds a range of the given array to the document.
+     *
+     * @param data   The array holding the next part of the document.
+     * @param offset The index of the first byte to add.
+     * @param len    The number of bytes to add.
+     * @throws SignatureException if the signature is not initialized anymore.
+     */
+    public void update(byte[] data, int offset, int len) throws SignatureException {
+        if (digest != null) digest.update(data, offset, len);
+        else signature.update(data, offset, len);
+        length += len;
+    }
+
+    /**
+     * Adds the data remaining in the given buffer to the document, which can be a direct buffer wrapping native
+     * memory.
+     *
+     * @param data The next part of the document. Its position is advanced to its limit.
+     * @throws SignatureException if the signature is not initialized anymore.
+     */
+    public void update(ByteBuffer data) throws SignatureException {
+        length += data.remaining();
+        if (digest != null) digest.update(data);
+        else signature.update(data);
+    }
+
+    /**
+     * Reads the given stream to its end and adds everything read to the document. The stream is not closed.
+     *
+     * @param in The stream holding the next part of the document.
+     * @return The number of bytes read from the stream.
+     * @throws IOException        if the stream cannot be read.
+     * @throws SignatureException if the signature is not initialized anymore.
+     */
+    public long update(InputStream in) throws IOException, SignatureException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            update(buffer, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Records the finished document in the metrics and starts the next one.
+     *
+     * @param operation {@link CryptoMetrics.Operation#SIGN} or {@link CryptoMetrics.Operation#VERIFY}.
+     * @param success   Whether the signature could be computed or checked.
+     */
+    void finish(CryptoMetrics.Operation operation, boolean success) {
+        metrics.record(operation, algorithm, start, length, success);
+        start = metrics.start();
+        length = 0;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.vulcans_limes;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class describes a key to be generated by {@link CryptoManager#createKey(String, KeyGenSpec)}.
+ * <p>
+ * Specs are parsed from the keyGenInfo strings used throughout the app with {@link #parse(String)}, which
+ * accepts the following formats:
+ * <ul>
+ *     <li>symmetric keys: "KEY_ALGORITHM;KEY_SIZE;BLOCK_MODE;PADDING", e.g. "AES;256;GCM;NoPadding"</li>
+ *     <li>RSA key pairs: "RSA;KEY_SIZE;HASH;PADDING", e.g. "RSA;2048;SHA-256;PKCS1"</li>
+ *     <li>EC key pairs: "EC;CURVE;HASH", e.g. "EC;secp256r1;SHA-256"</li>
+ * </ul>
+ * Key pairs that may also sign digests computed in-process are requested by appending ";PreHash", e.g.
+ * "EC;secp256r1;SHA-256;PreHash", see {@link CryptoManager#setPreHashThreshold(int)}. For RSA, this requires
+ * PKCS1 padding.
+ * The patterns are compiled once and parsed specs are kept in a small cache, so provisioning many keys with
+ * the same parameters parses each string only once. Specs are immutable.
+ */
+public final class KeyGenSpec {
+    /** Purpose of keys used for encryption, same value as {@code KeyProperties.PURPOSE_ENCRYPT}. */
+    public static final int PURPOSE_ENCRYPT = 1;
+    /** Purpose of keys used for decryption, same value as {@code KeyProperties.PURPOSE_DECRYPT}. */
+    public static final int PURPOSE_DECRYPT = 2;
+    /** Purpose of keys used for signing, same value as {@code KeyProperties.PURPOSE_SIGN}. */
+    public static final int PURPOSE_SIGN = 4;
+    /** Purpose of keys used for verification, same value as {@code KeyProperties.PURPOSE_VERIFY}. */
+    public static final int PURPOSE_VERIFY = 8;
+
+    private static final Pattern SECRET_KEY_PATTERN =
+            Pattern.compile("^(AES|DESede);(\\d{1,4});(CBC|GCM|CTR);(NoPadding|PKCS7Padding)$");
+    private static final Pattern RSA_PATTERN =
+            Pattern.compile("^RSA;(\\d{1,5});(SHA-256|SHA-384|SHA-512);(PKCS1|NoPadding)(;PreHash)?$");
+    private static final Pattern EC_PATTERN =
+            Pattern.compile("^EC;(secp256r1|secp384r1|secp521r1);(SHA-256|SHA-384|SHA-512)"
+                    + "(?:;PKCS1|;NoPadding)?(;PreHash)?$");
+    // keyGenInfo strings come from a handful of constants, the limit only guards against unbounded growth
+    private static final int MAX_CACHED_SPECS = 64;
+    private static final Map<String, KeyGenSpec> CACHE = new ConcurrentHashMap<>();
+
+    private final String keyGenInfo;
+    private final String algorithm;
+    private final int keySize;
+    private final String curve;
+    private final String blockMode;
+    private final String padding;
+    private final String digest;
+    private final int purposes;
+    private final boolean strongBoxBacked;
+    private final boolean preHash;
+
+    private KeyGenSpec(String keyGenInfo, String algorithm, int keySize, String curve, String blockMode,
+                       String padding, String digest, int purposes, boolean strongBoxBacked, boolean preHash) {
+        this.keyGenInfo = keyGenInfo;
+        this.algorithm = algorithm;
+        this.keySize = keySize;
+        this.curve = curve;
+        this.blockMode = blockMode;
+        this.padding = padding;
+        this.digest = digest;
+        this.purposes = purposes;
+        this.strongBoxBacked = strongBoxBacked;
+        this.preHash = preHash;
+    }
+
+    /**
+     * Parses a keyGenInfo string.
+     *
+     * @param keyGenInfo A string containing key generation parameters separated by semicolons, see above.
+     * @return The parsed spec.
+     * @throws InvalidAlgorithmParameterException if the string does not describe a supported key.
+     */
+    public static KeyGenSpec parse(String keyGenInfo) throws InvalidAlgorithmParameterException {
+        if (keyGenInfo == null) throw new InvalidAlgorithmParameterException("keyGenInfo is missing.");
+        KeyGenSpec spec = CACHE.get(keyGenInfo);
+        if (spec != null) return spec;
+
+        spec = parseUncached(keyGenInfo);
+        if (CACHE.size() < MAX_CACHED_SPECS) CACHE.put(keyGenInfo, spec);
+        return spec;
+    }
+
+    private static KeyGenSpec parseUncached(String keyGenInfo) throws InvalidAlgorithmParameterException {
+        Matcher matcher = SECRET_KEY_PATTERN.matcher(keyGenInfo);
+        if (matcher.matches()) {
+            String algorithm = matcher.group(1);
+            int keySize = Integer.parseInt(matcher.group(2));
+            boolean validSize = algorithm.equals("AES")
+                    ? keySize == 128 || keySize == 192 || keySize == 256
+                    : keySize == 168;
+            if (!validSize) {
+                throw new InvalidAlgorithmParameterException("Unsupported " + algorithm + " key size: " + keySize);
+            }
+            return new KeyGenSpec(keyGenInfo, algorithm, keySize, null, matcher.group(3), matcher.group(4),
+                    null, PURPOSE_ENCRYPT | PURPOSE_DECRYPT, true, false);
+        }
+        matcher = RSA_PATTERN.matcher(keyGenInfo);
+        if (matcher.matches()) {
+            int keySize = Integer.parseInt(matcher.group(1));
+            if (keySize < 512 || keySize % 8 != 0) {
+                throw new InvalidAlgorithmParameterException("Unsupported RSA key size: " + keySize);
+            }
+            boolean preHash = matcher.group(4) != null;
+            if (preHash && !matcher.group(3).equals("PKCS1")) {
+                throw new InvalidAlgorithmParameterException("PreHash requires PKCS1 padding: " + keyGenInfo);
+            }
+            return new KeyGenSpec(keyGenInfo, "RSA", keySize, null, null, matcher.group(3), matcher.group(2),
+                    PURPOSE_SIGN | PURPOSE_VERIFY, true, preHash);
+        }
+        matcher = EC_PATTERN.matcher(keyGenInfo);
+        if (matcher.matches()) {
+            String curve = matcher.group(1);
+            return new KeyGenSpec(keyGenInfo, "EC", Integer.parseInt(curve.substring(4, 7)), curve, null, null,
+                    matcher.group(2), PURPOSE_SIGN, false, matcher.group(3) != null);
+        }
+        throw new InvalidAlgorithmParameterException("keyGenInfo is not valid: " + keyGenInfo);
+    }
+
+    /**
+     * Returns whether this spec describes an asymmetric key pair used for signing.
+     *
+     * @return {@code true} for RSA and EC key pairs, {@code false} for symmetric keys.
+     */
+    public boolean isKeyPair() {
+        return blockMode == null;
+    }
+
+    /**
+     * Returns the key algorithm.
+     *
+     * @return "AES", "DESede", "RSA" or "EC".
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the key size.
+     *
+     * @return The key size in bits, for EC key pairs the field size of the curve.
+     */
+    public int getKeySize() {
+        return keySize;
+    }
+
+    /**
+     * Returns the curve of an EC key pair.
+     *
+     * @return The standard name of the curve, e.g. "secp256r1", or {@code null} for other keys.
+     */
+    public String getCurve() {
+        return curve;
+    }
+
+    /**
+     * Returns the block mode of a symmetric key.
+     *
+     * @return "GCM", "CBC" or "CTR", or {@code null} for key pairs.
+     */
+    public String getBlockMode() {
+        return blockMode;
+    }
+
+    /**
+     * Returns the padding the key is restricted to, which is the encryption padding of symmetric keys and
+     * the signature padding of RSA key pairs.
+     *
+     * @return The padding, or {@code null} for EC key pairs.
+     */
+    public String getPadding() {
+        return padding;
+    }
+
+    /**
+     * Returns the digest of a key pair.
+     *
+     * @return The digest, "SHA-256", "SHA-384" or "SHA-512", or {@code null} for symmetric keys.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns the purposes the key is generated for.
+     *
+     * @return A combination of the {@code PURPOSE_*} flags of this class.
+     */
+    public int getPurposes() {
+        return purposes;
+    }
+
+    /**
+     * Returns whether the key is requested to be backed by the StrongBox secure element.
+     *
+     * @return {@code true} for symmetric keys and RSA key pairs.
+     */
+    public boolean isStrongBoxBacked() {
+        return strongBoxBacked;
+    }
+
+    /**
+     * Returns whether the key pair may also sign digests computed in-process, which is requested with the
+     * ";PreHash" suffix.
+     *
+     * @return {@code true} if the key pair is generated for pre-hashed signing as well.
+     */
+    public boolean isPreHash() {
+        return preHash;
+    }
+
+    /**
+     * Returns the parameters for initializing a {@link java.security.KeyPairGenerator} for this key pair.
+     *
+     * @return An {@link ECGenParameterSpec} or an {@link RSAKeyGenParameterSpec}, or {@code null} for
+     * symmetric keys.
+     */
+    AlgorithmParameterSpec getKeyPairParameters() {
+        if (curve != null) return new ECGenParameterSpec(curve);
+        if (algorithm.equals("RSA")) return new RSAKeyGenParameterSpec(keySize, RSAKeyGenParameterSpec.F4);
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof KeyGenSpec && keyGenInfo.equals(((KeyGenSpec) o).keyGenInfo);
+    }
+
+    @Override
+    public int hashCode() {
+        return keyGenInfo.hashCode();
+    }
+
+    /**
+     * Returns the keyGenInfo string this spec was parsed from.
+     *
+     * @return The keyGenInfo string.
+     */
+    @Override
+    public String toString() {
+        return keyGenInfo;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.vulcans_limes;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * This class holds everything the {@link CryptoManager} resolved from the keystore for a single alias.
+ * <p>
+ * A handle bundles the {@link Key} stored under the alias, the matching {@link PublicKey} for key pairs
+ * and the {@link KeyProfile} derived from the key. Handles are immutable, apart from a software copy of the
+ * public key that is made on first use, and are kept in the {@link KeyHandleCache}, so that repeated
+ * operations on the same alias do not have to query the keystore again.
+ */
+final class KeyHandle {
+    private final String alias;
+    private final Key key;
+    private final PublicKey publicKey;
+    private final KeyProfile profile;
+    private volatile PublicKey softwarePublicKey;
+
+    /**
+     * Creates a new handle for a resolved keystore entry.
+     *
+     * @param alias     The alias under which the key is stored in the keystore.
+     * @param key       The key stored under the alias, either a secret key or a private key.
+     * @param publicKey The public key of the entry's certificate, or {@code null} for symmetric keys.
+     * @param profile   The profile describing how the key has to be used.
+     */
+    KeyHandle(String alias, Key key, PublicKey publicKey, KeyProfile profile) {
+        this.alias = alias;
+        this.key = key;
+        this.publicKey = publicKey;
+        this.profile = profile;
+    }
+
+    String getAlias() {
+        return alias;
+    }
+
+    Key getKey() {
+        return key;
+    }
+
+    PublicKey getPublicKey() {
+        return publicKey;
+    }
+
+    /**
+     * Returns the public key as a key of the default software provider, so that signatures can be verified
+     * without the keystore. The key is converted on the first call and then kept with this handle.
+     *
+     * @return The public key of the software provider.
+     * @throws InvalidKeyException      if the key is not a key pair or its public key cannot be converted.
+     * @throws NoSuchAlgorithmException if the key algorithm is not available.
+     */
+    PublicKey getSoftwarePublicKey() throws InvalidKeyException, NoSuchAlgorithmException {
+        PublicKey result = softwarePublicKey;
+        if (result == null) {
+            if (publicKey == null) throw new InvalidKeyException("Key " + alias + " is not a key pair.");
+            try {
+                result = KeyFactory.getInstance(publicKey.getAlgorithm())
+                        .generatePublic(new X509EncodedKeySpec(publicKey.getEncoded()));
+            } catch (InvalidKeySpecException e) {
+                throw new InvalidKeyException("Public key of " + alias + " cannot be converted.", e);
+            }
+            // a race only converts the key twice
+            softwarePublicKey = result;
+        }
+        return result;
+    }
+
+    KeyProfile getProfile() {
+        return profile;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.vulcans_limes;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class provides a bounded cache of resolved {@link KeyHandle}s, keyed by their alias.
+ * <p>
+ * Loading the keystore and looking up a key is by far the most expensive part of a single cryptographic
+ * operation. The {@link CryptoManager} therefore resolves every alias only once and keeps the result here.
+ * When the cache is full, the least recently used handle is dropped. Entries have to be invalidated whenever
+ * the key behind an alias is created or deleted. Hits and misses are counted, so the effectiveness of the
+ * cache can be checked at runtime.
+ */
+final class KeyHandleCache {
+    static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final Map<String, KeyHandle> handles;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new cache that holds at most {@code maxEntries} handles.
+     *
+     * @param maxEntries The maximum number of handles kept in the cache, has to be at least 1.
+     * @throws IllegalArgumentException if {@code maxEntries} is smaller than 1.
+     */
+    KeyHandleCache(final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The cache has to hold at least one entry.");
+        }
+        this.handles = new LinkedHashMap<String, KeyHandle>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KeyHandle> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached handle for the given alias and counts the lookup as hit or miss.
+     *
+     * @param alias The alias of the key.
+     * @return The cached handle, or {@code null} if the alias has not been resolved yet.
+     */
+    KeyHandle get(String alias) {
+        KeyHandle handle;
+        synchronized (handles) {
+            handle = handles.get(alias);
+        }
+        if (handle == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return handle;
+    }
+
+    /**
+     * Stores a resolved handle under its alias, replacing any previous entry.
+     *
+     * @param handle The handle to be cached.
+     */
+    void put(KeyHandle handle) {
+        synchronized (handles) {
+            handles.put(handle.getAlias(), handle);
+        }
+    }
+
+    /**
+     * Removes the handle of the given alias, e.g. because the key was created or deleted.
+     *
+     * @param alias The alias of the key.
+     */
+    void invalidate(String alias) {
+        synchronized (handles) {
+            handles.remove(alias);
+        }
+    }
+
+    /**
+     * Removes all cached handles.
+     */
+    void clear() {
+        synchronized (handles) {
+            handles.clear();
+        }
+    }
+
+    int size() {
+        synchronized (handles) {
+            return handles.size();
+        }
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.vulcans_limes;
+
+import java.io.IOException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps keys that have been generated in advance, so that creating a key does not have to wait for
+ * the keystore.
+ * <p>
+ * For every enabled {@link KeyGenSpec}, a configurable number of keys is generated on a background thread
+ * under generated aliases starting with {@link #ALIAS_PREFIX}. {@link #take(KeyGenSpec)} hands one of them out
+ * under that alias. Once the number of ready keys drops to half of the configured size, the pool is refilled.
+ * Generations run one after another, as the secure hardware handles one request at a time anyway.
+ * <p>
+ * Keystore entries cannot be renamed, so a pooled key can never be stored under an alias chosen by the caller.
+ * The pool therefore only backs ephemeral keys, see {@link CryptoManager#createEphemeralKey(KeyGenSpec)}. Keys
+ * with the prefix that are left over from an earlier process are deleted once per backend and process, before
+ * the first key of that backend is pooled or handed out.
+ * <p>
+ * The background thread lives until {@link #close()}, which the owning {@link CryptoManager} calls when it is
+ * closed.
+ */
+final class KeyPool {
+    static final String ALIAS_PREFIX = "vulcans-pool-";
+    private static final String QUEUE = "pool";
+    // backends whose stale keys have been deleted in this process, guarded by the KeyPool class lock
+    private static final Set<KeyStoreBackend> cleanedBackends =
+            Collections.newSetFromMap(new WeakHashMap<KeyStoreBackend, Boolean>());
+    private final KeyStoreBackend backend;
+    private volatile boolean staleKeysRemoved;
+    private final Map<KeyGenSpec, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong generationFailures = new AtomicLong();
+    private KeyedExecutor executor; // created on first use, guarded by this
+    private boolean closed; // guarded by this
+
+    KeyPool(KeyStoreBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Starts keeping {@code size} keys of the given spec ready. Enabling a spec again changes its size.
+     *
+     * @param spec The spec of the pooled keys.
+     * @param size The number of keys to keep ready.
+     * @throws KeyStoreException        if there is an error accessing the keystore.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     * @throws IllegalArgumentException if {@code size} is smaller than 1.
+     * @throws IllegalStateException    if the pool has been closed.
+     */
+    void enable(KeyGenSpec spec, int size) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        if (size < 1) throw new IllegalArgumentException("Pool size must be at least 1.");
+        removeStaleKeys();
+        Slot slot = new Slot(spec, size);
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("Key pool has been closed.");
+            if (executor == null) {
+                executor = new KeyedExecutor(1, Integer.MAX_VALUE, "crypto-key-pool");
+            }
+            Slot previous = slots.put(spec, slot);
+            if (previous != null) {
+                previous.enabled = false;
+                KeyHandle ready;
+                while ((ready = previous.ready.poll()) != null) slot.ready.add(ready);
+            }
+        }
+        refill(slot, true);
+    }
+
+    /**
+     * Disables all specs and stops the background thread once the generations already running have finished.
+     * The keys that have not been handed out are deleted; if that fails, they are removed with the other stale
+     * keys by a later process. The pool cannot be enabled again afterwards. Closing a closed pool has no effect.
+     */
+    void close() {
+        KeyedExecutor current;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            current = executor;
+        }
+        for (KeyGenSpec spec : slots.keySet()) {
+            Slot slot = slots.remove(spec);
+            if (slot == null) continue;
+            slot.enabled = false;
+            KeyHandle ready;
+            while ((ready = slot.ready.poll()) != null) {
+                try {
+                    backend.deleteKey(ready.getAlias());
+                } catch (Exception e) {
+                    // left for the stale key cleanup
+                }
+            }
+        }
+        if (current != null) current.shutdown();
+    }
+
+    /**
+     * Stops keeping keys of the given spec ready and deletes the keys that have not been handed out.
+     *
+     * @param spec The spec of the pooled keys.
+     * @throws KeyStoreException        if a pooled key cannot be removed.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    void disable(KeyGenSpec spec) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        Slot slot = slots.remove(spec);
+        if (slot == null) return;
+        slot.enabled = false;
+        KeyHandle ready;
+        while ((ready = slot.ready.poll()) != null) backend.deleteKey(ready.getAlias());
+    }
+
+    /**
+     * Hands out a pooled key of the given spec.
+     *
+     * @param spec The spec of the requested key.
+     * @return The handle of the key, stored under an alias starting with {@link #ALIAS_PREFIX}, or {@code null}
+     * if no key of the spec is ready.
+     * @throws KeyStoreException        if there is an error accessing the keystore.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    KeyHandle take(KeyGenSpec spec) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        removeStaleKeys();
+        Slot slot = slots.get(spec);
+        if (slot == null) return null;
+        KeyHandle pooled = slot.ready.poll();
+        refill(slot, false);
+        return pooled;
+    }
+
+    /**
+     * Returns a new alias for an ephemeral key, which is deleted with the other stale keys by a later process.
+     *
+     * @return An unused alias starting with {@link #ALIAS_PREFIX}.
+     */
+    static String newAlias() {
+        return ALIAS_PREFIX + UUID.randomUUID();
+    }
+
+    /**
+     * Returns the number of keys of the given spec that are ready to be handed out.
+     *
+     * @param spec The spec of the pooled keys.
+     * @return The number of ready keys, 0 if the spec is not enabled.
+     */
+    int getAvailableCount(KeyGenSpec spec) {
+        Slot slot = slots.get(spec);
+        return slot == null ? 0 : slot.ready.size();
+    }
+
+    /**
+     * Returns how many background generations have failed. Failed keys are generated again with the next
+     * refill.
+     *
+     * @return The number of failed generations.
+     */
+    long getGenerationFailureCount() {
+        return generationFailures.get();
+    }
+
+    private void refill(final Slot slot, boolean force) {
+        int missing;
+        synchronized (slot) {
+            int available = slot.ready.size() + slot.scheduled.get();
+            if (!slot.enabled || (!force && available > slot.lowWater)) return;
+            missing = slot.size - available;
+            slot.scheduled.addAndGet(Math.max(0, missing));
+        }
+        for (int i = 0; i < missing; i++) {
+            try {
+                executor.submit(QUEUE, new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        generate(slot);
+                        return null;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the pool has been closed in the meantime
+                slot.scheduled.addAndGet(i - missing);
+                return;
+            }
+        }
+    }
+
+    private void generate(Slot slot) {
+        try {
+            if (!slot.enabled) return;
+            String alias = newAlias();
+            KeyHandle keyHandle = slot.spec.isKeyPair()
+                    ? backend.generateKeyPair(alias, slot.spec)
+                    : backend.generateSecretKey(alias, slot.spec);
+            slot.ready.add(keyHandle);
+            // the slot may have been disabled while the key was generated
+            if (!slot.enabled && slot.ready.remove(keyHandle)) backend.deleteKey(alias);
+        } catch (Exception e) {
+            generationFailures.incrementAndGet();
+        } finally {
+            slot.scheduled.decrementAndGet();
+        }
+    }
+
+    private void removeStaleKeys() throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException {
+        if (staleKeysRemoved) return;
+        // once per backend and process and before any key is pooled, so that keys of this process are never
+        // deleted, also not by another manager on the same backend
+        synchronized (KeyPool.class) {
+            if (!cleanedBackends.contains(backend)) {
+                for (String alias : backend.getAliases()) {
+                    if (alias.startsWith(ALIAS_PREFIX)) backend.deleteKey(alias);
+                }
+                cleanedBackends.add(backend);
+            }
+            staleKeysRemoved = true;
+        }
+    }
+
+    private static final class Slot {
+        final KeyGenSpec spec;
+        final int size;
+        final int lowWater;
+        final Queue<KeyHandle> ready = new ConcurrentLinkedQueue<>();
+        // generations that have been submitted but not finished yet
+        final AtomicInteger scheduled = new AtomicInteger();
+        volatile boolean enabled = true;
+
+        Slot(KeyGenSpec spec, int size) {
+            this.spec = spec;
+            this.size = size;
+            this.lowWater = size / 2;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.vulcans_limes;
+
+import java.util.Arrays;
+
+/**
+ * This class describes how a key has to be used for cryptographic operations.
+ * <p>
+ * A profile is computed once when a key is generated or loaded and is then reused for every operation on
+ * that key. For symmetric keys it holds the cipher transformation, the block mode and the IV and tag sizes.
+ * For key pairs it holds the signature algorithm, and, if the key may also sign digests computed outside the
+ * keystore, the matching {@code NONEwith...} algorithm. Additionally, it records whether the key is backed by
+ * the StrongBox secure element. Profiles are immutable.
+ */
+final class KeyProfile {
+    static final int IV_CBC_AND_CTR_AES = 16; // CBC & CTR standard IV size is 16 Byte
+    static final int IV_GCM_AES = 12; // GCM standard IV size is 12 Byte
+    static final int IV_CBC_DES = 8; // DES with CBC standard IV size is 8 Byte
+    static final int TAG_SIZE_GCM = 128; // 128 is the recommended TagSize
+    static final String DIGEST_NONE = "NONE"; // same value as KeyProperties.DIGEST_NONE
+
+    // DER encoded DigestInfo up to the digest itself, which PKCS#1 v1.5 signatures wrap around the digest
+    private static final byte[] SHA256_DIGEST_INFO = {0x30, 0x31, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48,
+            0x01, 0x65, 0x03, 0x04, 0x02, 0x01, 0x05, 0x00, 0x04, 0x20};
+    private static final byte[] SHA384_DIGEST_INFO = {0x30, 0x41, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48,
+            0x01, 0x65, 0x03, 0x04, 0x02, 0x02, 0x05, 0x00, 0x04, 0x30};
+    private static final byte[] SHA512_DIGEST_INFO = {0x30, 0x51, 0x30, 0x0d, 0x06, 0x09, 0x60, (byte) 0x86, 0x48,
+            0x01, 0x65, 0x03, 0x04, 0x02, 0x03, 0x05, 0x00, 0x04, 0x40};
+
+    /**
+     * The block mode of a symmetric key. Key pairs use {@link #NONE}, as they are only used for signing.
+     */
+    enum Mode {
+        GCM, CBC, CTR, NONE
+    }
+
+    private final Mode mode;
+    private final String transformation;
+    private final int ivLength;
+    private final int tagLength;
+    private final String signatureAlgorithm;
+    private final String digest;
+    private final String preHashAlgorithm;
+    private final byte[] digestInfo;
+    private final boolean strongBoxBacked;
+
+    private KeyProfile(Mode mode, String transformation, int ivLength, int tagLength, String signatureAlgorithm,
+                       String digest, String preHashAlgorithm, byte[] digestInfo, boolean strongBoxBacked) {
+        this.mode = mode;
+        this.transformation = transformation;
+        this.ivLength = ivLength;
+        this.tagLength = tagLength;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.digest = digest;
+        this.preHashAlgorithm = preHashAlgorithm;
+        this.digestInfo = digestInfo;
+        this.strongBoxBacked = strongBoxBacked;
+    }
+
+    /**
+     * Creates the profile of a symmetric key.
+     *
+     * @param algorithm       The key algorithm, e.g. "AES" or "DESede".
+     * @param blockMode       The block mode of the key, one of "GCM", "CBC" or "CTR".
+     * @param padding         The encryption padding of the key, e.g. "NoPadding" or "PKCS7Padding".
+     * @param strongBoxBacked Whether the key is stored in the StrongBox secure element.
+     * @return The profile of the key.
+     * @throws IllegalArgumentException if the block mode is not supported.
+     */
+    static KeyProfile forSecretKey(String algorithm, String blockMode, String padding, boolean strongBoxBacked) {
+        Mode mode = Mode.valueOf(blockMode);
+        int ivLength;
+        int tagLength = 0;
+        switch (mode) {
+            case GCM:
+                ivLength = IV_GCM_AES;
+                tagLength = TAG_SIZE_GCM;
+                break;
+            case CBC:
+            case CTR:
+                ivLength = algorithm.equals("DESede") ? IV_CBC_DES : IV_CBC_AND_CTR_AES;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported block mode: " + blockMode);
+        }
+        return new KeyProfile(mode, algorithm + "/" + blockMode + "/" + padding, ivLength, tagLength,
+                null, null, null, null, strongBoxBacked);
+    }
+
+    /**
+     * Creates the profile of an asymmetric key pair used for signing.
+     *
+     * @param algorithm       The key algorithm, either "RSA" or "EC".
+     * @param digest          The digest of the key, e.g. "SHA-256".
+     * @param preHashable     Whether the key may also sign digests computed outside the keystore, which requires
+     *                        {@link #DIGEST_NONE} and, for RSA, PKCS#1 v1.5 padding.
+     * @param strongBoxBacked Whether the key is stored in the StrongBox secure element.
+     * @return The profile of the key.
+     */
+    static KeyProfile forKeyPair(String algorithm, String digest, boolean preHashable, boolean strongBoxBacked) {
+        String suffix = algorithm.equals("EC") ? "withECDSA" : "with" + algorithm;
+        String signatureAlgorithm = digest.replace("-", "") + suffix;
+        byte[] digestInfo = null;
+        if (preHashable) {
+            // ECDSA signs the bare digest, PKCS#1 v1.5 signs the DigestInfo structure around it
+            digestInfo = algorithm.equals("EC") ? new byte[0] : digestInfo(digest);
+        }
+        return new KeyProfile(Mode.NONE, null, 0, 0, signatureAlgorithm, digest,
+                digestInfo != null ? "NONE" + suffix : null, digestInfo, strongBoxBacked);
+    }
+
+    private static byte[] digestInfo(String digest) {
+        switch (digest) {
+            case "SHA-256":
+                return SHA256_DIGEST_INFO;
+            case "SHA-384":
+                return SHA384_DIGEST_INFO;
+            case "SHA-512":
+                return SHA512_DIGEST_INFO;
+            default:
+                return null;
+        }
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    String getTransformation() {
+        return transformation;
+    }
+
+    int getIvLength() {
+        return ivLength;
+    }
+
+    int getTagLength() {
+        return tagLength;
+    }
+
+    String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    String getDigest() {
+        return digest;
+    }
+
+    /**
+     * Returns the algorithm that signs a digest computed outside the keystore, with the same result as
+     * {@link #getSignatureAlgorithm()} on the data itself.
+     *
+     * @return "NONEwithECDSA" or "NONEwithRSA", or {@code null} if the key cannot sign digests.
+     */
+    String getPreHashAlgorithm() {
+        return preHashAlgorithm;
+    }
+
+    /**
+     * Returns what the {@link #getPreHashAlgorithm() pre-hash algorithm} has to sign for the given digest: the
+     * digest itself for ECDSA and the DER encoded DigestInfo for RSA.
+     *
+     * @param hash The digest of the data, computed with {@link #getDigest()}.
+     * @return The input of the pre-hash signature.
+     */
+    byte[] toPreHashInput(byte[] hash) {
+        if (digestInfo.length == 0) return hash;
+        byte[] input = Arrays.copyOf(digestInfo, digestInfo.length + hash.length);
+        System.arraycopy(hash, 0, input, digestInfo.length, hash.length);
+        return input;
+    }
+
+    /**
+     * Returns the name of the algorithm operations on the key use, which is the transformation for symmetric
+     * keys and the signature algorithm for key pairs.
+     *
+     * @return The algorithm name.
+     */
+    String getAlgorithmName() {
+        return transformation != null ? transformation : signatureAlgorithm;
+    }
+
+    boolean isStrongBoxBacked() {
+        return strongBoxBacked;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.vulcans_limes;
+
+import java.io.IOException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Set;
+
+/**
+ * This class is the storage a {@link CryptoManager} generates its keys in and loads them from.
+ * <p>
+ * The {@link CryptoManager} itself only works with the resolved keys, so the same operations can run against
+ * different backends: {@link AndroidKeyStoreBackend} keeps the keys in the Android Keystore and is used by
+ * default, {@link SoftwareKeyStoreBackend} keeps them in memory using the default JCA providers and runs on any
+ * JVM. Backends are provided by this package only and have to be safe for use by several threads.
+ */
+public abstract class KeyStoreBackend {
+    KeyStoreBackend() {
+    }
+
+    /**
+     * Checks whether a key is stored under the given alias.
+     *
+     * @param alias The alias to look up.
+     * @return {@code true} if the alias is in use.
+     * @throws KeyStoreException        if there is an error accessing the keystore.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    abstract boolean containsAlias(String alias) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException;
+
+    /**
+     * Returns all aliases in use, so that many aliases can be checked with a single keystore access.
+     *
+     * @return A snapshot of the aliases in use.
+     * @throws KeyStoreException        if there is an error accessing the keystore.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    abstract Set<String> getAliases() throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException;
+
+    /**
+     * Returns whether keys of the given spec have to be generated one after another, e.g. because they are
+     * generated by a secure element that handles one request at a time.
+     *
+     * @param spec The spec of the key to be generated.
+     * @return {@code true} if generations of such keys must not run concurrently.
+     */
+    boolean isSerialGeneration(KeyGenSpec spec) {
+        return false;
+    }
+
+    /**
+     * Generates a symmetric key for encryption and decryption and stores it under the given alias.
+     *
+     * @param alias The alias of the new key, which must not be in use.
+     * @param spec  The spec of a symmetric key, see {@link KeyGenSpec#isKeyPair()}.
+     * @return The handle of the new key.
+     * @throws NoSuchAlgorithmException           if the key algorithm is not available.
+     * @throws NoSuchProviderException            if the provider does not exist.
+     * @throws InvalidAlgorithmParameterException if the parameters are not supported.
+     * @throws KeyStoreException                  if the key cannot be stored.
+     */
+    abstract KeyHandle generateSecretKey(String alias, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidAlgorithmParameterException, KeyStoreException;
+
+    /**
+     * Generates a key pair for signing and verification and stores it under the given alias.
+     *
+     * @param alias The alias of the new key pair, which must not be in use.
+     * @param spec  The spec of an RSA or EC key pair.
+     * @return The handle of the new key pair.
+     * @throws NoSuchAlgorithmException           if the key algorithm is not available.
+     * @throws NoSuchProviderException            if the provider does not exist.
+     * @throws InvalidAlgorithmParameterException if the parameters are not supported.
+     * @throws KeyStoreException                  if the key pair cannot be stored.
+     */
+    abstract KeyHandle generateKeyPair(String alias, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            NoSuchProviderException, InvalidAlgorithmParameterException, KeyStoreException;
+
+    /**
+     * Loads the key stored under the given alias together with its public key and profile.
+     *
+     * @param alias The alias of the key.
+     * @return The handle of the key.
+     * @throws UnrecoverableKeyException if the key does not exist or cannot be recovered.
+     * @throws KeyStoreException         if there is an error accessing the keystore or the key type is unsupported.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the requested security provider is not available.
+     */
+    abstract KeyHandle loadKey(String alias) throws UnrecoverableKeyException, KeyStoreException,
+            CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException;
+
+    /**
+     * Deletes the key stored under the given alias. Deleting an alias that is not in use has no effect.
+     *
+     * @param alias The alias of the key.
+     * @throws KeyStoreException        if the key cannot be removed.
+     * @throws CertificateException     if there is an issue loading the certificate chain.
+     * @throws IOException              if there is an I/O error while loading the keystore.
+     * @throws NoSuchAlgorithmException if the keystore cannot be loaded.
+     */
+    abstract void deleteKey(String alias) throws KeyStoreException, CertificateException, IOException,
+            NoSuchAlgorithmException;
+}
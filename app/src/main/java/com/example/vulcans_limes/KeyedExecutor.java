@@ -0,0 +1,167 @@
+package com.example.vulcans_limes;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs tasks on a fixed number of worker threads, one task per key at a time.
+ * <p>
+ * Tasks submitted for the same key run one after another in the order they were submitted, tasks for
+ * different keys run in parallel. The number of tasks that are queued or running is limited; once the limit
+ * is reached, {@link #submit(String, Callable)} rejects further tasks instead of queueing them, so callers
+ * notice when they produce work faster than it can be done. A task whose future is cancelled before it
+ * started is skipped. Idle worker threads are stopped after a while and started again when needed.
+ */
+final class KeyedExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private final ThreadPoolExecutor executor;
+    private final int maxPending;
+    // per key, the running task followed by the tasks waiting for it; guarded by itself
+    private final Map<String, ArrayDeque<Task<?>>> queues = new HashMap<>();
+    private int pending;
+    private boolean shutdown;
+
+    /**
+     * Creates a new executor.
+     *
+     * @param threads    The maximum number of worker threads.
+     * @param maxPending The maximum number of tasks that may be queued or running at the same time.
+     * @param threadName The name prefix of the worker threads.
+     * @throws IllegalArgumentException if {@code threads} or {@code maxPending} is smaller than 1.
+     */
+    KeyedExecutor(int threads, int maxPending, final String threadName) {
+        if (threads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("threads and maxPending must be at least 1.");
+        }
+        this.maxPending = maxPending;
+        executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, threadName + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submits a task for the given key.
+     * <p>
+     * The returned future completes with the result of the task or with the exception it threw. Dependent
+     * actions that are not registered with an {@code Async} method run on the worker thread and delay the
+     * next task of the key, so they should be short.
+     *
+     * @param key  The key the task belongs to.
+     * @param task The task to be run.
+     * @param <T>  The result type of the task.
+     * @return The future of the task's result.
+     * @throws RejectedExecutionException if too many tasks are pending or the executor has been shut down.
+     */
+    <T> CompletableFuture<T> submit(String key, Callable<T> task) {
+        Task<T> queued = new Task<>(key, task);
+        synchronized (queues) {
+            if (shutdown) throw new RejectedExecutionException("Executor has been shut down.");
+            if (pending >= maxPending) {
+                throw new RejectedExecutionException("Too many pending operations (" + pending + ").");
+            }
+            pending++;
+            ArrayDeque<Task<?>> queue = queues.get(key);
+            if (queue != null) {
+                queue.add(queued);
+                return queued.future;
+            }
+            queue = new ArrayDeque<>();
+            queue.add(queued);
+            queues.put(key, queue);
+        }
+        executor.execute(queued);
+        return queued.future;
+    }
+
+    /**
+     * Returns the number of tasks that are queued or running.
+     *
+     * @return The number of pending tasks.
+     */
+    int getPendingCount() {
+        synchronized (queues) {
+            return pending;
+        }
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that have already been submitted are still run, after that the
+     * worker threads are stopped.
+     */
+    void shutdown() {
+        boolean terminate;
+        synchronized (queues) {
+            shutdown = true;
+            terminate = pending == 0;
+        }
+        if (terminate) executor.shutdown();
+    }
+
+    /**
+     * Waits until all tasks have finished after a {@link #shutdown()}.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of {@code timeout}.
+     * @return {@code true} if all tasks finished, {@code false} if the timeout elapsed before.
+     * @throws InterruptedException if the current thread was interrupted while waiting.
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private void finished(Task<?> task) {
+        Task<?> next;
+        boolean terminate;
+        synchronized (queues) {
+            pending--;
+            ArrayDeque<Task<?>> queue = queues.get(task.key);
+            queue.poll();
+            next = queue.peek();
+            if (next == null) queues.remove(task.key);
+            terminate = shutdown && pending == 0;
+        }
+        if (next != null) executor.execute(next);
+        if (terminate) executor.shutdown();
+    }
+
+    private final class Task<T> implements Runnable {
+        private final String key;
+        private final Callable<T> callable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task(String key, Callable<T> callable) {
+            this.key = key;
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // a cancelled future is already done, its task is skipped
+                if (!future.isDone()) future.complete(callable.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            } finally {
+                finished(this);
+            }
+        }
+    }
+}
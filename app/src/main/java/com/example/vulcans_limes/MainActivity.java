@@ -8,6 +8,7 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
 import android.os.Environment;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -30,8 +31,15 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 
 /**
@@ -50,6 +58,8 @@ public class MainActivity extends AppCompatActivity {
     private String key_id;
     private TextView textViewSigned;
     private TextView textViewVerify;
+    // runs the crypto operations, so that the UI thread never waits for the keystore
+    private final KeyedExecutor cryptoExecutor = new KeyedExecutor(2, 16, "crypto-demo");
 
     /**
      * This will run upon starting the app. It initializes the screen with its components.
@@ -60,12 +70,12 @@ public class MainActivity extends AppCompatActivity {
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        //executes a number of functionality tests and prints the result to the console
-        System.out.println(RustDef.testMethod());
-
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        //executes a number of functionality tests and prints the result to the console
+        runCrypto("", RustDef::testMethod, (result, error) -> System.out.println(result));
+
         // initialize buttons
         imageView = findViewById(R.id.idIVimage);
         Button encButton = findViewById(R.id.idBtnEncrypt);
@@ -146,15 +156,13 @@ public class MainActivity extends AppCompatActivity {
                 builder.setView(input);
                 builder.setPositiveButton("OK", (dialog, which) -> {
                     key_id = input.getText().toString();
-                    try {
-                        if (RustDef.demoLoad(key_id))
-                            Snackbar.make(v, "Key with ID " + key_id + " was successfully loaded!", Snackbar.LENGTH_LONG).show();
+                    final String loadId = key_id;
+                    runCrypto(loadId, () -> RustDef.demoLoad(loadId), (loaded, error) -> {
+                        if (Boolean.TRUE.equals(loaded))
+                            Snackbar.make(v, "Key with ID " + loadId + " was successfully loaded!", Snackbar.LENGTH_LONG).show();
                         else
-                            Snackbar.make(v, "Key with ID " + key_id + " does not exist.", Snackbar.LENGTH_LONG).show();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Snackbar.make(v, "Key with ID " + key_id + " does not exist.", Snackbar.LENGTH_LONG).show();
-                    }
+                            Snackbar.make(v, "Key with ID " + loadId + " does not exist.", Snackbar.LENGTH_LONG).show();
+                    });
                 });
                 builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
                 builder.show();
@@ -181,17 +189,15 @@ public class MainActivity extends AppCompatActivity {
             builder.setView(dialogView)
                     .setPositiveButton("OK", (dialog, id) -> {
                         EditText keyNameInput = dialogView.findViewById(R.id.keyNameInput);
-                        try {
-                            key_id = keyNameInput.getText().toString();
-                            String selectedAlgorithm = spinnerAlgorithm.getSelectedItem().toString();
-                            if (RustDef.demoCreate(key_id, selectedAlgorithm))
-                                Snackbar.make(v, "Key " + key_id + " was created!", Snackbar.LENGTH_LONG).show();
+                        key_id = keyNameInput.getText().toString();
+                        final String createId = key_id;
+                        String selectedAlgorithm = spinnerAlgorithm.getSelectedItem().toString();
+                        runCrypto(createId, () -> RustDef.demoCreate(createId, selectedAlgorithm), (created, error) -> {
+                            if (Boolean.TRUE.equals(created))
+                                Snackbar.make(v, "Key " + createId + " was created!", Snackbar.LENGTH_LONG).show();
                             else
-                                Snackbar.make(v, "Key " + key_id + " already exists.", Snackbar.LENGTH_LONG).show();
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            Snackbar.make(v, "Key " + key_id + " already exists.", Snackbar.LENGTH_LONG).show();
-                        }
+                                Snackbar.make(v, "Key " + createId + " already exists.", Snackbar.LENGTH_LONG).show();
+                        });
                     })
                     .setNegativeButton("Cancel", (dialog, id) -> dialog.dismiss());
 
@@ -209,15 +215,14 @@ public class MainActivity extends AppCompatActivity {
                 builder.setView(input);
                 builder.setPositiveButton("OK", (dialog, which) -> {
                     String signText = input.getText().toString();
-                    try {
-                        if (signText(signText))
+                    final String signId = key_id;
+                    runCrypto(signId, () -> signText(signText, signId), (signedBytes, error) -> {
+                        if (signedBytes != null) {
+                            textViewSigned.setText("Signed Bytes: " + Arrays.toString(signedBytes));
                             Snackbar.make(v, "Text signed!", Snackbar.LENGTH_LONG).show();
-                        else
+                        } else
                             Snackbar.make(v, "Failed to sign Text.", Snackbar.LENGTH_LONG).show();
-                    } catch (IOException e) {
-                        Snackbar.make(v, "Failed to sign Text.", Snackbar.LENGTH_LONG).show();
-                        e.printStackTrace();
-                    }
+                    });
                 });
 
                 builder.setNegativeButton("Cancel", (dialog, which) -> dialog.cancel());
@@ -231,23 +236,50 @@ public class MainActivity extends AppCompatActivity {
 
         //When verify button is pressed
         verifyButton.setOnClickListener(v -> {
-            try {
-                boolean verify = verifyText();
+            final String verifyId = key_id;
+            runCrypto(verifyId, () -> verifyText(verifyId), (verified, error) -> {
+                boolean verify = Boolean.TRUE.equals(verified);
                 if (verify)
                     Snackbar.make(v, "Successful verify!", Snackbar.LENGTH_LONG).show();
                 else
                     Snackbar.make(v, "Failed to verify Text", Snackbar.LENGTH_LONG).show();
 
                 textViewVerify.setText("\n Verify: " + verify);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
+            });
         });
     }
 
+    /**
+     * Stops the crypto worker threads once their pending operations are done.
+     */
+    @Override
+    protected void onDestroy() {
+        cryptoExecutor.shutdown();
+        super.onDestroy();
+    }
 
-    private boolean signText(String text) throws IOException {
+    /**
+     * Runs a crypto operation on a worker thread and hands its result to the UI thread.
+     * Operations on the same key run in the order they were started.
+     *
+     * @param keyId     The key the operation works with.
+     * @param operation The operation to run in the background.
+     * @param onDone    Receives the result, or {@code null} and the error if the operation failed.
+     * @param <T>       The result type of the operation.
+     */
+    private <T> void runCrypto(String keyId, Callable<T> operation, BiConsumer<T, Throwable> onDone) {
+        try {
+            cryptoExecutor.submit(keyId, operation).whenComplete((result, error) -> {
+                if (error != null) error.printStackTrace();
+                runOnUiThread(() -> onDone.accept(result, error));
+            });
+        } catch (RejectedExecutionException e) {
+            Snackbar.make(findViewById(android.R.id.content), "Still busy, please try again.", Snackbar.LENGTH_LONG).show();
+        }
+    }
+
+
+    private byte[] signText(String text, String key_id) {
         try {
             ContextWrapper contextWrapper = new ContextWrapper(getApplication());
             File txtDir = contextWrapper.getExternalFilesDir(Environment.DIRECTORY_DCIM);
@@ -256,29 +288,27 @@ public class MainActivity extends AppCompatActivity {
 
             byte[] unsignedBytes = text.getBytes(StandardCharsets.UTF_8);
             byte[] signedBytes = RustDef.demoSign(text.getBytes(StandardCharsets.UTF_8), key_id);
-            if(signedBytes.length == 0) return false;
+            if(signedBytes.length == 0) return null;
 
             createFileFromByteArray(signedBytes, signedTxtFile);
             createFileFromByteArray(unsignedBytes, unsignedTxtFile);
-            String textViewText = "Signed Bytes: " + Arrays.toString(signedBytes);
-            textViewSigned.setText(textViewText);
-            return true;
+            return signedBytes;
         } catch (Exception e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
-    private boolean verifyText() {
+    private boolean verifyText(String key_id) {
         try {
             ContextWrapper contextWrapper = new ContextWrapper(getApplication());
             File txtDir = contextWrapper.getExternalFilesDir(Environment.DIRECTORY_DCIM);
             File unsignedTxtFile = new File(txtDir, "unsignedfile" + ".txt");
             File signedTxtFile = new File(txtDir, "signedfile" + ".txt");
 
-            byte[] unsignedBytes = toByteArray(unsignedTxtFile.getPath());
+            // the signed document is streamed from the file, only the signature is read into memory
             byte[] signedBytes = toByteArray(signedTxtFile.getPath());
-            return RustDef.demoVerify(unsignedBytes, signedBytes, key_id);
+            return RustDef.verifyFile(key_id, unsignedTxtFile.getPath(), signedBytes);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
@@ -286,78 +316,73 @@ public class MainActivity extends AppCompatActivity {
     }
 
 
-    private boolean pictureEncrypt(Uri uri) {
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(uri);
-            assert inputStream != null;
-            byte[] fileData = readBytes(inputStream);
-
-            byte[] encryptedData = RustDef.demoEncrypt(fileData, key_id);
-            File downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-            File encryptedFile = new File(downloadsDir, "encrypted_file.enc");
-            FileOutputStream fos = new FileOutputStream(encryptedFile);
-            fos.write(encryptedData);
-            fos.close();
-
-                return true;
-
+    private boolean pictureEncrypt(Uri uri, String key_id) {
+        File downloadsDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        File encryptedFile = new File(downloadsDir, "encrypted_file.enc");
+        try (ParcelFileDescriptor descriptor = getContentResolver().openFileDescriptor(uri, "r");
+             FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel()) {
+            // the document is encrypted on all cores into a container that can later be read at random
+            RustDef.getCryptoManager().encryptFileParallel(key_id, channel, encryptedFile);
+            return true;
+        } catch (InvalidKeyException e) {
+            // the container needs a symmetric key for its data key, other keys encrypt the whole document at once
+            try {
+                InputStream inputStream = getContentResolver().openInputStream(uri);
+                assert inputStream != null;
+                byte[] encryptedData = RustDef.demoEncrypt(readBytes(inputStream), key_id);
+                createFileFromByteArray(encryptedData, encryptedFile);
+                return encryptedData.length > 0;
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return false;
+            }
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
 
-    private boolean decryptPicture(Uri uri) {
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(uri);
-            assert inputStream != null;
-            byte[] encryptedData = readBytes(inputStream);
-            byte[] decryptedData = RustDef.demoDecrypt(encryptedData, key_id);
-            File tempFile = File.createTempFile("decrypted_image", ".jpg", getCacheDir());
-            FileOutputStream fos = new FileOutputStream(tempFile);
-            fos.write(decryptedData);
-            fos.close();
-
-            File imgFile = new File(tempFile.getPath());
-            if (imgFile.exists()) {
-                Bitmap bitmap = BitmapFactory.decodeFile(imgFile.getPath());
-                imageView.setImageBitmap(bitmap);
-                return true;
+    private Bitmap decryptPicture(Uri uri, String key_id) {
+        try (ParcelFileDescriptor descriptor = getContentResolver().openFileDescriptor(uri, "r");
+             FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel()) {
+            try (SeekableByteChannel decrypted = RustDef.getCryptoManager().newDecryptingChannel(key_id, channel)) {
+                // the image is decoded while its segments are decrypted, no plaintext copy is written
+                return BitmapFactory.decodeStream(Channels.newInputStream(decrypted));
+            } catch (InvalidKeyException e) {
+                File tempFile = File.createTempFile("decrypted_image", ".jpg", getCacheDir());
+                InputStream inputStream = getContentResolver().openInputStream(uri);
+                assert inputStream != null;
+                createFileFromByteArray(RustDef.demoDecrypt(readBytes(inputStream), key_id), tempFile);
+                return BitmapFactory.decodeFile(tempFile.getPath());
             }
-            return false;
-
         } catch (Exception e){
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
     private void handleEncryptedImage(Uri uri) {
-            try {
-                View view = findViewById(android.R.id.content);
-
-                if(pictureEncrypt(uri))
-                    Snackbar.make(view, "File encrypted!", Snackbar.LENGTH_LONG).show();
-                else
-                    Snackbar.make(view, "Encrypt failed, please check key.", Snackbar.LENGTH_LONG).show();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
+        View view = findViewById(android.R.id.content);
+        final String encryptId = key_id;
+        runCrypto(encryptId, () -> pictureEncrypt(uri, encryptId), (encrypted, error) -> {
+            if (Boolean.TRUE.equals(encrypted))
+                Snackbar.make(view, "File encrypted!", Snackbar.LENGTH_LONG).show();
+            else
+                Snackbar.make(view, "Encrypt failed, please check key.", Snackbar.LENGTH_LONG).show();
+        });
     }
 
     private void handleDecryptedImage(Uri uri) {
-            try {
-                View view = findViewById(android.R.id.content);
-
-                if (decryptPicture(uri))
-                    Snackbar.make(view, "Decryption successful", Snackbar.LENGTH_LONG).show();
-                else
-                    Snackbar.make(view, "Decryption failed", Snackbar.LENGTH_LONG).show();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+        View view = findViewById(android.R.id.content);
+        final String decryptId = key_id;
+        runCrypto(decryptId, () -> decryptPicture(uri, decryptId), (bitmap, error) -> {
+            if (bitmap != null) {
+                imageView.setImageBitmap(bitmap);
+                Snackbar.make(view, "Decryption successful", Snackbar.LENGTH_LONG).show();
+            } else
+                Snackbar.make(view, "Decryption failed", Snackbar.LENGTH_LONG).show();
+        });
+    }
 
     private byte[] toByteArray(String path) throws IOException {
         FileInputStream fis = new FileInputStream(path);
@@ -0,0 +1,142 @@
+package com.example.vulcans_limes;
+
+/**
+ * This class holds the measurements of one operation and tag at the time a {@link CryptoMetrics#snapshot()}
+ * was taken.
+ * <p>
+ * Latencies are kept in a histogram with one bucket per power of two nanoseconds, so percentiles are
+ * estimates that may be up to twice the real value.
+ */
+public final class OperationSnapshot {
+    private final CryptoMetrics.Operation operation;
+    private final String tag;
+    private final long count;
+    private final long failureCount;
+    private final long bytes;
+    private final long totalNanos;
+    private final long maxNanos;
+    private final long[] histogram;
+
+    OperationSnapshot(CryptoMetrics.Operation operation, String tag, long count, long failureCount, long bytes,
+                      long totalNanos, long maxNanos, long[] histogram) {
+        this.operation = operation;
+        this.tag = tag;
+        this.count = count;
+        this.failureCount = failureCount;
+        this.bytes = bytes;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.histogram = histogram;
+    }
+
+    /**
+     * Returns the measured operation.
+     *
+     * @return The operation.
+     */
+    public CryptoMetrics.Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Returns the tag the measurements are grouped by, e.g. the transformation or signature algorithm of the key.
+     *
+     * @return The tag, which may be empty.
+     */
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Returns how often the operation was run.
+     *
+     * @return The number of runs, including failed ones.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns how often the operation failed with an exception.
+     *
+     * @return The number of failed runs.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns the number of bytes the operation processed.
+     *
+     * @return The sum of the input lengths of all runs.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the total time spent in the operation.
+     *
+     * @return The sum of the latencies of all runs in nanoseconds.
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns the mean latency of the operation.
+     *
+     * @return The mean latency in nanoseconds, or 0 if the operation was not run.
+     */
+    public long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    /**
+     * Returns the highest latency of the operation.
+     *
+     * @return The highest latency in nanoseconds.
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Estimates a percentile of the latency of the operation.
+     *
+     * @param percentile The percentile, between 0 and 100, e.g. 99 for the 99th percentile.
+     * @return The upper bound of the histogram bucket containing the percentile in nanoseconds, at most
+     * {@link #getMaxNanos()}, or 0 if the operation was not run.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        long total = 0;
+        for (long bucketCount : histogram) total += bucketCount;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) return i == 0 ? 0 : Math.min(maxNanos, i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Returns the latency histogram of the operation. Bucket {@code i} counts the runs that took from
+     * 2<sup>i-1</sup> up to 2<sup>i</sup> - 1 nanoseconds, bucket 0 those that took no measurable time.
+     *
+     * @return A copy of the histogram buckets.
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return operation + "[" + tag + "] count=" + count + " failures=" + failureCount + " bytes=" + bytes
+                + " mean=" + getMeanNanos() + "ns p50=" + getPercentileNanos(50) + "ns p99="
+                + getPercentileNanos(99) + "ns max=" + maxNanos + "ns";
+    }
+}
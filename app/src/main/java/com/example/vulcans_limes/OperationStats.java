@@ -0,0 +1,47 @@
+package com.example.vulcans_limes;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class accumulates the measurements of one operation of {@link CryptoMetrics} for one tag.
+ * <p>
+ * Latencies are counted in a histogram with one bucket per power of two nanoseconds, so recording is a few
+ * atomic increments and never allocates. Counters are updated independently of each other, so a snapshot
+ * taken while operations are recorded may be off by the operations in flight.
+ */
+final class OperationStats {
+    static final int BUCKETS = 64;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    // bucket i counts latencies from 2^(i-1) (inclusive) to 2^i (exclusive) nanoseconds
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos, long byteCount, boolean success) {
+        if (nanos < 0) nanos = 0;
+        count.increment();
+        if (!success) failures.increment();
+        if (byteCount > 0) bytes.add(byteCount);
+        totalNanos.add(nanos);
+        histogram.incrementAndGet(bucket(nanos));
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    OperationSnapshot snapshot(CryptoMetrics.Operation operation, String tag) {
+        long[] buckets = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = histogram.get(i);
+        return new OperationSnapshot(operation, tag, count.sum(), failures.sum(), bytes.sum(), totalNanos.sum(),
+                maxNanos.get(), buckets);
+    }
+
+    static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+}
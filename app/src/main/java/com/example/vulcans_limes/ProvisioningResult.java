@@ -0,0 +1,75 @@
+package com.example.vulcans_limes;
+
+/**
+ * This class holds the outcome of generating one key with {@link CryptoManager#provisionKeys(java.util.Map)}.
+ */
+public final class ProvisioningResult {
+    private final String keyId;
+    private final KeyGenSpec spec;
+    private final Exception error;
+    private final long queuedNanos;
+    private final long generationNanos;
+
+    ProvisioningResult(String keyId, KeyGenSpec spec, Exception error, long queuedNanos, long generationNanos) {
+        this.keyId = keyId;
+        this.spec = spec;
+        this.error = error;
+        this.queuedNanos = queuedNanos;
+        this.generationNanos = generationNanos;
+    }
+
+    /**
+     * Returns the identifier of the key.
+     *
+     * @return The unique identifier the key was requested under.
+     */
+    public String getKeyId() {
+        return keyId;
+    }
+
+    /**
+     * Returns the parameters of the key.
+     *
+     * @return The spec the key was requested with.
+     */
+    public KeyGenSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Returns whether the key was generated.
+     *
+     * @return {@code true} if the key was generated and stored.
+     */
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * Returns the exception the generation failed with. A key whose identifier was already in use fails with a
+     * {@link java.security.KeyStoreException} without being generated.
+     *
+     * @return The exception, or {@code null} if the key was generated.
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Returns how long the key waited before its generation started.
+     *
+     * @return The waiting time in nanoseconds.
+     */
+    public long getQueuedNanos() {
+        return queuedNanos;
+    }
+
+    /**
+     * Returns how long the generation of the key took.
+     *
+     * @return The generation time in nanoseconds, or 0 if the key was not generated.
+     */
+    public long getGenerationNanos() {
+        return generationNanos;
+    }
+}
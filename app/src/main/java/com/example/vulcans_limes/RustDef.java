@@ -2,6 +2,8 @@ package com.example.vulcans_limes;
 
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyStoreException;
@@ -12,10 +14,15 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.spec.InvalidKeySpecException;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 
 /**
  * This class provides the method declarations that are the interface for the JNI.
@@ -50,7 +57,27 @@ class RustDef {
     /*
     CryptoManger object for execution of methods
      */
-    static CryptoManager cryptoManager;
+    static volatile CryptoManager cryptoManager;
+
+    /*
+    Key that was last created or loaded by the calling thread, for the upcalls of the Knox provider that do
+    not pass a key id. The provider loads the key and uses it on the same thread, so keeping it per thread
+    stops a key loaded on another thread in between from taking its place.
+     */
+    private static final ThreadLocal<String> loadedKey = new ThreadLocal<>();
+
+    /*
+    Sessions opened from Rust, by their handle. A handle is never reused, so a closed
+    handle cannot accidentally refer to a session opened later.
+     */
+    private static final Map<Long, CryptoSession> sessions = new ConcurrentHashMap<>();
+    private static final AtomicLong nextSession = new AtomicLong(1);
+
+    /*
+    Signers and verifiers opened from Rust, by their handle. Handles are taken from the same
+    counter as session handles, so they are never reused either.
+     */
+    private static final Map<Long, IncrementalSignature> signatures = new ConcurrentHashMap<>();
 
     static {
         // This call loads the dynamic library containing the Rust code.
@@ -83,6 +110,38 @@ class RustDef {
 
     static native boolean demoLoad(String key_id);
 
+    static native long openSession(String key_id);
+
+    static native byte[] sessionEncrypt(long session, byte[] data);
+
+    static native byte[] sessionDecrypt(long session, byte[] data);
+
+    static native byte[] sessionSign(long session, byte[] data);
+
+    static native boolean sessionVerify(long session, byte[] data, byte[] signed_data);
+
+    static native boolean closeSession(long session);
+
+    static native BatchResult encryptBatch(String key_id, ArrayList<byte[]> records) throws GeneralSecurityException;
+
+    static native BatchResult decryptBatch(String key_id, ArrayList<byte[]> records) throws GeneralSecurityException;
+
+    static native ArrayList<String> bridgeMethodNames();
+
+    static native long[] bridgeMetrics();
+
+    static native void resetBridgeMetrics();
+
+    static native long[] measureUpcalls(int iterations);
+
+    static native byte[] signFile(String key_id, String path);
+
+    static native boolean verifyFile(String key_id, String path, byte[] signed_data);
+
+    static native byte[] exportPublicKey(String key_id);
+
+    static native byte[] exportPublicKeyPoint(String key_id);
+
     //----------------------------------------------------------------------------------------------
     //Java methods that can be called from Rust
 
@@ -118,9 +177,8 @@ class RustDef {
      */
     static void create_key(String key_id, String keyGenInfo) throws InvalidAlgorithmParameterException, CertificateException,
             IOException, NoSuchAlgorithmException, KeyStoreException, NoSuchProviderException {
-        if (keyGenInfo.contains("RSA") || keyGenInfo.contains("EC"))
-            cryptoManager.generateKeyPair(key_id, keyGenInfo);
-        else cryptoManager.genKey(key_id, keyGenInfo);
+        cryptoManager.createKey(key_id, KeyGenSpec.parse(keyGenInfo));
+        loadedKey.set(key_id);
     }
 
     /**
@@ -138,9 +196,13 @@ class RustDef {
      * @throws CertificateException if there is an error processing certificates.
      * @throws IOException if there is an I/O error while interacting with the keystore.
      * @throws NoSuchAlgorithmException if the requested algorithm is not available.
+     * @throws InvalidKeySpecException if the key specification is invalid.
+     * @throws NoSuchProviderException if the provider is not available.
      */
-    static void load_key(String key_id) throws UnrecoverableKeyException, KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException {
+    static void load_key(String key_id) throws UnrecoverableKeyException, KeyStoreException, CertificateException,
+            IOException, NoSuchAlgorithmException, InvalidKeySpecException, NoSuchProviderException {
         cryptoManager.loadKey(key_id);
+        loadedKey.set(key_id);
     }
 
     /**
@@ -148,14 +210,36 @@ class RustDef {
      * <p>
      * This method initializes the TPM context and prepares it for use. It should be called before performing
      * any other operations with the TPM. Upon initialization, it sets up the necessary configurations and
-     * resources required for cryptographic operations involving the TPM.
+     * resources required for cryptographic operations involving the TPM. The {@link CryptoManager} is only
+     * created on the first call, so that the keys it already resolved stay cached.
      *
      * @throws KeyStoreException if the KeyStore Provider does not exist or fails to initialize, indicating issues
      *                           with the key store setup process.
      */
     static void initialize_module() throws KeyStoreException {
-        cryptoManager = new CryptoManager();
+        if (cryptoManager == null) {
+            synchronized (RustDef.class) {
+                if (cryptoManager == null) {
+                    CryptoManager manager = new CryptoManager();
+                    // the calls from Rust end up in this manager, so their metrics are reported with its own
+                    manager.getMetrics().setBridgeMetricsIncluded(true);
+                    cryptoManager = manager;
+                }
+            }
+        }
+    }
 
+    /**
+     * Returns the {@link CryptoManager} behind the upcalls, for operations of the app that do not have to go
+     * through Rust, like encrypting files straight from their channels. Keys created through Rust are available
+     * with the same ids.
+     *
+     * @return the initialized manager.
+     * @throws KeyStoreException if the KeyStore Provider does not exist or fails to initialize.
+     */
+    static CryptoManager getCryptoManager() throws KeyStoreException {
+        initialize_module();
+        return cryptoManager;
     }
 
     /**
@@ -165,6 +249,7 @@ class RustDef {
      * signed is represented as a byte array. The signing process produces a signature for the data, which is returned as
      * a byte array containing the signed data.
      *
+     * @param key_id a String that uniquely identifies the key to be used.
      * @param data a byte array representing the data to be signed.
      * @return the signed data as a byte array.
      * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
@@ -179,9 +264,9 @@ class RustDef {
      * @throws CertificateException if there is an error processing certificates.
      * @throws IOException if there is an I/O error while interacting with the keystore.
      */
-    static byte[] sign_data(byte[] data) throws UnrecoverableKeyException, NoSuchAlgorithmException,
+    static byte[] sign_data(String key_id, byte[] data) throws UnrecoverableKeyException, NoSuchAlgorithmException,
             KeyStoreException, SignatureException, InvalidKeyException, InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
-        return cryptoManager.signData(data);
+        return cryptoManager.signData(key_id, data);
     }
 
     /**
@@ -191,6 +276,7 @@ class RustDef {
      * (Trusted Platform Module). Both the data and the signature are represented as byte arrays. The verification process
      * validates whether the signature matches the data, returning true if the signature is valid and false otherwise.
      *
+     * @param key_id    a String that uniquely identifies the key to be used.
      * @param data      a byte array representing the data to be verified.
      * @param signature a byte array representing the signature to be verified against the data.
      * @return true if the signature is valid, false otherwise.
@@ -204,10 +290,10 @@ class RustDef {
      * @throws CertificateException if there is an error processing certificates.
      * @throws IOException if there is an I/O error while interacting with the keystore.
      */
-    static boolean verify_signature(byte[] data, byte[] signature) throws SignatureException, KeyStoreException,
-            NoSuchAlgorithmException, InvalidKeyException, UnrecoverableKeyException, InvalidKeySpecException,
-            NoSuchProviderException, CertificateException, IOException {
-        return cryptoManager.verifySignature(data, signature);
+    static boolean verify_signature(String key_id, byte[] data, byte[] signature) throws SignatureException,
+            KeyStoreException, NoSuchAlgorithmException, InvalidKeyException, UnrecoverableKeyException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        return cryptoManager.verifySignature(key_id, data, signature);
     }
 
     /**
@@ -220,6 +306,7 @@ class RustDef {
      * This method is called from Rust code, indicating that it may be invoked as part of an integration with a Rust
      * application or library.
      *
+     * @param key_id a String that uniquely identifies the key to be used.
      * @param data a byte array representing the data to be encrypted.
      * @return a byte array containing the encrypted data.
      * @throws UnrecoverableKeyException          if the key cannot be recovered from the keystore.
@@ -234,11 +321,11 @@ class RustDef {
      * @throws InvalidKeyException                if the key is invalid for encryption.
      * @throws NoSuchProviderException            if the provider is not available.
      */
-    static byte[] encrypt_data(byte[] data) throws UnrecoverableKeyException,
+    static byte[] encrypt_data(String key_id, byte[] data) throws UnrecoverableKeyException,
             NoSuchPaddingException, IllegalBlockSizeException, CertificateException, NoSuchAlgorithmException,
             IOException, KeyStoreException, BadPaddingException, InvalidKeySpecException, InvalidKeyException,
             NoSuchProviderException {
-        return cryptoManager.encryptData(data);
+        return cryptoManager.encryptData(key_id, data);
     }
 
     /**
@@ -251,6 +338,7 @@ class RustDef {
      * This method is called from Rust code, indicating that it may be invoked as part of an integration with a Rust
      * application or library.
      *
+     * @param key_id         a String that uniquely identifies the key to be used.
      * @param encrypted_data a byte array representing the data to be decrypted.
      * @return a byte array containing the decrypted data.
      * @throws InvalidAlgorithmParameterException if the algorithm parameters are invalid for decryption.
@@ -266,10 +354,555 @@ class RustDef {
      * @throws InvalidKeyException                if the key is invalid for decryption.
      * @throws NoSuchProviderException            if the provider is not available.
      */
-    static byte[] decrypt_data(byte[] encrypted_data) throws InvalidAlgorithmParameterException, UnrecoverableKeyException,
+    static byte[] decrypt_data(String key_id, byte[] encrypted_data) throws InvalidAlgorithmParameterException,
+            UnrecoverableKeyException, NoSuchPaddingException, IllegalBlockSizeException, CertificateException,
+            NoSuchAlgorithmException, IOException, KeyStoreException, BadPaddingException, InvalidKeySpecException,
+            InvalidKeyException, NoSuchProviderException {
+        return cryptoManager.decryptData(key_id, encrypted_data);
+    }
+
+    /**
+     * Signs the given data with the key last created or loaded by the calling thread.
+     * <p>
+     * The Knox provider in rust-crypto-knox calls the upcalls without a key id, after loading the key through
+     * {@link #load_key(String)}. This method and the ones below keep those calls working and forward to the
+     * methods taking the key id.
+     *
+     * @param data a byte array representing the data to be signed.
+     * @return the signed data as a byte array.
+     * @throws UnrecoverableKeyException if the calling thread has not created or loaded a key yet, or the key
+     *                                   cannot be recovered from the keystore.
+     * @see #sign_data(String, byte[])
+     */
+    static byte[] sign_data(byte[] data) throws UnrecoverableKeyException, NoSuchAlgorithmException,
+            KeyStoreException, SignatureException, InvalidKeyException, InvalidKeySpecException,
+            NoSuchProviderException, CertificateException, IOException {
+        return sign_data(currentKey(), data);
+    }
+
+    /**
+     * Verifies the signature of the given data with the key last created or loaded by the calling thread.
+     *
+     * @param data      a byte array representing the data to be verified.
+     * @param signature a byte array representing the signature to be verified against the data.
+     * @return true if the signature is valid, false otherwise.
+     * @throws UnrecoverableKeyException if the calling thread has not created or loaded a key yet, or the key
+     *                                   cannot be recovered from the keystore.
+     * @see #verify_signature(String, byte[], byte[])
+     */
+    static boolean verify_signature(byte[] data, byte[] signature) throws SignatureException, KeyStoreException,
+            NoSuchAlgorithmException, InvalidKeyException, UnrecoverableKeyException, InvalidKeySpecException,
+            NoSuchProviderException, CertificateException, IOException {
+        return verify_signature(currentKey(), data, signature);
+    }
+
+    /**
+     * Encrypts the given data with the key last created or loaded by the calling thread.
+     *
+     * @param data a byte array representing the data to be encrypted.
+     * @return a byte array containing the encrypted data.
+     * @throws UnrecoverableKeyException if the calling thread has not created or loaded a key yet, or the key
+     *                                   cannot be recovered from the keystore.
+     * @see #encrypt_data(String, byte[])
+     */
+    static byte[] encrypt_data(byte[] data) throws UnrecoverableKeyException, NoSuchPaddingException,
+            IllegalBlockSizeException, CertificateException, NoSuchAlgorithmException, IOException,
+            KeyStoreException, BadPaddingException, InvalidKeySpecException, InvalidKeyException,
+            NoSuchProviderException {
+        return encrypt_data(currentKey(), data);
+    }
+
+    /**
+     * Decrypts the given data with the key last created or loaded by the calling thread.
+     *
+     * @param encrypted_data a byte array representing the data to be decrypted.
+     * @return a byte array containing the decrypted data.
+     * @throws UnrecoverableKeyException if the calling thread has not created or loaded a key yet, or the key
+     *                                   cannot be recovered from the keystore.
+     * @see #decrypt_data(String, byte[])
+     */
+    static byte[] decrypt_data(byte[] encrypted_data) throws InvalidAlgorithmParameterException,
+            UnrecoverableKeyException, NoSuchPaddingException, IllegalBlockSizeException, CertificateException,
+            NoSuchAlgorithmException, IOException, KeyStoreException, BadPaddingException, InvalidKeySpecException,
+            InvalidKeyException, NoSuchProviderException {
+        return decrypt_data(currentKey(), encrypted_data);
+    }
+
+    /**
+     * Signs the data in the given direct buffer using the key managed by the TPM.
+     * <p>
+     * This method works like {@link #sign_data(String, byte[])}, but the buffer wraps memory owned by Rust, so the
+     * data does not have to be copied into a Java array first.
+     *
+     * @param key_id a String that uniquely identifies the key to be used.
+     * @param data a direct buffer wrapping the data to be signed.
+     * @return the signature as a byte array.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws SignatureException        if the signature process encounters an error.
+     * @throws InvalidKeyException       if the key used for signing is invalid.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     */
+    static byte[] sign_data_direct(String key_id, ByteBuffer data) throws UnrecoverableKeyException,
+            NoSuchAlgorithmException, KeyStoreException, SignatureException, InvalidKeyException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        return cryptoManager.signData(key_id, data);
+    }
+
+    /**
+     * Verifies the signature of the data in the given direct buffer using the key managed by the TPM.
+     * <p>
+     * This method works like {@link #verify_signature(String, byte[], byte[])}, but the data buffer wraps memory
+     * owned by Rust, so the data does not have to be copied into a Java array first.
+     *
+     * @param key_id    a String that uniquely identifies the key to be used.
+     * @param data      a direct buffer wrapping the data to be verified.
+     * @param signature a byte array representing the signature to be verified against the data.
+     * @return true if the signature is valid, false otherwise.
+     * @throws SignatureException        if the signature verification process encounters an error.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key used for verification is invalid.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     */
+    static boolean verify_signature_direct(String key_id, ByteBuffer data, byte[] signature) throws SignatureException,
+            KeyStoreException, NoSuchAlgorithmException, InvalidKeyException, UnrecoverableKeyException,
+            InvalidKeySpecException, NoSuchProviderException, CertificateException, IOException {
+        return cryptoManager.verifySignature(key_id, data, signature);
+    }
+
+    /**
+     * Encrypts the data in the given direct buffer using the key managed by the TPM.
+     * <p>
+     * This method works like {@link #encrypt_data(String, byte[])}, but both buffers wrap memory owned by Rust. The
+     * input is read and the result is written in place, so no Java arrays are created for the data.
+     *
+     * @param key_id a String that uniquely identifies the key to be used.
+     * @param data   a direct buffer wrapping the data to be encrypted.
+     * @param output a direct buffer receiving IV and ciphertext, with room for the input length plus
+     *               {@link CryptoManager#MAX_ENCRYPTION_OVERHEAD} bytes.
+     * @return the number of bytes written to {@code output}.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws NoSuchPaddingException    if the padding scheme is not available.
+     * @throws IllegalBlockSizeException if the block size is invalid for the encryption algorithm.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws BadPaddingException       if the data padding is incorrect for encryption.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws InvalidKeyException       if the key is invalid for encryption.
+     * @throws NoSuchProviderException   if the provider is not available.
+     * @throws ShortBufferException      if {@code output} is too small.
+     */
+    static int encrypt_data_direct(String key_id, ByteBuffer data, ByteBuffer output) throws UnrecoverableKeyException,
             NoSuchPaddingException, IllegalBlockSizeException, CertificateException, NoSuchAlgorithmException,
             IOException, KeyStoreException, BadPaddingException, InvalidKeySpecException, InvalidKeyException,
+            NoSuchProviderException, ShortBufferException {
+        return cryptoManager.encryptData(key_id, data, output);
+    }
+
+    /**
+     * Decrypts the data in the given direct buffer using the key managed by the TPM.
+     * <p>
+     * This method works like {@link #decrypt_data(String, byte[])}, but both buffers wrap memory owned by Rust. The
+     * input is read and the result is written in place, so no Java arrays are created for the data.
+     *
+     * @param key_id         a String that uniquely identifies the key to be used.
+     * @param encrypted_data a direct buffer wrapping the data to be decrypted.
+     * @param output         a direct buffer receiving the plaintext, at least as large as the input.
+     * @return the number of bytes written to {@code output}.
+     * @throws InvalidAlgorithmParameterException if the algorithm parameters are invalid for decryption.
+     * @throws UnrecoverableKeyException          if the key cannot be recovered from the keystore.
+     * @throws NoSuchPaddingException             if the padding scheme is not available.
+     * @throws IllegalBlockSizeException          if the block size is invalid for the decryption algorithm.
+     * @throws CertificateException               if there is an issue loading the certificate chain.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws IOException                        if there is an I/O error during the operation.
+     * @throws KeyStoreException                  if there is an error accessing the keystore.
+     * @throws BadPaddingException                if the data padding is incorrect for decryption.
+     * @throws InvalidKeySpecException            if the key specification is invalid.
+     * @throws InvalidKeyException                if the key is invalid for decryption.
+     * @throws NoSuchProviderException            if the provider is not available.
+     * @throws ShortBufferException               if {@code output} is too small.
+     */
+    static int decrypt_data_direct(String key_id, ByteBuffer encrypted_data, ByteBuffer output)
+            throws InvalidAlgorithmParameterException, UnrecoverableKeyException, NoSuchPaddingException,
+            IllegalBlockSizeException, CertificateException, NoSuchAlgorithmException, IOException, KeyStoreException,
+            BadPaddingException, InvalidKeySpecException, InvalidKeyException, NoSuchProviderException,
+            ShortBufferException {
+        return cryptoManager.decryptData(key_id, encrypted_data, output);
+    }
+
+    /**
+     * Encrypts a batch of records with the key identified by {@code key_id} in a single call.
+     * <p>
+     * See {@link CryptoManager#runBatch(String, int, ByteBuffer, int[], ByteBuffer, int[])} for the layout of
+     * the buffers. Records that cannot be encrypted get the length -1 and do not stop the batch.
+     *
+     * @param key_id         a String that uniquely identifies the key to be used.
+     * @param input          a direct buffer wrapping all records.
+     * @param input_offsets  the offsets of the records in {@code input}, with one more entry than there are records.
+     * @param output         a direct buffer receiving the results, with room for the input length plus
+     *                       {@link CryptoManager#MAX_ENCRYPTION_OVERHEAD} bytes per record.
+     * @param output_lengths receives the length of each result, or -1 for failed records.
+     * @return the number of records that failed.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws InvalidKeyException       if the key is invalid for encryption.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static int encrypt_batch_direct(String key_id, ByteBuffer input, int[] input_offsets, ByteBuffer output,
+                                    int[] output_lengths) throws NoSuchAlgorithmException, CertificateException,
+            IOException, InvalidKeyException, UnrecoverableKeyException, KeyStoreException, InvalidKeySpecException,
             NoSuchProviderException {
-        return cryptoManager.decryptData(encrypted_data);
+        return cryptoManager.runBatch(key_id, Cipher.ENCRYPT_MODE, input, input_offsets, output, output_lengths);
+    }
+
+    /**
+     * Decrypts a batch of records with the key identified by {@code key_id} in a single call.
+     * <p>
+     * See {@link CryptoManager#runBatch(String, int, ByteBuffer, int[], ByteBuffer, int[])} for the layout of
+     * the buffers. Records that cannot be decrypted get the length -1 and do not stop the batch.
+     *
+     * @param key_id         a String that uniquely identifies the key to be used.
+     * @param input          a direct buffer wrapping all records.
+     * @param input_offsets  the offsets of the records in {@code input}, with one more entry than there are records.
+     * @param output         a direct buffer receiving the results, at least as large as the input.
+     * @param output_lengths receives the length of each result, or -1 for failed records.
+     * @return the number of records that failed.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws CertificateException      if there is an issue loading the certificate chain.
+     * @throws IOException               if there is an I/O error during the operation.
+     * @throws InvalidKeyException       if the key is invalid for decryption.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static int decrypt_batch_direct(String key_id, ByteBuffer input, int[] input_offsets, ByteBuffer output,
+                                    int[] output_lengths) throws NoSuchAlgorithmException, CertificateException,
+            IOException, InvalidKeyException, UnrecoverableKeyException, KeyStoreException, InvalidKeySpecException,
+            NoSuchProviderException {
+        return cryptoManager.runBatch(key_id, Cipher.DECRYPT_MODE, input, input_offsets, output, output_lengths);
+    }
+
+    /**
+     * Opens a session on the key identified by {@code key_id}.
+     * <p>
+     * The key is resolved once, and all operations on the returned handle use it without loading it again.
+     * The session has to be released with {@link #close_session(long)}.
+     *
+     * @param key_id a String that uniquely identifies the key to be used by the session.
+     * @return the handle of the new session, never 0.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static long open_session(String key_id) throws UnrecoverableKeyException, KeyStoreException,
+            CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        initialize_module();
+        long handle = nextSession.getAndIncrement();
+        sessions.put(handle, cryptoManager.openSession(key_id));
+        return handle;
+    }
+
+    /**
+     * Closes the session with the given handle.
+     *
+     * @param session the handle returned by {@link #open_session(String)}.
+     * @return true if the session was open, false if the handle is unknown or was already closed.
+     */
+    static boolean close_session(long session) {
+        CryptoSession cryptoSession = sessions.remove(session);
+        if (cryptoSession == null) return false;
+        cryptoSession.close();
+        return true;
+    }
+
+    /**
+     * Encrypts the data in the given direct buffer with the key of a session.
+     *
+     * @param session the handle returned by {@link #open_session(String)}.
+     * @param data    a direct buffer wrapping the data to be encrypted.
+     * @param output  a direct buffer receiving IV and ciphertext, with room for the input length plus
+     *                {@link CryptoManager#MAX_ENCRYPTION_OVERHEAD} bytes.
+     * @return the number of bytes written to {@code output}.
+     * @throws UnrecoverableKeyException if the session handle is unknown.
+     * @throws NoSuchPaddingException    if the padding scheme is not available.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key is invalid for encryption.
+     * @throws IllegalBlockSizeException if the block size is invalid for the encryption algorithm.
+     * @throws BadPaddingException       if the data padding is incorrect for encryption.
+     * @throws ShortBufferException      if {@code output} is too small.
+     */
+    static int session_encrypt_direct(long session, ByteBuffer data, ByteBuffer output)
+            throws UnrecoverableKeyException, NoSuchPaddingException, NoSuchAlgorithmException, InvalidKeyException,
+            IllegalBlockSizeException, BadPaddingException, ShortBufferException {
+        return session(session).encryptData(data, output);
+    }
+
+    /**
+     * Decrypts the data in the given direct buffer with the key of a session.
+     *
+     * @param session        the handle returned by {@link #open_session(String)}.
+     * @param encrypted_data a direct buffer wrapping the data to be decrypted.
+     * @param output         a direct buffer receiving the plaintext, at least as large as the input.
+     * @return the number of bytes written to {@code output}.
+     * @throws UnrecoverableKeyException          if the session handle is unknown.
+     * @throws NoSuchPaddingException             if the padding scheme is not available.
+     * @throws NoSuchAlgorithmException           if the requested algorithm is not available.
+     * @throws InvalidAlgorithmParameterException if the algorithm parameters are invalid for decryption.
+     * @throws InvalidKeyException                if the key is invalid for decryption.
+     * @throws IllegalBlockSizeException          if the block size is invalid for the decryption algorithm.
+     * @throws BadPaddingException                if the data padding is incorrect for decryption.
+     * @throws ShortBufferException               if {@code output} is too small.
+     */
+    static int session_decrypt_direct(long session, ByteBuffer encrypted_data, ByteBuffer output)
+            throws UnrecoverableKeyException, NoSuchPaddingException, NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException,
+            ShortBufferException {
+        return session(session).decryptData(encrypted_data, output);
+    }
+
+    /**
+     * Signs the data in the given direct buffer with the key of a session.
+     *
+     * @param session the handle returned by {@link #open_session(String)}.
+     * @param data    a direct buffer wrapping the data to be signed.
+     * @return the signature as a byte array.
+     * @throws UnrecoverableKeyException if the session handle is unknown.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key used for signing is invalid.
+     * @throws SignatureException        if the signature process encounters an error.
+     */
+    static byte[] session_sign_direct(long session, ByteBuffer data) throws UnrecoverableKeyException,
+            NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return session(session).signData(data);
+    }
+
+    /**
+     * Verifies the signature of the data in the given direct buffer with the key of a session.
+     *
+     * @param session   the handle returned by {@link #open_session(String)}.
+     * @param data      a direct buffer wrapping the data to be verified.
+     * @param signature a byte array representing the signature to be verified against the data.
+     * @return true if the signature is valid, false otherwise.
+     * @throws UnrecoverableKeyException if the session handle is unknown.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeyException       if the key used for verification is invalid.
+     * @throws SignatureException        if the signature verification process encounters an error.
+     */
+    static boolean session_verify_direct(long session, ByteBuffer data, byte[] signature)
+            throws UnrecoverableKeyException, NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return session(session).verifySignature(data, signature);
+    }
+
+    /**
+     * Opens a signer on the key pair identified by {@code key_id}, which is fed with the document piece by piece
+     * through {@link #signature_update_direct(long, ByteBuffer)}.
+     * <p>
+     * The signer has to be released with {@link #signer_sign(long)} or {@link #close_signature(long)}.
+     *
+     * @param key_id a String that uniquely identifies the key pair to be used.
+     * @return the handle of the new signer, never 0.
+     * @throws InvalidKeyException       if the key is not a key pair or cannot be used for signing.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static long open_signer(String key_id) throws InvalidKeyException, UnrecoverableKeyException,
+            KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        initialize_module();
+        long handle = nextSession.getAndIncrement();
+        signatures.put(handle, cryptoManager.newSigner(key_id));
+        return handle;
+    }
+
+    /**
+     * Opens a verifier on the key pair identified by {@code key_id}, which is fed with the document piece by
+     * piece through {@link #signature_update_direct(long, ByteBuffer)}.
+     * <p>
+     * The verifier has to be released with {@link #verifier_verify(long, byte[])} or
+     * {@link #close_signature(long)}.
+     *
+     * @param key_id a String that uniquely identifies the key pair to be used.
+     * @return the handle of the new verifier, never 0.
+     * @throws InvalidKeyException       if the key is not a key pair or cannot be used for verification.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static long open_verifier(String key_id) throws InvalidKeyException, UnrecoverableKeyException,
+            KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        initialize_module();
+        long handle = nextSession.getAndIncrement();
+        signatures.put(handle, cryptoManager.newVerifier(key_id));
+        return handle;
+    }
+
+    /**
+     * Adds the data in the given direct buffer to the document of a signer or verifier.
+     *
+     * @param handle the handle returned by {@link #open_signer(String)} or {@link #open_verifier(String)}.
+     * @param data   a direct buffer wrapping the next part of the document.
+     * @throws UnrecoverableKeyException if the handle is unknown.
+     * @throws SignatureException        if the data cannot be added.
+     */
+    static void signature_update_direct(long handle, ByteBuffer data) throws UnrecoverableKeyException,
+            SignatureException {
+        signature(handle, IncrementalSignature.class).update(data);
+    }
+
+    /**
+     * Signs the document of a signer and releases it.
+     *
+     * @param handle the handle returned by {@link #open_signer(String)}.
+     * @return the signature as a byte array.
+     * @throws UnrecoverableKeyException if the handle is unknown or not that of a signer.
+     * @throws SignatureException        if the signature process encounters an error.
+     */
+    static byte[] signer_sign(long handle) throws UnrecoverableKeyException, SignatureException {
+        Signer signer = signature(handle, Signer.class);
+        signatures.remove(handle);
+        return signer.sign();
+    }
+
+    /**
+     * Verifies the document of a verifier against the given signature and releases the verifier.
+     *
+     * @param handle    the handle returned by {@link #open_verifier(String)}.
+     * @param signature a byte array representing the signature to be verified against the document.
+     * @return true if the signature is valid, false otherwise.
+     * @throws UnrecoverableKeyException if the handle is unknown or not that of a verifier.
+     * @throws SignatureException        if the signature verification process encounters an error.
+     */
+    static boolean verifier_verify(long handle, byte[] signature) throws UnrecoverableKeyException,
+            SignatureException {
+        Verifier verifier = signature(handle, Verifier.class);
+        signatures.remove(handle);
+        return verifier.verify(signature);
+    }
+
+    /**
+     * Releases a signer or verifier without finishing its document, e.g. because the document cannot be read.
+     *
+     * @param handle the handle returned by {@link #open_signer(String)} or {@link #open_verifier(String)}.
+     * @return true if the handle was open, false if it is unknown or was already released.
+     */
+    static boolean close_signature(long handle) {
+        return signatures.remove(handle) != null;
+    }
+
+    /**
+     * Exports the public key of the key pair identified by {@code key_id} as DER encoded X.509
+     * SubjectPublicKeyInfo, so that its signatures can be verified without the keystore.
+     *
+     * @param key_id a String that uniquely identifies the key pair.
+     * @return the encoded public key.
+     * @throws InvalidKeyException       if the key is not a key pair.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static byte[] export_public_key(String key_id) throws InvalidKeyException, UnrecoverableKeyException,
+            KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        initialize_module();
+        return cryptoManager.exportPublicKey(key_id);
+    }
+
+    /**
+     * Exports the public key of the EC key pair identified by {@code key_id} as raw uncompressed point.
+     *
+     * @param key_id a String that uniquely identifies the EC key pair.
+     * @return {@code 0x04} followed by the X and Y coordinates.
+     * @throws InvalidKeyException       if the key is not an EC key pair.
+     * @throws UnrecoverableKeyException if the key cannot be recovered from the keystore.
+     * @throws KeyStoreException         if there is an error accessing the keystore.
+     * @throws CertificateException      if there is an error processing certificates.
+     * @throws IOException               if there is an I/O error while interacting with the keystore.
+     * @throws NoSuchAlgorithmException  if the requested algorithm is not available.
+     * @throws InvalidKeySpecException   if the key specification is invalid.
+     * @throws NoSuchProviderException   if the provider is not available.
+     */
+    static byte[] export_public_key_point(String key_id) throws InvalidKeyException, UnrecoverableKeyException,
+            KeyStoreException, CertificateException, IOException, NoSuchAlgorithmException, InvalidKeySpecException,
+            NoSuchProviderException {
+        initialize_module();
+        return cryptoManager.exportPublicKeyPoint(key_id);
+    }
+
+    /**
+     * Returns the open signer or verifier with the given handle.
+     *
+     * @param handle the handle returned by {@link #open_signer(String)} or {@link #open_verifier(String)}.
+     * @param type   the expected type, {@link Signer}, {@link Verifier} or {@link IncrementalSignature}.
+     * @return the signer or verifier.
+     * @throws UnrecoverableKeyException if there is no open signer or verifier of that type with this handle.
+     */
+    private static <T extends IncrementalSignature> T signature(long handle, Class<T> type)
+            throws UnrecoverableKeyException {
+        IncrementalSignature signature = signatures.get(handle);
+        if (!type.isInstance(signature)) {
+            throw new UnrecoverableKeyException("No open " + type.getSimpleName() + " with handle " + handle + ".");
+        }
+        return type.cast(signature);
+    }
+
+    /**
+     * Returns the open session with the given handle.
+     *
+     * @param session the handle returned by {@link #open_session(String)}.
+     * @return the session.
+     * @throws UnrecoverableKeyException if there is no open session with this handle.
+     */
+    private static CryptoSession session(long session) throws UnrecoverableKeyException {
+        CryptoSession cryptoSession = sessions.get(session);
+        if (cryptoSession == null) throw new UnrecoverableKeyException("No open session with handle " + session + ".");
+        return cryptoSession;
+    }
+
+    /**
+     * Returns the key that was last created or loaded by the calling thread.
+     *
+     * @return the unique identifier of the key.
+     * @throws UnrecoverableKeyException if the calling thread has not created or loaded a key yet.
+     */
+    private static String currentKey() throws UnrecoverableKeyException {
+        String key_id = loadedKey.get();
+        if (key_id == null) throw new UnrecoverableKeyException("No key has been loaded on this thread.");
+        return key_id;
     }
 }
\ No newline at end of file
@@ -0,0 +1,349 @@
+package com.example.vulcans_limes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.crypto.Cipher;
+
+/**
+ * This class defines the container format for large files that are encrypted and decrypted on all cores.
+ * <p>
+ * A container is an envelope, see {@link Envelope}, whose data key encrypts the file in {@link SegmentedAead}
+ * segments. Every segment has its own nonce and tag, so the segments do not depend on each other and are
+ * processed in parallel on the common {@link ForkJoinPool}, with the data key in software. Each segment is
+ * written straight to its place in the target file, which puts them back in order without buffering them.
+ * A container has the following layout:
+ * <pre>
+ * envelope header: "VLE" | format 3 (1 byte) | wrapped key length (2 bytes) | wrapped data key
+ * segment header:  see {@link SegmentedAead}
+ * index:           segment count (8 bytes) | per segment: offset (8 bytes) | length (4 bytes)
+ * segments:        nonce (12 bytes) | ciphertext | tag (16 bytes)
+ * </pre>
+ * The index records where every encrypted segment starts, counted from the beginning of the container, and how
+ * long it is, so that any segment can be found without reading the ones before it. The index itself is not
+ * authenticated, but every segment is bound to its index and to the last-segment flag as in
+ * {@link SegmentedAead}, so a manipulated index makes the decryption fail.
+ */
+final class SegmentContainer {
+    static final int INDEX_ENTRY_LENGTH = 12;
+    // segments processed by one task before it is not split any further
+    private static final int SEGMENTS_PER_TASK = 4;
+    // direct output buffer of every worker thread, so that it is not allocated again for every task
+    private static final ThreadLocal<ByteBuffer> outputBuffers = new ThreadLocal<>();
+    private static final byte[] ZEROS = new byte[8192];
+
+    private final byte[] envelopeHeader;
+    private final byte[] header;
+    // at most SegmentedAead.MAX_SEGMENT_SIZE, as both create and read take it from a checked header
+    private final int segmentSize;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private SegmentContainer(byte[] envelopeHeader, byte[] header, int segmentSize, long[] offsets, int[] lengths) {
+        this.envelopeHeader = envelopeHeader;
+        this.header = header;
+        this.segmentSize = segmentSize;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Creates the layout of a new container.
+     *
+     * @param envelopeHeader  The envelope header with the wrapped data key, see {@link Envelope#CONTAINER}.
+     * @param segmentSize     The size of the plaintext segments in bytes.
+     * @param plaintextLength The length of the file to be encrypted.
+     * @return The layout, with a new random segment header.
+     * @throws IOException              if the segment size is not positive or too large.
+     * @throws IllegalArgumentException if the file has too many segments.
+     */
+    static SegmentContainer create(byte[] envelopeHeader, int segmentSize, long plaintextLength) throws IOException {
+        byte[] header = SegmentedAead.newHeader(segmentSize);
+        // an empty file still gets one empty segment that is marked as the last one
+        long count = Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+        if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("File has too many segments.");
+        long[] offsets = new long[(int) count];
+        int[] lengths = new int[(int) count];
+        long position = envelopeHeader.length + header.length + 8 + count * INDEX_ENTRY_LENGTH;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = position;
+            lengths[i] = (int) Math.min(segmentSize, plaintextLength - (long) i * segmentSize)
+                    + SegmentedAead.SEGMENT_OVERHEAD;
+            position += lengths[i];
+        }
+        return new SegmentContainer(envelopeHeader, header, segmentSize, offsets, lengths);
+    }
+
+    /**
+     * Reads and checks the headers and the index of an existing container.
+     *
+     * @param channel The channel of the container. Its position is changed.
+     * @return The layout of the container.
+     * @throws IOException if the data is not a container or its index is invalid.
+     */
+    static SegmentContainer read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        // not closed, as that would close the channel
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+        byte[] envelopeHeader = Envelope.readHeader(in, Envelope.CONTAINER);
+        byte[] header = new byte[SegmentedAead.HEADER_LENGTH];
+        in.readFully(header);
+        int segmentSize = SegmentedAead.segmentSize(header);
+        long count = in.readLong();
+        long indexStart = envelopeHeader.length + header.length + 8;
+        if (count < 1 || count > (size - indexStart) / (INDEX_ENTRY_LENGTH + SegmentedAead.SEGMENT_OVERHEAD)) {
+            throw new IOException("Invalid segment index.");
+        }
+        long dataStart = indexStart + count * INDEX_ENTRY_LENGTH;
+        long[] offsets = new long[(int) count];
+        int[] lengths = new int[(int) count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = in.readLong();
+            lengths[i] = in.readInt();
+            // all segments but the last are full, so the plaintext of segment i starts at i * segmentSize
+            boolean valid = i == count - 1
+                    ? lengths[i] >= SegmentedAead.SEGMENT_OVERHEAD
+                    && lengths[i] <= segmentSize + SegmentedAead.SEGMENT_OVERHEAD
+                    : lengths[i] == segmentSize + SegmentedAead.SEGMENT_OVERHEAD;
+            if (!valid || offsets[i] < dataStart || offsets[i] > size - lengths[i]) {
+                throw new IOException("Invalid segment index.");
+            }
+        }
+        return new SegmentContainer(envelopeHeader, header, segmentSize, offsets, lengths);
+    }
+
+    /**
+     * Returns the wrapped data key from the envelope header.
+     *
+     * @return A copy of the wrapped data key.
+     */
+    byte[] getWrappedKey() {
+        return Envelope.wrappedKey(envelopeHeader, envelopeHeader.length);
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    int getSegmentCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the length of the plaintext of the whole container.
+     *
+     * @return The number of plaintext bytes.
+     */
+    long getPlaintextLength() {
+        int last = offsets.length - 1;
+        return (long) last * segmentSize + lengths[last] - SegmentedAead.SEGMENT_OVERHEAD;
+    }
+
+    /**
+     * Encrypts everything from the beginning of the source to its end in parallel and writes the container to
+     * the target. The result is written to a temporary file next to the target, which replaces the target once
+     * it is complete.
+     *
+     * @param source The channel of the plaintext, which has to support mapping and has to have the length this
+     *               layout was created for.
+     * @param target The file the container is written to.
+     * @param key    The data key.
+     * @param pool   The pool providing the software ciphers of the worker threads.
+     * @throws IOException if a file cannot be read or written, or a segment cannot be encrypted.
+     */
+    void encrypt(FileChannel source, File target, Key key, CipherPool pool) throws IOException {
+        if (source.size() != getPlaintextLength()) throw new IOException("File was changed while it was read.");
+        ByteBuffer headers = ByteBuffer.allocate((int) offsets[0]);
+        headers.put(envelopeHeader).put(header).putLong(offsets.length);
+        for (int i = 0; i < offsets.length; i++) headers.putLong(offsets[i]).putInt(lengths[i]);
+        headers.flip();
+        run(source, target, key, pool, true, headers);
+    }
+
+    /**
+     * Decrypts all segments of the container in parallel and writes the plaintext to the target. The plaintext
+     * is written to a temporary file, which only replaces the target after every segment has been authenticated.
+     *
+     * @param source The channel of the container, which has to support mapping.
+     * @param target The file the plaintext is written to.
+     * @param key    The unwrapped data key.
+     * @param pool   The pool providing the software ciphers of the worker threads.
+     * @throws IOException if a file cannot be read or written, or the container was tampered with.
+     */
+    void decrypt(FileChannel source, File target, Key key, CipherPool pool) throws IOException {
+        run(source, target, key, pool, false, ByteBuffer.allocate(0));
+    }
+
+    /**
+     * Decrypts and authenticates a single segment.
+     *
+     * @param source The channel of the container.
+     * @param cipher An AES-GCM cipher, which is re-initialized by this method.
+     * @param key    The unwrapped data key.
+     * @param index  The index of the segment.
+     * @param output The buffer receiving the plaintext, which needs room for
+     *               {@code getSegmentSize() + SegmentedAead.TAG_LENGTH} bytes.
+     * @return The length of the plaintext.
+     * @throws IOException if the segment cannot be read or was tampered with.
+     */
+    int decryptSegment(FileChannel source, Cipher cipher, Key key, int index, ByteBuffer output)
+            throws IOException {
+        ByteBuffer segment = ByteBuffer.allocate(lengths[index]);
+        while (segment.hasRemaining()) {
+            if (source.read(segment, offsets[index] + segment.position()) == -1) {
+                throw new IOException("Encrypted container is truncated.");
+            }
+        }
+        segment.flip();
+        try {
+            return SegmentedAead.decryptSegment(cipher, key, header, index, index == offsets.length - 1, segment,
+                    output);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt segment " + index, e);
+        }
+    }
+
+    private void run(FileChannel source, File target, Key key, CipherPool pool, boolean encrypt, ByteBuffer headers)
+            throws IOException {
+        File temp = SegmentedFileCipher.newTempFile(target);
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                writeFully(out, headers, 0);
+                AtomicReference<IOException> failure = new AtomicReference<>();
+                ForkJoinPool.commonPool().invoke(
+                        new SegmentTask(source, out, key, pool, encrypt, failure, 0, offsets.length));
+                if (failure.get() != null) throw failure.get();
+                out.force(false);
+            }
+            SegmentedFileCipher.moveAtomically(temp, target);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) position += out.write(data, position);
+    }
+
+    /**
+     * Returns the calling thread's output buffer, which is direct, so that the positional writes do not copy it
+     * into a temporary direct buffer. It is only replaced by a larger one if a container needs more room.
+     *
+     * @param capacity The number of bytes needed.
+     * @return A cleared buffer with at least {@code capacity} bytes.
+     */
+    private static ByteBuffer outputBuffer(int capacity) {
+        ByteBuffer buffer = outputBuffers.get();
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+            outputBuffers.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void zero(ByteBuffer buffer, int length) {
+        buffer.clear();
+        while (buffer.position() < length) buffer.put(ZEROS, 0, Math.min(ZEROS.length, length - buffer.position()));
+        buffer.clear();
+    }
+
+    /**
+     * Encrypts or decrypts a range of the segments, splitting it in halves until it is small enough. The first
+     * failure is recorded and makes the remaining tasks skip their work.
+     */
+    private final class SegmentTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel source;
+        private final FileChannel target;
+        private final Key key;
+        private final CipherPool pool;
+        private final boolean encrypt;
+        private final AtomicReference<IOException> failure;
+        private final int from;
+        private final int to;
+
+        SegmentTask(FileChannel source, FileChannel target, Key key, CipherPool pool, boolean encrypt,
+                    AtomicReference<IOException> failure, int from, int to) {
+            this.source = source;
+            this.target = target;
+            this.key = key;
+            this.pool = pool;
+            this.encrypt = encrypt;
+            this.failure = failure;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SEGMENTS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SegmentTask(source, target, key, pool, encrypt, failure, from, middle),
+                        new SegmentTask(source, target, key, pool, encrypt, failure, middle, to));
+                return;
+            }
+            if (failure.get() != null) return;
+            ByteBuffer output = outputBuffer(segmentSize + SegmentedAead.SEGMENT_OVERHEAD);
+            try {
+                Cipher cipher = pool.getCipher(Envelope.DATA_KEY_TRANSFORMATION);
+                if (encrypt) encryptRange(cipher, output);
+                else decryptRange(cipher, output);
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (GeneralSecurityException e) {
+                failure.compareAndSet(null, new IOException("No cipher for the data key available.", e));
+            } finally {
+                // the buffer stays with the thread, so no plaintext is left in it
+                if (!encrypt) zero(output, segmentSize + SegmentedAead.SEGMENT_OVERHEAD);
+            }
+        }
+
+        private void encryptRange(Cipher cipher, ByteBuffer output) throws IOException {
+            long start = (long) from * segmentSize;
+            long length = Math.min(getPlaintextLength(), (long) to * segmentSize) - start;
+            ByteBuffer plaintext = length > 0
+                    ? source.map(FileChannel.MapMode.READ_ONLY, start, length) : ByteBuffer.allocate(0);
+            for (int i = from; i < to; i++) {
+                ByteBuffer segment = plaintext.duplicate();
+                int position = (i - from) * segmentSize;
+                segment.position(position);
+                segment.limit(position + lengths[i] - SegmentedAead.SEGMENT_OVERHEAD);
+                output.clear();
+                try {
+                    SegmentedAead.encryptSegment(cipher, key, header, i, i == offsets.length - 1, segment, output);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to encrypt segment " + i, e);
+                }
+                output.flip();
+                writeFully(target, output, offsets[i]);
+            }
+        }
+
+        private void decryptRange(Cipher cipher, ByteBuffer output) throws IOException {
+            for (int i = from; i < to; i++) {
+                ByteBuffer segment = source.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]);
+                output.clear();
+                try {
+                    SegmentedAead.decryptSegment(cipher, key, header, i, i == offsets.length - 1, segment, output);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to decrypt segment " + i, e);
+                }
+                output.flip();
+                writeFully(target, output, (long) i * segmentSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.vulcans_limes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * This class gives read-only random access to the plaintext of a {@link SegmentContainer}.
+ * <p>
+ * Reading at a position only decrypts the segments covering the requested range, which are found through the
+ * index of the container. The segment read last is kept decrypted, so sequential reads and small seeks within it
+ * do not decrypt it again. Data of a segment is only returned after its authentication tag has been checked.
+ * Reading fails with an {@link IOException} if a segment was tampered with.
+ * <p>
+ * Instances are not thread-safe.
+ */
+final class SegmentContainerChannel implements SeekableByteChannel {
+    private final FileChannel source;
+    private final SegmentContainer container;
+    private final Cipher cipher;
+    private final Key key;
+    private final long size;
+    private final ByteBuffer plaintext;
+    private int cachedIndex = -1;
+    private long position;
+    private boolean open = true;
+
+    /**
+     * Creates a new channel over a container.
+     *
+     * @param source    The channel of the container, which is closed together with this channel.
+     * @param container The layout of the container, see {@link SegmentContainer#read(FileChannel)}.
+     * @param cipher    An AES-GCM cipher used exclusively by this channel.
+     * @param key       The unwrapped data key.
+     * @throws IOException if the segment size of the container is out of range, see
+     *                     {@link SegmentedAead#MAX_SEGMENT_SIZE}.
+     */
+    SegmentContainerChannel(FileChannel source, SegmentContainer container, Cipher cipher, Key key)
+            throws IOException {
+        // checked again, as the buffer is allocated with it
+        SegmentedAead.checkSegmentSize(container.getSegmentSize());
+        this.source = source;
+        this.container = container;
+        this.cipher = cipher;
+        this.key = key;
+        this.size = container.getPlaintextLength();
+        this.plaintext = ByteBuffer.allocateDirect(container.getSegmentSize() + SegmentedAead.TAG_LENGTH);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size) return -1;
+        int segmentSize = container.getSegmentSize();
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            int index = (int) (position / segmentSize);
+            if (index != cachedIndex) {
+                // invalidated first, so that a failed segment is not served afterwards
+                cachedIndex = -1;
+                plaintext.clear();
+                container.decryptSegment(source, cipher, key, index, plaintext);
+                plaintext.flip();
+                cachedIndex = index;
+            }
+            ByteBuffer segment = plaintext.duplicate();
+            segment.position((int) (position - (long) index * segmentSize));
+            if (segment.remaining() > dst.remaining()) segment.limit(segment.position() + dst.remaining());
+            total += segment.remaining();
+            position += segment.remaining();
+            dst.put(segment);
+        }
+        return total;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) throw new IllegalArgumentException("Position must not be negative.");
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        ensureOpen();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) return;
+        open = false;
+        cachedIndex = -1;
+        plaintext.clear();
+        for (int i = 0; i < plaintext.capacity(); i++) plaintext.put(i, (byte) 0);
+        source.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) throw new ClosedChannelException();
+    }
+}
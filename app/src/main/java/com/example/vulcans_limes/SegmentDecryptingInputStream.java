@@ -0,0 +1,135 @@
+package com.example.vulcans_limes;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * This class decrypts a stream in the {@link SegmentedAead} format while it is read.
+ * <p>
+ * Segments are read, authenticated and decrypted one at a time, so the memory used does not depend on the
+ * size of the stream. Data of a segment is only returned after its authentication tag has been checked.
+ * Reading fails with an {@link IOException} if a segment was tampered with or the stream was truncated.
+ */
+final class SegmentDecryptingInputStream extends FilterInputStream {
+    private final Cipher cipher;
+    private final Key key;
+    private byte[] header;
+    private byte[] segment;
+    private byte[] plaintext;
+    private int plaintextLength;
+    private int position;
+    private long index;
+    private boolean lookAheadPresent;
+    private boolean finished;
+
+    /**
+     * Creates a new decrypting stream. The header is read from {@code in} on the first read.
+     *
+     * @param in     The stream the encrypted data is read from.
+     * @param cipher An AES-GCM cipher used exclusively by this stream.
+     * @param key    The AES-GCM key used for decryption.
+     */
+    SegmentDecryptingInputStream(InputStream in, Cipher cipher, Key key) {
+        super(in);
+        this.cipher = cipher;
+        this.key = key;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int count = read(single, 0, 1);
+        return count == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (position == plaintextLength) {
+            if (finished) return -1;
+            readSegment();
+        }
+        int count = Math.min(len, plaintextLength - position);
+        System.arraycopy(plaintext, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        byte[] discard = new byte[(int) Math.min(n, 8192)];
+        while (skipped < n) {
+            int count = read(discard, 0, (int) Math.min(n - skipped, discard.length));
+            if (count == -1) break;
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return plaintextLength - position;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void readSegment() throws IOException {
+        if (header == null) {
+            header = new byte[SegmentedAead.HEADER_LENGTH];
+            if (readFully(header, 0, header.length) != header.length) {
+                throw new IOException("Encrypted stream is too short.");
+            }
+            int segmentSize = SegmentedAead.segmentSize(header);
+            // one additional byte to find out whether another segment follows
+            segment = new byte[segmentSize + SegmentedAead.SEGMENT_OVERHEAD + 1];
+            plaintext = new byte[segmentSize + SegmentedAead.TAG_LENGTH];
+        }
+        int fullLength = segment.length - 1;
+        int length;
+        if (lookAheadPresent) {
+            segment[0] = segment[fullLength];
+            length = 1 + readFully(segment, 1, fullLength);
+        } else {
+            length = readFully(segment, 0, fullLength + 1);
+        }
+        lookAheadPresent = length > fullLength;
+        boolean last = !lookAheadPresent;
+        if (lookAheadPresent) length = fullLength;
+        try {
+            plaintextLength = SegmentedAead.decryptSegment(cipher, key, header, index, last, segment, 0, length, plaintext);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt segment " + index, e);
+        }
+        position = 0;
+        index++;
+        finished = last;
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int count = in.read(b, off + total, len - total);
+            if (count == -1) break;
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.vulcans_limes;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * This class encrypts everything written to it in the {@link SegmentedAead} format and passes the result on to
+ * the underlying stream.
+ * <p>
+ * Only one plaintext segment is buffered at a time, so the memory used does not depend on the amount of data.
+ * A segment is encrypted as soon as it is full and more data is written; the last segment is encrypted when the
+ * stream is closed. Closing the stream is therefore required to produce a complete encrypted stream.
+ */
+final class SegmentEncryptingOutputStream extends FilterOutputStream {
+    private final Cipher cipher;
+    private final Key key;
+    private final byte[] header;
+    private final byte[] buffer;
+    private int buffered;
+    private long index;
+    private boolean closed;
+
+    /**
+     * Creates a new encrypting stream and writes the stream header to {@code out}.
+     *
+     * @param out         The stream the encrypted data is written to.
+     * @param cipher      An AES-GCM cipher used exclusively by this stream.
+     * @param key         The AES-GCM key used for encryption.
+     * @param segmentSize The size of the plaintext segments in bytes.
+     * @throws IOException if the header cannot be written.
+     */
+    SegmentEncryptingOutputStream(OutputStream out, Cipher cipher, Key key, int segmentSize) throws IOException {
+        super(out);
+        this.cipher = cipher;
+        this.key = key;
+        this.header = SegmentedAead.newHeader(segmentSize);
+        this.buffer = new byte[segmentSize];
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream is closed.");
+        while (len > 0) {
+            if (buffered == buffer.length) {
+                // the segment is only known not to be the last one once more data arrives
+                writeSegment(false);
+            }
+            int count = Math.min(len, buffer.length - buffered);
+            System.arraycopy(b, off, buffer, buffered, count);
+            buffered += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            writeSegment(true);
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void writeSegment(boolean last) throws IOException {
+        try {
+            out.write(SegmentedAead.encryptSegment(cipher, key, header, index, last, buffer, 0, buffered));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt segment " + index, e);
+        }
+        index++;
+        buffered = 0;
+    }
+}
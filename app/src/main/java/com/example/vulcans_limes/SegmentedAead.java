@@ -0,0 +1,206 @@
+package com.example.vulcans_limes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * This class defines the segmented AES-GCM format used to encrypt data streams of any size in constant memory.
+ * <p>
+ * The plaintext is split into segments of a fixed size, only the last segment may be shorter (or even empty).
+ * Every segment is encrypted on its own with a fresh nonce and carries its own authentication tag, so that it
+ * can be decrypted without the rest of the stream. The encrypted stream has the following layout:
+ * <pre>
+ * header:  "VLS" | version (1 byte) | segment size (4 bytes) | stream salt (16 bytes)
+ * segment: nonce (12 bytes) | ciphertext | tag (16 bytes)
+ * </pre>
+ * The header, the index of the segment and a flag marking the last segment are authenticated as additional
+ * data of every segment. This way, segments cannot be reordered, truncated or moved to another stream
+ * without the decryption failing.
+ * <p>
+ * The segment size is read and used to size buffers before the header can be authenticated with the first
+ * segment, so it is limited to {@link #MAX_SEGMENT_SIZE} when writing and rejected above it when reading.
+ */
+final class SegmentedAead {
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    static final int HEADER_LENGTH = 24;
+    static final int NONCE_LENGTH = KeyProfile.IV_GCM_AES;
+    static final int TAG_LENGTH = KeyProfile.TAG_SIZE_GCM / 8;
+    static final int SEGMENT_OVERHEAD = NONCE_LENGTH + TAG_LENGTH;
+
+    private static final byte[] MAGIC = {'V', 'L', 'S', 1};
+    private static final int SALT_LENGTH = 16;
+    private static final SecureRandom random = new SecureRandom();
+
+    private SegmentedAead() {
+    }
+
+    /**
+     * Creates the header of a new encrypted stream with a random stream salt.
+     *
+     * @param segmentSize The size of the plaintext segments in bytes.
+     * @return The header, which has to be written in front of the first segment.
+     * @throws IOException if the segment size is not positive or larger than {@link #MAX_SEGMENT_SIZE}.
+     */
+    static byte[] newHeader(int segmentSize) throws IOException {
+        checkSegmentSize(segmentSize);
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+        return ByteBuffer.allocate(HEADER_LENGTH).put(MAGIC).putInt(segmentSize).put(salt).array();
+    }
+
+    /**
+     * Checks the given header and returns the plaintext segment size stored in it.
+     *
+     * @param header The header read from the beginning of an encrypted stream.
+     * @return The size of the plaintext segments in bytes.
+     * @throws IOException if the header does not belong to a segmented stream or its segment size is not
+     *                     positive or larger than {@link #MAX_SEGMENT_SIZE}.
+     */
+    static int segmentSize(byte[] header) throws IOException {
+        if (header.length != HEADER_LENGTH || !Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            throw new IOException("Data is not a segmented encrypted stream.");
+        }
+        int segmentSize = ByteBuffer.wrap(header, MAGIC.length, 4).getInt();
+        checkSegmentSize(segmentSize);
+        return segmentSize;
+    }
+
+    /**
+     * Checks that a segment size is within the limits of the format, before anything is allocated with it.
+     *
+     * @param segmentSize The size of the plaintext segments in bytes.
+     * @throws IOException if the segment size is not positive or larger than {@link #MAX_SEGMENT_SIZE}.
+     */
+    static void checkSegmentSize(int segmentSize) throws IOException {
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Invalid segment size " + segmentSize + ", it has to be between 1 and "
+                    + MAX_SEGMENT_SIZE + " bytes.");
+        }
+    }
+
+    /**
+     * Returns the position of an encrypted segment within the encrypted stream.
+     *
+     * @param segmentSize The size of the plaintext segments in bytes.
+     * @param index       The index of the segment, starting at 0.
+     * @return The offset of the segment's first byte, counted from the beginning of the header.
+     */
+    static long segmentOffset(int segmentSize, long index) {
+        return HEADER_LENGTH + index * (segmentSize + (long) SEGMENT_OVERHEAD);
+    }
+
+    /**
+     * Encrypts a single segment.
+     *
+     * @param cipher    An AES-GCM cipher, which is re-initialized by this method.
+     * @param key       The key used for encryption.
+     * @param header    The header of the stream.
+     * @param index     The index of the segment.
+     * @param last      Whether this is the last segment of the stream.
+     * @param plaintext Array containing the plaintext of the segment.
+     * @param offset    Offset of the segment in {@code plaintext}.
+     * @param length    Length of the segment.
+     * @return The encrypted segment, consisting of nonce, ciphertext and tag.
+     * @throws GeneralSecurityException if the segment cannot be encrypted.
+     */
+    static byte[] encryptSegment(Cipher cipher, Key key, byte[] header, long index, boolean last,
+                                 byte[] plaintext, int offset, int length) throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] nonce = cipher.getIV();
+        if (nonce.length != NONCE_LENGTH) throw new GeneralSecurityException("Unexpected nonce length.");
+        cipher.updateAAD(associatedData(header, index, last));
+        byte[] segment = new byte[NONCE_LENGTH + cipher.getOutputSize(length)];
+        System.arraycopy(nonce, 0, segment, 0, NONCE_LENGTH);
+        int written = cipher.doFinal(plaintext, offset, length, segment, NONCE_LENGTH);
+        return written + NONCE_LENGTH == segment.length ? segment : Arrays.copyOf(segment, written + NONCE_LENGTH);
+    }
+
+    /**
+     * Decrypts and authenticates a single segment.
+     *
+     * @param cipher  An AES-GCM cipher, which is re-initialized by this method.
+     * @param key     The key used for decryption.
+     * @param header  The header of the stream.
+     * @param index   The index of the segment.
+     * @param last    Whether this is the last segment of the stream.
+     * @param segment Array containing the encrypted segment.
+     * @param offset  Offset of the segment in {@code segment}.
+     * @param length  Length of the encrypted segment, including nonce and tag.
+     * @param output  Array the plaintext is written to, starting at index 0. It has to hold at least
+     *                {@code length - NONCE_LENGTH} bytes, as some providers need room for the tag.
+     * @return The length of the plaintext.
+     * @throws GeneralSecurityException if the segment cannot be decrypted or was tampered with.
+     */
+    static int decryptSegment(Cipher cipher, Key key, byte[] header, long index, boolean last,
+                              byte[] segment, int offset, int length, byte[] output) throws GeneralSecurityException {
+        if (length < SEGMENT_OVERHEAD) throw new GeneralSecurityException("Segment is too short.");
+        cipher.init(Cipher.DECRYPT_MODE, key,
+                new GCMParameterSpec(KeyProfile.TAG_SIZE_GCM, segment, offset, NONCE_LENGTH));
+        cipher.updateAAD(associatedData(header, index, last));
+        return cipher.doFinal(segment, offset + NONCE_LENGTH, length - NONCE_LENGTH, output, 0);
+    }
+
+    /**
+     * Encrypts a single segment from a buffer into a buffer, which may both be direct or memory-mapped buffers.
+     *
+     * @param cipher    An AES-GCM cipher, which is re-initialized by this method.
+     * @param key       The key used for encryption.
+     * @param header    The header of the stream.
+     * @param index     The index of the segment.
+     * @param last      Whether this is the last segment of the stream.
+     * @param plaintext The plaintext of the segment. Its position is advanced to its limit.
+     * @param output    The buffer receiving nonce, ciphertext and tag, which needs room for
+     *                  {@code plaintext.remaining() + SEGMENT_OVERHEAD} bytes.
+     * @throws GeneralSecurityException if the segment cannot be encrypted.
+     */
+    static void encryptSegment(Cipher cipher, Key key, byte[] header, long index, boolean last,
+                               ByteBuffer plaintext, ByteBuffer output) throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] nonce = cipher.getIV();
+        if (nonce.length != NONCE_LENGTH) throw new GeneralSecurityException("Unexpected nonce length.");
+        cipher.updateAAD(associatedData(header, index, last));
+        output.put(nonce);
+        cipher.doFinal(plaintext, output);
+    }
+
+    /**
+     * Decrypts and authenticates a single segment from a buffer into a buffer, which may both be direct or
+     * memory-mapped buffers.
+     *
+     * @param cipher  An AES-GCM cipher, which is re-initialized by this method.
+     * @param key     The key used for decryption.
+     * @param header  The header of the stream.
+     * @param index   The index of the segment.
+     * @param last    Whether this is the last segment of the stream.
+     * @param segment The encrypted segment, including nonce and tag. Its position is advanced to its limit.
+     * @param output  The buffer receiving the plaintext. It has to have room for at least
+     *                {@code segment.remaining() - NONCE_LENGTH} bytes, as some providers need room for the tag.
+     * @return The length of the plaintext.
+     * @throws GeneralSecurityException if the segment cannot be decrypted or was tampered with.
+     */
+    static int decryptSegment(Cipher cipher, Key key, byte[] header, long index, boolean last,
+                              ByteBuffer segment, ByteBuffer output) throws GeneralSecurityException {
+        if (segment.remaining() < SEGMENT_OVERHEAD) throw new GeneralSecurityException("Segment is too short.");
+        byte[] nonce = new byte[NONCE_LENGTH];
+        segment.get(nonce);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(KeyProfile.TAG_SIZE_GCM, nonce));
+        cipher.updateAAD(associatedData(header, index, last));
+        return cipher.doFinal(segment, output);
+    }
+
+    private static byte[] associatedData(byte[] header, long index, boolean last) {
+        return ByteBuffer.allocate(HEADER_LENGTH + 9)
+                .put(header)
+                .putLong(index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.vulcans_limes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * This class encrypts and decrypts whole files in the {@link SegmentedAead} format.
+ * <p>
+ * Unlike the segment streams, it works on {@link FileChannel}s: the source is memory-mapped in windows of
+ * several segments, so it is never copied onto the heap, and every segment is encrypted or decrypted straight
+ * into a single direct buffer that is written to the target. The memory used therefore does not depend on the
+ * size of the file. The files are the same as those of {@link SegmentEncryptingOutputStream} and
+ * {@link SegmentDecryptingInputStream}, so both can be mixed.
+ * <p>
+ * The result is written to a temporary file next to the target, which is only renamed to the target once it is
+ * complete. The target is thus either left untouched or replaced by the complete result, never by a partial
+ * file. For decryption this also means that no plaintext appears before the whole file has been authenticated.
+ */
+final class SegmentedFileCipher {
+    // larger than the default of the streams, as every segment is a separate operation of the keystore
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    // the source is mapped in windows of this many segments, which keeps the address space used bounded
+    private static final int SEGMENTS_PER_WINDOW = 32;
+
+    private final Cipher cipher;
+    private final Key key;
+
+    /**
+     * Creates a new file cipher.
+     *
+     * @param cipher An AES-GCM cipher used exclusively by this instance.
+     * @param key    The AES-GCM key used for encryption and decryption.
+     */
+    SegmentedFileCipher(Cipher cipher, Key key) {
+        this.cipher = cipher;
+        this.key = key;
+    }
+
+    /**
+     * Encrypts everything from the beginning of the source to its end and writes the result to the target.
+     *
+     * @param source      The channel the plaintext is read from, which has to support mapping.
+     * @param target      The file the encrypted data is written to, which is replaced if it exists.
+     * @param segmentSize The size of the plaintext segments in bytes.
+     * @throws IOException if a file cannot be read or written, or a segment cannot be encrypted.
+     */
+    void encrypt(FileChannel source, File target, int segmentSize) throws IOException {
+        byte[] header = SegmentedAead.newHeader(segmentSize);
+        long size = source.size();
+        // an empty file still gets one empty segment that is marked as the last one
+        long count = Math.max(1, (size + segmentSize - 1) / segmentSize);
+        MappedWindow window = new MappedWindow(source, (long) segmentSize * SEGMENTS_PER_WINDOW);
+        ByteBuffer output = ByteBuffer.allocateDirect(segmentSize + SegmentedAead.SEGMENT_OVERHEAD);
+        File temp = newTempFile(target);
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                writeFully(out, ByteBuffer.wrap(header));
+                for (long index = 0; index < count; index++) {
+                    long position = index * segmentSize;
+                    ByteBuffer plaintext = window.get(position, (int) Math.min(segmentSize, size - position));
+                    output.clear();
+                    try {
+                        SegmentedAead.encryptSegment(cipher, key, header, index, index == count - 1, plaintext,
+                                output);
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException("Failed to encrypt segment " + index, e);
+                    }
+                    output.flip();
+                    writeFully(out, output);
+                }
+                out.force(false);
+            }
+            moveAtomically(temp, target);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    /**
+     * Decrypts a file produced by {@link #encrypt(FileChannel, File, int)} and writes the plaintext to the
+     * target.
+     *
+     * @param source The channel the encrypted data is read from, starting with the header at position 0. It has
+     *               to support mapping.
+     * @param target The file the plaintext is written to, which is replaced if it exists.
+     * @throws IOException if a file cannot be read or written, the encrypted data was tampered with or truncated,
+     *                     or the header declares a segment size above {@link SegmentedAead#MAX_SEGMENT_SIZE}.
+     */
+    void decrypt(FileChannel source, File target) throws IOException {
+        long size = source.size();
+        ByteBuffer headerBuffer = ByteBuffer.allocate(SegmentedAead.HEADER_LENGTH);
+        while (headerBuffer.hasRemaining()) {
+            if (source.read(headerBuffer, headerBuffer.position()) == -1) {
+                throw new IOException("Encrypted stream is too short.");
+            }
+        }
+        byte[] header = headerBuffer.array();
+        // bounded by MAX_SEGMENT_SIZE before anything is allocated or mapped with it
+        int segmentSize = SegmentedAead.segmentSize(header);
+        long encryptedSize = segmentSize + (long) SegmentedAead.SEGMENT_OVERHEAD;
+        long body = size - SegmentedAead.HEADER_LENGTH;
+        long count = (body + encryptedSize - 1) / encryptedSize;
+        long lastLength = body - (count - 1) * encryptedSize;
+        if (count == 0 || lastLength < SegmentedAead.SEGMENT_OVERHEAD) {
+            throw new IOException("Encrypted stream is too short.");
+        }
+        MappedWindow window = new MappedWindow(source, encryptedSize * SEGMENTS_PER_WINDOW);
+        ByteBuffer output = ByteBuffer.allocateDirect((int) encryptedSize);
+        File temp = newTempFile(target);
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                for (long index = 0; index < count; index++) {
+                    boolean last = index == count - 1;
+                    ByteBuffer segment = window.get(SegmentedAead.segmentOffset(segmentSize, index),
+                            (int) (last ? lastLength : encryptedSize));
+                    output.clear();
+                    try {
+                        SegmentedAead.decryptSegment(cipher, key, header, index, last, segment, output);
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException("Failed to decrypt segment " + index, e);
+                    }
+                    output.flip();
+                    writeFully(out, output);
+                }
+                out.force(false);
+            }
+            moveAtomically(temp, target);
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    static File newTempFile(File target) throws IOException {
+        File directory = target.getAbsoluteFile().getParentFile();
+        // the temporary file has to be on the same file system as the target for the rename to be atomic
+        return File.createTempFile("." + target.getName() + ".", ".tmp", directory);
+    }
+
+    static void moveAtomically(File source, File target) throws IOException {
+        Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void writeFully(FileChannel out, ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) out.write(data);
+    }
+
+    /**
+     * A read-only mapping of a part of a file, which is moved on whenever a range outside of it is requested.
+     */
+    private static final class MappedWindow {
+        private final FileChannel channel;
+        private final long windowSize;
+        private ByteBuffer mapped;
+        private long start;
+
+        MappedWindow(FileChannel channel, long windowSize) {
+            this.channel = channel;
+            // a single mapping cannot be larger than Integer.MAX_VALUE bytes
+            this.windowSize = Math.min(windowSize, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Returns a buffer over the given range of the file.
+         *
+         * @param position The position of the first byte in the file.
+         * @param length   The number of bytes.
+         * @return A buffer whose remaining bytes are the range.
+         * @throws IOException if the file cannot be mapped, also if the range is too large for a mapping.
+         */
+        ByteBuffer get(long position, int length) throws IOException {
+            if (length == 0) return ByteBuffer.allocate(0);
+            if (mapped == null || position < start || position + length > start + mapped.capacity()) {
+                long end = Math.min(channel.size(), position + Math.max(windowSize, length));
+                if (end < position + length) throw new IOException("File was truncated while it was read.");
+                try {
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Failed to map " + (end - position) + " bytes at " + position, e);
+                }
+                start = position;
+            }
+            ByteBuffer range = mapped.duplicate();
+            range.position((int) (position - start));
+            range.limit((int) (position - start) + length);
+            return range;
+        }
+    }
+}
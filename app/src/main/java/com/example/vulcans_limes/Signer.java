@@ -0,0 +1,42 @@
+package com.example.vulcans_limes;
+
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * This class signs a document that is passed in pieces, see {@link CryptoManager#newSigner(String)}.
+ * <p>
+ * The document is added with the {@code update} methods, e.g. straight from a file with
+ * {@link #update(java.io.InputStream)}, and {@link #sign()} returns the signature. The result is the same as
+ * that of {@link CryptoManager#signData(String, byte[])} for the whole document, but the document never has
+ * to be held in memory. If the key allows it, the document is hashed in-process and only the digest is signed
+ * by the keystore, see {@link CryptoManager#setPreHashThreshold(int)}. After {@link #sign()} the signer starts
+ * over and can be used for the next document. Instances are not thread-safe.
+ */
+public final class Signer extends IncrementalSignature {
+    private final KeyProfile profile; // null unless the document is hashed in-process
+
+    Signer(Signature signature, MessageDigest digest, KeyProfile profile, CryptoMetrics metrics, String algorithm) {
+        super(signature, digest, metrics, algorithm);
+        this.profile = profile;
+    }
+
+    /**
+     * Signs everything added since the signer was created or {@link #sign()} was last called.
+     *
+     * @return The signature of the document.
+     * @throws SignatureException if there is an error during the signing process.
+     */
+    public byte[] sign() throws SignatureException {
+        boolean success = false;
+        try {
+            if (digest != null) signature.update(profile.toPreHashInput(digest.digest()));
+            byte[] result = signature.sign();
+            success = true;
+            return result;
+        } finally {
+            finish(CryptoMetrics.Operation.SIGN, success);
+        }
+    }
+}
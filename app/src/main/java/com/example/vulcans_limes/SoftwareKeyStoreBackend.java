@@ -0,0 +1,94 @@
+package com.example.vulcans_limes;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+
+/**
+ * This class keeps the keys of a {@link CryptoManager} in memory, generated by the default JCA providers.
+ * <p>
+ * It accepts the same key parameters as {@link AndroidKeyStoreBackend} and produces keys that behave the same
+ * for all operations of the {@link CryptoManager}, but it does not need Android or any secure hardware. This
+ * makes it possible to test and measure the {@link CryptoManager} on any JVM. Keys only live as long as the
+ * backend instance and are never reported as StrongBox backed. It must not be used to protect real secrets.
+ */
+public final class SoftwareKeyStoreBackend extends KeyStoreBackend {
+    private final Map<String, KeyHandle> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty backend.
+     */
+    public SoftwareKeyStoreBackend() {
+    }
+
+    @Override
+    boolean containsAlias(String alias) {
+        return entries.containsKey(alias);
+    }
+
+    @Override
+    Set<String> getAliases() {
+        return new HashSet<>(entries.keySet());
+    }
+
+    @Override
+    KeyHandle generateSecretKey(String alias, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, KeyStoreException {
+        String algorithm = spec.getAlgorithm();
+        String padding = spec.getPadding();
+        // PKCS#7 and PKCS#5 padding are the same for 8 and 16 byte blocks, but not every provider knows both names
+        String providerPadding = padding.equals("PKCS7Padding") ? "PKCS5Padding" : padding;
+        try {
+            Cipher.getInstance(algorithm + "/" + spec.getBlockMode() + "/" + providerPadding);
+        } catch (NoSuchPaddingException e) {
+            throw new InvalidAlgorithmParameterException("Unsupported padding: " + padding, e);
+        }
+        KeyGenerator keyGen = KeyGenerator.getInstance(algorithm);
+        keyGen.init(spec.getKeySize());
+        SecretKey secretKey = keyGen.generateKey();
+        return store(new KeyHandle(alias, secretKey, null,
+                KeyProfile.forSecretKey(algorithm, spec.getBlockMode(), providerPadding, false)));
+    }
+
+    @Override
+    KeyHandle generateKeyPair(String alias, KeyGenSpec spec) throws NoSuchAlgorithmException,
+            InvalidAlgorithmParameterException, KeyStoreException {
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance(spec.getAlgorithm());
+        keyPairGen.initialize(spec.getKeyPairParameters());
+        KeyPair keyPair = keyPairGen.generateKeyPair();
+        return store(new KeyHandle(alias, keyPair.getPrivate(), keyPair.getPublic(),
+                KeyProfile.forKeyPair(spec.getAlgorithm(), spec.getDigest(), spec.isPreHash(), false)));
+    }
+
+    @Override
+    KeyHandle loadKey(String alias) throws UnrecoverableKeyException {
+        KeyHandle keyHandle = entries.get(alias);
+        if (keyHandle == null)
+            throw new UnrecoverableKeyException("The key alias '" + alias + "' does not exist in the KeyStore.");
+        return keyHandle;
+    }
+
+    @Override
+    void deleteKey(String alias) {
+        entries.remove(alias);
+    }
+
+    private KeyHandle store(KeyHandle keyHandle) throws KeyStoreException {
+        if (entries.putIfAbsent(keyHandle.getAlias(), keyHandle) != null) {
+            throw new KeyStoreException("Key with name " + keyHandle.getAlias() + " already exists.");
+        }
+        return keyHandle;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.vulcans_limes;
+
+import java.security.Signature;
+import java.security.SignatureException;
+
+/**
+ * This class verifies the signature of a document that is passed in pieces, see
+ * {@link CryptoManager#newVerifier(String)}.
+ * <p>
+ * The document is added with the {@code update} methods, e.g. straight from a file with
+ * {@link #update(java.io.InputStream)}, and {@link #verify(byte[])} checks the signature. The result is the
+ * same as that of {@link CryptoManager#verifySignature(String, byte[], byte[])} for the whole document, but the
+ * document never has to be held in memory. After {@link #verify(byte[])} the verifier starts over and can be
+ * used for the next document. Instances are not thread-safe.
+ */
+public final class Verifier extends IncrementalSignature {
+
+    Verifier(Signature signature, CryptoMetrics metrics, String algorithm) {
+        super(signature, null, metrics, algorithm);
+    }
+
+    /**
+     * Verifies everything added since the verifier was created or {@link #verify(byte[])} was last called
+     * against the given signature.
+     *
+     * @param signedBytes The signature of the document.
+     * @return {@code true} if the signature matches the document; {@code false} otherwise.
+     * @throws SignatureException if there is an error during the verification process, e.g. the signature is
+     *                            not properly encoded.
+     */
+    public boolean verify(byte[] signedBytes) throws SignatureException {
+        boolean success = false;
+        try {
+            boolean verified = signature.verify(signedBytes);
+            success = true;
+            return verified;
+        } finally {
+            finish(CryptoMetrics.Operation.VERIFY, success);
+        }
+    }
+}
@@ -5,7 +5,12 @@ use robusta_jni::bridge;
 
 #[bridge]
 pub mod jni {
-    use std::time::{SystemTime, UNIX_EPOCH};
+    use std::ffi::c_void;
+    use std::fs::File;
+    use std::io::Read;
+    use std::sync::OnceLock;
+    use std::sync::atomic::{AtomicU64, Ordering};
+    use std::time::{Instant, SystemTime, UNIX_EPOCH};
 
     use android_logger::Config;
     use crypto_layer::{
@@ -14,17 +19,11 @@ pub mod jni {
             crypto::{
                 algorithms::{
                     encryption::{
-                        SymmetricMode::Gcm,
-                        BlockCiphers,
-                        EccCurves,
-                        EccSchemeAlgorithm,
                         BlockCiphers::Aes,
-                        SymmetricMode,
-                        AsymmetricEncryption::{Ecc, Rsa}
+                        AsymmetricEncryption::Rsa
                     },
                     KeyBits::{
                         Bits128,
-                        self,
                         Bits2048
                     }
                 }
@@ -43,8 +42,9 @@ pub mod jni {
         jni::{
             errors::Error,
             JNIEnv,
-            objects::{AutoLocal, JValue},
-            sys::jbyteArray,
+            objects::{AutoLocal, GlobalRef, JClass, JMethodID, JObject, JStaticMethodID, JValue},
+            signature::{JavaType, Primitive},
+            sys::{jbyteArray, jlong, jmethodID, jobject},
         },
     };
     #[allow(unused_imports)] //the bridge import is marked as unused, but if removed the compiler throws an error
@@ -61,6 +61,182 @@ pub mod jni {
     }
 }
 
+    /// Upper bound of the bytes added by the encryption: IV, authentication tag and padding.
+    /// Has to match `CryptoManager.MAX_ENCRYPTION_OVERHEAD`.
+    const ENCRYPTION_OVERHEAD: usize = 32;
+
+    /// Size of the chunks in which files are read and passed to Java for signing and verification.
+    /// Large chunks keep the number of JNI calls low, while the memory used stays constant.
+    const FILE_CHUNK_SIZE: usize = 1024 * 1024;
+
+    /// The class and method IDs of the Java methods in RustDef.java that are called from Rust.
+    /// They are resolved once instead of looking up class and method by name on every call.
+    static JAVA_METHODS: OnceLock<JavaMethods> = OnceLock::new();
+
+    /// Global reference to RustDef.java and the IDs of its methods that are called from Rust.
+    /// The global reference keeps the class from being unloaded, so the method IDs stay valid.
+    struct JavaMethods {
+        class: GlobalRef,
+        create_key: StaticMethod,
+        load_key: StaticMethod,
+        initialize_module: StaticMethod,
+        sign_data: StaticMethod,
+        verify_signature: StaticMethod,
+        encrypt_data: StaticMethod,
+        decrypt_data: StaticMethod,
+        open_session: StaticMethod,
+        close_session: StaticMethod,
+        session_encrypt: StaticMethod,
+        session_decrypt: StaticMethod,
+        session_sign: StaticMethod,
+        session_verify: StaticMethod,
+        encrypt_batch: StaticMethod,
+        decrypt_batch: StaticMethod,
+        open_signer: StaticMethod,
+        open_verifier: StaticMethod,
+        signature_update: StaticMethod,
+        signer_sign: StaticMethod,
+        verifier_verify: StaticMethod,
+        close_signature: StaticMethod,
+        export_public_key: StaticMethod,
+        export_public_key_point: StaticMethod,
+        as_read_only_buffer: InstanceMethod,
+    }
+
+    /// A resolved instance method of a class of the Java runtime, which is never unloaded.
+    struct InstanceMethod {
+        id: jmethodID,
+    }
+
+    /// A resolved static Java method together with its return type and call statistics.
+    struct StaticMethod {
+        name: &'static str,
+        id: jmethodID,
+        return_type: JavaType,
+        stats: CallStats,
+    }
+
+    /// Number of latency histogram buckets, the same as in OperationStats.java.
+    const HISTOGRAM_BUCKETS: usize = 64;
+
+    /// Counters of the calls of one Java method. They are updated with relaxed atomics only, so they
+    /// are cheap enough to be always on, but a snapshot may be slightly inconsistent between fields.
+    /// Bucket `i` of the histogram counts the calls that took from 2^(i-1) up to 2^i - 1 nanoseconds.
+    struct CallStats {
+        calls: AtomicU64,
+        failures: AtomicU64,
+        total_nanos: AtomicU64,
+        max_nanos: AtomicU64,
+        histogram: [AtomicU64; HISTOGRAM_BUCKETS],
+    }
+
+    impl Default for CallStats {
+        fn default() -> Self {
+            #[allow(clippy::declare_interior_mutable_const)]
+            const ZERO: AtomicU64 = AtomicU64::new(0);
+            CallStats {
+                calls: AtomicU64::new(0),
+                failures: AtomicU64::new(0),
+                total_nanos: AtomicU64::new(0),
+                max_nanos: AtomicU64::new(0),
+                histogram: [ZERO; HISTOGRAM_BUCKETS],
+            }
+        }
+    }
+
+    /// Snapshot of the call statistics of one Java method called from Rust. The times are measured
+    /// around the whole call, so they include crossing the JNI boundary in both directions as well
+    /// as the work done in Java.
+    #[derive(Debug, Clone)]
+    pub struct BridgeMetric {
+        pub method: &'static str,
+        pub calls: u64,
+        pub failures: u64,
+        pub total_nanos: u64,
+        pub max_nanos: u64,
+        pub histogram: [u64; HISTOGRAM_BUCKETS],
+    }
+
+    /// Number of values per method in the array returned by `RustDef::bridgeMetrics`.
+    const BRIDGE_METRIC_FIELDS: usize = 4 + HISTOGRAM_BUCKETS;
+
+    /// Returns the call statistics of all Java methods called from Rust since the module was
+    /// initialized, or an empty list if no Java method has been called yet.
+    pub fn bridge_metrics() -> Vec<BridgeMetric> {
+        match JAVA_METHODS.get() {
+            Some(methods) => methods.all().iter().map(|method| method.snapshot()).collect(),
+            None => Vec::new(),
+        }
+    }
+
+    /// Sets the call statistics of all Java methods called from Rust back to zero.
+    pub fn reset_bridge_metrics() {
+        if let Some(methods) = JAVA_METHODS.get() {
+            for method in methods.all() {
+                method.stats.calls.store(0, Ordering::Relaxed);
+                method.stats.failures.store(0, Ordering::Relaxed);
+                method.stats.total_nanos.store(0, Ordering::Relaxed);
+                method.stats.max_nanos.store(0, Ordering::Relaxed);
+                for bucket in &method.stats.histogram {
+                    bucket.store(0, Ordering::Relaxed);
+                }
+            }
+        }
+    }
+
+    impl JavaMethods {
+        fn all(&self) -> [&StaticMethod; 23] {
+            [&self.create_key, &self.load_key, &self.initialize_module, &self.sign_data,
+                &self.verify_signature, &self.encrypt_data, &self.decrypt_data, &self.open_session,
+                &self.close_session, &self.session_encrypt, &self.session_decrypt, &self.session_sign,
+                &self.session_verify, &self.encrypt_batch, &self.decrypt_batch, &self.open_signer,
+                &self.open_verifier, &self.signature_update, &self.signer_sign, &self.verifier_verify,
+                &self.close_signature, &self.export_public_key, &self.export_public_key_point]
+        }
+    }
+
+    // Method IDs are not bound to the thread they were resolved on and may be used from any thread.
+    unsafe impl Send for StaticMethod {}
+    unsafe impl Sync for StaticMethod {}
+    unsafe impl Send for InstanceMethod {}
+    unsafe impl Sync for InstanceMethod {}
+
+    impl StaticMethod {
+        /// Calls the method without looking it up again. The arguments have to match the signature
+        /// the method was resolved with.
+        fn call<'a>(&self, environment: &JNIEnv<'a>, class: &GlobalRef, args: &[JValue])
+                    -> Result<JValue<'a>, Error> {
+            let start = Instant::now();
+            let result = environment.call_static_method_unchecked(
+                JClass::from(class.as_obj()),
+                JStaticMethodID::from(self.id),
+                self.return_type.clone(),
+                args,
+            );
+            let nanos = start.elapsed().as_nanos() as u64;
+            self.stats.calls.fetch_add(1, Ordering::Relaxed);
+            if result.is_err() {
+                self.stats.failures.fetch_add(1, Ordering::Relaxed);
+            }
+            self.stats.total_nanos.fetch_add(nanos, Ordering::Relaxed);
+            self.stats.max_nanos.fetch_max(nanos, Ordering::Relaxed);
+            let bucket = (64 - nanos.leading_zeros() as usize).min(HISTOGRAM_BUCKETS - 1);
+            self.stats.histogram[bucket].fetch_add(1, Ordering::Relaxed);
+            result
+        }
+
+        fn snapshot(&self) -> BridgeMetric {
+            BridgeMetric {
+                method: self.name,
+                calls: self.stats.calls.load(Ordering::Relaxed),
+                failures: self.stats.failures.load(Ordering::Relaxed),
+                total_nanos: self.stats.total_nanos.load(Ordering::Relaxed),
+                max_nanos: self.stats.max_nanos.load(Ordering::Relaxed),
+                histogram: std::array::from_fn(|i| self.stats.histogram[i].load(Ordering::Relaxed)),
+            }
+        }
+    }
+
     #[derive(Signature, TryIntoJavaValue, IntoJavaValue, TryFromJavaValue)]
     #[package(com.example.vulcans_1limes)]
     pub struct RustDef<'env: 'borrow, 'borrow> {
@@ -212,93 +388,23 @@ pub mod jni {
             return format!("Successfully completed {} tasks, 0 fails", passed);
         }
 
-        #[allow(unused_qualifications)]
+        /// Creates the key `key_id` as described by `key_gen_info`, e.g. "AES;256;GCM;NoPadding",
+        /// returns false on failure.
+        ///
+        /// Like the other demo operations, this calls the Java methods through their cached IDs.
+        /// The provider looks up the class and every method by name again on each of its calls.
         pub extern "jni" fn demoCreate(environment: &JNIEnv, key_id: String, key_gen_info: String) -> bool {
             android_logger::init_once(
                 Config::default().with_max_level(LevelFilter::Debug),
             );
-            let parts = key_gen_info.split(';').collect::<Vec<&str>>();
-            debug!("parts: {:?}", parts);
-            let mut symmetric = true;
-            let mut asym_key_type = Rsa(Bits2048);
-            let mut sym_key_type= Aes(Gcm, Bits128);
-             match parts[0] {
-                "RSA" => {
-                    let bitslength = match parts[1] {
-                        "512" => KeyBits::Bits512,
-                        "1024" => KeyBits::Bits1024,
-                        "2048" => KeyBits::Bits2048,
-                        "3072" => KeyBits::Bits3072,
-                        "4096" => KeyBits::Bits4096,
-                        "8192" => KeyBits::Bits8192,
-                        _ => KeyBits::Bits8192,
-                    };
-                    symmetric = false;
-                    asym_key_type = Rsa(bitslength)
-                }
-                "EC" => {
-                    let curve = match parts[1] {
-                        "secp256r1" => EccCurves::P256,
-                        "secp384r1" => EccCurves::P384,
-                        "secp521r1" => EccCurves::P521,
-                        _ => EccCurves::P521,
-                    };
-                    symmetric = false;
-                    asym_key_type = Ecc(EccSchemeAlgorithm::EcDsa(curve))
-                }
-                "DESede" => {
-                    symmetric = true;
-                    sym_key_type = BlockCiphers::Des
-                }
-                "AES" => {
-                    let bitslength = match parts[1] {
-                        "128" => KeyBits::Bits128,
-                        "192" => KeyBits::Bits192,
-                        "256" => KeyBits::Bits256,
-                        _ => KeyBits::Bits256,
-                    };
-                    let mode = match parts[2] {
-                        "GCM" => SymmetricMode::Gcm,
-                        "CBC" => SymmetricMode::Cbc,
-                        "CTR" => SymmetricMode::Ctr,
-                        _ =>  SymmetricMode::Ctr,
-                    };
-                    symmetric = true;
-                    sym_key_type = Aes(mode, bitslength)
-                }
-                 _ => {}
-             }
-
-            let instance = SecModules::get_instance(
-                "test_key".to_owned(),
-                SecurityModule::Tpm(TpmType::Android(AndroidTpmType::Knox)),
-                None).unwrap();
-            let mut module = instance.lock().unwrap();
-            debug!("created provider");
-
-            module
-                .initialize_module()
-                .expect("Failed to initialize module");
-            debug!("init module done");
-
-            let config;
-            if symmetric{
-                config = Box::new(KnoxConfig::new(None,
-                                                  Some(sym_key_type),
-                                                  environment.get_java_vm().unwrap())
-                    .expect("Failed to create KnoxConfig"));
-            }else{
-                config = Box::new(KnoxConfig::new(Some(asym_key_type),
-                                                  None,
-                                                  environment.get_java_vm().unwrap())
-                    .expect("Failed to create KnoxConfig"));
-
+            match Self::initialize_module(environment)
+                .and_then(|_| Self::create_key(environment, key_id, key_gen_info)) {
+                Ok(()) => { true }
+                Err(e) => {
+                    debug!("{}", e);
+                    false
+                }
             }
-            debug!("config: {:?}", config);
-            let result = module.create_key(&key_id, config);
-            if result.is_err() { return false; };
-            debug!("create sym key done");
-            return true;
         }
 
         pub extern "jni" fn demoInit(_environment: &JNIEnv) -> bool {
@@ -309,108 +415,252 @@ pub mod jni {
             return true;
         }
 
+        /// Loads the existing key `key_id`, returns false on failure.
         pub extern "jni" fn demoLoad(environment: &JNIEnv, key_id: String) -> bool {
-
-            let instance = SecModules::get_instance(
-                "test_key".to_owned(),
-                SecurityModule::Tpm(TpmType::Android(AndroidTpmType::Knox)),
-                None).unwrap();
-            let mut module = instance.lock().unwrap();
-            debug!("created provider");
-
-            let config = Box::new(KnoxConfig::new(None,
-                                                  Some(Aes(Gcm,Bits128)), //type doesn't matter, is ignored after key was created
-                                                  environment.get_java_vm().unwrap())
-                .expect("Failed to create KnoxConfig"));
-            let result = module.load_key(&key_id, config);
-            return result.is_ok()
+            match Self::initialize_module(environment)
+                .and_then(|_| Self::load_key(environment, key_id)) {
+                Ok(()) => { true }
+                Err(e) => {
+                    debug!("{}", e);
+                    false
+                }
+            }
         }
 
-        /// Is called to Demo Encryption from Rust
+        /// Is called to Demo Encryption from Rust, returns an empty array on failure.
+        ///
+        /// The demo operations call the Java methods through their cached IDs and pass the data in
+        /// direct buffers, like sessions and batches do. Going through the provider instead loaded
+        /// the key again on every call and copied the data into Java arrays in both directions.
         pub extern "jni" fn demoEncrypt(environment: &JNIEnv, data: Box<[u8]>, key_id: String) -> Box<[u8]> {
-            let instance = SecModules::get_instance(
-                "test_key".to_owned(),
-                SecurityModule::Tpm(TpmType::Android(AndroidTpmType::Knox)),
-                None).unwrap();
-            let mut module = instance.lock().unwrap();
-            debug!("created provider");
-
-            let config = Box::new(KnoxConfig::new(None,
-                                                  Some(Aes(Gcm,Bits128)), //type doesn't matter, is ignored after key was created
-                                                  environment.get_java_vm().unwrap())
-                .expect("Failed to create KnoxConfig"));
-            module.load_key(&key_id, config).unwrap();
-            let result = module.encrypt_data(&*data);
-            return if result.is_ok() { result.unwrap().into_boxed_slice()}
-            else {
-                let empty_array: Vec<u8> = vec![];
-                empty_array.into_boxed_slice()
+            match Self::encrypt_data(environment, &key_id, &data) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
             }
         }
 
+        /// Is called to Demo Decryption from Rust, returns an empty array on failure.
         pub extern "jni" fn demoDecrypt(environment: &JNIEnv, data: Box<[u8]>, key_id: String) -> Box<[u8]> {
-            let instance = SecModules::get_instance(
-                "test_key".to_owned(),
-                SecurityModule::Tpm(TpmType::Android(AndroidTpmType::Knox)),
-                None).unwrap();
-            let mut module = instance.lock().unwrap();
-            debug!("created provider");
-
-            let config = Box::new(KnoxConfig::new(None,
-                                                  Some(Aes(Gcm,Bits128)), //type doesn't matter, is ignored after key was created
-                                                  environment.get_java_vm().unwrap())
-                .expect("Failed to create KnoxConfig"));
-            module.load_key(&key_id, config).unwrap();
-            let result = module.decrypt_data(&*data);
-            return if result.is_ok() { result.unwrap().into_boxed_slice()}
-            else {
-                let empty_array: Vec<u8> = vec![];
-                empty_array.into_boxed_slice()
+            match Self::decrypt_data(environment, &key_id, &data) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
             }
         }
 
+        /// Is called to Demo Signing from Rust, returns an empty array on failure.
         pub extern "jni" fn demoSign(environment: &JNIEnv, data: Box<[u8]>, key_id: String) -> Box<[u8]> {
             android_logger::init_once(
                 Config::default().with_max_level(LevelFilter::max()),
             );
             debug!("key_id: {:?}", key_id);
+            match Self::sign_data(environment, &key_id, &data) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
+        }
 
-            let instance = SecModules::get_instance(
-                "test_key".to_owned(),
-                SecurityModule::Tpm(TpmType::Android(AndroidTpmType::Knox)),
-                None).unwrap();
-            let mut module = instance.lock().unwrap();
-            debug!("created provider");
+        /// Is called to Demo Verification from Rust, returns false on failure.
+        pub extern "jni" fn demoVerify(environment: &JNIEnv, data: Box<[u8]>, signed_data: Box<[u8]>, key_id: String) -> bool {
+            match Self::verify_signature(environment, &key_id, &data, &signed_data) {
+                Ok(valid) => { valid }
+                Err(e) => {
+                    debug!("{}", e);
+                    false
+                }
+            }
+        }
 
-            let config = Box::new(KnoxConfig::new(
-                Some(Rsa(Bits2048)),
-                None, //type doesn't matter, is ignored after key was created
-                environment.get_java_vm().unwrap())
-                .expect("Failed to create KnoxConfig"));
-            module.load_key(&key_id, config).unwrap();
-            let result = module.sign_data(&*data);
-            return if result.is_ok() { result.unwrap().into_boxed_slice()}
-            else {
-                let empty_array: Vec<u8> = vec![];
-                empty_array.into_boxed_slice()
+        /// Opens a session on the key `key_id` and returns its handle, or 0 if the key cannot be loaded.
+        ///
+        /// The key is loaded once. The session functions below work on the handle directly, without
+        /// going through the provider, creating a config or loading the key again for every operation.
+        /// The handle has to be released with `closeSession`.
+        pub extern "jni" fn openSession(environment: &JNIEnv, key_id: String) -> i64 {
+            match Self::open_session(environment, key_id) {
+                Ok(session) => { session }
+                Err(e) => {
+                    debug!("{}", e);
+                    0
+                }
             }
         }
 
-        pub extern "jni" fn demoVerify(environment: &JNIEnv, data: Box<[u8]>, signed_data: Box<[u8]>, key_id: String) -> bool {
-            let instance = SecModules::get_instance(
-                "test_key".to_owned(),
-                SecurityModule::Tpm(TpmType::Android(AndroidTpmType::Knox)),
-                None).unwrap();
-            let mut module = instance.lock().unwrap();
-            debug!("created provider");
+        /// Encrypts the data with the key of the session, returns an empty array on failure.
+        pub extern "jni" fn sessionEncrypt(environment: &JNIEnv, session: i64, data: Box<[u8]>) -> Box<[u8]> {
+            match Self::session_encrypt(environment, session, &data) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
+        }
 
-            let config = Box::new(KnoxConfig::new(None,
-                                                  Some(Aes(Gcm,Bits128)), //type doesn't matter, is ignored after key was created
-                                                  environment.get_java_vm().unwrap())
-                .expect("Failed to create KnoxConfig"));
-            module.load_key(&key_id, config).unwrap();
-            module.verify_signature(&*data, &*signed_data).unwrap_or(false)
+        /// Decrypts the data with the key of the session, returns an empty array on failure.
+        pub extern "jni" fn sessionDecrypt(environment: &JNIEnv, session: i64, data: Box<[u8]>) -> Box<[u8]> {
+            match Self::session_decrypt(environment, session, &data) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
+        }
+
+        /// Signs the data with the key of the session, returns an empty array on failure.
+        pub extern "jni" fn sessionSign(environment: &JNIEnv, session: i64, data: Box<[u8]>) -> Box<[u8]> {
+            match Self::session_sign(environment, session, &data) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
+        }
+
+        /// Verifies the signature with the key of the session, returns false on failure.
+        pub extern "jni" fn sessionVerify(environment: &JNIEnv, session: i64, data: Box<[u8]>, signed_data: Box<[u8]>) -> bool {
+            Self::session_verify(environment, session, &data, &signed_data).unwrap_or(false)
+        }
+
+        /// Releases the session, returns false if the handle was unknown or already closed.
+        pub extern "jni" fn closeSession(environment: &JNIEnv, session: i64) -> bool {
+            Self::close_session(environment, session).unwrap_or(false)
+        }
 
+        /// Encrypts all records with the key `key_id`, crossing into Java only once.
+        /// Returns a `BatchResult` carrying the status of every record. If the batch as a whole
+        /// fails, a `GeneralSecurityException` is thrown instead.
+        pub extern "jni" fn encryptBatch(environment: &JNIEnv, key_id: String, records: Vec<Box<[u8]>>) -> jobject {
+            Self::batch_to_java(environment, Self::encrypt_batch(environment, key_id, &records))
+        }
+
+        /// Decrypts all records with the key `key_id`, crossing into Java only once.
+        /// Returns a `BatchResult` carrying the status of every record. If the batch as a whole
+        /// fails, a `GeneralSecurityException` is thrown instead.
+        pub extern "jni" fn decryptBatch(environment: &JNIEnv, key_id: String, records: Vec<Box<[u8]>>) -> jobject {
+            Self::batch_to_java(environment, Self::decrypt_batch(environment, key_id, &records))
+        }
+
+        /// Returns the names of the Java methods called from Rust, in the order of `bridgeMetrics`,
+        /// or an empty list if no Java method has been called yet.
+        pub extern "jni" fn bridgeMethodNames() -> Vec<String> {
+            bridge_metrics().iter().map(|metric| metric.method.to_string()).collect()
+        }
+
+        /// Returns the call statistics of the Java methods called from Rust as a `long[]` with
+        /// `BRIDGE_METRIC_FIELDS` values per method: calls, failures, total and maximum nanoseconds,
+        /// followed by the latency histogram. Returns null if the array cannot be created.
+        pub extern "jni" fn bridgeMetrics(environment: &JNIEnv) -> jobject {
+            let metrics = bridge_metrics();
+            let mut values = Vec::with_capacity(metrics.len() * BRIDGE_METRIC_FIELDS);
+            for metric in &metrics {
+                values.extend_from_slice(&[metric.calls as i64, metric.failures as i64,
+                    metric.total_nanos as i64, metric.max_nanos as i64]);
+                values.extend(metric.histogram.iter().map(|&count| count as i64));
+            }
+            let array = environment.new_long_array(values.len() as i32)
+                .and_then(|array| {
+                    environment.set_long_array_region(array, 0, &values)?;
+                    Ok(array)
+                });
+            match array {
+                Ok(array) => { array }
+                Err(_) => {
+                    let _ = Self::check_java_exceptions(environment);
+                    std::ptr::null_mut()
+                }
+            }
+        }
+
+        /// Sets the call statistics of the Java methods called from Rust back to zero.
+        pub extern "jni" fn resetBridgeMetrics() {
+            reset_bridge_metrics()
+        }
+
+        /// Measures what resolving the Java methods once saves. Calls `initialize_module`, which does
+        /// nothing once the module is initialized, `iterations` times looking up class and method by
+        /// name, as the provider does, and `iterations` times through the cached IDs.
+        /// Returns the total nanoseconds of both as a `long[2]`, or null on failure.
+        pub extern "jni" fn measureUpcalls(environment: &JNIEnv, iterations: i32) -> jobject {
+            let nanos = match Self::measure_upcalls(environment, iterations) {
+                Ok(nanos) => { nanos }
+                Err(e) => {
+                    debug!("{}", e);
+                    return std::ptr::null_mut();
+                }
+            };
+            let array = environment.new_long_array(2)
+                .and_then(|array| {
+                    environment.set_long_array_region(array, 0, &nanos)?;
+                    Ok(array)
+                });
+            match array {
+                Ok(array) => { array }
+                Err(_) => {
+                    let _ = Self::check_java_exceptions(environment);
+                    std::ptr::null_mut()
+                }
+            }
+        }
+
+        /// Signs the file at `path` with the key pair `key_id`, returns an empty array on failure.
+        ///
+        /// The file is read in chunks of `FILE_CHUNK_SIZE` bytes, so files of any size are signed
+        /// in constant memory.
+        pub extern "jni" fn signFile(environment: &JNIEnv, key_id: String, path: String) -> Box<[u8]> {
+            match Self::sign_file(environment, key_id, &path) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
+        }
+
+        /// Verifies the signature of the file at `path` with the key pair `key_id`, returns false
+        /// on failure. The file is read in chunks like in `signFile`.
+        pub extern "jni" fn verifyFile(environment: &JNIEnv, key_id: String, path: String, signed_data: Box<[u8]>) -> bool {
+            match Self::verify_file(environment, key_id, &path, &signed_data) {
+                Ok(valid) => { valid }
+                Err(e) => {
+                    debug!("{}", e);
+                    false
+                }
+            }
+        }
+
+        /// Exports the public key of the key pair `key_id` as DER encoded SubjectPublicKeyInfo,
+        /// returns an empty array on failure. Signatures can then be verified without the keystore.
+        pub extern "jni" fn exportPublicKey(environment: &JNIEnv, key_id: String) -> Box<[u8]> {
+            match Self::export_public_key(environment, key_id) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
+        }
+
+        /// Exports the public key of the EC key pair `key_id` as raw uncompressed point, returns
+        /// an empty array on failure.
+        pub extern "jni" fn exportPublicKeyPoint(environment: &JNIEnv, key_id: String) -> Box<[u8]> {
+            match Self::export_public_key_point(environment, key_id) {
+                Ok(v) => { v.into_boxed_slice() }
+                Err(e) => {
+                    debug!("{}", e);
+                    Box::new([])
+                }
+            }
         }
 
 
@@ -439,13 +689,9 @@ pub mod jni {
         /// `key_id` - String that uniquely identifies the key so that it can be retrieved later
         pub fn create_key(environment: &JNIEnv, key_id: String, key_gen_info: String)
                           -> Result<(), String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "create_key",
-                "(Ljava/lang/String;Ljava/lang/String;)V",
-                &[JValue::from(environment.new_string(key_id).unwrap()),
-                    JValue::from(environment.new_string(key_gen_info).unwrap())],
-            );
+            let methods = Self::java_methods(environment)?;
+            let result = methods.create_key.call(environment, &methods.class, &[JValue::from(environment.new_string(key_id).unwrap()),
+                    JValue::from(environment.new_string(key_gen_info).unwrap())]);
             let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(..) => Ok(()),
@@ -480,13 +726,9 @@ pub mod jni {
         /// # Arguments
         /// `key_id` - String that uniquely identifies the key so that it can be retrieved later
         pub fn load_key(environment: &JNIEnv, key_id: String) -> Result<(), String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "load_key",
-                "(Ljava/lang/String;)V",
-                &[JValue::from(environment.new_string(key_id).unwrap())],
-            );
-            let _ = Self::check_java_exceptions(&environment);
+            let methods = Self::java_methods(environment)?;
+            let result = methods.load_key.call(environment, &methods.class, &[JValue::from(environment.new_string(key_id).unwrap())]);
+            let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(..) => Ok(()),
                 Err(e) => {
@@ -516,6 +758,8 @@ pub mod jni {
         ///
         /// This method initializes the TPM context and prepares it for use. It should be called
         /// before performing any other operations with the TPM.
+        /// It also resolves the Java methods that are called from Rust, so that later calls do not
+        /// have to look them up by name.
         ///
         /// # Arguments
         ///
@@ -531,13 +775,9 @@ pub mod jni {
         /// indicating that the module was initialized successfully.
         /// On failure, it returns an Error
         pub fn initialize_module(environment: &JNIEnv) -> Result<(), String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "initialize_module",
-                "()V",
-                &[],
-            );
-            let _ = Self::check_java_exceptions(&environment);
+            let methods = Self::java_methods(environment)?;
+            let result = methods.initialize_module.call(environment, &methods.class, &[]);
+            let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(..) => Ok(()),
                 Err(e) => {
@@ -567,20 +807,18 @@ pub mod jni {
         ///
         /// # Arguments
         ///
+        /// * `key_id` - The identifier of the key pair to sign with.
         /// * `data` - A byte slice representing the data to be signed.
         ///
         /// # Returns
         ///
         /// A `Result` containing the signature as a `Vec<u8>` on success,
         /// or an `Error` on failure.
-        fn sign_data(environment: &JNIEnv, data: &[u8]) -> Result<Vec<u8>, String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "sign_data",
-                "([B)[B",
-                &[JValue::from(environment.byte_array_from_slice(data).unwrap())],
-            );
-            let _ = Self::check_java_exceptions(&environment);
+        fn sign_data(environment: &JNIEnv, key_id: &str, data: &[u8]) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            let result = methods.sign_data.call(environment, &methods.class, &[JValue::from(Self::java_string(environment, key_id)?),
+                    JValue::from(Self::direct_buffer(environment, data)?)]);
+            let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(value) => {
                     let vector = Self::convert_to_Vec_u8(environment, value);
@@ -620,6 +858,7 @@ pub mod jni {
         ///
         /// # Arguments
         ///
+        /// * `key_id` - The identifier of the key pair to verify with.
         /// * `data` - A byte slice representing the data whose signature is to be verified
         /// * `signature` - A byte slice representing the signature to be verified.
         ///
@@ -627,15 +866,12 @@ pub mod jni {
         ///
         /// A `Result` containing a `bool` signifying whether the signature is valid,
         /// or an `Error` on failure to determine the validity.
-        fn verify_signature(environment: &JNIEnv, data: &[u8], signature: &[u8]) -> Result<bool, String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "verify_signature",
-                "([B[B)Z",
-                &[JValue::from(environment.byte_array_from_slice(data).unwrap()),
-                    JValue::from(environment.byte_array_from_slice(signature).unwrap())],
-            );
-            let _ = Self::check_java_exceptions(&environment);
+        fn verify_signature(environment: &JNIEnv, key_id: &str, data: &[u8], signature: &[u8]) -> Result<bool, String> {
+            let methods = Self::java_methods(environment)?;
+            let result = methods.verify_signature.call(environment, &methods.class, &[JValue::from(Self::java_string(environment, key_id)?),
+                    JValue::from(Self::direct_buffer(environment, data)?),
+                    JValue::from(environment.byte_array_from_slice(signature).unwrap())]);
+            let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(res) => {
                     match res.z() {
@@ -674,24 +910,27 @@ pub mod jni {
         ///
         /// # Arguments
         ///
+        /// * `key_id` - The identifier of the key to encrypt with.
         /// * `data` - A byte slice representing the data to be encrypted.
         ///
         /// # Returns
         ///
         /// A `Result` containing the encrypted data as a `Vec<u8>` on success,
         /// or an `Error` on failure.
-        fn encrypt_data(environment: &JNIEnv, data: &[u8]) -> Result<Vec<u8>, String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "encrypt_data",
-                "([B)[B",
-                &[JValue::from(environment.byte_array_from_slice(data).unwrap())],
-            );
+        fn encrypt_data(environment: &JNIEnv, key_id: &str, data: &[u8]) -> Result<Vec<u8>, String> {
+            let mut output = vec![0u8; data.len() + ENCRYPTION_OVERHEAD];
+            let methods = Self::java_methods(environment)?;
+            let result = methods.encrypt_data.call(environment, &methods.class, &[JValue::from(Self::java_string(environment, key_id)?),
+                    JValue::from(Self::direct_buffer(environment, data)?),
+                    JValue::from(Self::direct_buffer_mut(environment, &mut output)?)]);
+            let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(value) => {
-                    let vector = Self::convert_to_Vec_u8(environment, value);
-                    match vector {
-                        Ok(v) => { Ok(v) }
+                    match value.i() {
+                        Ok(length) => {
+                            output.truncate(length as usize);
+                            Ok(output)
+                        }
                         Err(_) => {
                             Err(
                                 String::from("Failed to convert return type to rust-compatible format")
@@ -727,25 +966,27 @@ pub mod jni {
         ///
         /// # Arguments
         ///
+        /// * `key_id` - The identifier of the key to decrypt with.
         /// * `data` - A byte slice representing the data to be Decrypted.
         ///
         /// # Returns
         ///
         /// A `Result` containing the Decrypted data as a `Vec<u8>` on success,
         /// or an `Error` on failure.
-        fn decrypt_data(environment: &JNIEnv, data: &[u8]) -> Result<Vec<u8>, String> {
-            let result = environment.call_static_method(
-                "com/example/vulcans_limes/RustDef",
-                "decrypt_data",
-                "([B)[B",
-                &[JValue::from(environment.byte_array_from_slice(data).unwrap())],
-            );
-            let _ = Self::check_java_exceptions(&environment);
+        fn decrypt_data(environment: &JNIEnv, key_id: &str, data: &[u8]) -> Result<Vec<u8>, String> {
+            let mut output = vec![0u8; data.len()];
+            let methods = Self::java_methods(environment)?;
+            let result = methods.decrypt_data.call(environment, &methods.class, &[JValue::from(Self::java_string(environment, key_id)?),
+                    JValue::from(Self::direct_buffer(environment, data)?),
+                    JValue::from(Self::direct_buffer_mut(environment, &mut output)?)]);
+            let _ = Self::check_java_exceptions(environment);
             return match result {
                 Ok(value) => {
-                    let vector = Self::convert_to_Vec_u8(environment, value);
-                    match vector {
-                        Ok(v) => { Ok(v) }
+                    match value.i() {
+                        Ok(length) => {
+                            output.truncate(length as usize);
+                            Ok(output)
+                        }
                         Err(_) => {
                             Err(
                                 String::from("Failed to convert return type to rust-compatible format")
@@ -776,6 +1017,428 @@ pub mod jni {
             };
         }
 
+        /// Opens a session on the key identified by `key_id`.
+        ///
+        /// # Returns
+        ///
+        /// A `Result` containing the handle of the session, or an error message on failure.
+        fn open_session(environment: &JNIEnv, key_id: String) -> Result<i64, String> {
+            let methods = Self::java_methods(environment)?;
+            let key_id = match environment.new_string(key_id) {
+                Ok(s) => { s }
+                Err(_) => { return Err(String::from("Failed to pass the key id to Java")); }
+            };
+            let result = methods.open_session.call(environment, &methods.class, &[JValue::from(key_id)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.j()) {
+                Ok(session) => { Ok(session) }
+                Err(e) => { Err(Self::call_error("open session", e)) }
+            }
+        }
+
+        /// Closes the session with the given handle.
+        fn close_session(environment: &JNIEnv, session: i64) -> Result<bool, String> {
+            let methods = Self::java_methods(environment)?;
+            let result = methods.close_session.call(environment, &methods.class, &[JValue::from(session)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.z()) {
+                Ok(closed) => { Ok(closed) }
+                Err(e) => { Err(Self::call_error("close session", e)) }
+            }
+        }
+
+        /// Encrypts the given data with the key of a session.
+        fn session_encrypt(environment: &JNIEnv, session: i64, data: &[u8]) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            let mut output = vec![0u8; data.len() + ENCRYPTION_OVERHEAD];
+            let result = methods.session_encrypt.call(environment, &methods.class,
+                                                      &[JValue::from(session),
+                                                          JValue::from(Self::direct_buffer(environment, data)?),
+                                                          JValue::from(Self::direct_buffer_mut(environment, &mut output)?)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.i()) {
+                Ok(length) => {
+                    output.truncate(length as usize);
+                    Ok(output)
+                }
+                Err(e) => { Err(Self::call_error("encrypt data", e)) }
+            }
+        }
+
+        /// Decrypts the given data with the key of a session.
+        fn session_decrypt(environment: &JNIEnv, session: i64, data: &[u8]) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            let mut output = vec![0u8; data.len()];
+            let result = methods.session_decrypt.call(environment, &methods.class,
+                                                      &[JValue::from(session),
+                                                          JValue::from(Self::direct_buffer(environment, data)?),
+                                                          JValue::from(Self::direct_buffer_mut(environment, &mut output)?)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.i()) {
+                Ok(length) => {
+                    output.truncate(length as usize);
+                    Ok(output)
+                }
+                Err(e) => { Err(Self::call_error("decrypt data", e)) }
+            }
+        }
+
+        /// Signs the given data with the key of a session.
+        fn session_sign(environment: &JNIEnv, session: i64, data: &[u8]) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            let result = methods.session_sign.call(environment, &methods.class,
+                                                   &[JValue::from(session),
+                                                       JValue::from(Self::direct_buffer(environment, data)?)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result {
+                Ok(value) => { Self::convert_to_Vec_u8(environment, value) }
+                Err(e) => { Err(Self::call_error("sign data", e)) }
+            }
+        }
+
+        /// Verifies the signature of the given data with the key of a session.
+        fn session_verify(environment: &JNIEnv, session: i64, data: &[u8], signature: &[u8]) -> Result<bool, String> {
+            let methods = Self::java_methods(environment)?;
+            let signature = match environment.byte_array_from_slice(signature) {
+                Ok(array) => { JObject::from(array) }
+                Err(_) => { return Err(String::from("Failed to pass the signature to Java")); }
+            };
+            let result = methods.session_verify.call(environment, &methods.class,
+                                                     &[JValue::from(session),
+                                                         JValue::from(Self::direct_buffer(environment, data)?),
+                                                         JValue::from(signature)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.z()) {
+                Ok(valid) => { Ok(valid) }
+                Err(e) => { Err(Self::call_error("verify signature", e)) }
+            }
+        }
+
+        /// Encrypts a batch of records using the key identified by `key_id`.
+        ///
+        /// The key is looked up once and all records are passed to Java in a single call.
+        ///
+        /// # Returns
+        ///
+        /// A `Result` containing one entry per record, which is `None` if that record could not be
+        /// encrypted, or an error message if the whole batch failed.
+        pub fn encrypt_batch(environment: &JNIEnv, key_id: String, records: &[Box<[u8]>])
+                             -> Result<Vec<Option<Vec<u8>>>, String> {
+            let methods = Self::java_methods(environment)?;
+            Self::run_batch(environment, &methods.encrypt_batch, key_id, records, ENCRYPTION_OVERHEAD)
+        }
+
+        /// Decrypts a batch of records using the key identified by `key_id`.
+        ///
+        /// The key is looked up once and all records are passed to Java in a single call.
+        ///
+        /// # Returns
+        ///
+        /// A `Result` containing one entry per record, which is `None` if that record could not be
+        /// decrypted, or an error message if the whole batch failed.
+        pub fn decrypt_batch(environment: &JNIEnv, key_id: String, records: &[Box<[u8]>])
+                             -> Result<Vec<Option<Vec<u8>>>, String> {
+            let methods = Self::java_methods(environment)?;
+            Self::run_batch(environment, &methods.decrypt_batch, key_id, records, 0)
+        }
+
+        /// Signs the file at `path` with the key pair `key_id`, reading it in chunks of
+        /// `FILE_CHUNK_SIZE` bytes.
+        ///
+        /// # Returns
+        ///
+        /// A `Result` containing the signature, or an error message if the file cannot be read or
+        /// signed.
+        pub fn sign_file(environment: &JNIEnv, key_id: String, path: &str) -> Result<Vec<u8>, String> {
+            let signer = Self::open_signer(environment, key_id)?;
+            if let Err(e) = Self::update_signature_from_file(environment, signer, path) {
+                let _ = Self::close_signature(environment, signer);
+                return Err(e);
+            }
+            Self::finish_signer(environment, signer)
+        }
+
+        /// Verifies the signature of the file at `path` with the key pair `key_id`, reading it in
+        /// chunks of `FILE_CHUNK_SIZE` bytes.
+        ///
+        /// # Returns
+        ///
+        /// A `Result` containing a `bool` signifying whether the signature is valid, or an error
+        /// message if the file cannot be read or the validity cannot be determined.
+        pub fn verify_file(environment: &JNIEnv, key_id: String, path: &str, signature: &[u8])
+                           -> Result<bool, String> {
+            let verifier = Self::open_verifier(environment, key_id)?;
+            if let Err(e) = Self::update_signature_from_file(environment, verifier, path) {
+                let _ = Self::close_signature(environment, verifier);
+                return Err(e);
+            }
+            Self::finish_verifier(environment, verifier, signature)
+        }
+
+        /// Opens a signer on the key pair `key_id` and returns its handle. The document is passed
+        /// with `update_signature` and signed with `finish_signer`.
+        pub fn open_signer(environment: &JNIEnv, key_id: String) -> Result<i64, String> {
+            let methods = Self::java_methods(environment)?;
+            Self::open_signature(environment, &methods.open_signer, key_id)
+        }
+
+        /// Opens a verifier on the key pair `key_id` and returns its handle. The document is passed
+        /// with `update_signature` and verified with `finish_verifier`.
+        pub fn open_verifier(environment: &JNIEnv, key_id: String) -> Result<i64, String> {
+            let methods = Self::java_methods(environment)?;
+            Self::open_signature(environment, &methods.open_verifier, key_id)
+        }
+
+        /// Returns the public key of the key pair `key_id` as DER encoded SubjectPublicKeyInfo.
+        pub fn export_public_key(environment: &JNIEnv, key_id: String) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            Self::export(environment, &methods.export_public_key, key_id)
+        }
+
+        /// Returns the public key of the EC key pair `key_id` as `0x04` followed by the X and Y
+        /// coordinates, the format native ECDSA implementations expect.
+        pub fn export_public_key_point(environment: &JNIEnv, key_id: String) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            Self::export(environment, &methods.export_public_key_point, key_id)
+        }
+
+        /// Calls `export_public_key` or `export_public_key_point` of RustDef.java with the key id.
+        fn export(environment: &JNIEnv, method: &StaticMethod, key_id: String) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            let key_id = match environment.new_string(key_id) {
+                Ok(s) => { s }
+                Err(_) => { return Err(String::from("Failed to pass the key id to Java")); }
+            };
+            let result = method.call(environment, &methods.class, &[JValue::from(key_id)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result {
+                Ok(value) => { Self::convert_to_Vec_u8(environment, value) }
+                Err(e) => { Err(Self::call_error("export public key", e)) }
+            }
+        }
+
+        /// Calls `open_signer` or `open_verifier` of RustDef.java with the key id.
+        fn open_signature(environment: &JNIEnv, method: &StaticMethod, key_id: String) -> Result<i64, String> {
+            let methods = Self::java_methods(environment)?;
+            let key_id = match environment.new_string(key_id) {
+                Ok(s) => { s }
+                Err(_) => { return Err(String::from("Failed to pass the key id to Java")); }
+            };
+            let result = method.call(environment, &methods.class, &[JValue::from(key_id)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.j()) {
+                Ok(handle) => { Ok(handle) }
+                Err(e) => { Err(Self::call_error("open signature", e)) }
+            }
+        }
+
+        /// Adds the next part of the document to a signer or verifier. The data is passed to Java
+        /// as a direct buffer without being copied.
+        pub fn update_signature(environment: &JNIEnv, handle: i64, data: &[u8]) -> Result<(), String> {
+            let methods = Self::java_methods(environment)?;
+            let buffer = Self::direct_buffer(environment, data)?;
+            let result = methods.signature_update.call(environment, &methods.class,
+                                                       &[JValue::from(handle), JValue::from(buffer)]);
+            let _ = Self::check_java_exceptions(environment);
+            // a file is passed in many chunks, so the local references must not pile up
+            let _ = environment.delete_local_ref(buffer);
+            match result {
+                Ok(_) => { Ok(()) }
+                Err(e) => { Err(Self::call_error("update signature", e)) }
+            }
+        }
+
+        /// Signs the document passed to a signer and releases the signer.
+        pub fn finish_signer(environment: &JNIEnv, handle: i64) -> Result<Vec<u8>, String> {
+            let methods = Self::java_methods(environment)?;
+            let result = methods.signer_sign.call(environment, &methods.class, &[JValue::from(handle)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result {
+                Ok(value) => { Self::convert_to_Vec_u8(environment, value) }
+                Err(e) => { Err(Self::call_error("sign data", e)) }
+            }
+        }
+
+        /// Verifies the document passed to a verifier against the signature and releases the
+        /// verifier.
+        pub fn finish_verifier(environment: &JNIEnv, handle: i64, signature: &[u8]) -> Result<bool, String> {
+            let methods = Self::java_methods(environment)?;
+            let signature = match environment.byte_array_from_slice(signature) {
+                Ok(array) => { JObject::from(array) }
+                Err(_) => { return Err(String::from("Failed to pass the signature to Java")); }
+            };
+            let result = methods.verifier_verify.call(environment, &methods.class,
+                                                      &[JValue::from(handle), JValue::from(signature)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.z()) {
+                Ok(valid) => { Ok(valid) }
+                Err(e) => { Err(Self::call_error("verify signature", e)) }
+            }
+        }
+
+        /// Releases a signer or verifier without finishing its document.
+        pub fn close_signature(environment: &JNIEnv, handle: i64) -> Result<bool, String> {
+            let methods = Self::java_methods(environment)?;
+            let result = methods.close_signature.call(environment, &methods.class, &[JValue::from(handle)]);
+            let _ = Self::check_java_exceptions(environment);
+            match result.and_then(|value| value.z()) {
+                Ok(closed) => { Ok(closed) }
+                Err(e) => { Err(Self::call_error("close signature", e)) }
+            }
+        }
+
+        /// Reads the file at `path` in chunks of `FILE_CHUNK_SIZE` bytes and adds them to the
+        /// document of a signer or verifier.
+        fn update_signature_from_file(environment: &JNIEnv, handle: i64, path: &str) -> Result<(), String> {
+            let mut file = match File::open(path) {
+                Ok(file) => { file }
+                Err(e) => { return Err(format!("Failed to open {}: {}", path, e)); }
+            };
+            let mut chunk = vec![0u8; FILE_CHUNK_SIZE];
+            loop {
+                let count = match file.read(&mut chunk) {
+                    Ok(0) => { return Ok(()); }
+                    Ok(count) => { count }
+                    Err(e) if e.kind() == std::io::ErrorKind::Interrupted => { continue; }
+                    Err(e) => { return Err(format!("Failed to read {}: {}", path, e)); }
+                };
+                Self::update_signature(environment, handle, &chunk[..count])?;
+            }
+        }
+
+        /// Packs the records into one direct buffer, calls the given batch method and splits the
+        /// packed output into the results of the single records.
+        fn run_batch(environment: &JNIEnv, method: &StaticMethod, key_id: String, records: &[Box<[u8]>],
+                     overhead: usize) -> Result<Vec<Option<Vec<u8>>>, String> {
+            let methods = Self::java_methods(environment)?;
+            // Java addresses the buffers with int offsets, so the batch and its output have to fit
+            let total = records.iter().try_fold(0usize, |total, record| total.checked_add(record.len()));
+            let output_length = total
+                .and_then(|total| records.len().checked_mul(overhead)?.checked_add(total))
+                .filter(|&length| length <= i32::MAX as usize);
+            let (total, output_length) = match (total, output_length) {
+                (Some(total), Some(output_length)) => { (total, output_length) }
+                _ => { return Err(String::from("Batch is too large")); }
+            };
+            let mut input = Vec::with_capacity(total);
+            let mut input_offsets = Vec::with_capacity(records.len() + 1);
+            input_offsets.push(0);
+            for record in records {
+                input.extend_from_slice(record);
+                input_offsets.push(input.len() as i32);
+            }
+            let mut output = vec![0u8; output_length];
+
+            let arrays = environment.new_int_array(input_offsets.len() as i32)
+                .and_then(|offsets| {
+                    environment.set_int_array_region(offsets, 0, &input_offsets)?;
+                    Ok((offsets, environment.new_int_array(records.len() as i32)?))
+                });
+            let (offsets_array, lengths_array) = match arrays {
+                Ok(arrays) => { arrays }
+                Err(_) => {
+                    let _ = Self::check_java_exceptions(environment);
+                    return Err(String::from("Failed to pass the batch to Java"));
+                }
+            };
+            let key_id = match environment.new_string(key_id) {
+                Ok(s) => { s }
+                Err(_) => { return Err(String::from("Failed to pass the key id to Java")); }
+            };
+            let result = method.call(environment, &methods.class,
+                                     &[JValue::from(key_id),
+                                         JValue::from(Self::direct_buffer(environment, &input)?),
+                                         JValue::from(JObject::from(offsets_array)),
+                                         JValue::from(Self::direct_buffer_mut(environment, &mut output)?),
+                                         JValue::from(JObject::from(lengths_array))]);
+            let _ = Self::check_java_exceptions(environment);
+            if let Err(e) = result.and_then(|value| value.i()) {
+                return Err(Self::call_error("process batch", e));
+            }
+
+            let mut lengths = vec![0i32; records.len()];
+            if environment.get_int_array_region(lengths_array, 0, &mut lengths).is_err() {
+                let _ = Self::check_java_exceptions(environment);
+                return Err(String::from("Failed to read the batch results from Java"));
+            }
+            // the lengths come from Java, so they are checked before slicing the output with them
+            let mut position = 0usize;
+            let mut results = Vec::with_capacity(lengths.len());
+            for (index, &length) in lengths.iter().enumerate() {
+                if length == -1 {
+                    results.push(None);
+                    continue;
+                }
+                let end = usize::try_from(length).ok()
+                    .and_then(|length| position.checked_add(length))
+                    .filter(|&end| end <= output.len());
+                let end = match end {
+                    Some(end) => { end }
+                    None => { return Err(format!("Invalid length {} of batch record {} from Java", length, index)); }
+                };
+                results.push(Some(output[position..end].to_vec()));
+                position = end;
+            }
+            Ok(results)
+        }
+
+        /// Converts the results of a batch into the `BatchResult` returned to Java. Failed records
+        /// are marked as failed in it; if the batch as a whole failed, a `GeneralSecurityException`
+        /// is thrown and null is returned.
+        fn batch_to_java(environment: &JNIEnv, results: Result<Vec<Option<Vec<u8>>>, String>) -> jobject {
+            let result = results.and_then(|results| {
+                Self::new_batch_result(environment, &results).map_err(|_| {
+                    let _ = Self::check_java_exceptions(environment);
+                    String::from("Failed to pass the batch results to Java")
+                })
+            });
+            match result {
+                Ok(batch) => { batch.into_inner() }
+                Err(e) => {
+                    debug!("{}", e);
+                    let _ = environment.throw_new("java/security/GeneralSecurityException", e);
+                    std::ptr::null_mut()
+                }
+            }
+        }
+
+        /// Creates a `BatchResult` with the packed output of all records, their offsets and an
+        /// exception for every failed record.
+        fn new_batch_result<'a>(environment: &JNIEnv<'a>, results: &[Option<Vec<u8>>]) -> Result<JObject<'a>, Error> {
+            let mut output = Vec::new();
+            let mut offsets = Vec::with_capacity(results.len() + 1);
+            offsets.push(0);
+            for record in results {
+                if let Some(record) = record {
+                    output.extend_from_slice(record);
+                }
+                offsets.push(output.len() as i32);
+            }
+
+            let output_array = environment.byte_array_from_slice(&output)?;
+            let offsets_array = environment.new_int_array(offsets.len() as i32)?;
+            environment.set_int_array_region(offsets_array, 0, &offsets)?;
+            let errors = environment.new_object_array(results.len() as i32, "java/security/GeneralSecurityException",
+                                                      JObject::null())?;
+            let mut failures = 0;
+            for (index, _) in results.iter().enumerate().filter(|(_, record)| record.is_none()) {
+                let message = environment.new_string(format!("Record {} could not be processed", index))?;
+                let error = environment.new_object("java/security/GeneralSecurityException",
+                                                   "(Ljava/lang/String;)V", &[JValue::from(message)])?;
+                environment.set_object_array_element(errors, index as i32, error)?;
+                // released right away, a large batch would otherwise overflow the local reference table
+                environment.delete_local_ref(error)?;
+                environment.delete_local_ref(JObject::from(message))?;
+                failures += 1;
+            }
+            environment.new_object("com/example/vulcans_limes/BatchResult",
+                                   "([B[I[Ljava/security/GeneralSecurityException;I)V",
+                                   &[JValue::from(JObject::from(output_array)),
+                                       JValue::from(JObject::from(offsets_array)),
+                                       JValue::from(JObject::from(errors)),
+                                       JValue::Int(failures)])
+        }
+
         //------------------------------------------------------------------------------------------
         // Utility Functions that are only used by other Rust functions.
         // These functions have no relation to RustDef.java
@@ -791,13 +1454,11 @@ pub mod jni {
         /// - `Err(String)` if there is an error during the conversion process, with a description of the error.
         ///
         /// # Errors
-        /// This method can fail in the following cases:
-        /// - If there is a pending Java exception. In this case, an appropriate error message is returned.
-        /// - If the `JValue` cannot be converted to a `Vec<u8>`.
+        /// This method fails if the `JValue` cannot be converted to a `Vec<u8>`. Pending Java exceptions of the
+        /// call that produced `result` have to be checked by the caller beforehand.
         /// # Safety
         /// Ensure that the `JValue` passed is indeed a `jbyteArray` to avoid undefined behavior or unexpected errors.
         fn convert_to_Vec_u8(environment: &JNIEnv, result: JValue) -> Result<Vec<u8>, String> {
-            Self::check_java_exceptions(environment)?;
             let output_array = result.l();
             let jobj;
             match output_array {
@@ -805,11 +1466,188 @@ pub mod jni {
                 Err(_) => { return Err(String::from("Type conversion from JValue to JObject failed")); }
             }
             let jobj = jobj.into_inner() as jbyteArray;
-            let output_vec = environment.convert_byte_array(jobj);
-            Self::check_java_exceptions(environment)?;
-            match output_vec {
+            match environment.convert_byte_array(jobj) {
                 Ok(v) => { Ok(v) }
-                Err(_) => { Err(String::from("Conversion from jbyteArray to Vec<u8> failed")) }
+                Err(_) => {
+                    Self::check_java_exceptions(environment)?;
+                    Err(String::from("Conversion from jbyteArray to Vec<u8> failed"))
+                }
+            }
+        }
+
+        /// Returns the cached class and method IDs of RustDef.java, resolving them on first use.
+        ///
+        /// `initialize_module` calls this first, so the lookup normally happens once at start-up
+        /// and all later upcalls skip the lookup by name.
+        fn java_methods(environment: &JNIEnv) -> Result<&'static JavaMethods, String> {
+            if let Some(methods) = JAVA_METHODS.get() {
+                return Ok(methods);
+            }
+            match Self::resolve_java_methods(environment) {
+                Ok(methods) => { Ok(JAVA_METHODS.get_or_init(|| methods)) }
+                Err(_) => {
+                    Self::check_java_exceptions(environment)?;
+                    Err(String::from("Failed to resolve the Java methods of RustDef"))
+                }
+            }
+        }
+
+        /// Times `iterations` calls of `initialize_module` by name and as many through the cached IDs,
+        /// see `measureUpcalls`. Each call runs in its own local frame, so the class references created
+        /// by the lookups are released right away.
+        fn measure_upcalls(environment: &JNIEnv, iterations: i32) -> Result<[i64; 2], String> {
+            let methods = Self::java_methods(environment)?;
+            Self::initialize_module(environment)?;
+            let start = Instant::now();
+            for _ in 0..iterations {
+                let result = environment.with_local_frame(4, || {
+                    environment.call_static_method("com/example/vulcans_limes/RustDef",
+                                                   "initialize_module", "()V", &[])?;
+                    Ok(JObject::null())
+                });
+                if let Err(e) = result {
+                    let _ = Self::check_java_exceptions(environment);
+                    return Err(Self::call_error("call initialize_module by name", e));
+                }
+            }
+            let by_name = start.elapsed().as_nanos() as i64;
+            let start = Instant::now();
+            for _ in 0..iterations {
+                let result = environment.with_local_frame(4, || {
+                    environment.call_static_method_unchecked(
+                        JClass::from(methods.class.as_obj()),
+                        JStaticMethodID::from(methods.initialize_module.id),
+                        JavaType::Primitive(Primitive::Void),
+                        &[],
+                    )?;
+                    Ok(JObject::null())
+                });
+                if let Err(e) = result {
+                    let _ = Self::check_java_exceptions(environment);
+                    return Err(Self::call_error("call initialize_module by ID", e));
+                }
+            }
+            Ok([by_name, start.elapsed().as_nanos() as i64])
+        }
+
+        /// Looks up RustDef.java and all methods that are called from Rust by name.
+        fn resolve_java_methods(environment: &JNIEnv) -> Result<JavaMethods, Error> {
+            let class = environment.find_class("com/example/vulcans_limes/RustDef")?;
+            let resolve = |name: &'static str, signature: &str, return_type: JavaType| -> Result<StaticMethod, Error> {
+                let id = environment.get_static_method_id(class, name, signature)?;
+                Ok(StaticMethod { name, id: id.into_inner(), return_type, stats: CallStats::default() })
+            };
+            let void = || JavaType::Primitive(Primitive::Void);
+            let byte_array = || JavaType::Array(Box::new(JavaType::Primitive(Primitive::Byte)));
+            Ok(JavaMethods {
+                create_key: resolve("create_key", "(Ljava/lang/String;Ljava/lang/String;)V", void())?,
+                load_key: resolve("load_key", "(Ljava/lang/String;)V", void())?,
+                initialize_module: resolve("initialize_module", "()V", void())?,
+                sign_data: resolve("sign_data_direct", "(Ljava/lang/String;Ljava/nio/ByteBuffer;)[B", byte_array())?,
+                verify_signature: resolve("verify_signature_direct", "(Ljava/lang/String;Ljava/nio/ByteBuffer;[B)Z",
+                                          JavaType::Primitive(Primitive::Boolean))?,
+                encrypt_data: resolve("encrypt_data_direct", "(Ljava/lang/String;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I",
+                                      JavaType::Primitive(Primitive::Int))?,
+                decrypt_data: resolve("decrypt_data_direct", "(Ljava/lang/String;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I",
+                                      JavaType::Primitive(Primitive::Int))?,
+                open_session: resolve("open_session", "(Ljava/lang/String;)J",
+                                      JavaType::Primitive(Primitive::Long))?,
+                close_session: resolve("close_session", "(J)Z", JavaType::Primitive(Primitive::Boolean))?,
+                session_encrypt: resolve("session_encrypt_direct", "(JLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I",
+                                         JavaType::Primitive(Primitive::Int))?,
+                session_decrypt: resolve("session_decrypt_direct", "(JLjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I",
+                                         JavaType::Primitive(Primitive::Int))?,
+                session_sign: resolve("session_sign_direct", "(JLjava/nio/ByteBuffer;)[B", byte_array())?,
+                session_verify: resolve("session_verify_direct", "(JLjava/nio/ByteBuffer;[B)Z",
+                                        JavaType::Primitive(Primitive::Boolean))?,
+                encrypt_batch: resolve("encrypt_batch_direct",
+                                       "(Ljava/lang/String;Ljava/nio/ByteBuffer;[ILjava/nio/ByteBuffer;[I)I",
+                                       JavaType::Primitive(Primitive::Int))?,
+                decrypt_batch: resolve("decrypt_batch_direct",
+                                       "(Ljava/lang/String;Ljava/nio/ByteBuffer;[ILjava/nio/ByteBuffer;[I)I",
+                                       JavaType::Primitive(Primitive::Int))?,
+                open_signer: resolve("open_signer", "(Ljava/lang/String;)J",
+                                     JavaType::Primitive(Primitive::Long))?,
+                open_verifier: resolve("open_verifier", "(Ljava/lang/String;)J",
+                                       JavaType::Primitive(Primitive::Long))?,
+                signature_update: resolve("signature_update_direct", "(JLjava/nio/ByteBuffer;)V", void())?,
+                signer_sign: resolve("signer_sign", "(J)[B", byte_array())?,
+                verifier_verify: resolve("verifier_verify", "(J[B)Z", JavaType::Primitive(Primitive::Boolean))?,
+                close_signature: resolve("close_signature", "(J)Z", JavaType::Primitive(Primitive::Boolean))?,
+                export_public_key: resolve("export_public_key", "(Ljava/lang/String;)[B", byte_array())?,
+                export_public_key_point: resolve("export_public_key_point", "(Ljava/lang/String;)[B", byte_array())?,
+                as_read_only_buffer: InstanceMethod {
+                    id: environment.get_method_id("java/nio/ByteBuffer", "asReadOnlyBuffer",
+                                                  "()Ljava/nio/ByteBuffer;")?.into_inner(),
+                },
+                class: environment.new_global_ref(class)?,
+            })
+        }
+
+        /// Describes an error returned by a call into Java, in the same words as the other upcalls.
+        fn call_error(operation: &str, error: Error) -> String {
+            match error {
+                Error::WrongJValueType(_, _) => {
+                    format!("Failed to {}: Wrong Arguments passed", operation)
+                }
+                Error::JavaException => {
+                    format!("Failed to {}: Some exception occurred in Java. Check console for details", operation)
+                }
+                _ => { String::from("Failed to call Java methods") }
+            }
+        }
+
+        /// Creates a Java string holding the given key id, to be passed to the methods of RustDef.java.
+        fn java_string<'a>(environment: &JNIEnv<'a>, key_id: &str) -> Result<JObject<'a>, String> {
+            match environment.new_string(key_id) {
+                Ok(s) => { Ok(JObject::from(s)) }
+                Err(_) => { Err(String::from("Failed to pass the key id to Java")) }
+            }
+        }
+
+        /// Wraps a byte slice in a read-only direct `java.nio.ByteBuffer` without copying it.
+        ///
+        /// The buffer is created from the raw pointer of the slice, so no mutable reference to the
+        /// shared data is created, and Java only gets the read-only view of it. The buffer must not be
+        /// used after the slice is dropped, which the Java methods it is passed to do not do.
+        fn direct_buffer<'a>(environment: &JNIEnv<'a>, data: &[u8]) -> Result<JObject<'a>, String> {
+            let methods = Self::java_methods(environment)?;
+            let raw = environment.get_native_interface();
+            let buffer = unsafe {
+                match (**raw).NewDirectByteBuffer {
+                    Some(new_direct_byte_buffer) => {
+                        new_direct_byte_buffer(raw, data.as_ptr() as *mut c_void, data.len() as jlong)
+                    }
+                    None => { std::ptr::null_mut() }
+                }
+            };
+            if buffer.is_null() {
+                let _ = Self::check_java_exceptions(environment);
+                return Err(String::from("Failed to create direct buffer"));
+            }
+            // only the read-only view is handed out, the writable buffer is released right away
+            let buffer = AutoLocal::new(environment, JObject::from(buffer));
+            let result = environment.call_method_unchecked(
+                buffer.as_obj(),
+                JMethodID::from(methods.as_read_only_buffer.id),
+                JavaType::Object(String::from("java/nio/ByteBuffer")),
+                &[],
+            );
+            match result.and_then(|value| value.l()) {
+                Ok(read_only) => { Ok(read_only) }
+                Err(_) => {
+                    let _ = Self::check_java_exceptions(environment);
+                    Err(String::from("Failed to create read-only direct buffer"))
+                }
+            }
+        }
+
+        /// Wraps a mutable byte slice in a direct `java.nio.ByteBuffer`, so that Java can write to it
+        /// without an intermediate array. The buffer must not be used after the slice is dropped.
+        fn direct_buffer_mut<'a>(environment: &JNIEnv<'a>, data: &mut [u8]) -> Result<JObject<'a>, String> {
+            match environment.new_direct_byte_buffer(data) {
+                Ok(buffer) => { Ok(JObject::from(buffer)) }
+                Err(_) => { Err(String::from("Failed to create direct buffer")) }
             }
         }
 
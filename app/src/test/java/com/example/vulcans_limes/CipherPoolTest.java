@@ -0,0 +1,147 @@
+package com.example.vulcans_limes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the per-thread reuse of {@link CipherPool} and of reusing its instances with other keys
+ * and after failed operations.
+ */
+public class CipherPoolTest {
+    private static final String GCM = "AES/GCM/NoPadding";
+
+    private CipherPool pool;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        pool = new CipherPool();
+        random = new Random(1);
+    }
+
+    @Test
+    public void reusesInstancesPerThreadAndAlgorithm() throws Exception {
+        Cipher cipher = pool.getCipher(GCM);
+        assertSame(cipher, pool.getCipher(GCM));
+        assertNotSame(cipher, pool.getCipher("AES/CBC/PKCS5Padding"));
+
+        Signature signature = pool.getSignature("SHA256withECDSA");
+        assertSame(signature, pool.getSignature("SHA256withECDSA"));
+        assertNotSame(signature, pool.getSignature("SHA384withECDSA"));
+
+        MessageDigest digest = pool.getMessageDigest("SHA-256");
+        assertSame(digest, pool.getMessageDigest("SHA-256"));
+        // another pool keeps instances of its own
+        assertNotSame(cipher, new CipherPool().getCipher(GCM));
+    }
+
+    @Test
+    public void otherThreadsGetOtherInstances() throws Exception {
+        final Cipher cipher = pool.getCipher(GCM);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Cipher other = executor.submit(new Callable<Cipher>() {
+                @Override
+                public Cipher call() throws Exception {
+                    Cipher first = pool.getCipher(GCM);
+                    assertSame(first, pool.getCipher(GCM));
+                    return first;
+                }
+            }).get();
+            assertNotSame(cipher, other);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void reusedCipherWorksWithOtherKeys() throws Exception {
+        SecretKeySpec first = key();
+        SecretKeySpec second = key();
+        byte[] data = payload(100);
+        byte[] iv = payload(12);
+
+        byte[] encrypted = gcm(Cipher.ENCRYPT_MODE, first, iv, data);
+        byte[] encryptedWithSecond = gcm(Cipher.ENCRYPT_MODE, second, iv, data);
+        assertArrayEquals(data, gcm(Cipher.DECRYPT_MODE, first, iv, encrypted));
+        assertArrayEquals(data, gcm(Cipher.DECRYPT_MODE, second, iv, encryptedWithSecond));
+    }
+
+    @Test
+    public void reusedCipherWorksAfterFailedDecryption() throws Exception {
+        SecretKeySpec key = key();
+        byte[] data = payload(100);
+        byte[] iv = payload(12);
+        byte[] encrypted = gcm(Cipher.ENCRYPT_MODE, key, iv, data);
+        byte[] tampered = encrypted.clone();
+        tampered[0] ^= 1;
+
+        try {
+            gcm(Cipher.DECRYPT_MODE, key, iv, tampered);
+            fail("Tampered ciphertext was decrypted");
+        } catch (AEADBadTagException e) {
+            // expected
+        }
+        assertArrayEquals(data, gcm(Cipher.DECRYPT_MODE, key, iv, encrypted));
+    }
+
+    @Test
+    public void reusedSignatureWorksWithOtherKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        KeyPair first = generator.generateKeyPair();
+        KeyPair second = generator.generateKeyPair();
+        byte[] data = payload(100);
+
+        Signature signature = pool.getSignature("SHA256withECDSA");
+        signature.initSign(first.getPrivate());
+        signature.update(data);
+        byte[] signed = signature.sign();
+
+        signature = pool.getSignature("SHA256withECDSA");
+        signature.initVerify(second.getPublic());
+        signature.update(data);
+        assertFalse(signature.verify(signed));
+        signature.initVerify(first.getPublic());
+        signature.update(data);
+        assertTrue(signature.verify(signed));
+    }
+
+    private byte[] gcm(int opmode, SecretKeySpec key, byte[] iv, byte[] data) throws GeneralSecurityException {
+        Cipher cipher = pool.getCipher(GCM);
+        cipher.init(opmode, key, new GCMParameterSpec(128, iv));
+        return cipher.doFinal(data);
+    }
+
+    private SecretKeySpec key() {
+        return new SecretKeySpec(payload(16), "AES");
+    }
+
+    private byte[] payload(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.vulcans_limes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the expiry, eviction and encryption reuse limits of {@link DataKeyCache}, and of the
+ * cache in envelope encryption through a {@link CryptoManager} with a {@link SoftwareKeyStoreBackend}.
+ */
+public class DataKeyCacheTest {
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+    private static final byte[] WRAPPED = {1, 2, 3};
+    private static final byte[] DATA_KEY = {4, 5, 6};
+
+    @Test
+    public void returnsCopiesPerKeystoreKey() {
+        DataKeyCache cache = new DataKeyCache(4, HOUR, false);
+        byte[] dataKey = DATA_KEY.clone();
+        cache.put("a", WRAPPED, dataKey);
+        // the cache keeps its own copy
+        Arrays.fill(dataKey, (byte) 0);
+
+        byte[] cached = cache.get("a", WRAPPED);
+        assertArrayEquals(DATA_KEY, cached);
+        Arrays.fill(cached, (byte) 0);
+        assertArrayEquals(DATA_KEY, cache.get("a", WRAPPED));
+        assertNull(cache.get("b", WRAPPED));
+        assertNull(cache.get("a", new byte[]{1, 2}));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void expiredKeysAreDropped() throws Exception {
+        DataKeyCache cache = new DataKeyCache(4, TimeUnit.MILLISECONDS.toNanos(50), true);
+        cache.put("a", WRAPPED, DATA_KEY);
+        cache.putEncryptionKey("b", new byte[]{7}, DATA_KEY);
+        assertNotNull(cache.get("a", WRAPPED));
+        assertNotNull(cache.acquireEncryptionKey("b"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("a", WRAPPED));
+        assertNull(cache.acquireEncryptionKey("b"));
+        assertEquals(1, cache.getEvictionCount());
+        // the expired eldest entry is dropped by the next insertion even though the cache is not full
+        cache.put("c", WRAPPED, DATA_KEY);
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedKey() {
+        DataKeyCache cache = new DataKeyCache(2, HOUR, false);
+        cache.put("a", WRAPPED, DATA_KEY);
+        cache.put("b", WRAPPED, DATA_KEY);
+        // reading a makes b the least recently used key
+        assertNotNull(cache.get("a", WRAPPED));
+        cache.put("c", WRAPPED, DATA_KEY);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get("b", WRAPPED));
+        assertNotNull(cache.get("a", WRAPPED));
+        assertNotNull(cache.get("c", WRAPPED));
+    }
+
+    @Test
+    public void encryptionKeyIsNotReusedByDefault() {
+        DataKeyCache cache = new DataKeyCache(4, HOUR, false);
+        cache.putEncryptionKey("a", WRAPPED, DATA_KEY);
+        assertNull(cache.acquireEncryptionKey("a"));
+        assertNull(cache.get("a", WRAPPED));
+    }
+
+    @Test
+    public void encryptionKeyIsReusedUpToTheLimit() {
+        DataKeyCache cache = new DataKeyCache(4, HOUR, true);
+        cache.putEncryptionKey("a", WRAPPED, DATA_KEY);
+        // putting the key counts as its first use
+        for (long i = 1; i < DataKeyCache.MAX_ENCRYPTIONS_PER_KEY; i++) {
+            byte[][] acquired = cache.acquireEncryptionKey("a");
+            if (acquired == null) fail("Data key was dropped after " + i + " encryptions");
+            assertArrayEquals(WRAPPED, acquired[0]);
+        }
+        assertNull(cache.acquireEncryptionKey("a"));
+        // it can still be used for decryption
+        assertArrayEquals(DATA_KEY, cache.get("a", WRAPPED));
+    }
+
+    @Test
+    public void invalidateDropsAllKeysOfTheKeystoreKey() {
+        DataKeyCache cache = new DataKeyCache(4, HOUR, true);
+        cache.put("a", WRAPPED, DATA_KEY);
+        cache.putEncryptionKey("a", new byte[]{7}, DATA_KEY);
+        cache.put("b", WRAPPED, DATA_KEY);
+        cache.invalidate("a");
+
+        assertNull(cache.get("a", WRAPPED));
+        assertNull(cache.acquireEncryptionKey("a"));
+        assertNotNull(cache.get("b", WRAPPED));
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void rejectsInvalidLimits() {
+        long[][] limits = {{0, HOUR}, {1, 0}, {1, -1}};
+        for (long[] limit : limits) {
+            try {
+                new DataKeyCache((int) limit[0], limit[1], false);
+                fail("Cache with " + limit[0] + " entries and a maximum age of " + limit[1] + " was created");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void cryptoManagerReusesDataKeysOnlyIfEnabled() throws Exception {
+        CryptoManager cryptoManager = new CryptoManager(new SoftwareKeyStoreBackend());
+        cryptoManager.createKey("key", KeyGenSpec.parse("AES;256;GCM;NoPadding"));
+        byte[] data = {1, 2, 3, 4};
+
+        cryptoManager.enableDataKeyCache(16, 1, TimeUnit.HOURS);
+        assertFalse(Arrays.equals(wrappedKey(cryptoManager.encryptEnvelope("key", data)),
+                wrappedKey(cryptoManager.encryptEnvelope("key", data))));
+
+        cryptoManager.enableDataKeyCache(16, 1, TimeUnit.HOURS, true);
+        byte[] first = cryptoManager.encryptEnvelope("key", data);
+        byte[] second = cryptoManager.encryptEnvelope("key", data);
+        assertArrayEquals(wrappedKey(first), wrappedKey(second));
+        assertArrayEquals(data, cryptoManager.decryptEnvelope("key", first));
+        assertArrayEquals(data, cryptoManager.decryptEnvelope("key", second));
+
+        cryptoManager.disableDataKeyCache();
+        assertArrayEquals(data, cryptoManager.decryptEnvelope("key", second));
+    }
+
+    private static byte[] wrappedKey(byte[] envelope) throws Exception {
+        return Envelope.wrappedKey(envelope, Envelope.headerLength(envelope, Envelope.MESSAGE));
+    }
+}
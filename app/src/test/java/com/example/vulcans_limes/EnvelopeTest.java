@@ -0,0 +1,160 @@
+package com.example.vulcans_limes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of envelope encryption, see {@link Envelope}, through a {@link CryptoManager} with a
+ * {@link SoftwareKeyStoreBackend}.
+ */
+public class EnvelopeTest {
+    private static final String KEY = "envelope-key";
+    // "VLE", format and the length of the wrapped key
+    private static final int PREFIX_LENGTH = 6;
+
+    private CryptoManager cryptoManager;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        cryptoManager = new CryptoManager(new SoftwareKeyStoreBackend());
+        cryptoManager.createKey(KEY, KeyGenSpec.parse("AES;256;GCM;NoPadding"));
+        random = new Random(1);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (int size : new int[]{0, 1, 15, 16, 17, 4096, 1 << 20}) {
+            byte[] data = payload(size);
+            byte[] envelope = cryptoManager.encryptEnvelope(KEY, data);
+            assertEquals("size " + size, headerLength(envelope) + Envelope.NONCE_LENGTH + size
+                    + Envelope.TAG_LENGTH, envelope.length);
+            assertArrayEquals("size " + size, data, cryptoManager.decryptEnvelope(KEY, envelope));
+        }
+    }
+
+    @Test
+    public void everyEnvelopeHasItsOwnDataKey() throws Exception {
+        byte[] data = payload(100);
+        byte[] first = cryptoManager.encryptEnvelope(KEY, data);
+        byte[] second = cryptoManager.encryptEnvelope(KEY, data);
+        assertFalse(Arrays.equals(Envelope.wrappedKey(first, headerLength(first)),
+                Envelope.wrappedKey(second, headerLength(second))));
+        assertFalse(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void tamperedEnvelopeFails() throws Exception {
+        byte[] envelope = cryptoManager.encryptEnvelope(KEY, payload(100));
+        int headerLength = headerLength(envelope);
+        int[] positions = {
+                PREFIX_LENGTH, // wrapped data key
+                headerLength - 1, // tag of the wrapped data key
+                headerLength, // nonce
+                headerLength + Envelope.NONCE_LENGTH, // ciphertext
+                envelope.length - 1 // tag
+        };
+        for (int position : positions) {
+            byte[] tampered = envelope.clone();
+            tampered[position] ^= 1;
+            assertFails("position " + position, tampered);
+        }
+    }
+
+    @Test
+    public void exchangedWrappedKeyFails() throws Exception {
+        byte[] first = cryptoManager.encryptEnvelope(KEY, payload(100));
+        byte[] second = cryptoManager.encryptEnvelope(KEY, payload(100));
+        // the wrapped key of another envelope unwraps fine, but the header is authenticated with the data
+        int headerLength = headerLength(first);
+        byte[] exchanged = first.clone();
+        System.arraycopy(second, 0, exchanged, 0, headerLength);
+        assertFails("exchanged header", exchanged);
+    }
+
+    @Test
+    public void truncatedOrMalformedEnvelopeFails() throws Exception {
+        byte[] envelope = cryptoManager.encryptEnvelope(KEY, payload(100));
+        int headerLength = headerLength(envelope);
+        assertFails("truncated tag", Arrays.copyOf(envelope, envelope.length - 1));
+        assertFails("without tag", Arrays.copyOf(envelope, headerLength + Envelope.NONCE_LENGTH));
+        assertFails("truncated header", Arrays.copyOf(envelope, headerLength - 1));
+        assertFails("prefix only", Arrays.copyOf(envelope, PREFIX_LENGTH - 1));
+
+        byte[] otherFormat = envelope.clone();
+        otherFormat[3] = Envelope.STREAM;
+        assertFails("other format", otherFormat);
+        byte[] otherMagic = envelope.clone();
+        otherMagic[0] = 'X';
+        assertFails("other magic", otherMagic);
+    }
+
+    @Test
+    public void otherKeyFails() throws Exception {
+        cryptoManager.createKey("other-key", KeyGenSpec.parse("AES;256;GCM;NoPadding"));
+        byte[] envelope = cryptoManager.encryptEnvelope(KEY, payload(100));
+        try {
+            cryptoManager.decryptEnvelope("other-key", envelope);
+            fail("Envelope was opened with another key");
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void streamRoundTrip() throws Exception {
+        byte[] data = payload(3 * SegmentedAead.DEFAULT_SEGMENT_SIZE + 100);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = cryptoManager.newEnvelopeEncryptingStream(KEY, encrypted)) {
+            out.write(data);
+        }
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        try (InputStream in = cryptoManager.newEnvelopeDecryptingStream(KEY,
+                new ByteArrayInputStream(encrypted.toByteArray()))) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) decrypted.write(buffer, 0, count);
+        }
+        assertArrayEquals(data, decrypted.toByteArray());
+
+        try {
+            cryptoManager.decryptEnvelope(KEY, encrypted.toByteArray());
+            fail("A stream envelope was opened as a message");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertFails(String message, byte[] envelope) {
+        try {
+            cryptoManager.decryptEnvelope(KEY, envelope);
+            fail("Malformed envelope was decrypted: " + message);
+        } catch (GeneralSecurityException | IOException e) {
+            // expected
+        }
+    }
+
+    private static int headerLength(byte[] envelope) throws IOException {
+        return Envelope.headerLength(envelope, Envelope.MESSAGE);
+    }
+
+    private byte[] payload(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
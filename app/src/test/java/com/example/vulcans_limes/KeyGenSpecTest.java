@@ -0,0 +1,135 @@
+package com.example.vulcans_limes;
+
+import org.junit.Test;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.RSAKeyGenParameterSpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the keyGenInfo formats {@link KeyGenSpec#parse(String)} accepts and rejects.
+ */
+public class KeyGenSpecTest {
+
+    @Test
+    public void parsesSecretKeys() throws Exception {
+        String[] algorithms = {"AES;128", "AES;192", "AES;256", "DESede;168"};
+        String[] modes = {"GCM", "CBC", "CTR"};
+        String[] paddings = {"NoPadding", "PKCS7Padding"};
+        for (String algorithm : algorithms) {
+            for (String mode : modes) {
+                for (String padding : paddings) {
+                    String keyGenInfo = algorithm + ";" + mode + ";" + padding;
+                    KeyGenSpec spec = KeyGenSpec.parse(keyGenInfo);
+                    assertFalse(keyGenInfo, spec.isKeyPair());
+                    assertEquals(keyGenInfo, algorithm.split(";")[0], spec.getAlgorithm());
+                    assertEquals(keyGenInfo, Integer.parseInt(algorithm.split(";")[1]), spec.getKeySize());
+                    assertEquals(keyGenInfo, mode, spec.getBlockMode());
+                    assertEquals(keyGenInfo, padding, spec.getPadding());
+                    assertNull(keyGenInfo, spec.getDigest());
+                    assertNull(keyGenInfo, spec.getKeyPairParameters());
+                    assertEquals(keyGenInfo, KeyGenSpec.PURPOSE_ENCRYPT | KeyGenSpec.PURPOSE_DECRYPT,
+                            spec.getPurposes());
+                    assertTrue(keyGenInfo, spec.isStrongBoxBacked());
+                    assertEquals(keyGenInfo, spec.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parsesRsaKeyPairs() throws Exception {
+        for (int size : new int[]{512, 1024, 2048, 3072, 4096, 8192}) {
+            for (String digest : new String[]{"SHA-256", "SHA-384", "SHA-512"}) {
+                for (String padding : new String[]{"PKCS1", "NoPadding"}) {
+                    String keyGenInfo = "RSA;" + size + ";" + digest + ";" + padding;
+                    KeyGenSpec spec = KeyGenSpec.parse(keyGenInfo);
+                    assertTrue(keyGenInfo, spec.isKeyPair());
+                    assertEquals(keyGenInfo, "RSA", spec.getAlgorithm());
+                    assertEquals(keyGenInfo, size, spec.getKeySize());
+                    assertEquals(keyGenInfo, digest, spec.getDigest());
+                    assertEquals(keyGenInfo, padding, spec.getPadding());
+                    assertNull(keyGenInfo, spec.getCurve());
+                    assertEquals(keyGenInfo, KeyGenSpec.PURPOSE_SIGN | KeyGenSpec.PURPOSE_VERIFY,
+                            spec.getPurposes());
+                    RSAKeyGenParameterSpec parameters = (RSAKeyGenParameterSpec) spec.getKeyPairParameters();
+                    assertEquals(keyGenInfo, size, parameters.getKeysize());
+                    assertEquals(keyGenInfo, RSAKeyGenParameterSpec.F4, parameters.getPublicExponent());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parsesEcKeyPairs() throws Exception {
+        String[] curves = {"secp256r1", "secp384r1", "secp521r1"};
+        int[] sizes = {256, 384, 521};
+        for (int i = 0; i < curves.length; i++) {
+            for (String suffix : new String[]{"", ";PKCS1", ";NoPadding"}) {
+                String keyGenInfo = "EC;" + curves[i] + ";SHA-256" + suffix;
+                KeyGenSpec spec = KeyGenSpec.parse(keyGenInfo);
+                assertTrue(keyGenInfo, spec.isKeyPair());
+                assertEquals(keyGenInfo, "EC", spec.getAlgorithm());
+                assertEquals(keyGenInfo, curves[i], spec.getCurve());
+                assertEquals(keyGenInfo, sizes[i], spec.getKeySize());
+                assertEquals(keyGenInfo, "SHA-256", spec.getDigest());
+                assertNull(keyGenInfo, spec.getPadding());
+                assertFalse(keyGenInfo, spec.isStrongBoxBacked());
+                assertEquals(keyGenInfo, curves[i], ((ECGenParameterSpec) spec.getKeyPairParameters()).getName());
+            }
+        }
+    }
+
+    @Test
+    public void rejectsUnsupportedKeyGenInfo() {
+        String[] invalid = {
+                null,
+                "",
+                "AES",
+                "AES;256;GCM",
+                "AES;256;GCM;NoPadding;",
+                "AES;512;GCM;NoPadding",
+                "AES;168;GCM;NoPadding",
+                "AES;256;ECB;NoPadding",
+                "AES;256;GCM;PKCS5Padding",
+                "aes;256;GCM;NoPadding",
+                "DESede;192;CBC;PKCS7Padding",
+                "DES;56;CBC;PKCS7Padding",
+                "RSA;2048;SHA-256",
+                "RSA;2048;SHA-1;PKCS1",
+                "RSA;2048;SHA-256;OAEP",
+                "RSA;256;SHA-256;PKCS1",
+                "RSA;2049;SHA-256;PKCS1",
+                "RSA;123456;SHA-256;PKCS1",
+                "EC;secp256k1;SHA-256",
+                "EC;secp256r1",
+                "EC;secp256r1;MD5",
+                " EC;secp256r1;SHA-256",
+        };
+        for (String keyGenInfo : invalid) {
+            try {
+                KeyGenSpec.parse(keyGenInfo);
+                fail("Accepted " + keyGenInfo);
+            } catch (InvalidAlgorithmParameterException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void parsedSpecsAreCachedAndEqualByKeyGenInfo() throws Exception {
+        KeyGenSpec spec = KeyGenSpec.parse("AES;256;GCM;NoPadding");
+        assertSame(spec, KeyGenSpec.parse("AES;256;GCM;NoPadding"));
+        assertEquals(spec, KeyGenSpec.parse(new String("AES;256;GCM;NoPadding")));
+        assertEquals(spec.hashCode(), KeyGenSpec.parse("AES;256;GCM;NoPadding").hashCode());
+        assertNotEquals(spec, KeyGenSpec.parse("AES;256;CBC;NoPadding"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.vulcans_limes;
+
+import org.junit.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the bounded least recently used eviction and the hit and miss counts of
+ * {@link KeyHandleCache}.
+ */
+public class KeyHandleCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedHandle() {
+        KeyHandleCache cache = new KeyHandleCache(2);
+        KeyHandle a = handle("a");
+        KeyHandle b = handle("b");
+        KeyHandle c = handle("c");
+        cache.put(a);
+        cache.put(b);
+        // reading a makes b the least recently used handle
+        assertSame(a, cache.get("a"));
+        cache.put(c);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertSame(c, cache.get("c"));
+    }
+
+    @Test
+    public void replacingAHandleDoesNotEvict() {
+        KeyHandleCache cache = new KeyHandleCache(2);
+        KeyHandle replaced = handle("a");
+        cache.put(handle("a"));
+        cache.put(handle("b"));
+        cache.put(replaced);
+
+        assertEquals(2, cache.size());
+        assertSame(replaced, cache.get("a"));
+        assertEquals("b", cache.get("b").getAlias());
+    }
+
+    @Test
+    public void invalidateRemovesOnlyThatAlias() {
+        KeyHandleCache cache = new KeyHandleCache(4);
+        cache.put(handle("a"));
+        cache.put(handle("b"));
+        cache.invalidate("a");
+
+        assertNull(cache.get("a"));
+        assertEquals("b", cache.get("b").getAlias());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        KeyHandleCache cache = new KeyHandleCache(4);
+        cache.get("a");
+        cache.put(handle("a"));
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void rejectsEmptyCache() {
+        try {
+            new KeyHandleCache(0);
+            fail("A cache without entries was created");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static KeyHandle handle(String alias) {
+        return new KeyHandle(alias, new SecretKeySpec(new byte[16], "AES"), null, null);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.vulcans_limes;
+
+import org.junit.Test;
+
+import java.security.Signature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the values {@link KeyProfile} precomputes for symmetric keys and key pairs.
+ */
+public class KeyProfileTest {
+
+    @Test
+    public void gcmProfile() {
+        KeyProfile profile = KeyProfile.forSecretKey("AES", "GCM", "NoPadding", true);
+        assertEquals(KeyProfile.Mode.GCM, profile.getMode());
+        assertEquals("AES/GCM/NoPadding", profile.getTransformation());
+        assertEquals("AES/GCM/NoPadding", profile.getAlgorithmName());
+        assertEquals(KeyProfile.IV_GCM_AES, profile.getIvLength());
+        assertEquals(KeyProfile.TAG_SIZE_GCM, profile.getTagLength());
+        assertNull(profile.getSignatureAlgorithm());
+        assertTrue(profile.isStrongBoxBacked());
+    }
+
+    @Test
+    public void cbcAndCtrProfiles() {
+        KeyProfile cbc = KeyProfile.forSecretKey("AES", "CBC", "PKCS7Padding", false);
+        assertEquals(KeyProfile.Mode.CBC, cbc.getMode());
+        assertEquals("AES/CBC/PKCS7Padding", cbc.getTransformation());
+        assertEquals(KeyProfile.IV_CBC_AND_CTR_AES, cbc.getIvLength());
+        assertEquals(0, cbc.getTagLength());
+        assertFalse(cbc.isStrongBoxBacked());
+
+        KeyProfile ctr = KeyProfile.forSecretKey("AES", "CTR", "NoPadding", false);
+        assertEquals(KeyProfile.Mode.CTR, ctr.getMode());
+        assertEquals(KeyProfile.IV_CBC_AND_CTR_AES, ctr.getIvLength());
+
+        KeyProfile des = KeyProfile.forSecretKey("DESede", "CBC", "PKCS7Padding", false);
+        assertEquals("DESede/CBC/PKCS7Padding", des.getTransformation());
+        assertEquals(KeyProfile.IV_CBC_DES, des.getIvLength());
+    }
+
+    @Test
+    public void unsupportedBlockModeFails() {
+        for (String mode : new String[]{"ECB", "NONE"}) {
+            try {
+                KeyProfile.forSecretKey("AES", mode, "NoPadding", false);
+                fail("Block mode " + mode + " was accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void keyPairProfiles() throws Exception {
+        KeyProfile ec = KeyProfile.forKeyPair("EC", "SHA-256", false, false);
+        assertEquals(KeyProfile.Mode.NONE, ec.getMode());
+        assertEquals("SHA256withECDSA", ec.getSignatureAlgorithm());
+        assertEquals("SHA256withECDSA", ec.getAlgorithmName());
+        assertEquals("SHA-256", ec.getDigest());
+        assertNull(ec.getTransformation());
+        assertEquals(0, ec.getIvLength());
+        assertNull(ec.getPreHashAlgorithm());
+
+        KeyProfile rsa = KeyProfile.forKeyPair("RSA", "SHA-512", false, true);
+        assertEquals("SHA512withRSA", rsa.getSignatureAlgorithm());
+        assertTrue(rsa.isStrongBoxBacked());
+
+        // the names have to be understood by the provider as they are
+        assertNotNull(Signature.getInstance(ec.getSignatureAlgorithm()));
+        assertNotNull(Signature.getInstance(rsa.getSignatureAlgorithm()));
+    }
+}
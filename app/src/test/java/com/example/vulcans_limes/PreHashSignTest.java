@@ -0,0 +1,135 @@
+package com.example.vulcans_limes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of signing with keys generated with the ";PreHash" option, whose data is hashed in-process
+ * and signed with {@code NONEwithECDSA} or {@code NONEwithRSA}, through a {@link CryptoManager} with a
+ * {@link SoftwareKeyStoreBackend}.
+ */
+public class PreHashSignTest {
+    private CryptoManager cryptoManager;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        cryptoManager = new CryptoManager(new SoftwareKeyStoreBackend());
+        cryptoManager.createKey("ec", KeyGenSpec.parse("EC;secp256r1;SHA-256;PreHash"));
+        cryptoManager.createKey("rsa", KeyGenSpec.parse("RSA;2048;SHA-256;PKCS1;PreHash"));
+        cryptoManager.createKey("plain", KeyGenSpec.parse("EC;secp256r1;SHA-256"));
+        random = new Random(1);
+    }
+
+    @Test
+    public void preHashOption() throws Exception {
+        assertTrue(KeyGenSpec.parse("EC;secp256r1;SHA-256;PreHash").isPreHash());
+        assertTrue(KeyGenSpec.parse("RSA;2048;SHA-256;PKCS1;PreHash").isPreHash());
+        assertFalse(KeyGenSpec.parse("RSA;2048;SHA-256;PKCS1").isPreHash());
+        try {
+            KeyGenSpec.parse("RSA;2048;SHA-256;NoPadding;PreHash");
+            fail("PreHash without PKCS1 padding was accepted");
+        } catch (InvalidAlgorithmParameterException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void rsaPreHashMatchesRegularSignature() throws Exception {
+        byte[] data = payload(100000);
+        cryptoManager.setPreHashThreshold(Integer.MAX_VALUE);
+        byte[] regular = cryptoManager.signData("rsa", data);
+        cryptoManager.setPreHashThreshold(0);
+        byte[] preHashed = cryptoManager.signData("rsa", data);
+        // PKCS#1 v1.5 signatures are deterministic
+        assertArrayEquals(regular, preHashed);
+        assertArrayEquals(regular, sign(cryptoManager.newSigner("rsa"), data));
+
+        PublicKey publicKey = publicKey("rsa", "RSA");
+        assertTrue(verify("SHA256withRSA", publicKey, data, preHashed));
+        KeyProfile profile = KeyProfile.forKeyPair("RSA", "SHA-256", true, false);
+        assertTrue(verify("NONEwithRSA", publicKey, profile.toPreHashInput(sha256(data)), preHashed));
+    }
+
+    @Test
+    public void ecPreHashVerifiesAgainstReference() throws Exception {
+        byte[] data = payload(100000);
+        cryptoManager.setPreHashThreshold(0);
+        byte[] preHashed = cryptoManager.signData("ec", data);
+        assertTrue(cryptoManager.verifySignature("ec", data, preHashed));
+
+        PublicKey publicKey = publicKey("ec", "EC");
+        assertTrue(verify("SHA256withECDSA", publicKey, data, preHashed));
+        assertTrue(verify("NONEwithECDSA", publicKey, sha256(data), preHashed));
+        assertTrue(verify("SHA256withECDSA", publicKey, data, sign(cryptoManager.newSigner("ec"), data)));
+
+        data[0] ^= 1;
+        assertFalse(verify("SHA256withECDSA", publicKey, data, preHashed));
+    }
+
+    @Test
+    public void thresholdSelectsPath() throws Exception {
+        cryptoManager.setPreHashThreshold(1000);
+        PublicKey publicKey = publicKey("ec", "EC");
+        for (int size : new int[]{0, 999, 1000, 5000}) {
+            byte[] data = payload(size);
+            assertTrue("size " + size, verify("SHA256withECDSA", publicKey, data, cryptoManager.signData("ec", data)));
+        }
+        try {
+            cryptoManager.setPreHashThreshold(-1);
+            fail("Negative threshold was accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void keyWithoutPreHashSignsRegularly() throws Exception {
+        cryptoManager.setPreHashThreshold(0);
+        byte[] data = payload(100000);
+        byte[] signature = cryptoManager.signData("plain", data);
+        assertTrue(cryptoManager.verifySignature("plain", data, signature));
+        assertTrue(verify("SHA256withECDSA", publicKey("plain", "EC"), data, signature));
+    }
+
+    private PublicKey publicKey(String key_id, String algorithm) throws Exception {
+        return KeyFactory.getInstance(algorithm)
+                .generatePublic(new X509EncodedKeySpec(cryptoManager.exportPublicKey(key_id)));
+    }
+
+    private static boolean verify(String algorithm, PublicKey publicKey, byte[] data, byte[] signature)
+            throws Exception {
+        Signature verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+
+    private static byte[] sign(Signer signer, byte[] data) throws Exception {
+        signer.update(data, 0, data.length);
+        return signer.sign();
+    }
+
+    private static byte[] sha256(byte[] data) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(data);
+    }
+
+    private byte[] payload(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.vulcans_limes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the public key export and of verification in software, through a {@link CryptoManager}
+ * with a {@link SoftwareKeyStoreBackend}.
+ */
+public class PublicKeyExportTest {
+    private CryptoManager cryptoManager;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        cryptoManager = new CryptoManager(new SoftwareKeyStoreBackend());
+        cryptoManager.createKey("ec", KeyGenSpec.parse("EC;secp256r1;SHA-256"));
+        cryptoManager.createKey("rsa", KeyGenSpec.parse("RSA;2048;SHA-256;PKCS1"));
+        cryptoManager.createKey("aes", KeyGenSpec.parse("AES;128;GCM;NoPadding"));
+        random = new Random(1);
+    }
+
+    @Test
+    public void exportedKeyVerifiesSignatures() throws Exception {
+        String[][] keys = {{"ec", "EC", "SHA256withECDSA"}, {"rsa", "RSA", "SHA256withRSA"}};
+        for (String[] key : keys) {
+            byte[] data = payload(1000);
+            byte[] signature = cryptoManager.signData(key[0], data);
+
+            Signature verifier = Signature.getInstance(key[2]);
+            verifier.initVerify(KeyFactory.getInstance(key[1])
+                    .generatePublic(new X509EncodedKeySpec(cryptoManager.exportPublicKey(key[0]))));
+            verifier.update(data);
+            assertTrue(key[0], verifier.verify(signature));
+        }
+    }
+
+    @Test
+    public void exportedPointMatchesKey() throws Exception {
+        byte[] point = cryptoManager.exportPublicKeyPoint("ec");
+        assertEquals(65, point.length);
+        assertEquals(0x04, point[0]);
+
+        ECPublicKey publicKey = (ECPublicKey) KeyFactory.getInstance("EC")
+                .generatePublic(new X509EncodedKeySpec(cryptoManager.exportPublicKey("ec")));
+        assertEquals(publicKey.getW().getAffineX(), new BigInteger(1, Arrays.copyOfRange(point, 1, 33)));
+        assertEquals(publicKey.getW().getAffineY(), new BigInteger(1, Arrays.copyOfRange(point, 33, 65)));
+    }
+
+    @Test
+    public void exportOfUnsuitableKeysFails() throws Exception {
+        try {
+            cryptoManager.exportPublicKey("aes");
+            fail("Public key of a symmetric key was exported");
+        } catch (InvalidKeyException e) {
+            // expected
+        }
+        try {
+            cryptoManager.exportPublicKeyPoint("rsa");
+            fail("EC point of an RSA key was exported");
+        } catch (InvalidKeyException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void softwareVerificationGivesSameResults() throws Exception {
+        for (String key : new String[]{"ec", "rsa"}) {
+            byte[] data = payload(1000);
+            byte[] signature = cryptoManager.signData(key, data);
+            byte[] modified = data.clone();
+            modified[0] ^= 1;
+
+            for (boolean software : new boolean[]{false, true}) {
+                cryptoManager.setSoftwareVerification(software);
+                assertEquals(software, cryptoManager.isSoftwareVerification());
+                assertTrue(key, cryptoManager.verifySignature(key, data, signature));
+                assertFalse(key, cryptoManager.verifySignature(key, modified, signature));
+
+                Verifier verifier = cryptoManager.newVerifier(key);
+                verifier.update(data, 0, data.length);
+                assertTrue(key, verifier.verify(signature));
+            }
+        }
+    }
+
+    private byte[] payload(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
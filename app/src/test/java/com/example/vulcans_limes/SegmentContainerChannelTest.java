@@ -0,0 +1,184 @@
+package com.example.vulcans_limes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the random access to a {@link SegmentContainer} through {@link SegmentContainerChannel}.
+ */
+public class SegmentContainerChannelTest {
+    private static final int SEGMENT_SIZE = 1024;
+    // three full segments and a partial last one
+    private static final int SIZE = 3 * SEGMENT_SIZE + 100;
+
+    private byte[] data;
+    private Key key;
+    private File directory;
+    private File container;
+
+    @Before
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        byte[] wrappedKey = new byte[60];
+        random.nextBytes(wrappedKey);
+        byte[] dataKey = new byte[Envelope.DATA_KEY_LENGTH];
+        random.nextBytes(dataKey);
+        key = Envelope.toKey(dataKey);
+        data = new byte[SIZE];
+        random.nextBytes(data);
+        directory = Files.createTempDirectory("segment-channel").toFile();
+        File plaintext = new File(directory, "plaintext");
+        Files.write(plaintext.toPath(), data);
+        container = new File(directory, "container");
+        try (FileChannel source = FileChannel.open(plaintext.toPath(), StandardOpenOption.READ)) {
+            SegmentContainer.create(Envelope.newHeader(Envelope.CONTAINER, wrappedKey), SEGMENT_SIZE, SIZE)
+                    .encrypt(source, container, key, new CipherPool());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void readsEverythingInSmallPieces() throws Exception {
+        try (SeekableByteChannel channel = open()) {
+            assertEquals(SIZE, channel.size());
+            ByteBuffer result = ByteBuffer.allocate(SIZE);
+            ByteBuffer piece = ByteBuffer.allocate(333);
+            while (channel.read(piece) != -1) {
+                piece.flip();
+                result.put(piece);
+                piece.clear();
+            }
+            assertArrayEquals(data, result.array());
+            assertEquals(SIZE, channel.position());
+        }
+    }
+
+    @Test
+    public void readsFromSegmentBoundary() throws Exception {
+        try (SeekableByteChannel channel = open()) {
+            for (int index : new int[]{2, 0, 1, 3}) {
+                long position = (long) index * SEGMENT_SIZE;
+                channel.position(position);
+                assertArrayEquals("segment " + index, range(position, 50), read(channel, 50));
+                assertEquals(position + 50, channel.position());
+            }
+        }
+    }
+
+    @Test
+    public void readsAcrossSegmentBoundary() throws Exception {
+        try (SeekableByteChannel channel = open()) {
+            channel.position(SEGMENT_SIZE - 10);
+            assertArrayEquals(range(SEGMENT_SIZE - 10, SEGMENT_SIZE + 20), read(channel, SEGMENT_SIZE + 20));
+        }
+    }
+
+    @Test
+    public void readsPartialLastSegment() throws Exception {
+        try (SeekableByteChannel channel = open()) {
+            channel.position(SIZE - 150);
+            ByteBuffer buffer = ByteBuffer.allocate(500);
+            assertEquals(150, channel.read(buffer));
+            assertArrayEquals(range(SIZE - 150, 150), Arrays.copyOf(buffer.array(), 150));
+            assertEquals(-1, channel.read(buffer));
+            assertEquals(SIZE, channel.position());
+        }
+    }
+
+    @Test
+    public void readsNothingAtOrPastEnd() throws Exception {
+        try (SeekableByteChannel channel = open()) {
+            for (long position : new long[]{SIZE, SIZE + 1, 10L * SIZE, Long.MAX_VALUE}) {
+                channel.position(position);
+                assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+                assertEquals(position, channel.position());
+            }
+            // seeking back after the end still works
+            channel.position(5);
+            assertArrayEquals(range(5, 10), read(channel, 10));
+        }
+    }
+
+    @Test
+    public void negativePositionIsRejected() throws Exception {
+        try (SeekableByteChannel channel = open()) {
+            channel.position(-1);
+            fail("Negative position was accepted.");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void tamperedSegmentFailsOnlyWhereItIsRead() throws Exception {
+        byte[] encrypted = Files.readAllBytes(container.toPath());
+        // a byte of the ciphertext of the last segment
+        encrypted[encrypted.length - 20] ^= 1;
+        Files.write(container.toPath(), encrypted);
+        try (SeekableByteChannel channel = open()) {
+            assertArrayEquals(range(0, 100), read(channel, 100));
+            channel.position(3L * SEGMENT_SIZE);
+            try {
+                channel.read(ByteBuffer.allocate(10));
+                fail("Tampered segment was returned.");
+            } catch (IOException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void closedChannelFails() throws Exception {
+        SeekableByteChannel channel = open();
+        channel.close();
+        try {
+            channel.read(ByteBuffer.allocate(10));
+            fail("Closed channel was read.");
+        } catch (ClosedChannelException expected) {
+            // expected
+        }
+    }
+
+    private SeekableByteChannel open() throws Exception {
+        FileChannel source = FileChannel.open(container.toPath(), StandardOpenOption.READ);
+        return new SegmentContainerChannel(source, SegmentContainer.read(source),
+                Cipher.getInstance(Envelope.DATA_KEY_TRANSFORMATION), key);
+    }
+
+    private byte[] range(long position, int length) {
+        return Arrays.copyOfRange(data, (int) position, (int) position + length);
+    }
+
+    private static byte[] read(SeekableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            // keep reading
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.vulcans_limes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.Key;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the {@link SegmentContainer} format with a software data key.
+ */
+public class SegmentContainerTest {
+    private static final int SEGMENT_SIZE = 1024;
+
+    private final CipherPool pool = new CipherPool();
+    private byte[] envelopeHeader;
+    private Key key;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(1);
+        byte[] wrappedKey = new byte[60];
+        random.nextBytes(wrappedKey);
+        envelopeHeader = Envelope.newHeader(Envelope.CONTAINER, wrappedKey);
+        byte[] dataKey = new byte[Envelope.DATA_KEY_LENGTH];
+        random.nextBytes(dataKey);
+        key = Envelope.toKey(dataKey);
+        directory = Files.createTempDirectory("segment-container").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        // enough segments to be split over several tasks
+        for (int size : new int[]{0, 1, SEGMENT_SIZE, 50 * SEGMENT_SIZE + 17}) {
+            byte[] data = payload(size);
+            byte[] container = encrypt(data);
+            assertArrayEquals("size " + size, data, decrypt(container));
+        }
+    }
+
+    @Test
+    public void indexIsRead() throws Exception {
+        byte[] container = encrypt(payload(3 * SEGMENT_SIZE + 10));
+        try (FileChannel channel = open(write("container", container))) {
+            SegmentContainer layout = SegmentContainer.read(channel);
+            assertEquals(4, layout.getSegmentCount());
+            assertEquals(SEGMENT_SIZE, layout.getSegmentSize());
+            assertEquals(3 * SEGMENT_SIZE + 10, layout.getPlaintextLength());
+        }
+    }
+
+    @Test
+    public void swappedIndexEntriesFail() throws Exception {
+        byte[] container = encrypt(payload(4 * SEGMENT_SIZE));
+        ByteBuffer index = ByteBuffer.wrap(container);
+        long first = index.getLong(indexEntry(0));
+        long second = index.getLong(indexEntry(1));
+        // the lengths are the same, so only the authentication of the segments can notice
+        index.putLong(indexEntry(0), second);
+        index.putLong(indexEntry(1), first);
+        assertFails(container);
+    }
+
+    @Test
+    public void invalidIndexIsRejected() throws Exception {
+        byte[] container = encrypt(payload(4 * SEGMENT_SIZE));
+        byte[] beyondEnd = container.clone();
+        ByteBuffer.wrap(beyondEnd).putLong(indexEntry(2), container.length);
+        assertFails(beyondEnd);
+        byte[] intoIndex = container.clone();
+        ByteBuffer.wrap(intoIndex).putLong(indexEntry(0), indexEntry(0));
+        assertFails(intoIndex);
+        byte[] wrongLength = container.clone();
+        ByteBuffer.wrap(wrongLength).putInt(indexEntry(1) + 8, SEGMENT_SIZE);
+        assertFails(wrongLength);
+        byte[] hugeCount = container.clone();
+        ByteBuffer.wrap(hugeCount).putLong(indexEntry(0) - 8, Long.MAX_VALUE);
+        assertFails(hugeCount);
+    }
+
+    @Test
+    public void invalidSegmentSizeInHeaderIsRejected() throws Exception {
+        byte[] container = encrypt(payload(100));
+        for (int size : new int[]{0, -1, SegmentedAead.MAX_SEGMENT_SIZE + 1, Integer.MAX_VALUE}) {
+            byte[] tampered = container.clone();
+            ByteBuffer.wrap(tampered).putInt(envelopeHeader.length + 4, size);
+            assertFails(tampered);
+        }
+    }
+
+    @Test
+    public void tamperedSegmentFails() throws Exception {
+        byte[] container = encrypt(payload(4 * SEGMENT_SIZE));
+        container[container.length - SEGMENT_SIZE] ^= 1;
+        assertFails(container);
+    }
+
+    private int indexEntry(int segment) {
+        return envelopeHeader.length + SegmentedAead.HEADER_LENGTH + 8 + segment * SegmentContainer.INDEX_ENTRY_LENGTH;
+    }
+
+    private byte[] encrypt(byte[] data) throws Exception {
+        File source = write("plaintext", data);
+        File target = new File(directory, "container");
+        try (FileChannel channel = open(source)) {
+            SegmentContainer.create(envelopeHeader, SEGMENT_SIZE, data.length).encrypt(channel, target, key, pool);
+        }
+        return Files.readAllBytes(target.toPath());
+    }
+
+    private byte[] decrypt(byte[] container) throws Exception {
+        File source = write("encrypted", container);
+        File target = new File(directory, "decrypted");
+        try (FileChannel channel = open(source)) {
+            SegmentContainer.read(channel).decrypt(channel, target, key, pool);
+        }
+        return Files.readAllBytes(target.toPath());
+    }
+
+    private void assertFails(byte[] container) throws Exception {
+        try {
+            decrypt(container);
+            fail("Manipulated container was decrypted.");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.vulcans_limes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of {@link SegmentedFileCipher} with a software key.
+ */
+public class SegmentedFileCipherTest {
+    private static final int SEGMENT_SIZE = 1024;
+
+    private Key key;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        byte[] keyBytes = new byte[32];
+        new Random(1).nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+        directory = Files.createTempDirectory("segmented-file").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (int size : new int[]{0, 1, SEGMENT_SIZE, 40 * SEGMENT_SIZE + 3}) {
+            byte[] data = payload(size);
+            assertArrayEquals("size " + size, data, decrypt(encrypt(data)));
+        }
+    }
+
+    @Test
+    public void invalidSegmentSizeInHeaderFails() throws Exception {
+        byte[] encrypted = encrypt(payload(100));
+        for (int size : new int[]{0, -1, SegmentedAead.MAX_SEGMENT_SIZE + 1, Integer.MAX_VALUE}) {
+            byte[] tampered = encrypted.clone();
+            ByteBuffer.wrap(tampered, 4, 4).putInt(size);
+            assertFails(tampered);
+        }
+    }
+
+    @Test
+    public void truncatedFileFails() throws Exception {
+        byte[] encrypted = encrypt(payload(3 * SEGMENT_SIZE + 100));
+        assertFails(Arrays.copyOf(encrypted, encrypted.length - 1));
+        assertFails(Arrays.copyOf(encrypted, SegmentedAead.HEADER_LENGTH));
+    }
+
+    @Test
+    public void failedDecryptionLeavesTargetUntouched() throws Exception {
+        byte[] encrypted = encrypt(payload(2 * SEGMENT_SIZE));
+        encrypted[encrypted.length - 1] ^= 1;
+        File target = new File(directory, "plain");
+        try {
+            decrypt(encrypted, target);
+            fail("Tampered file was decrypted.");
+        } catch (IOException expected) {
+            assertFalse(target.exists());
+        }
+    }
+
+    private byte[] encrypt(byte[] data) throws Exception {
+        File source = write("source", data);
+        File target = new File(directory, "encrypted");
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            new SegmentedFileCipher(Cipher.getInstance("AES/GCM/NoPadding"), key).encrypt(channel, target,
+                    SEGMENT_SIZE);
+        }
+        return Files.readAllBytes(target.toPath());
+    }
+
+    private byte[] decrypt(byte[] encrypted) throws Exception {
+        File target = new File(directory, "decrypted");
+        decrypt(encrypted, target);
+        return Files.readAllBytes(target.toPath());
+    }
+
+    private void decrypt(byte[] encrypted, File target) throws Exception {
+        File source = write("encrypted-source", encrypted);
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            new SegmentedFileCipher(Cipher.getInstance("AES/GCM/NoPadding"), key).decrypt(channel, target);
+        }
+    }
+
+    private void assertFails(byte[] encrypted) throws Exception {
+        try {
+            decrypt(encrypted);
+            fail("Manipulated file was decrypted.");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private File write(String name, byte[] data) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
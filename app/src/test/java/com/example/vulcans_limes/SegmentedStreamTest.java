@@ -0,0 +1,170 @@
+package com.example.vulcans_limes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of the segmented AES-GCM format, see {@link SegmentedAead}, through
+ * {@link SegmentEncryptingOutputStream} and {@link SegmentDecryptingInputStream} with a software key.
+ */
+public class SegmentedStreamTest {
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int SEGMENT_LENGTH = SEGMENT_SIZE + SegmentedAead.SEGMENT_OVERHEAD;
+
+    private Key key;
+
+    @Before
+    public void setUp() {
+        byte[] keyBytes = new byte[32];
+        new Random(1).nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        int[] sizes = {0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 3 * SEGMENT_SIZE, 5 * SEGMENT_SIZE + 7};
+        for (int size : sizes) {
+            byte[] data = payload(size);
+            assertArrayEquals("size " + size, data, decrypt(encrypt(data)));
+        }
+    }
+
+    @Test
+    public void truncatedStreamFails() throws Exception {
+        byte[] encrypted = encrypt(payload(3 * SEGMENT_SIZE + 100));
+        assertFails(Arrays.copyOf(encrypted, encrypted.length - 1));
+        assertFails(Arrays.copyOf(encrypted, SegmentedAead.HEADER_LENGTH + SegmentedAead.SEGMENT_OVERHEAD - 1));
+    }
+
+    @Test
+    public void reorderedSegmentsFail() throws Exception {
+        byte[] encrypted = encrypt(payload(3 * SEGMENT_SIZE + 100));
+        byte[] reordered = encrypted.clone();
+        int first = SegmentedAead.HEADER_LENGTH;
+        System.arraycopy(encrypted, first + SEGMENT_LENGTH, reordered, first, SEGMENT_LENGTH);
+        System.arraycopy(encrypted, first, reordered, first + SEGMENT_LENGTH, SEGMENT_LENGTH);
+        assertFails(reordered);
+    }
+
+    @Test
+    public void droppedLastSegmentFails() throws Exception {
+        byte[] encrypted = encrypt(payload(2 * SEGMENT_SIZE + 10));
+        assertEquals(SegmentedAead.HEADER_LENGTH + 3 * SEGMENT_LENGTH - SEGMENT_SIZE + 10, encrypted.length);
+        // without the last segment, the full segment before it is read as the last one, which it was not
+        // encrypted as
+        assertFails(Arrays.copyOf(encrypted, SegmentedAead.HEADER_LENGTH + 2 * SEGMENT_LENGTH));
+    }
+
+    @Test
+    public void tamperedLastSegmentFlagFails() throws Exception {
+        byte[] data = payload(SEGMENT_SIZE + 10);
+        byte[] header = SegmentedAead.newHeader(SEGMENT_SIZE);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header);
+        // both segments claim to be the last one
+        out.write(SegmentedAead.encryptSegment(cipher, key, header, 0, true, data, 0, SEGMENT_SIZE));
+        out.write(SegmentedAead.encryptSegment(cipher, key, header, 1, true, data, SEGMENT_SIZE, 10));
+        assertFails(out.toByteArray());
+    }
+
+    @Test
+    public void tamperedSegmentFails() throws Exception {
+        byte[] encrypted = encrypt(payload(2 * SEGMENT_SIZE + 5));
+        encrypted[SegmentedAead.HEADER_LENGTH + SEGMENT_LENGTH + 20] ^= 1;
+        assertFails(encrypted);
+    }
+
+    @Test
+    public void badHeaderFails() throws Exception {
+        byte[] encrypted = encrypt(payload(100));
+        byte[] magic = encrypted.clone();
+        magic[0] = 'X';
+        assertFails(magic);
+        byte[] salt = encrypted.clone();
+        salt[SegmentedAead.HEADER_LENGTH - 1] ^= 1;
+        assertFails(salt);
+        assertFails(Arrays.copyOf(encrypted, SegmentedAead.HEADER_LENGTH - 1));
+    }
+
+    @Test
+    public void invalidSegmentSizeInHeaderFails() throws Exception {
+        byte[] encrypted = encrypt(payload(100));
+        int[] sizes = {0, -1, SegmentedAead.MAX_SEGMENT_SIZE + 1, Integer.MAX_VALUE, Integer.MAX_VALUE - 20};
+        for (int size : sizes) {
+            byte[] tampered = encrypted.clone();
+            ByteBuffer.wrap(tampered, 4, 4).putInt(size);
+            // must fail before any buffer of that size is allocated
+            assertFails(tampered);
+        }
+    }
+
+    @Test
+    public void invalidSegmentSizeIsRejectedWhenWriting() throws Exception {
+        for (int size : new int[]{0, -1, SegmentedAead.MAX_SEGMENT_SIZE + 1}) {
+            try {
+                new SegmentEncryptingOutputStream(new ByteArrayOutputStream(),
+                        Cipher.getInstance(TRANSFORMATION), key, size);
+                fail("Segment size " + size + " was accepted.");
+            } catch (IOException expected) {
+                // expected
+            }
+        }
+    }
+
+    private byte[] encrypt(byte[] data) throws Exception {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = new SegmentEncryptingOutputStream(encrypted,
+                Cipher.getInstance(TRANSFORMATION), key, SEGMENT_SIZE)) {
+            // written in odd pieces, so that writes cross segment boundaries
+            for (int offset = 0; offset < data.length; offset += 333) {
+                out.write(data, offset, Math.min(333, data.length - offset));
+            }
+        }
+        return encrypted.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] encrypted) throws Exception {
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        try (InputStream in = new SegmentDecryptingInputStream(new ByteArrayInputStream(encrypted),
+                Cipher.getInstance(TRANSFORMATION), key)) {
+            byte[] buffer = new byte[500];
+            int count;
+            while ((count = in.read(buffer)) != -1) decrypted.write(buffer, 0, count);
+        }
+        return decrypted.toByteArray();
+    }
+
+    private void assertFails(byte[] encrypted) throws Exception {
+        try {
+            decrypt(encrypted);
+            fail("Manipulated stream was decrypted.");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.vulcans_limes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit test of {@link CryptoManager#verifyBatch(String, List, List)} with valid, invalid, malformed and
+ * missing signatures, through a {@link CryptoManager} with a {@link SoftwareKeyStoreBackend}.
+ */
+public class VerifyBatchTest {
+    // larger than the grain of a single task, so that the batch is split
+    private static final int RECORDS = 100;
+
+    private CryptoManager cryptoManager;
+    private Random random;
+
+    @Before
+    public void setUp() throws Exception {
+        cryptoManager = new CryptoManager(new SoftwareKeyStoreBackend());
+        cryptoManager.createKey("ec", KeyGenSpec.parse("EC;secp256r1;SHA-256"));
+        cryptoManager.createKey("rsa", KeyGenSpec.parse("RSA;2048;SHA-256;PKCS1"));
+        cryptoManager.createKey("aes", KeyGenSpec.parse("AES;128;GCM;NoPadding"));
+        random = new Random(1);
+    }
+
+    @Test
+    public void mixedResults() throws Exception {
+        for (String key : new String[]{"ec", "rsa"}) {
+            List<byte[]> data = new ArrayList<>();
+            List<byte[]> signatures = new ArrayList<>();
+            for (int i = 0; i < RECORDS; i++) {
+                byte[] record = payload(1 + random.nextInt(200));
+                data.add(record);
+                signatures.add(cryptoManager.signData(key, record));
+            }
+            BitSet expected = new BitSet();
+            expected.set(0, RECORDS);
+            for (int i = 0; i < RECORDS; i += 5) {
+                switch (i / 5 % 5) {
+                    case 0: // modified record
+                        data.get(i)[0] ^= 1;
+                        break;
+                    case 1: // signature of another record
+                        signatures.set(i, signatures.get(i + 1));
+                        break;
+                    case 2: // malformed signature
+                        signatures.set(i, payload(7));
+                        break;
+                    case 3: // missing signature
+                        signatures.set(i, null);
+                        break;
+                    default: // missing record
+                        data.set(i, null);
+                        break;
+                }
+                expected.clear(i);
+            }
+
+            BitSet results = cryptoManager.verifyBatch(key, data, signatures);
+            assertEquals(key, expected, results);
+        }
+    }
+
+    @Test
+    public void invalidAndMissingRecordsCountAsFailedVerifications() throws Exception {
+        byte[] record = payload(10);
+        byte[] signature = cryptoManager.signData("ec", record);
+        cryptoManager.getMetrics().reset();
+
+        BitSet results = cryptoManager.verifyBatch("ec", list(record, null, record, record),
+                list(signature, signature, null, payload(7)));
+        assertEquals(1, results.cardinality());
+        assertTrue(results.get(0));
+
+        long count = 0;
+        long failures = 0;
+        for (OperationSnapshot snapshot : cryptoManager.getMetrics().snapshot()) {
+            if (snapshot.getOperation() != CryptoMetrics.Operation.VERIFY) continue;
+            count += snapshot.getCount();
+            failures += snapshot.getFailureCount();
+        }
+        assertEquals(4, count);
+        assertEquals(3, failures);
+    }
+
+    @Test
+    public void emptyBatch() throws Exception {
+        List<byte[]> empty = Collections.emptyList();
+        assertTrue(cryptoManager.verifyBatch("ec", empty, empty).isEmpty());
+    }
+
+    @Test
+    public void mismatchedSizesFail() throws Exception {
+        byte[] record = payload(10);
+        try {
+            cryptoManager.verifyBatch("ec", list(record, record), list(cryptoManager.signData("ec", record)));
+            fail("Batch with a missing signature was verified");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void symmetricKeyFails() throws Exception {
+        byte[] record = payload(10);
+        try {
+            cryptoManager.verifyBatch("aes", list(record), list(record));
+            fail("Batch was verified with a symmetric key");
+        } catch (InvalidKeyException e) {
+            // expected
+        }
+    }
+
+    private static List<byte[]> list(byte[]... items) {
+        List<byte[]> list = new ArrayList<>();
+        Collections.addAll(list, items);
+        return list;
+    }
+
+    private byte[] payload(int size) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
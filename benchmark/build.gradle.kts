@@ -0,0 +1,32 @@
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// The crypto classes of the app are compiled a second time here and measured on the host JVM with the
+// SoftwareKeyStoreBackend. AndroidKeyStoreBackend only compiles against stubs of the Android classes it uses.
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            exclude("com/example/vulcans_limes/MainActivity.java")
+        }
+    }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.set(listOf("gc"))
+    // the largest payloads are 64 MiB and exist as plaintext, ciphertext and output at the same time
+    jvmArgs.set(listOf("-Xms2g", "-Xmx2g"))
+    resultFormat.set("JSON")
+    (findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
@@ -0,0 +1,59 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the batch API of {@link CryptoManager} with encrypting the same records one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BatchBenchmark {
+    @Param({"AES;128;GCM;NoPadding", "AES;128;CBC;PKCS7Padding"})
+    public String algorithm;
+
+    @Param({"16", "256"})
+    public int recordSize;
+
+    @Param({"16", "1024"})
+    public int records;
+
+    private CryptoManager cryptoManager;
+    private String keyId;
+    private byte[][] batch;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+        batch = new byte[records][];
+        for (int i = 0; i < records; i++) batch[i] = BenchmarkKeys.payload(recordSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cryptoManager.deleteKey(keyId);
+    }
+
+    @Benchmark
+    public BatchResult encryptBatch() throws Exception {
+        return cryptoManager.encryptBatch(keyId, batch);
+    }
+
+    @Benchmark
+    public void encryptEach(Blackhole blackhole) throws Exception {
+        for (byte[] record : batch) blackhole.consume(cryptoManager.encryptData(keyId, record));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.vulcans_limes;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared setup of the benchmarks: creates {@link CryptoManager} instances backed by a
+ * {@link SoftwareKeyStoreBackend}, generates keys from the algorithm strings offered by the app and creates payloads.
+ */
+final class BenchmarkKeys {
+    private static final AtomicLong counter = new AtomicLong();
+
+    private BenchmarkKeys() {
+    }
+
+    /**
+     * Creates a new {@link CryptoManager} with its own {@link SoftwareKeyStoreBackend}.
+     *
+     * @return The new instance.
+     */
+    static CryptoManager newCryptoManager() {
+        return new CryptoManager(new SoftwareKeyStoreBackend());
+    }
+
+    /**
+     * Generates a key for the given algorithm string under a fresh alias.
+     *
+     * @param cryptoManager The manager generating the key.
+     * @param keyGenInfo    One of the algorithm strings listed in {@code MainActivity}.
+     * @return The alias of the new key.
+     * @throws GeneralSecurityException if the key cannot be generated.
+     * @throws java.io.IOException      if the keystore cannot be loaded.
+     */
+    static String createKey(CryptoManager cryptoManager, String keyGenInfo)
+            throws GeneralSecurityException, java.io.IOException {
+        String key_id = "benchmark-" + counter.incrementAndGet();
+        cryptoManager.createKey(key_id, KeyGenSpec.parse(keyGenInfo));
+        return key_id;
+    }
+
+    /**
+     * Creates reproducible pseudo-random data.
+     *
+     * @param size The number of bytes.
+     * @return The data.
+     */
+    static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
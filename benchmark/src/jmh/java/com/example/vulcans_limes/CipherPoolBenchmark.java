@@ -0,0 +1,55 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Compares taking a {@link Cipher} from the {@link CipherPool} with looking it up through
+ * {@link Cipher#getInstance(String)} for every operation, for small payloads where the lookup matters most.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CipherPoolBenchmark {
+    @Param({"AES/GCM/NoPadding", "AES/CBC/PKCS5Padding", "AES/CTR/NoPadding"})
+    public String transformation;
+
+    @Param({"64", "256", "1024", "4096"})
+    public int size;
+
+    private final CipherPool cipherPool = new CipherPool();
+    private SecretKeySpec key;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        key = new SecretKeySpec(BenchmarkKeys.payload(16), "AES");
+        data = BenchmarkKeys.payload(size);
+    }
+
+    @Benchmark
+    public byte[] pooled() throws Exception {
+        Cipher cipher = cipherPool.getCipher(transformation);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return cipher.doFinal(data);
+    }
+
+    @Benchmark
+    public byte[] getInstance() throws Exception {
+        Cipher cipher = Cipher.getInstance(transformation);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        return cipher.doFinal(data);
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the memory-mapped file encryption of {@link CryptoManager} with reading the whole file, encrypting it
+ * in one piece and writing the result, which is what the demo app did before, and with the parallel encryption
+ * into a segment container, whose throughput should grow with the number of cores. Reading a small range from
+ * the middle of a container shows the cost of random access, which should not depend on the file size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FileCryptoBenchmark {
+    private static final int RANGE_LENGTH = 64 * 1024;
+
+    @Param({"AES;256;GCM;NoPadding"})
+    public String algorithm;
+
+    @Param({"1048576", "67108864", "268435456"})
+    public int size;
+
+    private CryptoManager cryptoManager;
+    private String keyId;
+    private File directory;
+    private File plain;
+    private File encrypted;
+    private File container;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+        directory = Files.createTempDirectory("file-crypto").toFile();
+        plain = new File(directory, "plain");
+        encrypted = new File(directory, "encrypted");
+        container = new File(directory, "container");
+        output = new File(directory, "output");
+        Files.write(plain.toPath(), BenchmarkKeys.payload(size));
+        cryptoManager.encryptFile(keyId, plain, encrypted);
+        cryptoManager.encryptFileParallel(keyId, plain, container);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cryptoManager.deleteKey(keyId);
+        for (File file : new File[]{plain, encrypted, container, output}) file.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public long encryptFile() throws Exception {
+        cryptoManager.encryptFile(keyId, plain, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long decryptFile() throws Exception {
+        cryptoManager.decryptFile(keyId, encrypted, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long encryptFileParallel() throws Exception {
+        cryptoManager.encryptFileParallel(keyId, plain, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long decryptFileParallel() throws Exception {
+        cryptoManager.decryptFileParallel(keyId, container, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public int readRange() throws Exception {
+        try (SeekableByteChannel channel = cryptoManager.newDecryptingChannel(keyId, container)) {
+            ByteBuffer range = ByteBuffer.allocate(RANGE_LENGTH);
+            channel.position(channel.size() / 2);
+            while (range.hasRemaining()) {
+                if (channel.read(range) == -1) break;
+            }
+            return range.position();
+        }
+    }
+
+    @Benchmark
+    public long encryptInMemory() throws Exception {
+        byte[] data = Files.readAllBytes(plain.toPath());
+        Files.write(output.toPath(), cryptoManager.encryptData(keyId, data));
+        return output.length();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures key generation, deletion and loading of {@link CryptoManager} for every algorithm offered by the app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class KeyManagementBenchmark {
+    @Param({
+            "RSA;2048;SHA-256;PKCS1",
+            "EC;secp256r1;SHA-256",
+            "EC;secp384r1;SHA-256",
+            "EC;secp521r1;SHA-256",
+            "DESede;168;CBC;PKCS7Padding",
+            "AES;128;GCM;NoPadding",
+            "AES;128;CBC;PKCS7Padding",
+            "AES;128;CTR;NoPadding",
+            "AES;256;GCM;NoPadding",
+            "AES;256;CBC;PKCS7Padding",
+            "AES;256;CTR;NoPadding"
+    })
+    public String algorithm;
+
+    private CryptoManager cryptoManager;
+    private String keyId;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cryptoManager.deleteKey(keyId);
+    }
+
+    @Benchmark
+    public void generateAndDelete() throws Exception {
+        cryptoManager.deleteKey(BenchmarkKeys.createKey(cryptoManager, algorithm));
+    }
+
+    @Benchmark
+    public void loadKey() throws Exception {
+        cryptoManager.loadKey(keyId);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares generating the keys of a device setup one by one with {@link CryptoManager#createKey(String, KeyGenSpec)}
+ * to generating them with {@link CryptoManager#provisionKeys(Map)}. Every invocation provisions per-channel AES
+ * keys plus one EC signing key per four channels on a fresh {@link CryptoManager}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProvisioningBenchmark {
+    @Param({"4", "32"})
+    public int channels;
+
+    private Map<String, KeyGenSpec> keys;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyGenSpec channelKey = KeyGenSpec.parse("AES;256;GCM;NoPadding");
+        KeyGenSpec signingKey = KeyGenSpec.parse("EC;secp256r1;SHA-256");
+        keys = new LinkedHashMap<>();
+        for (int i = 0; i < channels; i++) {
+            keys.put("channel-" + i, channelKey);
+            if (i % 4 == 0) keys.put("signing-" + i, signingKey);
+        }
+    }
+
+    @Benchmark
+    public CryptoManager sequential() throws Exception {
+        CryptoManager cryptoManager = BenchmarkKeys.newCryptoManager();
+        for (Map.Entry<String, KeyGenSpec> key : keys.entrySet()) {
+            cryptoManager.createKey(key.getKey(), key.getValue());
+        }
+        return cryptoManager;
+    }
+
+    @Benchmark
+    public CryptoManager provisionKeys() throws Exception {
+        CryptoManager cryptoManager = BenchmarkKeys.newCryptoManager();
+        cryptoManager.provisionKeys(keys);
+        return cryptoManager;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures signing and verification of {@link CryptoManager} for every asymmetric algorithm offered by the app.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SignatureBenchmark {
+    @Param({
+            "RSA;2048;SHA-256;PKCS1",
+            "RSA;2048;SHA-256;PKCS1;PreHash",
+            "EC;secp256r1;SHA-256",
+            "EC;secp256r1;SHA-256;PreHash",
+            "EC;secp384r1;SHA-256",
+            "EC;secp521r1;SHA-256"
+    })
+    public String algorithm;
+
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private CryptoManager cryptoManager;
+    private String keyId;
+    private byte[] data;
+    private byte[] signature;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+        data = BenchmarkKeys.payload(size);
+        signature = cryptoManager.signData(keyId, data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cryptoManager.deleteKey(keyId);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        return cryptoManager.signData(keyId, data);
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return cryptoManager.verifySignature(keyId, data, signature);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the segmented streaming encryption of {@link CryptoManager}, which is only offered for AES-GCM keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamingBenchmark {
+    @Param({"AES;128;GCM;NoPadding", "AES;256;GCM;NoPadding"})
+    public String algorithm;
+
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private CryptoManager cryptoManager;
+    private String keyId;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+    private final byte[] buffer = new byte[8192];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+        plaintext = BenchmarkKeys.payload(size);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream out = cryptoManager.newEncryptingStream(keyId, encrypted)) {
+            out.write(plaintext);
+        }
+        ciphertext = encrypted.toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cryptoManager.deleteKey(keyId);
+    }
+
+    @Benchmark
+    public long encryptStream() throws Exception {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (OutputStream out = cryptoManager.newEncryptingStream(keyId, counter)) {
+            out.write(plaintext);
+        }
+        return counter.count;
+    }
+
+    @Benchmark
+    public long decryptStream() throws Exception {
+        long total = 0;
+        try (InputStream in = cryptoManager.newDecryptingStream(keyId, new ByteArrayInputStream(ciphertext))) {
+            int count;
+            while ((count = in.read(buffer)) != -1) total += count;
+        }
+        return total;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
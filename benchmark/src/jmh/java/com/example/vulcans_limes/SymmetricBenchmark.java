@@ -0,0 +1,108 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encryption and decryption of {@link CryptoManager} for every symmetric algorithm offered by the app,
+ * through the array, the direct buffer, the session and the envelope API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SymmetricBenchmark {
+    @Param({
+            "DESede;168;CBC;PKCS7Padding",
+            "AES;128;GCM;NoPadding",
+            "AES;128;CBC;PKCS7Padding",
+            "AES;128;CTR;NoPadding",
+            "AES;256;GCM;NoPadding",
+            "AES;256;CBC;PKCS7Padding",
+            "AES;256;CTR;NoPadding"
+    })
+    public String algorithm;
+
+    @Param({"16", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private CryptoManager cryptoManager;
+    private CryptoSession session;
+    private String keyId;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+    private byte[] envelope;
+    private ByteBuffer directPlaintext;
+    private ByteBuffer directCiphertext;
+    private ByteBuffer directOutput;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+        session = cryptoManager.openSession(keyId);
+        plaintext = BenchmarkKeys.payload(size);
+        ciphertext = cryptoManager.encryptData(keyId, plaintext);
+        envelope = cryptoManager.encryptEnvelope(keyId, plaintext);
+        directPlaintext = ByteBuffer.allocateDirect(size);
+        directPlaintext.put(plaintext).flip();
+        directCiphertext = ByteBuffer.allocateDirect(ciphertext.length);
+        directCiphertext.put(ciphertext).flip();
+        directOutput = ByteBuffer.allocateDirect(size + 32);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        session.close();
+        cryptoManager.deleteKey(keyId);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        return cryptoManager.encryptData(keyId, plaintext);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        return cryptoManager.decryptData(keyId, ciphertext);
+    }
+
+    @Benchmark
+    public int encryptDirect() throws Exception {
+        directPlaintext.rewind();
+        directOutput.clear();
+        return cryptoManager.encryptData(keyId, directPlaintext, directOutput);
+    }
+
+    @Benchmark
+    public int decryptDirect() throws Exception {
+        directCiphertext.rewind();
+        directOutput.clear();
+        return cryptoManager.decryptData(keyId, directCiphertext, directOutput);
+    }
+
+    @Benchmark
+    public byte[] encryptSession() throws Exception {
+        return session.encryptData(plaintext);
+    }
+
+    @Benchmark
+    public byte[] encryptEnvelope() throws Exception {
+        return cryptoManager.encryptEnvelope(keyId, plaintext);
+    }
+
+    @Benchmark
+    public byte[] decryptEnvelope() throws Exception {
+        return cryptoManager.decryptEnvelope(keyId, envelope);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.vulcans_limes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the batch verification of {@link CryptoManager} with verifying the same signatures one by one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class VerifyBatchBenchmark {
+    @Param({"EC;secp256r1;SHA-256", "RSA;2048;SHA-256;PKCS1"})
+    public String algorithm;
+
+    @Param({"256"})
+    public int recordSize;
+
+    @Param({"16", "1024"})
+    public int records;
+
+    private CryptoManager cryptoManager;
+    private String keyId;
+    private List<byte[]> data;
+    private List<byte[]> signatures;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        cryptoManager = BenchmarkKeys.newCryptoManager();
+        keyId = BenchmarkKeys.createKey(cryptoManager, algorithm);
+        data = new ArrayList<>(records);
+        signatures = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            byte[] record = BenchmarkKeys.payload(recordSize + i);
+            data.add(record);
+            signatures.add(cryptoManager.signData(keyId, record));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        cryptoManager.deleteKey(keyId);
+    }
+
+    @Benchmark
+    public BitSet verifyBatch() throws Exception {
+        return cryptoManager.verifyBatch(keyId, data, signatures);
+    }
+
+    @Benchmark
+    public void verifyEach(Blackhole blackhole) throws Exception {
+        for (int i = 0; i < records; i++) {
+            blackhole.consume(cryptoManager.verifySignature(keyId, data.get(i), signatures.get(i)));
+        }
+    }
+}
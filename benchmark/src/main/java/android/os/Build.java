@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Stand-in for the Android class of the same name, so that the app sources can be compiled on a plain JVM.
+ * Only the members used by the app are present.
+ */
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = 34;
+    }
+
+    public static class VERSION_CODES {
+        public static final int P = 28;
+        public static final int S = 31;
+    }
+}
@@ -0,0 +1,50 @@
+package android.security.keystore;
+
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * Stand-in for the Android class of the same name, so that the app sources can be compiled on a plain JVM.
+ * Only the members used by the app are present, and none of them can be used.
+ */
+public final class KeyGenParameterSpec implements AlgorithmParameterSpec {
+    private KeyGenParameterSpec() {
+    }
+
+    public static final class Builder {
+        public Builder(String keystoreAlias, int purposes) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setKeySize(int keySize) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setAlgorithmParameterSpec(AlgorithmParameterSpec spec) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setBlockModes(String... blockModes) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setEncryptionPaddings(String... paddings) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setSignaturePaddings(String... paddings) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setDigests(String... digests) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public Builder setIsStrongBoxBacked(boolean isStrongBoxBacked) {
+            throw new UnsupportedOperationException("Stub!");
+        }
+
+        public KeyGenParameterSpec build() {
+            throw new UnsupportedOperationException("Stub!");
+        }
+    }
+}
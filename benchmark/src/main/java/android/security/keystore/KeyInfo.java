@@ -0,0 +1,40 @@
+package android.security.keystore;
+
+import java.security.spec.KeySpec;
+
+/**
+ * Stand-in for the Android class of the same name, so that the app sources can be compiled on a plain JVM.
+ * Only the members used by the app are present, and none of them can be used.
+ */
+public class KeyInfo implements KeySpec {
+    private KeyInfo() {
+    }
+
+    public String[] getBlockModes() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+
+    public String[] getEncryptionPaddings() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+
+    public String getKeystoreAlias() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+
+    public String[] getDigests() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+
+    public String[] getSignaturePaddings() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+
+    public int getSecurityLevel() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+
+    public boolean isInsideSecureHardware() {
+        throw new UnsupportedOperationException("Stub!");
+    }
+}
@@ -0,0 +1,24 @@
+package android.security.keystore;
+
+/**
+ * Stand-in for the Android class of the same name, so that the app sources can be compiled on a plain JVM.
+ * Only the members used by the app are present.
+ */
+public abstract class KeyProperties {
+    public static final int PURPOSE_ENCRYPT = 1;
+    public static final int PURPOSE_DECRYPT = 2;
+    public static final int PURPOSE_SIGN = 4;
+    public static final int PURPOSE_VERIFY = 8;
+
+    public static final String DIGEST_NONE = "NONE";
+    public static final String DIGEST_SHA256 = "SHA-256";
+
+    public static final String SIGNATURE_PADDING_RSA_PKCS1 = "PKCS1";
+
+    public static final int SECURITY_LEVEL_SOFTWARE = 0;
+    public static final int SECURITY_LEVEL_TRUSTED_ENVIRONMENT = 1;
+    public static final int SECURITY_LEVEL_STRONGBOX = 2;
+
+    private KeyProperties() {
+    }
+}
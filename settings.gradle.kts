@@ -21,3 +21,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "KeystoreStuffs"
 include(":app")
+include(":benchmark")